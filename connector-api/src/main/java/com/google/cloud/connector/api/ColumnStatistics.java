@@ -0,0 +1,31 @@
+package com.google.cloud.connector.api;
+
+import com.google.cloud.bigquery.federation.v1alpha1.Value;
+import javax.annotation.Nullable;
+
+/**
+ * Statistics of the values of a column in a partition, which allow the platform to skip the
+ * partition when the filter of a query can't match any of its rows.
+ *
+ * <p>The platform compares string values by their UTF-8 bytes, which is the order of their Unicode
+ * code points. The min and max of a string column are only used if the connector declares that they
+ * are in that order, since the min and max computed by a source with another collation, such as a
+ * case-insensitive one, may exclude values that the filter matches.
+ *
+ * @param min the minimum non-null value of the column, or {@code null} if unknown
+ * @param max the maximum non-null value of the column, or {@code null} if unknown
+ * @param nullCount the number of null values of the column, or a negative value if unknown
+ * @param binaryCollation whether the min and max of a string column are in the order of the UTF-8
+ *     bytes of the values
+ */
+public record ColumnStatistics(
+    @Nullable Value min, @Nullable Value max, long nullCount, boolean binaryCollation) {
+
+  /**
+   * Creates statistics of a column whose string values, if any, are not known to be ordered by
+   * their UTF-8 bytes.
+   */
+  public ColumnStatistics(@Nullable Value min, @Nullable Value max, long nullCount) {
+    this(min, max, nullCount, false);
+  }
+}
@@ -1,5 +1,7 @@
 package com.google.cloud.connector.api;
 
+import java.util.Map;
+
 /**
  * An interface for collecting partitioned query information to prepare for parallel query
  * execution.
@@ -15,6 +17,44 @@ public interface ParallelQueryPreparationContext {
    */
   void addPartition(byte[] partitionData);
 
+  /**
+   * Adds a partition for the parallel query execution, with estimates of its size. The estimates
+   * are returned to the caller to schedule the largest partitions first, and are used by the server
+   * to derive the maximum concurrency if it is not set by {@link #setMaxConcurrency(int)}.
+   *
+   * @param partitionData a byte array describing the partition, the same as in {@link
+   *     #addPartition(byte[])}
+   * @param estimatedRows the estimated number of rows in the partition, or a negative value if
+   *     unknown
+   * @param estimatedBytes the estimated size in bytes of the rows in the partition, or a negative
+   *     value if unknown
+   */
+  default void addPartition(byte[] partitionData, long estimatedRows, long estimatedBytes) {
+    addPartition(partitionData);
+  }
+
+  /**
+   * Adds a partition for the parallel query execution, with estimates of its size and statistics
+   * of its columns. The platform may drop the partition if the statistics show that the filter of
+   * the query can't match any of its rows, in which case it is never read.
+   *
+   * @param partitionData a byte array describing the partition, the same as in {@link
+   *     #addPartition(byte[])}
+   * @param estimatedRows the estimated number of rows in the partition, or a negative value if
+   *     unknown
+   * @param estimatedBytes the estimated size in bytes of the rows in the partition, or a negative
+   *     value if unknown
+   * @param columnStatistics the {@link ColumnStatistics} of the columns of the partition by field
+   *     name. Columns without statistics can be omitted.
+   */
+  default void addPartition(
+      byte[] partitionData,
+      long estimatedRows,
+      long estimatedBytes,
+      Map<String, ColumnStatistics> columnStatistics) {
+    addPartition(partitionData, estimatedRows, estimatedBytes);
+  }
+
   /**
    * Sets the maximum number of concurrent calls for reading in data in parallel. By default, it
    * equals to the number of partitions being added through the {@link #addPartition(byte[])}
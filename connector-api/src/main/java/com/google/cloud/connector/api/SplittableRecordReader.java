@@ -0,0 +1,22 @@
+package com.google.cloud.connector.api;
+
+import javax.annotation.Nullable;
+
+/**
+ * A {@link RecordReader} that can split off part of the records it has not returned yet, such that
+ * the split-off part of a skewed partition can be read concurrently by another reader.
+ */
+public interface SplittableRecordReader extends RecordReader {
+
+  /**
+   * Splits off part of the remaining records of this reader. After a successful split, this reader
+   * no longer returns the records of the split-off part, which are read through {@link
+   * ParallelQueryExecutor#readPartition(AssetName, byte[])} with the returned partition data
+   * instead. It is invoked by the platform between calls to {@link #nextRecord}.
+   *
+   * @return a byte array describing the split-off partition, or {@code null} if the remaining
+   *     records can't be split, for example because few of them are left
+   */
+  @Nullable
+  byte[] trySplit();
+}
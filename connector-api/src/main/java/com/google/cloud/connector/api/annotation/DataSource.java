@@ -4,6 +4,7 @@ import static java.lang.annotation.ElementType.CONSTRUCTOR;
 import static java.lang.annotation.RetentionPolicy.RUNTIME;
 
 import com.google.cloud.bigquery.federation.v1alpha1.DataSource.Capability;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionSignatureId;
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
 
@@ -40,5 +41,12 @@ public @interface DataSource {
    */
   long maxStalenessMillis() default 3600000L;
 
-  // TODO: Add the supported functions when the API is finalized with Substrait
+  /**
+   * A set of {@link FunctionSignatureId} of the functions that the data source evaluates in the
+   * filter predicates and the computations of queries, for the data sources that declare {@link
+   * Capability#SUPPORTS_FILTER} or {@link Capability#SUPPORTS_COMPUTE}. The functions are also
+   * declared as the Substrait functions that the data source executes, such that the filters and
+   * projections of Substrait plans that only use them are pushed to the data source.
+   */
+  FunctionSignatureId[] functions() default {};
 }
@@ -0,0 +1,39 @@
+package com.google.cloud.connector.api.factory;
+
+import com.google.protobuf.Struct;
+
+/**
+ * A factory for creating connector instances from the data source parameters, which is generated
+ * by the connector-maven-plugin at build time for each connector class.
+ *
+ * <p>The generated factory maps the parameters directly to the constructor arguments of the
+ * connector class and the configuration classes, such that the connector server doesn't need to
+ * inspect the connector classes reflectively. It is a public class named by {@link
+ * #getFactoryClassName(String)} with a public no-argument constructor, and is placed in the same
+ * package as the connector class.
+ *
+ * @param <T> the connector class
+ */
+public interface ConnectorFactory<T> {
+
+  /** The suffix appended to the connector class name to form the factory class name. */
+  String CLASS_NAME_SUFFIX = "_ConnectorFactory";
+
+  /**
+   * Returns the name of the factory class generated for the given connector class.
+   *
+   * @param connectorClassName the fully qualified name of the connector class
+   */
+  static String getFactoryClassName(String connectorClassName) {
+    return connectorClassName + CLASS_NAME_SUFFIX;
+  }
+
+  /**
+   * Creates a new connector instance.
+   *
+   * @param parameters the data source parameters keyed by the parameter ids
+   * @return a new connector instance
+   * @throws IllegalArgumentException if the parameters are invalid for creating the connector
+   */
+  T create(Struct parameters);
+}
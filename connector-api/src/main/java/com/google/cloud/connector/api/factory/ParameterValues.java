@@ -0,0 +1,179 @@
+package com.google.cloud.connector.api.factory;
+
+import com.google.protobuf.NullValue;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import javax.annotation.Nullable;
+
+/**
+ * Typed conversions of data source parameter values into constructor arguments, which are called
+ * by the {@link ConnectorFactory} classes generated by the connector-maven-plugin.
+ *
+ * <p>A missing or {@code null} parameter value is converted to the default value for primitive
+ * types, and to {@code null} for reference types.
+ */
+public final class ParameterValues {
+
+  private static final Value NULL_VALUE =
+      Value.newBuilder().setNullValue(NullValue.NULL_VALUE).build();
+
+  private ParameterValues() {}
+
+  /** Returns the {@code boolean} value of the given parameter. */
+  public static boolean getBoolean(Struct parameters, String id) {
+    Value value = getValue(parameters, id);
+    return switch (value.getKindCase()) {
+      case KIND_NOT_SET, NULL_VALUE -> false;
+      case BOOL_VALUE -> value.getBoolValue();
+      default -> throw unsupported(id, value, boolean.class);
+    };
+  }
+
+  /** Returns the {@code byte} value of the given parameter. */
+  public static byte getByte(Struct parameters, String id) {
+    return (byte) getNumber(parameters, id, byte.class);
+  }
+
+  /** Returns the {@code char} value of the given parameter. */
+  public static char getChar(Struct parameters, String id) {
+    return (char) (short) getNumber(parameters, id, char.class);
+  }
+
+  /** Returns the {@code short} value of the given parameter. */
+  public static short getShort(Struct parameters, String id) {
+    return (short) getNumber(parameters, id, short.class);
+  }
+
+  /** Returns the {@code int} value of the given parameter. */
+  public static int getInt(Struct parameters, String id) {
+    return (int) getNumber(parameters, id, int.class);
+  }
+
+  /** Returns the {@code long} value of the given parameter. */
+  public static long getLong(Struct parameters, String id) {
+    return (long) getNumber(parameters, id, long.class);
+  }
+
+  /** Returns the {@code float} value of the given parameter. */
+  public static float getFloat(Struct parameters, String id) {
+    return (float) getNumber(parameters, id, float.class);
+  }
+
+  /** Returns the {@code double} value of the given parameter. */
+  public static double getDouble(Struct parameters, String id) {
+    return getNumber(parameters, id, double.class);
+  }
+
+  /**
+   * Returns the value of the given parameter converted to the given reference type, which is
+   * either a boxed primitive type, {@link String}, {@link URI} or {@link URL}.
+   *
+   * @param parameters the data source parameters
+   * @param id the parameter id
+   * @param type the type of the constructor argument
+   * @return the converted value or {@code null} if the parameter value is missing or {@code null}
+   * @throws IllegalArgumentException if the value cannot be converted to the given type
+   */
+  @Nullable
+  public static Object getObject(Struct parameters, String id, Class<?> type) {
+    Value value = getValue(parameters, id);
+    Object result = convert(value, type);
+    if (result != null && !type.isInstance(result)) {
+      throw unsupported(id, value, type);
+    }
+    return result;
+  }
+
+  /**
+   * Verifies that the value for a constructor argument that is not annotated with {@code Nullable}
+   * is not {@code null}.
+   *
+   * @param value the argument value
+   * @param id the parameter id
+   * @param index the index of the argument
+   * @param constructor the description of the constructor
+   * @return the value
+   * @throws IllegalArgumentException if the value is {@code null}
+   */
+  public static Object checkNotNull(
+      @Nullable Object value, String id, int index, String constructor) {
+    if (value == null) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Null value is not allowed for the '%s' as the '%s' argument to constructor '%s'",
+              id, index, constructor));
+    }
+    return value;
+  }
+
+  private static Value getValue(Struct parameters, String id) {
+    return parameters.getFieldsOrDefault(id, NULL_VALUE);
+  }
+
+  @Nullable
+  private static Object convert(Value value, Class<?> type) {
+    return switch (value.getKindCase()) {
+      case KIND_NOT_SET, NULL_VALUE -> null;
+      case BOOL_VALUE -> value.getBoolValue();
+      case NUMBER_VALUE -> convertNumber(value.getNumberValue(), type);
+      case STRING_VALUE -> convertString(value.getStringValue(), type);
+      // Other kinds are rejected by the type check of the caller
+      default -> value;
+    };
+  }
+
+  private static double getNumber(Struct parameters, String id, Class<?> type) {
+    Value value = getValue(parameters, id);
+    return switch (value.getKindCase()) {
+      case KIND_NOT_SET, NULL_VALUE -> 0;
+      case NUMBER_VALUE -> value.getNumberValue();
+      default -> throw unsupported(id, value, type);
+    };
+  }
+
+  private static Object convertNumber(double value, Class<?> type) {
+    if (type.equals(Byte.class)) {
+      return (byte) value;
+    }
+    if (type.equals(Character.class)) {
+      return (char) (short) value;
+    }
+    if (type.equals(Short.class)) {
+      return (short) value;
+    }
+    if (type.equals(Integer.class)) {
+      return (int) value;
+    }
+    if (type.equals(Long.class)) {
+      return (long) value;
+    }
+    if (type.equals(Float.class)) {
+      return (float) value;
+    }
+    return value;
+  }
+
+  private static Object convertString(String value, Class<?> type) {
+    if (URI.class.equals(type)) {
+      return URI.create(value);
+    }
+    if (URL.class.equals(type)) {
+      try {
+        return new URL(value);
+      } catch (MalformedURLException e) {
+        throw new IllegalArgumentException(e);
+      }
+    }
+    return value;
+  }
+
+  private static IllegalArgumentException unsupported(String id, Value value, Class<?> type) {
+    return new IllegalArgumentException(
+        String.format(
+            "Value of type %s for parameter '%s' cannot be converted to '%s'",
+            value.getKindCase(), id, type.getName()));
+  }
+}
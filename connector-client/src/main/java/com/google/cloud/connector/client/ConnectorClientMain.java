@@ -386,12 +386,21 @@ public class ConnectorClientMain implements Callable {
           getNamedTable(namedTable), nativeQuery);
       try (ReaderServiceClient reader = new ReaderServiceClient(channel, getBuilder().build())) {
         for (ResultSet rs : response.getResultSetsList()) {
-          for (int splitIndex = 0; splitIndex < rs.getStreamsCount(); splitIndex++) {
+          // Streams split off by the server while reading are read after the others
+          List<Stream> streams = new ArrayList<>(rs.getStreamsList());
+          for (int splitIndex = 0; splitIndex < streams.size(); splitIndex++) {
             Data.Builder builder = Data.newBuilder();
-            Stream s = rs.getStreams(splitIndex);
-            Iterator<Data> iterator = reader.readStream(s.getName());
+            Stream s = streams.get(splitIndex);
+            Iterator<Data> iterator = reader.readStream(s);
             while (iterator.hasNext()) {
               Data data = iterator.next();
+              for (String splitStream : data.getSplitStreamsList()) {
+                streams.add(
+                    Stream.newBuilder()
+                        .setName(splitStream)
+                        .setId(splitStream.substring(splitStream.lastIndexOf('/') + 1))
+                        .build());
+              }
               if (generate) {
                 builder.mergeFrom(data);
               } else {
@@ -421,10 +430,8 @@ public class ConnectorClientMain implements Callable {
              new ConnectorServiceClient(channel, datasource, getBuilder().build())) {
       StartQueryResponse response = client.startQuery(dataset,
           getNamedTable(namedTable), nativeQuery);
-      List<String> streams = new ArrayList<>();
-      response
-          .getResultSetsList()
-          .forEach(r -> r.getStreamsList().forEach(s -> streams.add(s.getName())));
+      List<Stream> streams = new ArrayList<>();
+      response.getResultSetsList().forEach(r -> streams.addAll(r.getStreamsList()));
 
       try (ReaderServiceClient reader = new ReaderServiceClient(channel, getBuilder().build())) {
         Duration totalTime = Duration.ZERO;
@@ -437,10 +444,11 @@ public class ConnectorClientMain implements Callable {
           Duration latency = Duration.ZERO;
 
           int randomIndex = (int) (Math.random() * streams.size());
-          stream = streams.get(randomIndex);
+          Stream randomStream = streams.get(randomIndex);
+          stream = randomStream.getName();
 
           Instant start = Instant.now();
-          Iterator<Data> iterator = reader.readStream(stream);
+          Iterator<Data> iterator = reader.readStream(randomStream);
           while (iterator.hasNext()) {
             Data data = iterator.next();
             totalRows += data.getDataBlock().getRowset().getRowsCount();
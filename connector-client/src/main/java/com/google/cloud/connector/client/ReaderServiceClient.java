@@ -2,10 +2,15 @@ package com.google.cloud.connector.client;
 
 import com.google.cloud.bigquery.federation.v1alpha1.Data;
 import com.google.cloud.bigquery.federation.v1alpha1.ReadStreamRequest;
+import com.google.cloud.bigquery.federation.v1alpha1.ReadStreamsRequest;
 import com.google.cloud.bigquery.federation.v1alpha1.ReaderServiceGrpc;
+import com.google.cloud.bigquery.federation.v1alpha1.StartQueryResponse.ResultSet.Stream;
 import com.google.protobuf.Struct;
 import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -46,6 +51,55 @@ public class ReaderServiceClient implements AutoCloseable {
     return stub.readStream(request);
   }
 
+  /**
+   * Read all {@link Data} entries for a {@link Stream} returned by StartQuery. If the server
+   * returned the stream content inline, it is returned without calling ReadStream. If the server
+   * returned a stream name that carries a short handle, which can't be resolved when it has expired
+   * or the request reaches another server, the stream is read by its self-describing stream id.
+   *
+   * @param stream stream to read {@link Data} pages from
+   * @return Iterator for all {@link Data} pages in this stream
+   */
+  public Iterator<Data> readStream(Stream stream) {
+    if (stream.getInlineDataCount() > 0) {
+      return stream.getInlineDataList().iterator();
+    }
+    String name = stream.getName();
+    Iterator<Data> iterator = readStream(name);
+    if (stream.getId().isEmpty() || name.endsWith("/" + stream.getId())) {
+      return iterator;
+    }
+    try {
+      // Errors of server streaming calls are raised when reading the first response
+      var unused = iterator.hasNext();
+      return iterator;
+    } catch (StatusRuntimeException e) {
+      if (e.getStatus().getCode() != Status.Code.NOT_FOUND) {
+        throw e;
+      }
+      return readStream(name.substring(0, name.lastIndexOf('/') + 1) + stream.getId());
+    }
+  }
+
+  /**
+   * Read all {@link Data} entries for several streams of the same datasource in one call. Every
+   * entry carries the stream id of the stream it belongs to, and an entry that only has the stream
+   * id marks the end of that stream.
+   *
+   * @param streams streams to read {@link Data} pages from, in the order to read them
+   * @return Iterator for all {@link Data} pages in these streams
+   */
+  public Iterator<Data> readStreams(List<String> streams) {
+    ReadStreamsRequest request =
+        ReadStreamsRequest.newBuilder()
+            .addAllResultStreams(streams)
+            .setParameters(connectorParameters)
+            .build();
+
+    ReaderServiceGrpc.ReaderServiceBlockingStub stub = ReaderServiceGrpc.newBlockingStub(channel);
+    return stub.readStreams(request);
+  }
+
   @Override
   public void close() {
     // Close the GRPC channel after completion.
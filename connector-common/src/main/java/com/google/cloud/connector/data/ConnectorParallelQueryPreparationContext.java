@@ -3,14 +3,18 @@ package com.google.cloud.connector.data;
 import static com.google.cloud.connector.data.ResultStreamId.COLLECTION_ID_RESULTSET;
 import static com.google.cloud.connector.data.ResultStreamId.COLLECTION_ID_STREAM;
 
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.bigquery.federation.v1alpha1.Expression;
 import com.google.cloud.bigquery.federation.v1alpha1.StartQueryResponse;
 import com.google.cloud.bigquery.federation.v1alpha1.StartQueryResponse.ResultSet;
 import com.google.cloud.bigquery.federation.v1alpha1.StartQueryResponse.ResultSet.Stream;
+import com.google.cloud.connector.api.ColumnStatistics;
 import com.google.cloud.connector.api.DatasetName;
 import com.google.cloud.connector.api.ParallelQueryPreparationContext;
+import com.google.cloud.connector.data.ResultStreamId.Encoding;
 import com.google.common.collect.ImmutableList;
-import com.google.gson.Gson;
-import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
 import javax.annotation.Nullable;
 
 /**
@@ -30,11 +34,16 @@ public class ConnectorParallelQueryPreparationContext implements ParallelQueryPr
   private final ResultSet.Builder resultSetBuilder;
   private final StartQueryResponse.Builder startQueryRespBuilder;
   private final ImmutableList.Builder<Partition> partitionsBuilder;
+  private final ImmutableList.Builder<Estimate> estimatesBuilder;
   private final AssetInfo assetInfo;
-  private static final Gson GSON = new Gson();
+  private final Encoding encoding;
+  private final int maxStreams;
+  @Nullable private Expression filterPredicate;
+  @Nullable private DataQuery serverQuery;
+  private int prunedPartitions;
 
   /**
-   * Constructor.
+   * Constructor that encodes the stream ids with the legacy {@link Encoding#JSON} encoding.
    *
    * @param datasetName the parent of the {@link DatasetName} this query operates on.
    * @param assetInfo of type {@link AssetInfo} to store info about asset
@@ -42,16 +51,96 @@ public class ConnectorParallelQueryPreparationContext implements ParallelQueryPr
    */
   public ConnectorParallelQueryPreparationContext(
       DatasetName datasetName, @Nullable AssetInfo assetInfo) {
+    this(datasetName, assetInfo, Encoding.JSON);
+  }
+
+  /**
+   * Constructor that returns one stream for each partition.
+   *
+   * @param datasetName the parent of the {@link DatasetName} this query operates on.
+   * @param assetInfo of type {@link AssetInfo} to store info about asset
+   *                  on which StartQuery is called
+   * @param encoding the {@link Encoding} of the partitions in the stream ids
+   */
+  public ConnectorParallelQueryPreparationContext(
+      DatasetName datasetName, @Nullable AssetInfo assetInfo, Encoding encoding) {
+    this(datasetName, assetInfo, encoding, 0);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param datasetName the parent of the {@link DatasetName} this query operates on.
+   * @param assetInfo of type {@link AssetInfo} to store info about asset
+   *                  on which StartQuery is called
+   * @param encoding the {@link Encoding} of the partitions in the stream ids
+   * @param maxStreams maximum number of streams in the response. Consecutive partitions are
+   *                   coalesced into the same stream if the connector adds more partitions. Zero
+   *                   means no limit. Partitions are never coalesced with {@link Encoding#JSON}.
+   */
+  public ConnectorParallelQueryPreparationContext(
+      DatasetName datasetName, @Nullable AssetInfo assetInfo, Encoding encoding, int maxStreams) {
     this.resultSetName = datasetName.append(RESULT_SET_COMPONENT);
     this.resultSetBuilder = ResultSet.newBuilder().setName(resultSetName.name());
     this.startQueryRespBuilder = StartQueryResponse.newBuilder();
     this.partitionsBuilder = ImmutableList.builder();
+    this.estimatesBuilder = ImmutableList.builder();
     this.assetInfo = assetInfo;
+    this.encoding = encoding;
+    this.maxStreams = maxStreams;
   }
 
   @Override
   public void addPartition(byte[] partitionData) {
-    partitionsBuilder.add(new Partition(partitionData, null));
+    addPartition(partitionData, -1, -1);
+  }
+
+  @Override
+  public void addPartition(byte[] partitionData, long estimatedRows, long estimatedBytes) {
+    partitionsBuilder.add(new Partition(partitionData, null, serverQuery));
+    estimatesBuilder.add(new Estimate(estimatedRows, estimatedBytes));
+  }
+
+  @Override
+  public void addPartition(
+      byte[] partitionData,
+      long estimatedRows,
+      long estimatedBytes,
+      Map<String, ColumnStatistics> columnStatistics) {
+    if (filterPredicate != null
+        && !PartitionPruner.mayMatch(filterPredicate, columnStatistics)) {
+      prunedPartitions++;
+      return;
+    }
+    addPartition(partitionData, estimatedRows, estimatedBytes);
+  }
+
+  /**
+   * Sets the filter predicate of the query, such that partitions added with {@link
+   * ColumnStatistics} that prove no row can match the filter are dropped. It must be called before
+   * the partitions are added.
+   *
+   * @param filterPredicate the filter predicate of the query, or {@code null} to keep all the
+   *     partitions
+   */
+  public void setFilterPredicate(@Nullable Expression filterPredicate) {
+    this.filterPredicate = filterPredicate;
+  }
+
+  /**
+   * Sets the part of the query that the server evaluates on the records read from the partitions,
+   * which is carried in the stream ids. It must be called before the partitions are added, and the
+   * stream ids must not be encoded with {@link Encoding#JSON}.
+   *
+   * @param serverQuery the query to evaluate, or {@code null} to return the records as read
+   */
+  public void setServerQuery(@Nullable DataQuery serverQuery) {
+    this.serverQuery = serverQuery;
+  }
+
+  /** Returns the number of partitions dropped by the filter predicate. */
+  public int getPrunedPartitions() {
+    return prunedPartitions;
   }
 
   @Override
@@ -66,18 +155,41 @@ public class ConnectorParallelQueryPreparationContext implements ParallelQueryPr
    */
   public StartQueryResponse buildStartQueryResponse() {
     ImmutableList<Partition> partitions = partitionsBuilder.build();
+    ImmutableList<Estimate> estimates = estimatesBuilder.build();
     if (partitions.isEmpty()) {
-      partitions = ImmutableList.of(new Partition(null, assetInfo));
+      partitions = ImmutableList.of(new Partition(null, assetInfo, serverQuery));
+      estimates = ImmutableList.of(new Estimate(0, 0));
+    }
+    int streams = partitions.size();
+    if (maxStreams > 0 && encoding != Encoding.JSON) {
+      streams = Math.min(streams, maxStreams);
     }
-    for (Partition partition : partitions) {
-      String encodedString = ResultStreamId.encode(
-          GSON.toJson(partition).getBytes(StandardCharsets.UTF_8));
+    // Consecutive partitions of even counts are coalesced into each stream
+    for (int i = 0; i < streams; i++) {
+      int from = (int) ((long) i * partitions.size() / streams);
+      int to = (int) ((long) (i + 1) * partitions.size() / streams);
+      String encodedString =
+          ResultStreamId.encodePartitions(partitions.subList(from, to), encoding);
       DatasetName.Component streamComponent =
           new DatasetName.Component(COLLECTION_ID_STREAM, encodedString);
       DatasetName streamName = resultSetName.append(streamComponent);
-      resultSetBuilder.addStreams(
-          Stream.newBuilder().setName(streamName.name()).setId(encodedString).build());
+      Stream.Builder stream = Stream.newBuilder().setName(streamName.name()).setId(encodedString);
+      setEstimates(stream, estimates.subList(from, to));
+      resultSetBuilder.addStreams(stream.build());
     }
     return startQueryRespBuilder.addResultSets(resultSetBuilder.build()).build();
   }
+
+  /** Sets the sums of the estimates of the partitions of a stream, if they are all known. */
+  private static void setEstimates(Stream.Builder stream, List<Estimate> estimates) {
+    if (estimates.stream().allMatch(estimate -> estimate.rows() >= 0)) {
+      stream.setEstimatedRows(estimates.stream().mapToLong(Estimate::rows).sum());
+    }
+    if (estimates.stream().allMatch(estimate -> estimate.bytes() >= 0)) {
+      stream.setEstimatedBytes(estimates.stream().mapToLong(Estimate::bytes).sum());
+    }
+  }
+
+  /** The estimated size of a partition, with negative values if unknown. */
+  private record Estimate(long rows, long bytes) {}
 }
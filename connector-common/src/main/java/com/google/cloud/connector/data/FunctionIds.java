@@ -0,0 +1,56 @@
+package com.google.cloud.connector.data;
+
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionExpression;
+import com.google.cloud.bigquery.federation.v1alpha1.Functions.FunctionId;
+
+/**
+ * Utility methods for identifying the function of a {@link FunctionExpression}, which is either
+ * given by a {@link FunctionId}, or by a more specific signature id.
+ */
+public final class FunctionIds {
+
+  private FunctionIds() {}
+
+  /**
+   * Returns the {@link FunctionId} of the given function expression. Signature ids are mapped to
+   * the {@link FunctionId} of their function.
+   *
+   * @return the {@link FunctionId}, or {@link FunctionId#FUNCTION_ID_UNSPECIFIED} if the function
+   *     is not known
+   */
+  @SuppressWarnings("deprecation")
+  public static FunctionId of(FunctionExpression function) {
+    if (function.getFunctionCase() == FunctionExpression.FunctionCase.FUNCTION_ID) {
+      return function.getFunctionId();
+    }
+    return switch (function.getFunctionSignatureId()) {
+      case FN_AND -> FunctionId.AND;
+      case FN_OR -> FunctionId.OR;
+      case FN_NOT -> FunctionId.NOT;
+      case FN_EQUAL, FN_EQUAL_INT64_UINT64, FN_EQUAL_UINT64_INT64 -> FunctionId.EQUAL;
+      case FN_NOT_EQUAL, FN_NOT_EQUAL_INT64_UINT64, FN_NOT_EQUAL_UINT64_INT64 ->
+          FunctionId.NOT_EQUAL;
+      case FN_LESS, FN_LESS_INT64_UINT64, FN_LESS_UINT64_INT64 -> FunctionId.LESS;
+      case FN_LESS_OR_EQUAL, FN_LESS_OR_EQUAL_INT64_UINT64, FN_LESS_OR_EQUAL_UINT64_INT64 ->
+          FunctionId.LESS_OR_EQUAL;
+      case FN_GREATER, FN_GREATER_INT64_UINT64, FN_GREATER_UINT64_INT64 -> FunctionId.GREATER;
+      case FN_GREATER_OR_EQUAL,
+          FN_GREATER_OR_EQUAL_INT64_UINT64,
+          FN_GREATER_OR_EQUAL_UINT64_INT64 -> FunctionId.GREATER_OR_EQUAL;
+      case FN_BETWEEN,
+          FN_BETWEEN_INT64_UINT64_UINT64,
+          FN_BETWEEN_INT64_UINT64_INT64,
+          FN_BETWEEN_INT64_INT64_UINT64,
+          FN_BETWEEN_UINT64_INT64_INT64,
+          FN_BETWEEN_UINT64_UINT64_INT64,
+          FN_BETWEEN_UINT64_INT64_UINT64 -> FunctionId.BETWEEN;
+      case FN_IN -> FunctionId.IN;
+      case FN_IS_NULL -> FunctionId.IS_NULL;
+      case FN_ADD_INT64, FN_ADD_DOUBLE -> FunctionId.ADD;
+      case FN_SUBTRACT_INT64, FN_SUBTRACT_DOUBLE -> FunctionId.SUBTRACT;
+      case FN_MULTIPLY_INT64, FN_MULTIPLY_DOUBLE -> FunctionId.MULTIPLY;
+      case FN_DIVIDE_DOUBLE -> FunctionId.DIVIDE;
+      default -> FunctionId.FUNCTION_ID_UNSPECIFIED;
+    };
+  }
+}
@@ -1,5 +1,6 @@
 package com.google.cloud.connector.data;
 
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
 import javax.annotation.Nullable;
 
 /**
@@ -7,8 +8,15 @@ import javax.annotation.Nullable;
  *
  * @param query byte array representing the SQL query
  * @param assetInfo of type {@link AssetInfo}
+ * @param serverQuery the part of the query that the server evaluates on the records read from the
+ *     partition, if any
  */
-public record Partition(@Nullable byte[] query, @Nullable AssetInfo assetInfo) {
+public record Partition(
+    @Nullable byte[] query, @Nullable AssetInfo assetInfo, @Nullable DataQuery serverQuery) {
+
+  public Partition(@Nullable byte[] query, @Nullable AssetInfo assetInfo) {
+    this(query, assetInfo, null);
+  }
 
   public boolean isEmpty() {
     return query == null;
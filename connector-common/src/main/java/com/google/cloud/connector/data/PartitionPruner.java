@@ -0,0 +1,156 @@
+package com.google.cloud.connector.data;
+
+import com.google.cloud.bigquery.federation.v1alpha1.Expression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionExpression;
+import com.google.cloud.bigquery.federation.v1alpha1.Functions.FunctionId;
+import com.google.cloud.bigquery.federation.v1alpha1.Value;
+import com.google.cloud.connector.api.ColumnStatistics;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import javax.annotation.Nullable;
+
+/**
+ * Evaluates the filter predicate of a query against the {@link ColumnStatistics} of a partition, to
+ * find the partitions that can't have any row that matches the filter.
+ *
+ * <p>The evaluation is conservative. Only conjunctions, disjunctions and comparisons of a field
+ * with constants are evaluated, and any other expression is assumed to match. A partition is only
+ * pruned if the statistics prove that the filter is false or null for all of its rows. Strings are
+ * compared by their UTF-8 bytes, hence the min and max of string columns are only used if the
+ * connector declares {@link ColumnStatistics#binaryCollation()}.
+ */
+public final class PartitionPruner {
+
+  private PartitionPruner() {}
+
+  /**
+   * Returns {@code true} if rows of a partition with the given statistics may match the filter.
+   *
+   * @param filterPredicate the filter predicate of the query
+   * @param columnStatistics the {@link ColumnStatistics} of the partition by field name
+   */
+  public static boolean mayMatch(
+      Expression filterPredicate, Map<String, ColumnStatistics> columnStatistics) {
+    return switch (filterPredicate.getExpressionCase()) {
+      case CONSTANT -> !isFalseOrNull(filterPredicate.getConstant());
+      case FUNCTION -> mayMatch(filterPredicate.getFunction(), columnStatistics);
+      default -> true;
+    };
+  }
+
+  private static boolean mayMatch(
+      FunctionExpression function, Map<String, ColumnStatistics> columnStatistics) {
+    List<Expression> arguments = function.getArgumentsList();
+    FunctionId functionId = FunctionIds.of(function);
+    if (arguments.size() < getMinArguments(functionId)) {
+      return true;
+    }
+    return switch (functionId) {
+      case AND -> arguments.stream().allMatch(argument -> mayMatch(argument, columnStatistics));
+      case OR -> arguments.stream().anyMatch(argument -> mayMatch(argument, columnStatistics));
+      case IS_NULL -> {
+        ColumnStatistics statistics = getStatistics(arguments.get(0), columnStatistics);
+        yield statistics == null || statistics.nullCount() != 0;
+      }
+      case IN -> arguments.stream()
+          .skip(1)
+          .anyMatch(
+              value ->
+                  mayMatchComparison(FunctionId.EQUAL, arguments.get(0), value, columnStatistics));
+      case BETWEEN -> mayMatchComparison(
+              FunctionId.GREATER_OR_EQUAL, arguments.get(0), arguments.get(1), columnStatistics)
+          && mayMatchComparison(
+              FunctionId.LESS_OR_EQUAL, arguments.get(0), arguments.get(2), columnStatistics);
+      case EQUAL, NOT_EQUAL, LESS, LESS_OR_EQUAL, GREATER, GREATER_OR_EQUAL -> {
+        if (arguments.get(0).hasConstant() && arguments.get(1).hasField()) {
+          yield mayMatchComparison(
+              reverse(functionId), arguments.get(1), arguments.get(0), columnStatistics);
+        }
+        yield mayMatchComparison(functionId, arguments.get(0), arguments.get(1), columnStatistics);
+      }
+      default -> true;
+    };
+  }
+
+  /** Returns the number of arguments the evaluation of the function needs. */
+  private static int getMinArguments(FunctionId functionId) {
+    return switch (functionId) {
+      case IS_NULL, IN -> 1;
+      case BETWEEN -> 3;
+      case EQUAL, NOT_EQUAL, LESS, LESS_OR_EQUAL, GREATER, GREATER_OR_EQUAL -> 2;
+      default -> 0;
+    };
+  }
+
+  /**
+   * Returns {@code true} if the comparison of a field with a constant may match a row of the
+   * partition.
+   */
+  private static boolean mayMatchComparison(
+      FunctionId functionId,
+      Expression field,
+      Expression constant,
+      Map<String, ColumnStatistics> columnStatistics) {
+    ColumnStatistics statistics = getStatistics(field, columnStatistics);
+    if (statistics == null || !constant.hasConstant()) {
+      return true;
+    }
+    Value value = constant.getConstant();
+    if (Values.isNull(value)) {
+      // Comparisons with null are never true
+      return false;
+    }
+    if (value.getValueCase() == Value.ValueCase.STRING_VALUE && !statistics.binaryCollation()) {
+      // The min and max may be in an order that the comparison of the UTF-8 bytes doesn't follow
+      return true;
+    }
+    // The comparisons of the value with the min and max of the column, if known
+    OptionalInt min =
+        statistics.min() == null ? OptionalInt.empty() : Values.compare(statistics.min(), value);
+    OptionalInt max =
+        statistics.max() == null ? OptionalInt.empty() : Values.compare(statistics.max(), value);
+    return switch (functionId) {
+      case EQUAL -> isNotAbove(min, 0) && isNotBelow(max, 0);
+      case NOT_EQUAL -> !(min.isPresent() && min.getAsInt() == 0
+          && max.isPresent() && max.getAsInt() == 0);
+      case LESS -> isNotAbove(min, -1);
+      case LESS_OR_EQUAL -> isNotAbove(min, 0);
+      case GREATER -> isNotBelow(max, 1);
+      case GREATER_OR_EQUAL -> isNotBelow(max, 0);
+      default -> true;
+    };
+  }
+
+  /** Returns {@code true} unless the comparison is known to be greater than the bound. */
+  private static boolean isNotAbove(OptionalInt comparison, int bound) {
+    return comparison.isEmpty() || Integer.signum(comparison.getAsInt()) <= bound;
+  }
+
+  /** Returns {@code true} unless the comparison is known to be less than the bound. */
+  private static boolean isNotBelow(OptionalInt comparison, int bound) {
+    return comparison.isEmpty() || Integer.signum(comparison.getAsInt()) >= bound;
+  }
+
+  @Nullable
+  private static ColumnStatistics getStatistics(
+      Expression field, Map<String, ColumnStatistics> columnStatistics) {
+    return field.hasField() ? columnStatistics.get(field.getField().getFieldName()) : null;
+  }
+
+  /** Returns the comparison that is equivalent when the arguments are swapped. */
+  private static FunctionId reverse(FunctionId functionId) {
+    return switch (functionId) {
+      case LESS -> FunctionId.GREATER;
+      case LESS_OR_EQUAL -> FunctionId.GREATER_OR_EQUAL;
+      case GREATER -> FunctionId.LESS;
+      case GREATER_OR_EQUAL -> FunctionId.LESS_OR_EQUAL;
+      default -> functionId;
+    };
+  }
+
+  private static boolean isFalseOrNull(Value value) {
+    return Values.isNull(value)
+        || (value.getValueCase() == Value.ValueCase.BOOL_VALUE && !value.getBoolValue());
+  }
+}
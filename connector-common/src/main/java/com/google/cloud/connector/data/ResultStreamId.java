@@ -1,6 +1,22 @@
 package com.google.cloud.connector.data;
 
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.connector.StreamPartition;
+import com.google.cloud.connector.api.AssetName;
+import com.google.common.base.Preconditions;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /** Util class that mainly supports stream id encoding and decoding. */
 public class ResultStreamId {
@@ -10,6 +26,45 @@ public class ResultStreamId {
   /** The collectionId for the component that represents a stream within a result set. */
   public static final String COLLECTION_ID_STREAM = "streams";
 
+  /**
+   * Prefix of the stream ids encoded in version 1 of the {@link StreamPartition} encoding. The
+   * separator is not in the base64url alphabet, hence it never appears in the legacy stream ids.
+   */
+  private static final String PROTO_V1_PREFIX = "v1.";
+
+  /** Prefix of the stream ids encoded in version 1 and compressed with deflate. */
+  private static final String PROTO_V1_COMPRESSED_PREFIX = "v1z.";
+
+  /**
+   * Prefix of the stream ids encoded in version 2, which is version 1 with coalesced partitions.
+   * Servers that only know version 1 reject these stream ids rather than reading only the first
+   * partition.
+   */
+  private static final String PROTO_V2_PREFIX = "v2.";
+
+  /** Prefix of the stream ids encoded in version 2 and compressed with deflate. */
+  private static final String PROTO_V2_COMPRESSED_PREFIX = "v2z.";
+
+  /** Serialized partitions smaller than this size are not compressed. */
+  private static final int MIN_COMPRESS_SIZE = 256;
+
+  /** Decompressed partitions larger than this size are rejected. */
+  private static final int MAX_DECOMPRESSED_SIZE = 64 * 1024 * 1024;
+
+  private static final Gson GSON = new Gson();
+
+  /** The encoding of {@link Partition} in stream ids. */
+  public enum Encoding {
+    /** Base64 encoded JSON, which is the legacy encoding. */
+    JSON,
+    /** Base64 encoded {@link StreamPartition} protobuf message with a version prefix. */
+    PROTO,
+    /**
+     * Same as {@link #PROTO}, with the message compressed by deflate if it is large enough and
+     * compression reduces the size.
+     */
+    PROTO_COMPRESSED
+  }
 
   /**
    * Encodes given bytes to a result stream id string.
@@ -31,4 +86,234 @@ public class ResultStreamId {
   public static byte[] decode(String base64UrlEncoded) {
     return Base64.getUrlDecoder().decode(base64UrlEncoded);
   }
+
+  /**
+   * Encodes the given {@link Partition} to a result stream id string.
+   *
+   * @param partition the partition to encode
+   * @param encoding the {@link Encoding} to use, which must not be {@link Encoding#JSON} if the
+   *     partition has a server query
+   * @return a string that represents a result stream id, which can be decoded by {@link
+   *     #decodePartition(String)}.
+   * @throws IllegalArgumentException if the partition can't be encoded with the encoding
+   */
+  public static String encodePartition(Partition partition, Encoding encoding) {
+    Preconditions.checkArgument(
+        encoding != Encoding.JSON || partition.serverQuery() == null,
+        "Partitions with a server query can't be encoded in %s", encoding);
+    return switch (encoding) {
+      case JSON -> encode(GSON.toJson(partition).getBytes(StandardCharsets.UTF_8));
+      case PROTO -> PROTO_V1_PREFIX + encodeUnpadded(toProto(partition).toByteArray());
+      case PROTO_COMPRESSED ->
+          encodeCompressed(
+              toProto(partition).toByteArray(), PROTO_V1_PREFIX, PROTO_V1_COMPRESSED_PREFIX);
+    };
+  }
+
+  /**
+   * Encodes the given partitions of the same asset to a single result stream id string, such that
+   * the partitions are read one after another from the same stream.
+   *
+   * @param partitions the partitions to encode, which must all have a query except when there is
+   *     only one partition
+   * @param encoding the {@link Encoding} to use, which must not be {@link Encoding#JSON} if there
+   *     is more than one partition
+   * @return a string that represents a result stream id, which can be decoded by {@link
+   *     #decodePartitions(String)}. It is encoded in version 2 if there is more than one partition.
+   * @throws IllegalArgumentException if the partitions can't be encoded to a single stream id
+   */
+  public static String encodePartitions(List<Partition> partitions, Encoding encoding) {
+    Preconditions.checkArgument(!partitions.isEmpty(), "No partition to encode");
+    if (partitions.size() == 1) {
+      return encodePartition(partitions.get(0), encoding);
+    }
+    Preconditions.checkArgument(
+        encoding != Encoding.JSON, "Coalesced partitions can't be encoded in %s", encoding);
+
+    StreamPartition.Builder builder = toProto(partitions.get(0)).toBuilder();
+    for (Partition partition : partitions.subList(1, partitions.size())) {
+      Preconditions.checkArgument(
+          Objects.equals(partition.serverQuery(), partitions.get(0).serverQuery()),
+          "Coalesced partitions must have the same server query");
+      Preconditions.checkArgument(!partition.isEmpty(), "Coalesced partitions must have a query");
+      builder.addCoalescedQueries(ByteString.copyFrom(partition.query()));
+    }
+    byte[] data = builder.build().toByteArray();
+    return encoding == Encoding.PROTO
+        ? PROTO_V2_PREFIX + encodeUnpadded(data)
+        : encodeCompressed(data, PROTO_V2_PREFIX, PROTO_V2_COMPRESSED_PREFIX);
+  }
+
+  /**
+   * Decodes the given stream id string to a {@link Partition}. Besides the encodings in {@link
+   * Encoding}, it also accepts the legacy stream ids that are the base64 encoded raw partition
+   * data, which are decoded to a {@link Partition} without {@link AssetInfo}.
+   *
+   * @param streamId the result stream id
+   * @return the decoded {@link Partition}
+   * @throws IllegalArgumentException if the stream id is not valid, or it has coalesced partitions
+   */
+  public static Partition decodePartition(String streamId) {
+    List<Partition> partitions = decodePartitions(streamId);
+    if (partitions.size() != 1) {
+      throw new IllegalArgumentException(
+          String.format("Stream id has %d coalesced partitions", partitions.size()));
+    }
+    return partitions.get(0);
+  }
+
+  /**
+   * Decodes the given stream id string to the list of partitions to read from the stream, which
+   * has more than one partition if partitions were coalesced by {@link #encodePartitions(List,
+   * Encoding)}. It accepts the same stream ids as {@link #decodePartition(String)}.
+   *
+   * @param streamId the result stream id
+   * @return the decoded partitions, in the order to read them
+   * @throws IllegalArgumentException if the stream id is not valid
+   */
+  public static List<Partition> decodePartitions(String streamId) {
+    if (streamId.startsWith(PROTO_V1_PREFIX)) {
+      return fromProto(parseV1(decode(streamId.substring(PROTO_V1_PREFIX.length()))));
+    }
+    if (streamId.startsWith(PROTO_V1_COMPRESSED_PREFIX)) {
+      byte[] compressed = decode(streamId.substring(PROTO_V1_COMPRESSED_PREFIX.length()));
+      return fromProto(parseV1(inflate(compressed)));
+    }
+    if (streamId.startsWith(PROTO_V2_PREFIX)) {
+      return fromProto(parse(decode(streamId.substring(PROTO_V2_PREFIX.length()))));
+    }
+    if (streamId.startsWith(PROTO_V2_COMPRESSED_PREFIX)) {
+      byte[] compressed = decode(streamId.substring(PROTO_V2_COMPRESSED_PREFIX.length()));
+      return fromProto(parse(inflate(compressed)));
+    }
+    if (streamId.startsWith("v") && streamId.indexOf('.') > 0) {
+      throw new IllegalArgumentException("Unsupported stream id version in " + streamId);
+    }
+
+    byte[] data = decode(streamId);
+    try {
+      Partition partition =
+          GSON.fromJson(new String(data, StandardCharsets.UTF_8), Partition.class);
+      if (partition != null) {
+        return List.of(partition);
+      }
+    } catch (JsonParseException | IllegalStateException e) {
+      // Not a JSON encoded partition
+    }
+    // TODO(harshpruthi): Remove support for old partition type after it goes obsolete.
+    return List.of(new Partition(data, null));
+  }
+
+  private static String encodeCompressed(byte[] data, String prefix, String compressedPrefix) {
+    if (data.length >= MIN_COMPRESS_SIZE) {
+      byte[] compressed = deflate(data);
+      if (compressed.length < data.length) {
+        return compressedPrefix + encodeUnpadded(compressed);
+      }
+    }
+    return prefix + encodeUnpadded(data);
+  }
+
+  private static String encodeUnpadded(byte[] data) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(data);
+  }
+
+  private static StreamPartition toProto(Partition partition) {
+    StreamPartition.Builder builder = StreamPartition.newBuilder();
+    if (partition.query() != null) {
+      builder.setQuery(ByteString.copyFrom(partition.query()));
+    }
+    if (partition.serverQuery() != null) {
+      builder.setServerQuery(partition.serverQuery());
+    }
+    AssetInfo assetInfo = partition.assetInfo();
+    if (assetInfo != null) {
+      StreamPartition.Asset.Builder asset =
+          builder
+              .getAssetBuilder()
+              .setName(assetInfo.assetName().name())
+              .addAllElements(assetInfo.assetName().elements());
+      if (assetInfo.nativeQuery() != null) {
+        asset.setNativeQuery(assetInfo.nativeQuery());
+      }
+    }
+    return builder.build();
+  }
+
+  private static List<Partition> fromProto(StreamPartition proto) {
+    AssetInfo assetInfo = null;
+    if (proto.hasAsset()) {
+      StreamPartition.Asset asset = proto.getAsset();
+      assetInfo =
+          new AssetInfo(
+              new AssetName(asset.getName(), asset.getElementsList()),
+              asset.hasNativeQuery() ? asset.getNativeQuery() : null);
+    }
+    DataQuery serverQuery = proto.hasServerQuery() ? proto.getServerQuery() : null;
+    List<Partition> partitions = new ArrayList<>(1 + proto.getCoalescedQueriesCount());
+    partitions.add(
+        new Partition(
+            proto.hasQuery() ? proto.getQuery().toByteArray() : null, assetInfo, serverQuery));
+    for (ByteString query : proto.getCoalescedQueriesList()) {
+      partitions.add(new Partition(query.toByteArray(), assetInfo, serverQuery));
+    }
+    return partitions;
+  }
+
+  /** Parses a partition of version 1, which never has coalesced partitions. */
+  private static StreamPartition parseV1(byte[] data) {
+    StreamPartition partition = parse(data);
+    if (partition.getCoalescedQueriesCount() > 0) {
+      throw new IllegalArgumentException("Coalesced partitions in a version 1 stream id");
+    }
+    return partition;
+  }
+
+  private static StreamPartition parse(byte[] data) {
+    try {
+      return StreamPartition.parseFrom(data);
+    } catch (InvalidProtocolBufferException e) {
+      throw new IllegalArgumentException("Invalid partition in stream id", e);
+    }
+  }
+
+  private static byte[] deflate(byte[] data) {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(data);
+      deflater.finish();
+      ByteArrayOutputStream os = new ByteArrayOutputStream(data.length);
+      byte[] buffer = new byte[4096];
+      while (!deflater.finished()) {
+        os.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return os.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static byte[] inflate(byte[] data) {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(data);
+      ByteArrayOutputStream os = new ByteArrayOutputStream(data.length * 4);
+      byte[] buffer = new byte[4096];
+      while (!inflater.finished()) {
+        int len = inflater.inflate(buffer);
+        if (len == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IllegalArgumentException("Truncated compressed partition in stream id");
+        }
+        os.write(buffer, 0, len);
+        if (os.size() > MAX_DECOMPRESSED_SIZE) {
+          throw new IllegalArgumentException("Compressed partition in stream id is too large");
+        }
+      }
+      return os.toByteArray();
+    } catch (DataFormatException e) {
+      throw new IllegalArgumentException("Invalid compressed partition in stream id", e);
+    } finally {
+      inflater.end();
+    }
+  }
 }
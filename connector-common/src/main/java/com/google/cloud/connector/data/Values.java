@@ -0,0 +1,125 @@
+package com.google.cloud.connector.data;
+
+import com.google.cloud.bigquery.federation.v1alpha1.Value;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Timestamp;
+import com.google.type.DateTime;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.OptionalInt;
+import javax.annotation.Nullable;
+
+/** Utility methods for {@link Value}. */
+public final class Values {
+
+  private Values() {}
+
+  /**
+   * Compares two non-null values in the order of their type. Numeric values of different types are
+   * compared by their numeric values.
+   *
+   * @param left the left value
+   * @param right the right value
+   * @return a negative integer, zero, or a positive integer if the left value is less than, equal
+   *     to, or greater than the right value, or an empty {@link OptionalInt} if the values are not
+   *     comparable, for example because either of them is null or NaN, or they have different
+   *     types
+   */
+  public static OptionalInt compare(Value left, Value right) {
+    Value.ValueCase leftCase = left.getValueCase();
+    Value.ValueCase rightCase = right.getValueCase();
+    if (leftCase == Value.ValueCase.INT64_VALUE && rightCase == Value.ValueCase.INT64_VALUE) {
+      return OptionalInt.of(Long.compare(left.getInt64Value(), right.getInt64Value()));
+    }
+    if (leftCase == Value.ValueCase.DOUBLE_VALUE && rightCase == Value.ValueCase.DOUBLE_VALUE) {
+      double leftDouble = left.getDoubleValue();
+      double rightDouble = right.getDoubleValue();
+      return Double.isNaN(leftDouble) || Double.isNaN(rightDouble)
+          ? OptionalInt.empty()
+          // Adding zero turns -0.0 into 0.0, which Double.compare orders differently
+          : OptionalInt.of(Double.compare(leftDouble + 0.0, rightDouble + 0.0));
+    }
+    BigDecimal leftNumber = toBigDecimal(left);
+    BigDecimal rightNumber = toBigDecimal(right);
+    if (leftNumber != null && rightNumber != null) {
+      return OptionalInt.of(leftNumber.compareTo(rightNumber));
+    }
+    if (leftCase != rightCase) {
+      return OptionalInt.empty();
+    }
+    return switch (leftCase) {
+      case BOOL_VALUE -> OptionalInt.of(Boolean.compare(left.getBoolValue(), right.getBoolValue()));
+      // The order of the UTF-8 bytes is the order of the code points
+      case STRING_VALUE -> compareBytes(left.getStringValueBytes(), right.getStringValueBytes());
+      case BYTES_VALUE -> compareBytes(left.getBytesValue(), right.getBytesValue());
+      case DATE_VALUE -> OptionalInt.of(Integer.compare(left.getDateValue(), right.getDateValue()));
+      case TIMESTAMP_VALUE -> OptionalInt.of(
+          compareTimestamps(left.getTimestampValue(), right.getTimestampValue()));
+      case DATETIME_VALUE -> compareDateTimes(left.getDatetimeValue(), right.getDatetimeValue());
+      default -> OptionalInt.empty();
+    };
+  }
+
+  /** Returns {@code true} if the value is null or not set. */
+  public static boolean isNull(Value value) {
+    return value.getValueCase() == Value.ValueCase.NULL_VALUE
+        || value.getValueCase() == Value.ValueCase.VALUE_NOT_SET;
+  }
+
+  /** Returns the numeric value, or {@code null} if the value is not a finite number. */
+  @Nullable
+  public static BigDecimal toBigDecimal(Value value) {
+    return switch (value.getValueCase()) {
+      case INT32_VALUE -> BigDecimal.valueOf(value.getInt32Value());
+      case INT64_VALUE -> BigDecimal.valueOf(value.getInt64Value());
+      case UINT32_VALUE -> BigDecimal.valueOf(Integer.toUnsignedLong(value.getUint32Value()));
+      case UINT64_VALUE -> new BigDecimal(Long.toUnsignedString(value.getUint64Value()));
+      case FLOAT_VALUE -> toBigDecimal(value.getFloatValue());
+      case DOUBLE_VALUE -> toBigDecimal(value.getDoubleValue());
+      case NUMERIC_VALUE -> toBigDecimal(value.getNumericValue());
+      case BIGNUMERIC_VALUE -> toBigDecimal(value.getBignumericValue());
+      default -> null;
+    };
+  }
+
+  @Nullable
+  private static BigDecimal toBigDecimal(double value) {
+    return Double.isFinite(value) ? BigDecimal.valueOf(value) : null;
+  }
+
+  @Nullable
+  private static BigDecimal toBigDecimal(String value) {
+    try {
+      return new BigDecimal(value);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static OptionalInt compareBytes(ByteString left, ByteString right) {
+    return OptionalInt.of(ByteString.unsignedLexicographicalComparator().compare(left, right));
+  }
+
+  private static int compareTimestamps(Timestamp left, Timestamp right) {
+    int result = Long.compare(left.getSeconds(), right.getSeconds());
+    return result != 0 ? result : Integer.compare(left.getNanos(), right.getNanos());
+  }
+
+  private static OptionalInt compareDateTimes(DateTime left, DateTime right) {
+    if (left.hasTimeZone()
+        || right.hasTimeZone()
+        || left.hasUtcOffset()
+        || right.hasUtcOffset()) {
+      return OptionalInt.empty();
+    }
+    int[] leftFields = {
+      left.getYear(), left.getMonth(), left.getDay(),
+      left.getHours(), left.getMinutes(), left.getSeconds(), left.getNanos()
+    };
+    int[] rightFields = {
+      right.getYear(), right.getMonth(), right.getDay(),
+      right.getHours(), right.getMinutes(), right.getSeconds(), right.getNanos()
+    };
+    return OptionalInt.of(Arrays.compare(leftFields, rightFields));
+  }
+}
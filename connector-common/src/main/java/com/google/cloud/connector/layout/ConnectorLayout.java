@@ -0,0 +1,74 @@
+package com.google.cloud.connector.layout;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The layout of the places where connectors are found. The connector root directory contains one
+ * directory per connector named by the data source id of the connector, and the static connector
+ * registry in the class path contains one specification file per connector.
+ */
+public final class ConnectorLayout {
+
+  /** The name of the connector specification file, either in a connector jar or directory. */
+  public static final String CONNECTOR_PROTO_FILE = "connector.textproto";
+
+  /**
+   * The directory in the class path for the static connector registry. The specification of a
+   * connector that is bundled in the class path of the connector server is the resource {@code
+   * <dir>/<datasource id>.textproto}.
+   */
+  public static final String STATIC_REGISTRY_DIR = "META-INF/connectors";
+
+  private ConnectorLayout() {}
+
+  /**
+   * Returns the name of the static registry entry of the given data source.
+   *
+   * @throws IllegalArgumentException if the data source id is not valid
+   */
+  public static String getStaticRegistryEntry(String datasourceId) {
+    return String.format("%s/%s.textproto", STATIC_REGISTRY_DIR, checkDatasourceId(datasourceId));
+  }
+
+  /**
+   * Validates that the given data source id names a directory directly under the connector root
+   * directory, or a file directly under the {@link #STATIC_REGISTRY_DIR}.
+   *
+   * @return the given data source id
+   * @throws IllegalArgumentException if the data source id is empty, or contains a path separator
+   *     or {@code ..}
+   */
+  public static String checkDatasourceId(String datasourceId) {
+    if (datasourceId.isEmpty()
+        || datasourceId.equals(".")
+        || datasourceId.contains("..")
+        || datasourceId.contains("/")
+        || datasourceId.contains("\\")) {
+      throw new IllegalArgumentException("Invalid data source id '" + datasourceId + "'");
+    }
+    return datasourceId;
+  }
+
+  /**
+   * Returns the data source ids of the connectors under the given connector root directory in
+   * sorted order.
+   *
+   * @throws UncheckedIOException if failed to list the directory
+   */
+  public static List<String> listDatasourceIds(Path rootDir) {
+    try (Stream<Path> paths = Files.list(rootDir)) {
+      return paths
+          .filter(Files::isDirectory)
+          .map(path -> path.getFileName().toString())
+          .sorted()
+          .toList();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -1,5 +1,7 @@
 package com.google.cloud.datafusion.common.lang;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.flogger.FluentLogger;
 import java.io.IOException;
 import java.io.UncheckedIOException;
@@ -18,11 +20,23 @@ import javax.annotation.Nullable;
  * A {@link ClassLoader} that load classes from list of other {@link ClassLoader}s. Note that this
  * ClassLoader just delegates to other ClassLoaders, but never define class, hence no Class loaded
  * by this class would have {@link Class#getClassLoader()}} returning this ClassLoader.
+ *
+ * <p>The delegated ClassLoader that a class was found from, or the fact that the class was not
+ * found in any of them, is remembered. Subsequent lookups of the same class name go to that
+ * ClassLoader directly, or fail without probing the delegated ClassLoaders again.
  */
 public class CombineClassLoader extends ClassLoader {
 
+  static {
+    registerAsParallelCapable();
+  }
+
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  private static final int MAX_LOOKUP_CACHE_SIZE = 10000;
+  private static final int NOT_FOUND = -1;
+
   private final List<ClassLoader> delegates;
+  private final Cache<String, Integer> lookupCache;
 
   /**
    * Creates a CombineClassLoader with the given parent and a list of ClassLoaders for delegation.
@@ -49,6 +63,7 @@ public class CombineClassLoader extends ClassLoader {
       Collection<? extends ClassLoader> delegates) {
     super(name, parent);
     this.delegates = List.copyOf(delegates);
+    this.lookupCache = CacheBuilder.newBuilder().maximumSize(MAX_LOOKUP_CACHE_SIZE).build();
   }
 
   /** Returns an immutable list of {@link ClassLoader}s that this class delegates to. */
@@ -58,9 +73,20 @@ public class CombineClassLoader extends ClassLoader {
 
   @Override
   protected Class<?> findClass(String name) throws ClassNotFoundException {
-    for (ClassLoader classLoader : delegates) {
+    Integer cachedIndex = lookupCache.getIfPresent(name);
+    if (cachedIndex != null) {
+      if (cachedIndex == NOT_FOUND) {
+        throw notFound(name);
+      }
+      return delegates.get(cachedIndex).loadClass(name);
+    }
+
+    for (int i = 0; i < delegates.size(); i++) {
+      ClassLoader classLoader = delegates.get(i);
       try {
-        return classLoader.loadClass(name);
+        Class<?> cls = classLoader.loadClass(name);
+        lookupCache.put(name, i);
+        return cls;
       } catch (ClassNotFoundException e) {
         logger.atFinest().log(
             "Class '%s' not found in ClassLoader '%s' of type '%s'",
@@ -68,7 +94,8 @@ public class CombineClassLoader extends ClassLoader {
       }
     }
 
-    throw new ClassNotFoundException("Class not found in all delegated ClassLoaders: " + name);
+    lookupCache.put(name, NOT_FOUND);
+    throw notFound(name);
   }
 
   @Override
@@ -100,4 +127,8 @@ public class CombineClassLoader extends ClassLoader {
       throw ex.getCause();
     }
   }
+
+  private static ClassNotFoundException notFound(String name) {
+    return new ClassNotFoundException("Class not found in all delegated ClassLoaders: " + name);
+  }
 }
@@ -1,21 +1,40 @@
 package com.google.cloud.datafusion.common.lang;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import java.io.IOException;
 import java.net.URL;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.Set;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
 /**
  * A {@link ClassLoader} that only load classes and resources that are allowed by the filter or
  * coming from the {@link ClassLoader#getPlatformClassLoader()}. This classloader never defines any
  * classes by itself.
+ *
+ * <p>Only classes in packages of the boot layer modules are looked up from the platform
+ * classloader. Names of classes that cannot be loaded are remembered, so that repeated lookups of
+ * missing classes, e.g. optional dependencies probing, fail fast without going through the parent.
  */
 public class FilterClassLoader extends ClassLoader {
 
+  static {
+    registerAsParallelCapable();
+  }
+
+  private static final int MAX_NOT_FOUND_CLASSES = 10000;
+  private static final Set<String> PLATFORM_PACKAGES =
+      ModuleLayer.boot().modules().stream()
+          .flatMap(module -> module.getPackages().stream())
+          .collect(Collectors.toUnmodifiableSet());
+
   private final Predicate<String> classFilter;
   private final Predicate<String> resourceFilter;
+  private final Cache<String, Boolean> notFoundClasses;
 
   /**
    * Creates a new instance with the given parent classloader and filters for classes. Resources
@@ -44,19 +63,32 @@ public class FilterClassLoader extends ClassLoader {
     super(parent);
     this.classFilter = classFilter;
     this.resourceFilter = resourceFilter;
+    this.notFoundClasses = CacheBuilder.newBuilder().maximumSize(MAX_NOT_FOUND_CLASSES).build();
   }
 
   @Override
   protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
-    try {
-      return ClassLoader.getPlatformClassLoader().loadClass(name);
-    } catch (ClassNotFoundException e) {
-      if (classFilter.test(name)) {
+    if (notFoundClasses.getIfPresent(name) != null) {
+      throw notFound(name, null);
+    }
+
+    ClassNotFoundException cause = null;
+    if (isPlatformPackage(name)) {
+      try {
+        return ClassLoader.getPlatformClassLoader().loadClass(name);
+      } catch (ClassNotFoundException e) {
+        cause = e;
+      }
+    }
+    if (classFilter.test(name)) {
+      try {
         return super.loadClass(name, resolve);
+      } catch (ClassNotFoundException e) {
+        cause = e;
       }
-      throw new ClassNotFoundException(
-          String.format("Class '%s' is either not permitted the filter or not available", name), e);
     }
+    notFoundClasses.put(name, Boolean.TRUE);
+    throw notFound(name, cause);
   }
 
   @Override
@@ -88,6 +120,18 @@ public class FilterClassLoader extends ClassLoader {
     };
   }
 
+  private static boolean isPlatformPackage(String className) {
+    int idx = className.lastIndexOf('.');
+    return idx > 0 && PLATFORM_PACKAGES.contains(className.substring(0, idx));
+  }
+
+  private static ClassNotFoundException notFound(
+      String name, @Nullable ClassNotFoundException cause) {
+    return new ClassNotFoundException(
+        String.format("Class '%s' is either not permitted the filter or not available", name),
+        cause);
+  }
+
   /**
    * Creates a resource filter that only allows {@code .class} files with the one permitted by the
    * class filter. It also allows any non {@code .class} resources.
@@ -0,0 +1,530 @@
+package com.google.cloud.datafusion.common.lang;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.flogger.FluentLogger;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.security.SecureClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link ClassLoader} that loads classes and resources from a directory and all the jar files
+ * under it.
+ *
+ * <p>Unlike a {@link java.net.URLClassLoader} that probes every URL in order for each lookup, all
+ * the jar files are opened once when this class is created and their entries are indexed by
+ * package. A lookup only visits the directory and the jar files that contain the package of the
+ * class or resource. Classes and resources in the directory itself take precedence over the ones
+ * in jar files, and jar files are searched in the order they are found when walking the directory.
+ *
+ * <p>Classes from signed jar files are defined with the code signers of their entries, and packages
+ * of jar files with a {@code Sealed} manifest attribute are sealed, the same as {@link
+ * java.net.URLClassLoader} does.
+ *
+ * <p>This class is registered as parallel capable, hence classes of different names can be loaded
+ * concurrently.
+ */
+public class JarIndexClassLoader extends SecureClassLoader implements Closeable {
+
+  static {
+    registerAsParallelCapable();
+  }
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  private static final String CLASS_SUFFIX = ".class";
+
+  private final List<Source> sources;
+  private final ImmutableListMultimap<String, Source> packageIndex;
+  private final AtomicLong definedClassCount;
+  private final AtomicLong definedClassBytes;
+
+  /**
+   * Creates a new instance for the given directory and all the jar files under it.
+   *
+   * @param name class loader name; or {@code null} if not named
+   * @param dir the directory to load classes and resources from
+   * @param parent parent ClassLoader. If null, bootstrap ClassLoader will be the parent.
+   * @throws UncheckedIOException if failed to list the directory or to open the jar files
+   */
+  public JarIndexClassLoader(@Nullable String name, Path dir, @Nullable ClassLoader parent) {
+    this(name, dir, findJarFiles(dir), parent);
+  }
+
+  /**
+   * Creates a new instance for the given directory and jar files.
+   *
+   * @param name class loader name; or {@code null} if not named
+   * @param dir the directory to load classes and resources from, excluding the jar files under it;
+   *     or {@code null} to only load from the given jar files
+   * @param jarFiles the jar files to load classes and resources from, in the order of precedence
+   * @param parent parent ClassLoader. If null, bootstrap ClassLoader will be the parent.
+   * @throws UncheckedIOException if failed to list the directory or to open the jar files
+   */
+  public JarIndexClassLoader(
+      @Nullable String name,
+      @Nullable Path dir,
+      List<Path> jarFiles,
+      @Nullable ClassLoader parent) {
+    super(name, parent);
+    List<Source> sources = new ArrayList<>();
+    ImmutableListMultimap.Builder<String, Source> index = ImmutableListMultimap.builder();
+    try {
+      if (dir != null) {
+        DirectorySource dirSource = new DirectorySource(dir);
+        sources.add(dirSource);
+        try (Stream<Path> paths = Files.walk(dir)) {
+          paths
+              .filter(path -> Files.isRegularFile(path) && !isJarFile(path))
+              .map(path -> dir.relativize(path).toString().replace(File.separatorChar, '/'))
+              .map(JarIndexClassLoader::packageOf)
+              .distinct()
+              .forEach(pkg -> index.put(pkg, dirSource));
+        }
+      }
+      for (Path jarFile : jarFiles) {
+        JarSource jarSource = new JarSource(jarFile);
+        sources.add(jarSource);
+        jarSource.packages().forEach(pkg -> index.put(pkg, jarSource));
+      }
+    } catch (IOException e) {
+      closeAll(sources);
+      throw new UncheckedIOException(e);
+    } catch (RuntimeException e) {
+      closeAll(sources);
+      throw e;
+    }
+    this.sources = ImmutableList.copyOf(sources);
+    this.packageIndex = index.build();
+    this.definedClassCount = new AtomicLong();
+    this.definedClassBytes = new AtomicLong();
+  }
+
+  /**
+   * Finds all the jar files under the given directory, in the order of walking the directory.
+   *
+   * @param dir the directory to search
+   * @return a list of jar files
+   * @throws UncheckedIOException if failed to list the directory
+   */
+  public static List<Path> findJarFiles(Path dir) {
+    try (Stream<Path> paths = Files.walk(dir)) {
+      return paths.filter(path -> Files.isRegularFile(path) && isJarFile(path)).toList();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Returns the number of classes defined by this class loader. */
+  public long getDefinedClassCount() {
+    return definedClassCount.get();
+  }
+
+  /**
+   * Returns the total size of the class files of the classes defined by this class loader, which
+   * is an approximation of the metaspace used by this class loader.
+   */
+  public long getDefinedClassBytes() {
+    return definedClassBytes.get();
+  }
+
+  @Override
+  protected Class<?> findClass(String name) throws ClassNotFoundException {
+    String resourceName = name.replace('.', '/') + CLASS_SUFFIX;
+    for (Source source : packageIndex.get(packageOf(resourceName))) {
+      ClassFile classFile;
+      try {
+        classFile = source.readClass(resourceName);
+      } catch (IOException e) {
+        throw new ClassNotFoundException("Failed to read class " + name, e);
+      }
+      if (classFile != null) {
+        byte[] bytes = classFile.bytes();
+        definePackageIfNeeded(name, source);
+        // The protection domains are cached by code source in the SecureClassLoader
+        Class<?> cls = defineClass(name, bytes, 0, bytes.length, classFile.codeSource());
+        definedClassCount.incrementAndGet();
+        definedClassBytes.addAndGet(bytes.length);
+        return cls;
+      }
+    }
+    throw new ClassNotFoundException(name);
+  }
+
+  /**
+   * Finds a resource from the directory and the jar files of this class loader only, without
+   * delegating to the parent class loader.
+   *
+   * @param name the resource name
+   * @return the {@link URL} of the resource or {@code null} if the resource is not found
+   */
+  @Nullable
+  @Override
+  public URL findResource(String name) {
+    for (Source source : packageIndex.get(packageOf(name))) {
+      URL url = source.getResource(name);
+      if (url != null) {
+        return url;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  protected Enumeration<URL> findResources(String name) {
+    return Collections.enumeration(
+        packageIndex.get(packageOf(name)).stream()
+            .map(source -> source.getResource(name))
+            .filter(Objects::nonNull)
+            .toList());
+  }
+
+  /**
+   * Returns an input stream for reading the given resource. Resources of this class are read from
+   * the jar files opened by this class instead of going through the {@link URL}, so that no jar
+   * file is left open by the {@link java.net.JarURLConnection} cache after this class is closed.
+   * If there is no parent, resources of the {@link ClassLoader#getPlatformClassLoader()} are
+   * searched first.
+   */
+  @Nullable
+  @Override
+  public InputStream getResourceAsStream(String name) {
+    ClassLoader parent = getParent() == null ? getPlatformClassLoader() : getParent();
+    URL url = parent.getResource(name);
+    if (url == null) {
+      for (Source source : packageIndex.get(packageOf(name))) {
+        try {
+          byte[] bytes = source.read(name);
+          if (bytes != null) {
+            return new ByteArrayInputStream(bytes);
+          }
+        } catch (IOException e) {
+          logger.atFine().withCause(e).log("Failed to read resource '%s' from %s", name, source);
+          return null;
+        }
+      }
+      return null;
+    }
+    try {
+      return url.openStream();
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /** Closes all the jar files opened by this class. */
+  @Override
+  public void close() throws IOException {
+    IOException failure = null;
+    for (Source source : sources) {
+      try {
+        source.close();
+      } catch (IOException e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Defines the package of a class if it is not defined yet, or verifies that the class doesn't
+   * violate the sealing of the package otherwise.
+   *
+   * @throws SecurityException if the package is sealed and the class is from another location, or
+   *     the package is defined and the class is from a location that seals it
+   */
+  private void definePackageIfNeeded(String className, Source source) {
+    int idx = className.lastIndexOf('.');
+    if (idx < 0) {
+      return;
+    }
+    String packageName = className.substring(0, idx);
+    Package pkg = getDefinedPackage(packageName);
+    if (pkg == null) {
+      try {
+        definePackageFrom(packageName, source);
+        return;
+      } catch (IllegalArgumentException e) {
+        // The package was defined concurrently by another thread
+        pkg = getDefinedPackage(packageName);
+        if (pkg == null) {
+          throw e;
+        }
+      }
+    }
+    if (pkg.isSealed()) {
+      if (!pkg.isSealed(source.location)) {
+        throw new SecurityException("Sealing violation: package " + packageName + " is sealed");
+      }
+    } else if (isSealed(source.manifest(), packageName)) {
+      throw new SecurityException(
+          "Sealing violation: can't seal package " + packageName + ": already loaded");
+    }
+  }
+
+  /**
+   * Defines a package with the attributes of the manifest of the given source. Attributes of the
+   * manifest section of the package take precedence over the main attributes.
+   */
+  private void definePackageFrom(String packageName, Source source) {
+    Manifest manifest = source.manifest();
+    if (manifest == null) {
+      definePackage(packageName, null, null, null, null, null, null, null);
+      return;
+    }
+    String path = packageName.replace('.', '/') + '/';
+    definePackage(
+        packageName,
+        manifestValue(manifest, path, Attributes.Name.SPECIFICATION_TITLE),
+        manifestValue(manifest, path, Attributes.Name.SPECIFICATION_VERSION),
+        manifestValue(manifest, path, Attributes.Name.SPECIFICATION_VENDOR),
+        manifestValue(manifest, path, Attributes.Name.IMPLEMENTATION_TITLE),
+        manifestValue(manifest, path, Attributes.Name.IMPLEMENTATION_VERSION),
+        manifestValue(manifest, path, Attributes.Name.IMPLEMENTATION_VENDOR),
+        isSealed(manifest, packageName) ? source.location : null);
+  }
+
+  /** Returns whether the given manifest seals the given package. */
+  private static boolean isSealed(@Nullable Manifest manifest, String packageName) {
+    if (manifest == null) {
+      return false;
+    }
+    String path = packageName.replace('.', '/') + '/';
+    return "true".equalsIgnoreCase(manifestValue(manifest, path, Attributes.Name.SEALED));
+  }
+
+  /**
+   * Returns the value of an attribute from the manifest section of the given package directory,
+   * or from the main attributes if the section doesn't have it.
+   */
+  @Nullable
+  private static String manifestValue(Manifest manifest, String path, Attributes.Name name) {
+    Attributes attributes = manifest.getAttributes(path);
+    String value = attributes == null ? null : attributes.getValue(name);
+    return value == null ? manifest.getMainAttributes().getValue(name) : value;
+  }
+
+  /** Returns the package directory of a resource, e.g. {@code com/example/} or empty string. */
+  private static String packageOf(String resourceName) {
+    return resourceName.substring(0, resourceName.lastIndexOf('/') + 1);
+  }
+
+  private static boolean isJarFile(Path path) {
+    return path.getFileName().toString().endsWith(".jar");
+  }
+
+  private static void closeAll(List<Source> sources) {
+    for (Source source : sources) {
+      try {
+        source.close();
+      } catch (IOException e) {
+        logger.atWarning().withCause(e).log("Failed to close %s", source);
+      }
+    }
+  }
+
+  private static URL toUrl(Path path) {
+    try {
+      return path.toUri().toURL();
+    } catch (MalformedURLException e) {
+      // This shouldn't happen
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** The content of a class file and the {@link CodeSource} to define its class with. */
+  private record ClassFile(byte[] bytes, CodeSource codeSource) {}
+
+  /** A location that classes and resources are loaded from. */
+  private abstract static class Source implements Closeable {
+
+    final URL location;
+    // The code source of the classes that are not signed
+    final CodeSource codeSource;
+
+    Source(URL location) {
+      this.location = location;
+      this.codeSource = new CodeSource(location, (CodeSigner[]) null);
+    }
+
+    /** Returns the content of the given resource, or {@code null} if the resource doesn't exist. */
+    @Nullable
+    abstract byte[] read(String name) throws IOException;
+
+    /** Returns the given class file, or {@code null} if it doesn't exist. */
+    @Nullable
+    abstract ClassFile readClass(String name) throws IOException;
+
+    /** Returns the {@link URL} of the given resource, or {@code null} if it doesn't exist. */
+    @Nullable
+    abstract URL getResource(String name);
+
+    /** Returns the manifest, or {@code null} if there is no manifest. */
+    @Nullable
+    abstract Manifest manifest();
+  }
+
+  /** A {@link Source} backed by a local directory. */
+  private static final class DirectorySource extends Source {
+
+    private final Path dir;
+
+    DirectorySource(Path dir) {
+      super(toUrl(dir));
+      this.dir = dir;
+    }
+
+    @Nullable
+    @Override
+    byte[] read(String name) throws IOException {
+      Path path = dir.resolve(name);
+      return Files.isRegularFile(path) ? Files.readAllBytes(path) : null;
+    }
+
+    @Nullable
+    @Override
+    ClassFile readClass(String name) throws IOException {
+      byte[] bytes = read(name);
+      return bytes == null ? null : new ClassFile(bytes, codeSource);
+    }
+
+    @Nullable
+    @Override
+    URL getResource(String name) {
+      Path path = dir.resolve(name);
+      return Files.isRegularFile(path) ? toUrl(path) : null;
+    }
+
+    @Nullable
+    @Override
+    Manifest manifest() {
+      return null;
+    }
+
+    @Override
+    public void close() {
+      // Nothing to close
+    }
+
+    @Override
+    public String toString() {
+      return dir.toString();
+    }
+  }
+
+  /** A {@link Source} backed by a jar file that is kept open until this class is closed. */
+  private static final class JarSource extends Source {
+
+    private final Path path;
+    private final String urlPrefix;
+    private final JarFile jarFile;
+    @Nullable private final Manifest manifest;
+
+    JarSource(Path path) throws IOException {
+      super(toUrl(path));
+      this.path = path;
+      this.urlPrefix = "jar:" + path.toUri() + "!/";
+      // Verify signed jars and resolve multi-release jar entries as URLClassLoader does
+      this.jarFile = new JarFile(path.toFile(), true, ZipFile.OPEN_READ, Runtime.version());
+      this.manifest = jarFile.getManifest();
+    }
+
+    /**
+     * Returns all the package directories that contain at least one file in the jar, including
+     * the files of the multi-release jar versions that apply to the runtime.
+     */
+    ImmutableSet<String> packages() {
+      return jarFile.versionedStream()
+          .filter(entry -> !entry.isDirectory())
+          .map(entry -> packageOf(entry.getName()))
+          .collect(ImmutableSet.toImmutableSet());
+    }
+
+    @Nullable
+    @Override
+    byte[] read(String name) throws IOException {
+      JarEntry entry = jarFile.getJarEntry(name);
+      if (entry == null) {
+        return null;
+      }
+      try (InputStream is = jarFile.getInputStream(entry)) {
+        return is.readAllBytes();
+      }
+    }
+
+    @Nullable
+    @Override
+    ClassFile readClass(String name) throws IOException {
+      JarEntry entry = jarFile.getJarEntry(name);
+      if (entry == null) {
+        return null;
+      }
+      byte[] bytes;
+      try (InputStream is = jarFile.getInputStream(entry)) {
+        bytes = is.readAllBytes();
+      }
+      // The code signers are only known after the entry is fully read and verified
+      CodeSigner[] signers = entry.getCodeSigners();
+      return new ClassFile(bytes, signers == null ? codeSource : new CodeSource(location, signers));
+    }
+
+    @Nullable
+    @Override
+    URL getResource(String name) {
+      if (jarFile.getJarEntry(name) == null) {
+        return null;
+      }
+      try {
+        return new URL(urlPrefix + name);
+      } catch (MalformedURLException e) {
+        // This shouldn't happen
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Nullable
+    @Override
+    Manifest manifest() {
+      return manifest;
+    }
+
+    @Override
+    public void close() throws IOException {
+      jarFile.close();
+    }
+
+    @Override
+    public String toString() {
+      return path.toString();
+    }
+  }
+}
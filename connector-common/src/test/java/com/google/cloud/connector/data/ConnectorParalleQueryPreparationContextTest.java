@@ -1,15 +1,24 @@
 package com.google.cloud.connector.data;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
+import com.google.cloud.bigquery.federation.v1alpha1.Expression;
+import com.google.cloud.bigquery.federation.v1alpha1.FieldExpression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionExpression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionSignatureId;
 import com.google.cloud.bigquery.federation.v1alpha1.StartQueryResponse;
+import com.google.cloud.bigquery.federation.v1alpha1.Value;
 import com.google.cloud.connector.api.AssetName;
+import com.google.cloud.connector.api.ColumnStatistics;
 import com.google.cloud.connector.api.DatasetName;
 import com.google.gson.Gson;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
+import java.util.Map;
 import javax.annotation.Nullable;
 import org.junit.jupiter.api.Test;
 
@@ -84,6 +93,112 @@ public class ConnectorParalleQueryPreparationContextTest {
     assertEquals(response.getMaxConcurrency(), 1);
   }
 
+  @Test
+  public void buildResponse_CoalescesPartitionsBeyondMaxStreams() {
+    final DatasetName datasetName =
+        DatasetName.fromName("datasources/datasource/instances/instance");
+    final ConnectorParallelQueryPreparationContext context =
+        new ConnectorParallelQueryPreparationContext(
+            datasetName, null, ResultStreamId.Encoding.PROTO, 3);
+    for (int i = 0; i < 7; i++) {
+      context.addPartition(new byte[] {(byte) i});
+    }
+
+    StartQueryResponse response = context.buildStartQueryResponse();
+
+    assertEquals(3, response.getResultSets(0).getStreamsCount());
+    List<Integer> streamSizes = new ArrayList<>();
+    List<Byte> queries = new ArrayList<>();
+    for (StartQueryResponse.ResultSet.Stream stream : response.getResultSets(0).getStreamsList()) {
+      List<Partition> partitions = ResultStreamId.decodePartitions(stream.getId());
+      streamSizes.add(partitions.size());
+      partitions.forEach(partition -> queries.add(partition.query()[0]));
+    }
+    assertEquals(List.of(2, 2, 3), streamSizes);
+    assertEquals(List.of((byte) 0, (byte) 1, (byte) 2, (byte) 3, (byte) 4, (byte) 5, (byte) 6),
+        queries);
+  }
+
+  @Test
+  public void buildResponse_DoesNotCoalesceJsonStreamIds() {
+    final DatasetName datasetName =
+        DatasetName.fromName("datasources/datasource/instances/instance");
+    final ConnectorParallelQueryPreparationContext context =
+        new ConnectorParallelQueryPreparationContext(
+            datasetName, null, ResultStreamId.Encoding.JSON, 1);
+    context.addPartition(new byte[] {1});
+    context.addPartition(new byte[] {2});
+
+    StartQueryResponse response = context.buildStartQueryResponse();
+
+    assertEquals(2, response.getResultSets(0).getStreamsCount());
+  }
+
+  @Test
+  public void buildResponse_SumsEstimatesOfCoalescedPartitions() {
+    final DatasetName datasetName =
+        DatasetName.fromName("datasources/datasource/instances/instance");
+    final ConnectorParallelQueryPreparationContext context =
+        new ConnectorParallelQueryPreparationContext(
+            datasetName, null, ResultStreamId.Encoding.PROTO, 2);
+    context.addPartition(new byte[] {1}, 10, 100);
+    context.addPartition(new byte[] {2}, 20, 200);
+    context.addPartition(new byte[] {3}, 30, -1);
+    context.addPartition(new byte[] {4});
+
+    StartQueryResponse response = context.buildStartQueryResponse();
+
+    StartQueryResponse.ResultSet.Stream first = response.getResultSets(0).getStreams(0);
+    assertEquals(30, first.getEstimatedRows());
+    assertEquals(300, first.getEstimatedBytes());
+    // Unknown if the estimate of any partition of the stream is unknown
+    StartQueryResponse.ResultSet.Stream second = response.getResultSets(0).getStreams(1);
+    assertFalse(second.hasEstimatedRows());
+    assertFalse(second.hasEstimatedBytes());
+  }
+
+  @Test
+  public void addPartition_PrunesPartitionsThatCannotMatchFilter() {
+    final DatasetName datasetName =
+        DatasetName.fromName("datasources/datasource/instances/instance");
+    final ConnectorParallelQueryPreparationContext context =
+        new ConnectorParallelQueryPreparationContext(
+            datasetName, null, ResultStreamId.Encoding.PROTO, 0);
+    // id > 15
+    context.setFilterPredicate(
+        Expression.newBuilder()
+            .setFunction(
+                FunctionExpression.newBuilder()
+                    .setFunctionSignatureId(FunctionSignatureId.FN_GREATER)
+                    .addArguments(
+                        Expression.newBuilder()
+                            .setField(FieldExpression.newBuilder().setFieldName("id")))
+                    .addArguments(
+                        Expression.newBuilder()
+                            .setConstant(Value.newBuilder().setInt64Value(15))))
+            .build());
+    context.addPartition(new byte[] {1}, -1, -1, Map.of("id", statistics(0, 10)));
+    context.addPartition(new byte[] {2}, -1, -1, Map.of("id", statistics(10, 20)));
+    context.addPartition(new byte[] {3}, -1, -1, Map.of());
+    context.addPartition(new byte[] {4}, -1, -1, Map.of("id", statistics(5, 15)));
+
+    StartQueryResponse response = context.buildStartQueryResponse();
+
+    assertEquals(2, context.getPrunedPartitions());
+    List<Byte> queries = new ArrayList<>();
+    for (StartQueryResponse.ResultSet.Stream stream : response.getResultSets(0).getStreamsList()) {
+      queries.add(ResultStreamId.decodePartition(stream.getId()).query()[0]);
+    }
+    assertEquals(List.of((byte) 2, (byte) 3), queries);
+  }
+
+  private static ColumnStatistics statistics(long min, long max) {
+    return new ColumnStatistics(
+        Value.newBuilder().setInt64Value(min).build(),
+        Value.newBuilder().setInt64Value(max).build(),
+        -1);
+  }
+
   private String createTestPartitionEncodedString(byte[] query, @Nullable AssetInfo assetInfo) {
     return Base64.getUrlEncoder().encodeToString(
         GSON.toJson(new Partition(query, assetInfo)).getBytes(StandardCharsets.UTF_8));
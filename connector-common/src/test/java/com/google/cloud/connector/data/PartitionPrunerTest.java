@@ -0,0 +1,196 @@
+package com.google.cloud.connector.data;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.cloud.bigquery.federation.v1alpha1.Expression;
+import com.google.cloud.bigquery.federation.v1alpha1.FieldExpression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionExpression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionSignatureId;
+import com.google.cloud.bigquery.federation.v1alpha1.Value;
+import com.google.cloud.connector.api.ColumnStatistics;
+import com.google.protobuf.NullValue;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+/** Unit test for {@link PartitionPruner}. */
+public class PartitionPrunerTest {
+
+  // Column "id" in [10, 20] without nulls, column "name" in ["b", "d"] with unknown nulls
+  private static final Map<String, ColumnStatistics> STATISTICS =
+      Map.of(
+          "id", new ColumnStatistics(int64(10), int64(20), 0),
+          "name", new ColumnStatistics(string("b"), string("d"), -1, true));
+
+  @Test
+  public void mayMatch_comparisons() {
+    assertThat(mayMatch(FunctionSignatureId.FN_EQUAL, field("id"), constant(int64(15)))).isTrue();
+    assertThat(mayMatch(FunctionSignatureId.FN_EQUAL, field("id"), constant(int64(21)))).isFalse();
+    assertThat(mayMatch(FunctionSignatureId.FN_LESS, field("id"), constant(int64(10)))).isFalse();
+    assertThat(mayMatch(FunctionSignatureId.FN_LESS_OR_EQUAL, field("id"), constant(int64(10))))
+        .isTrue();
+    assertThat(mayMatch(FunctionSignatureId.FN_GREATER, field("id"), constant(int64(20))))
+        .isFalse();
+    assertThat(mayMatch(FunctionSignatureId.FN_GREATER_OR_EQUAL, field("id"), constant(int64(20))))
+        .isTrue();
+    assertThat(mayMatch(FunctionSignatureId.FN_LESS, field("name"), constant(string("b"))))
+        .isFalse();
+    assertThat(mayMatch(FunctionSignatureId.FN_GREATER, field("name"), constant(string("c"))))
+        .isTrue();
+  }
+
+  @Test
+  public void mayMatch_stringsWithoutBinaryCollation() {
+    // A case-insensitive source may report "b" and "d" for a partition that has "C"
+    Map<String, ColumnStatistics> caseInsensitive =
+        Map.of("name", new ColumnStatistics(string("b"), string("d"), -1));
+
+    assertThat(
+            PartitionPruner.mayMatch(
+                function(FunctionSignatureId.FN_EQUAL, field("name"), constant(string("C"))),
+                caseInsensitive))
+        .isTrue();
+    assertThat(mayMatch(FunctionSignatureId.FN_EQUAL, field("name"), constant(string("C"))))
+        .isFalse();
+  }
+
+  @Test
+  public void mayMatch_constantOnTheLeft() {
+    // 25 < id is id > 25
+    assertThat(mayMatch(FunctionSignatureId.FN_LESS, constant(int64(25)), field("id"))).isFalse();
+    assertThat(mayMatch(FunctionSignatureId.FN_LESS, constant(int64(5)), field("id"))).isTrue();
+  }
+
+  @Test
+  public void mayMatch_notEqual() {
+    Map<String, ColumnStatistics> single =
+        Map.of("id", new ColumnStatistics(int64(10), int64(10), 0));
+
+    assertThat(
+            PartitionPruner.mayMatch(
+                function(FunctionSignatureId.FN_NOT_EQUAL, field("id"), constant(int64(10))),
+                single))
+        .isFalse();
+    assertThat(mayMatch(FunctionSignatureId.FN_NOT_EQUAL, field("id"), constant(int64(10))))
+        .isTrue();
+  }
+
+  @Test
+  public void mayMatch_logicalOperators() {
+    Expression outside = function(FunctionSignatureId.FN_LESS, field("id"), constant(int64(5)));
+    Expression inside = function(FunctionSignatureId.FN_LESS, field("id"), constant(int64(15)));
+
+    assertThat(PartitionPruner.mayMatch(function(FunctionSignatureId.FN_AND, inside, outside),
+        STATISTICS)).isFalse();
+    assertThat(PartitionPruner.mayMatch(function(FunctionSignatureId.FN_OR, inside, outside),
+        STATISTICS)).isTrue();
+    assertThat(PartitionPruner.mayMatch(function(FunctionSignatureId.FN_OR, outside, outside),
+        STATISTICS)).isFalse();
+    // NOT is not evaluated
+    assertThat(PartitionPruner.mayMatch(function(FunctionSignatureId.FN_NOT, inside), STATISTICS))
+        .isTrue();
+  }
+
+  @Test
+  public void mayMatch_inAndBetween() {
+    assertThat(
+            mayMatch(
+                FunctionSignatureId.FN_IN,
+                field("id"),
+                constant(int64(1)),
+                constant(int64(30))))
+        .isFalse();
+    assertThat(
+            mayMatch(
+                FunctionSignatureId.FN_IN,
+                field("id"),
+                constant(int64(1)),
+                constant(int64(12))))
+        .isTrue();
+    assertThat(
+            mayMatch(
+                FunctionSignatureId.FN_BETWEEN,
+                field("id"),
+                constant(int64(21)),
+                constant(int64(30))))
+        .isFalse();
+    assertThat(
+            mayMatch(
+                FunctionSignatureId.FN_BETWEEN,
+                field("id"),
+                constant(int64(0)),
+                constant(int64(10))))
+        .isTrue();
+  }
+
+  @Test
+  public void mayMatch_isNull() {
+    assertThat(mayMatch(FunctionSignatureId.FN_IS_NULL, field("id"))).isFalse();
+    assertThat(mayMatch(FunctionSignatureId.FN_IS_NULL, field("name"))).isTrue();
+  }
+
+  @Test
+  public void mayMatch_unknownIsConservative() {
+    // No statistics for the column
+    assertThat(mayMatch(FunctionSignatureId.FN_EQUAL, field("other"), constant(int64(0))))
+        .isTrue();
+    // Values that can't be compared
+    assertThat(mayMatch(FunctionSignatureId.FN_EQUAL, field("id"), constant(string("a"))))
+        .isTrue();
+    // Comparison of two fields
+    assertThat(mayMatch(FunctionSignatureId.FN_EQUAL, field("id"), field("name"))).isTrue();
+    // Missing arguments
+    assertThat(mayMatch(FunctionSignatureId.FN_EQUAL, field("id"))).isTrue();
+    // Functions that are not evaluated
+    assertThat(
+            mayMatch(FunctionSignatureId.FN_STRING_LIKE, field("name"), constant(string("a%"))))
+        .isTrue();
+  }
+
+  @Test
+  public void mayMatch_nullAndFalseConstants() {
+    Value nullValue = Value.newBuilder().setNullValue(NullValue.NULL_VALUE).build();
+
+    assertThat(mayMatch(FunctionSignatureId.FN_EQUAL, field("id"), constant(nullValue)))
+        .isFalse();
+    assertThat(
+            PartitionPruner.mayMatch(
+                constant(Value.newBuilder().setBoolValue(false).build()), STATISTICS))
+        .isFalse();
+    assertThat(
+            PartitionPruner.mayMatch(
+                constant(Value.newBuilder().setBoolValue(true).build()), STATISTICS))
+        .isTrue();
+  }
+
+  private static boolean mayMatch(FunctionSignatureId signatureId, Expression... arguments) {
+    return PartitionPruner.mayMatch(function(signatureId, arguments), STATISTICS);
+  }
+
+  private static Expression function(FunctionSignatureId signatureId, Expression... arguments) {
+    return Expression.newBuilder()
+        .setFunction(
+            FunctionExpression.newBuilder()
+                .setFunctionSignatureId(signatureId)
+                .addAllArguments(Arrays.asList(arguments)))
+        .build();
+  }
+
+  private static Expression field(String name) {
+    return Expression.newBuilder()
+        .setField(FieldExpression.newBuilder().setFieldName(name))
+        .build();
+  }
+
+  private static Expression constant(Value value) {
+    return Expression.newBuilder().setConstant(value).build();
+  }
+
+  private static Value int64(long value) {
+    return Value.newBuilder().setInt64Value(value).build();
+  }
+
+  private static Value string(String value) {
+    return Value.newBuilder().setStringValue(value).build();
+  }
+}
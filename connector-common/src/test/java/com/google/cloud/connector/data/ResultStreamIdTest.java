@@ -0,0 +1,178 @@
+package com.google.cloud.connector.data;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.bigquery.federation.v1alpha1.Expression;
+import com.google.cloud.bigquery.federation.v1alpha1.FieldExpression;
+import com.google.cloud.connector.api.AssetName;
+import com.google.cloud.connector.data.ResultStreamId.Encoding;
+import com.google.common.base.Strings;
+import com.google.gson.Gson;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for the {@link ResultStreamId}. */
+public class ResultStreamIdTest {
+
+  private static final AssetInfo ASSET_INFO =
+      new AssetInfo(new AssetName(List.of("dataset", "table")), "SELECT 1");
+
+  @Test
+  public void encodePartition_roundTrip() {
+    Partition queryPartition =
+        new Partition("SELECT * FROM t WHERE id < 10".getBytes(StandardCharsets.UTF_8), null);
+    Partition assetPartition = new Partition(null, ASSET_INFO);
+    Partition rootPartition =
+        new Partition(new byte[0], new AssetInfo(AssetName.ROOT_ASSET, null));
+
+    for (Encoding encoding : Encoding.values()) {
+      for (Partition partition : List.of(queryPartition, assetPartition, rootPartition)) {
+        Partition decoded =
+            ResultStreamId.decodePartition(ResultStreamId.encodePartition(partition, encoding));
+        assertPartition(decoded, partition);
+      }
+    }
+  }
+
+  @Test
+  public void encodePartition_compactAndCompressed() {
+    byte[] query =
+        Strings.repeat("SELECT a, b, c FROM t WHERE id < 10 UNION ALL ", 50)
+            .getBytes(StandardCharsets.UTF_8);
+    Partition partition = new Partition(query, ASSET_INFO);
+
+    String json = ResultStreamId.encodePartition(partition, Encoding.JSON);
+    String proto = ResultStreamId.encodePartition(partition, Encoding.PROTO);
+    String compressed = ResultStreamId.encodePartition(partition, Encoding.PROTO_COMPRESSED);
+
+    assertThat(proto).startsWith("v1.");
+    assertThat(compressed).startsWith("v1z.");
+    assertThat(proto.length()).isLessThan(json.length() / 2);
+    assertThat(compressed.length()).isLessThan(proto.length() / 10);
+    assertPartition(ResultStreamId.decodePartition(compressed), partition);
+  }
+
+  @Test
+  public void encodePartition_smallPartitionNotCompressed() {
+    Partition partition = new Partition(new byte[] {1, 2, 3}, null);
+    assertThat(ResultStreamId.encodePartition(partition, Encoding.PROTO_COMPRESSED))
+        .isEqualTo(ResultStreamId.encodePartition(partition, Encoding.PROTO));
+  }
+
+  @Test
+  public void decodePartition_legacyFormats() {
+    Partition partition = new Partition(new byte[] {1, 2, 3}, ASSET_INFO);
+    String json =
+        ResultStreamId.encode(new Gson().toJson(partition).getBytes(StandardCharsets.UTF_8));
+    assertPartition(ResultStreamId.decodePartition(json), partition);
+
+    // Raw partition data from before partitions were encoded as JSON
+    byte[] raw = "raw-partition".getBytes(StandardCharsets.UTF_8);
+    Partition decoded = ResultStreamId.decodePartition(ResultStreamId.encode(raw));
+    assertThat(decoded.query()).isEqualTo(raw);
+    assertThat(decoded.assetInfo()).isNull();
+  }
+
+  @Test
+  public void decodePartition_invalid() {
+    assertThrows(IllegalArgumentException.class, () -> ResultStreamId.decodePartition("v9.AAAA"));
+    assertThrows(IllegalArgumentException.class, () -> ResultStreamId.decodePartition("v1.!!"));
+    assertThrows(IllegalArgumentException.class, () -> ResultStreamId.decodePartition("v1z.AAAA"));
+    assertThrows(IllegalArgumentException.class, () -> ResultStreamId.decodePartition("not*b64"));
+  }
+
+  @Test
+  public void encodePartitions_coalescedRoundTrip() {
+    List<Partition> partitions =
+        List.of(
+            new Partition(new byte[] {1}, ASSET_INFO),
+            new Partition(new byte[] {2, 2}, null),
+            new Partition(new byte[] {3, 3, 3}, null));
+
+    for (Encoding encoding : List.of(Encoding.PROTO, Encoding.PROTO_COMPRESSED)) {
+      String streamId = ResultStreamId.encodePartitions(partitions, encoding);
+      // Servers that only know version 1 must not read only the first partition
+      assertThat(streamId).startsWith("v2");
+      List<Partition> decoded = ResultStreamId.decodePartitions(streamId);
+
+      assertThat(decoded).hasSize(3);
+      for (int i = 0; i < partitions.size(); i++) {
+        // All the partitions of a stream share the asset
+        assertPartition(
+            decoded.get(i), new Partition(partitions.get(i).query(), ASSET_INFO));
+      }
+      assertThrows(
+          IllegalArgumentException.class, () -> ResultStreamId.decodePartition(streamId));
+    }
+  }
+
+  @Test
+  public void decodePartitions_coalescedInVersion1() {
+    List<Partition> partitions =
+        List.of(new Partition(new byte[] {1}, ASSET_INFO), new Partition(new byte[] {2}, null));
+    String streamId = ResultStreamId.encodePartitions(partitions, Encoding.PROTO);
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ResultStreamId.decodePartitions("v1." + streamId.substring("v2.".length())));
+  }
+
+  @Test
+  public void encodePartitions_singlePartition() {
+    Partition partition = new Partition(new byte[] {1, 2, 3}, ASSET_INFO);
+    String streamId = ResultStreamId.encodePartitions(List.of(partition), Encoding.JSON);
+
+    assertThat(streamId).isEqualTo(ResultStreamId.encodePartition(partition, Encoding.JSON));
+    assertThat(ResultStreamId.decodePartitions(streamId)).hasSize(1);
+    assertPartition(ResultStreamId.decodePartitions(streamId).get(0), partition);
+  }
+
+  @Test
+  public void encodePartition_serverQuery() {
+    DataQuery serverQuery =
+        DataQuery.newBuilder()
+            .setFilterPredicate(
+                Expression.newBuilder().setField(FieldExpression.newBuilder().setFieldName("id")))
+            .build();
+    Partition partition = new Partition(new byte[] {1}, ASSET_INFO, serverQuery);
+
+    for (Encoding encoding : List.of(Encoding.PROTO, Encoding.PROTO_COMPRESSED)) {
+      assertPartition(
+          ResultStreamId.decodePartition(ResultStreamId.encodePartition(partition, encoding)),
+          partition);
+    }
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ResultStreamId.encodePartition(partition, Encoding.JSON));
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            ResultStreamId.encodePartitions(
+                List.of(partition, new Partition(new byte[] {2}, null)), Encoding.PROTO));
+  }
+
+  @Test
+  public void encodePartitions_invalid() {
+    Partition partition = new Partition(new byte[] {1}, ASSET_INFO);
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ResultStreamId.encodePartitions(List.of(), Encoding.PROTO));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ResultStreamId.encodePartitions(List.of(partition, partition), Encoding.JSON));
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            ResultStreamId.encodePartitions(
+                List.of(partition, new Partition(null, ASSET_INFO)), Encoding.PROTO));
+  }
+
+  private static void assertPartition(Partition actual, Partition expected) {
+    assertThat(actual.query()).isEqualTo(expected.query());
+    assertThat(actual.assetInfo()).isEqualTo(expected.assetInfo());
+    assertThat(actual.serverQuery()).isEqualTo(expected.serverQuery());
+  }
+}
@@ -13,6 +13,7 @@ import java.net.URL;
 import java.util.Enumeration;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.Test;
 
 /** Unit tests for the {@link CombineClassLoader}. */
@@ -79,6 +80,48 @@ public class CombineClassLoaderTest {
     assertTrue(called.get());
   }
 
+  @Test
+  public void load_missingClassCached() {
+    AtomicInteger calls = new AtomicInteger();
+    CombineClassLoader cl =
+        new CombineClassLoader(
+            "test",
+            ClassLoader.getPlatformClassLoader(),
+            new ClassLoader() {
+              @Override
+              public Class<?> loadClass(String name) throws ClassNotFoundException {
+                calls.incrementAndGet();
+                throw new ClassNotFoundException(name);
+              }
+            });
+
+    assertThrows(ClassNotFoundException.class, () -> cl.loadClass("some.missing.package.Class"));
+    assertThrows(ClassNotFoundException.class, () -> cl.loadClass("some.missing.package.Class"));
+    assertThat(calls.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void load_classFromCachedDelegate() throws ClassNotFoundException {
+    AtomicInteger missCalls = new AtomicInteger();
+    CombineClassLoader cl =
+        new CombineClassLoader(
+            "test",
+            ClassLoader.getPlatformClassLoader(),
+            new ClassLoader() {
+              @Override
+              public Class<?> loadClass(String name) throws ClassNotFoundException {
+                missCalls.incrementAndGet();
+                throw new ClassNotFoundException(name);
+              }
+            },
+            CombineClassLoaderTest.class.getClassLoader());
+
+    String className = CombineClassLoaderTest.class.getName();
+    assertThat(cl.loadClass(className)).isEqualTo(CombineClassLoaderTest.class);
+    assertThat(cl.loadClass(className)).isEqualTo(CombineClassLoaderTest.class);
+    assertThat(missCalls.get()).isEqualTo(1);
+  }
+
   @Test
   public void get_platformResource() throws IOException {
     AtomicBoolean called = new AtomicBoolean();
@@ -0,0 +1,68 @@
+package com.google.cloud.datafusion.common.lang;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for the {@link FilterClassLoader}. */
+public class FilterClassLoaderTest {
+
+  @Test
+  public void load_platformClass() throws ClassNotFoundException {
+    CountingClassLoader parent = new CountingClassLoader();
+    FilterClassLoader cl = new FilterClassLoader(parent, name -> false);
+
+    assertThat(cl.loadClass(String.class.getName())).isEqualTo(String.class);
+    assertThat(cl.loadClass(java.sql.Date.class.getName())).isEqualTo(java.sql.Date.class);
+    assertThat(parent.calls.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void load_permittedClass() throws ClassNotFoundException {
+    CountingClassLoader parent = new CountingClassLoader();
+    FilterClassLoader cl =
+        new FilterClassLoader(parent, name -> name.startsWith("com.google.cloud.datafusion."));
+
+    assertThat(cl.loadClass(FilterClassLoaderTest.class.getName()))
+        .isEqualTo(FilterClassLoaderTest.class);
+    assertThat(parent.calls.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void load_notPermittedClass() {
+    CountingClassLoader parent = new CountingClassLoader();
+    FilterClassLoader cl = new FilterClassLoader(parent, name -> false);
+
+    assertThrows(
+        ClassNotFoundException.class, () -> cl.loadClass(FilterClassLoaderTest.class.getName()));
+    assertThat(parent.calls.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void load_missingClassCached() {
+    CountingClassLoader parent = new CountingClassLoader();
+    FilterClassLoader cl = new FilterClassLoader(parent, name -> true);
+
+    assertThrows(ClassNotFoundException.class, () -> cl.loadClass("some.missing.package.Class"));
+    assertThrows(ClassNotFoundException.class, () -> cl.loadClass("some.missing.package.Class"));
+    assertThat(parent.calls.get()).isEqualTo(1);
+  }
+
+  /** A {@link ClassLoader} that counts the number of class loading calls. */
+  private static final class CountingClassLoader extends ClassLoader {
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    CountingClassLoader() {
+      super(FilterClassLoaderTest.class.getClassLoader());
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      calls.incrementAndGet();
+      return super.loadClass(name, resolve);
+    }
+  }
+}
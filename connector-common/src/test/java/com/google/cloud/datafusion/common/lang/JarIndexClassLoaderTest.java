@@ -0,0 +1,278 @@
+package com.google.cloud.datafusion.common.lang;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.CodeSigner;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipFile;
+import jdk.security.jarsigner.JarSigner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Unit tests for the {@link JarIndexClassLoader}. */
+public class JarIndexClassLoaderTest {
+
+  @TempDir Path tempDir;
+
+  @Test
+  public void load_classFromJar() throws Exception {
+    Path libDir = Files.createDirectories(tempDir.resolve("lib"));
+    createJar(libDir.resolve("sample.jar"), "1.2.3", classEntries(Sample.class, Other.class));
+
+    try (JarIndexClassLoader cl =
+        new JarIndexClassLoader("test", tempDir, ClassLoader.getPlatformClassLoader())) {
+      Class<?> cls = cl.loadClass(Sample.class.getName());
+      assertThat(cls).isNotEqualTo(Sample.class);
+      assertThat(cls.getClassLoader()).isSameInstanceAs(cl);
+      assertThat(cls.getPackage().getImplementationVersion()).isEqualTo("1.2.3");
+      assertThat(cls.getProtectionDomain().getCodeSource().getLocation())
+          .isEqualTo(libDir.resolve("sample.jar").toUri().toURL());
+      assertThat(cl.loadClass(Sample.class.getName())).isSameInstanceAs(cls);
+    }
+  }
+
+  @Test
+  public void load_classFromDirectory() throws Exception {
+    Map<String, byte[]> entries = classEntries(Sample.class);
+    for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+      Path file = tempDir.resolve(entry.getKey());
+      Files.createDirectories(file.getParent());
+      Files.write(file, entry.getValue());
+    }
+
+    try (JarIndexClassLoader cl =
+        new JarIndexClassLoader("test", tempDir, ClassLoader.getPlatformClassLoader())) {
+      Class<?> cls = cl.loadClass(Sample.class.getName());
+      assertThat(cls.getClassLoader()).isSameInstanceAs(cl);
+      assertThat(cls.getProtectionDomain().getCodeSource().getLocation())
+          .isEqualTo(tempDir.toUri().toURL());
+    }
+  }
+
+  @Test
+  public void load_classFromSignedJar() throws Exception {
+    Path unsignedJar = tempDir.resolve("unsigned.jar.tmp");
+    createJar(unsignedJar, null, classEntries(Sample.class));
+    Path libDir = Files.createDirectories(tempDir.resolve("lib"));
+    signJar(unsignedJar, libDir.resolve("signed.jar"));
+
+    try (JarIndexClassLoader cl =
+        new JarIndexClassLoader("test", libDir, ClassLoader.getPlatformClassLoader())) {
+      Class<?> cls = cl.loadClass(Sample.class.getName());
+      CodeSigner[] signers = cls.getProtectionDomain().getCodeSource().getCodeSigners();
+      assertNotNull(signers);
+      assertThat(signers).hasLength(1);
+      X509Certificate certificate =
+          (X509Certificate) signers[0].getSignerCertPath().getCertificates().get(0);
+      assertThat(certificate.getSubjectX500Principal().getName()).isEqualTo("CN=test");
+    }
+  }
+
+  @Test
+  public void load_classFromSealedJar() throws Exception {
+    Manifest manifest = createManifest(null);
+    manifest.getMainAttributes().put(Attributes.Name.SEALED, "true");
+    writeJar(tempDir.resolve("a.jar"), manifest, classEntries(Sample.class));
+    createJar(tempDir.resolve("b.jar"), null, classEntries(Other.class));
+
+    try (JarIndexClassLoader cl =
+        new JarIndexClassLoader("test", tempDir, ClassLoader.getPlatformClassLoader())) {
+      Class<?> cls = cl.loadClass(Sample.class.getName());
+      assertThat(cls.getPackage().isSealed(tempDir.resolve("a.jar").toUri().toURL())).isTrue();
+      // Classes of a sealed package can only come from the jar that seals it
+      assertThrows(SecurityException.class, () -> cl.loadClass(Other.class.getName()));
+    }
+  }
+
+  @Test
+  public void load_missingClass() throws IOException {
+    createJar(tempDir.resolve("sample.jar"), null, classEntries(Sample.class));
+
+    try (JarIndexClassLoader cl =
+        new JarIndexClassLoader("test", tempDir, ClassLoader.getPlatformClassLoader())) {
+      assertThrows(ClassNotFoundException.class, () -> cl.loadClass("some.missing.Class"));
+      // Same package as a class in the jar, but not in the jar
+      String className = JarIndexClassLoaderTest.class.getName();
+      assertThrows(ClassNotFoundException.class, () -> cl.loadClass(className));
+    }
+  }
+
+  @Test
+  public void load_parentFirst() throws Exception {
+    createJar(tempDir.resolve("sample.jar"), null, classEntries(Sample.class));
+
+    try (JarIndexClassLoader cl =
+        new JarIndexClassLoader("test", tempDir, getClass().getClassLoader())) {
+      assertThat(cl.loadClass(Sample.class.getName())).isEqualTo(Sample.class);
+    }
+  }
+
+  @Test
+  public void load_concurrently() throws Exception {
+    createJar(tempDir.resolve("sample.jar"), null, classEntries(Sample.class, Other.class));
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try (JarIndexClassLoader cl =
+        new JarIndexClassLoader("test", tempDir, ClassLoader.getPlatformClassLoader())) {
+      Callable<Class<?>> task = () -> cl.loadClass(Other.class.getName());
+      List<Future<Class<?>>> futures = executor.invokeAll(Collections.nCopies(32, task));
+      Class<?> cls = futures.get(0).get();
+      for (Future<Class<?>> future : futures) {
+        assertThat(future.get()).isSameInstanceAs(cls);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void get_resources() throws IOException {
+    Files.writeString(tempDir.resolve("test.txt"), "dir", UTF_8);
+    createJar(tempDir.resolve("a.jar"), null, Map.of("test.txt", "a".getBytes(UTF_8)));
+    createJar(tempDir.resolve("b.jar"), null, Map.of("nested/test.txt", "b".getBytes(UTF_8)));
+
+    try (JarIndexClassLoader cl =
+        new JarIndexClassLoader("test", tempDir, ClassLoader.getPlatformClassLoader())) {
+      URL resource = cl.getResource("test.txt");
+      assertThat(resource).isEqualTo(tempDir.resolve("test.txt").toUri().toURL());
+      assertThat(Collections.list(cl.getResources("test.txt"))).hasSize(2);
+
+      try (InputStream is = cl.getResourceAsStream("nested/test.txt")) {
+        assertNotNull(is);
+        assertThat(new String(is.readAllBytes(), UTF_8)).isEqualTo("b");
+      }
+      try (InputStream is = cl.getResource("nested/test.txt").openStream()) {
+        assertThat(new String(is.readAllBytes(), UTF_8)).isEqualTo("b");
+      }
+      assertNull(cl.getResource("missing.txt"));
+      assertNull(cl.getResourceAsStream("nested/missing.txt"));
+    }
+  }
+
+  @Test
+  public void get_multiReleaseResources() throws IOException {
+    Manifest manifest = createManifest(null);
+    manifest.getMainAttributes().put(Attributes.Name.MULTI_RELEASE, "true");
+    Map<String, byte[]> entries = new LinkedHashMap<>();
+    entries.put("test.txt", "base".getBytes(UTF_8));
+    entries.put("META-INF/versions/9/test.txt", "9".getBytes(UTF_8));
+    entries.put("META-INF/versions/9/versioned/test.txt", "versioned".getBytes(UTF_8));
+    writeJar(tempDir.resolve("a.jar"), manifest, entries);
+
+    try (JarIndexClassLoader cl =
+        new JarIndexClassLoader("test", tempDir, ClassLoader.getPlatformClassLoader())) {
+      try (InputStream is = cl.getResourceAsStream("test.txt")) {
+        assertNotNull(is);
+        assertThat(new String(is.readAllBytes(), UTF_8)).isEqualTo("9");
+      }
+      try (InputStream is = cl.getResourceAsStream("versioned/test.txt")) {
+        assertNotNull(is);
+        assertThat(new String(is.readAllBytes(), UTF_8)).isEqualTo("versioned");
+      }
+    }
+  }
+
+  private static Map<String, byte[]> classEntries(Class<?>... classes) throws IOException {
+    Map<String, byte[]> entries = new LinkedHashMap<>();
+    for (Class<?> cls : classes) {
+      String name = cls.getName().replace('.', '/') + ".class";
+      try (InputStream is = cls.getClassLoader().getResourceAsStream(name)) {
+        entries.put(name, is.readAllBytes());
+      }
+    }
+    return entries;
+  }
+
+  private static Manifest createManifest(String version) {
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    if (version != null) {
+      manifest.getMainAttributes().put(Attributes.Name.IMPLEMENTATION_VERSION, version);
+    }
+    return manifest;
+  }
+
+  private static void createJar(Path jarFile, String version, Map<String, byte[]> entries)
+      throws IOException {
+    writeJar(jarFile, createManifest(version), entries);
+  }
+
+  private static void writeJar(Path jarFile, Manifest manifest, Map<String, byte[]> entries)
+      throws IOException {
+    try (OutputStream os = Files.newOutputStream(jarFile);
+        JarOutputStream jarOutput = new JarOutputStream(os, manifest)) {
+      for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+        jarOutput.putNextEntry(new JarEntry(entry.getKey()));
+        jarOutput.write(entry.getValue());
+        jarOutput.closeEntry();
+      }
+    }
+  }
+
+  /** Signs a jar with a new self-signed key of the {@code keytool} of the running JDK. */
+  private void signJar(Path unsignedJar, Path signedJar) throws Exception {
+    Path keyStoreFile = tempDir.resolve("keystore.p12");
+    char[] password = "password".toCharArray();
+    Process keytool =
+        new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "keytool").toString(),
+                "-genkeypair",
+                "-keystore",
+                keyStoreFile.toString(),
+                "-storetype",
+                "PKCS12",
+                "-storepass",
+                new String(password),
+                "-alias",
+                "test",
+                "-keyalg",
+                "RSA",
+                "-dname",
+                "CN=test")
+            .redirectErrorStream(true)
+            .start();
+    String output = new String(keytool.getInputStream().readAllBytes(), UTF_8);
+    assertWithMessage(output).that(keytool.waitFor()).isEqualTo(0);
+
+    KeyStore keyStore = KeyStore.getInstance(keyStoreFile.toFile(), password);
+    JarSigner signer =
+        new JarSigner.Builder(
+                (KeyStore.PrivateKeyEntry)
+                    keyStore.getEntry("test", new KeyStore.PasswordProtection(password)))
+            .build();
+    try (ZipFile zipFile = new ZipFile(unsignedJar.toFile());
+        OutputStream os = Files.newOutputStream(signedJar)) {
+      signer.sign(zipFile, os);
+    }
+  }
+
+  /** A class without dependencies that is packaged into jars for the tests. */
+  public static final class Sample {}
+
+  /** Another class without dependencies that is packaged into jars for the tests. */
+  public static final class Other {}
+}
@@ -10,10 +10,21 @@ import static org.apache.maven.plugins.annotations.ResolutionScope.COMPILE_PLUS_
 import static org.objectweb.asm.ClassReader.SKIP_CODE;
 import static org.objectweb.asm.ClassReader.SKIP_DEBUG;
 import static org.objectweb.asm.ClassReader.SKIP_FRAMES;
+import static org.objectweb.asm.Opcodes.ACC_FINAL;
 import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ACC_SUPER;
+import static org.objectweb.asm.Opcodes.ALOAD;
+import static org.objectweb.asm.Opcodes.ARETURN;
 import static org.objectweb.asm.Opcodes.ASM9;
+import static org.objectweb.asm.Opcodes.CHECKCAST;
+import static org.objectweb.asm.Opcodes.DUP;
+import static org.objectweb.asm.Opcodes.INVOKESPECIAL;
+import static org.objectweb.asm.Opcodes.INVOKESTATIC;
+import static org.objectweb.asm.Opcodes.NEW;
+import static org.objectweb.asm.Opcodes.RETURN;
 
 import com.google.cloud.bigquery.federation.v1alpha1.DataSource.Capability;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionSignatureId;
 import com.google.cloud.bigquery.federation.v1alpha1.TypeKind;
 import com.google.cloud.connector.Connector;
 import com.google.cloud.connector.ConnectorConfig;
@@ -25,12 +36,21 @@ import com.google.cloud.connector.api.annotation.DataSource;
 import com.google.cloud.connector.api.annotation.Parameter;
 import com.google.cloud.connector.api.annotation.Semantic;
 import com.google.cloud.connector.api.annotation.Semantic.Category;
+import com.google.cloud.connector.api.factory.ConnectorFactory;
+import com.google.cloud.connector.api.factory.ParameterValues;
+import com.google.cloud.connector.layout.ConnectorLayout;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.primitives.Primitives;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.google.protobuf.Duration;
+import com.google.protobuf.Struct;
 import com.google.protobuf.TextFormat;
 import java.io.File;
 import java.io.FileInputStream;
@@ -43,10 +63,14 @@ import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
@@ -65,6 +89,8 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.project.MavenProject;
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.AnnotationNode;
 import org.objectweb.asm.tree.ClassNode;
@@ -82,12 +108,26 @@ public class ConnectorGeneratorMojo extends AbstractMojo {
   private static final String VALUE = "value";
   private static final String CUSTOM_SUBCATEGORY = "customSubcategory";
   private static final String CAPABILITIES = "capabilities";
+  private static final String FUNCTIONS = "functions";
   private static final String MAX_STALENESS_MILLIS = "maxStalenessMillis";
 
   private static final Type DATA_SOURCE_TYPE = Type.getType(DataSource.class);
   private static final Type CONFIG_TYPE = Type.getType(Config.class);
   private static final Type PARAMETER_TYPE = Type.getType(Parameter.class);
   private static final Type SEMANTIC_TYPE = Type.getType(Semantic.class);
+  private static final Type FACTORY_TYPE = Type.getType(ConnectorFactory.class);
+  private static final Type PARAMETER_VALUES_TYPE = Type.getType(ParameterValues.class);
+  private static final Type STRUCT_TYPE = Type.getType(Struct.class);
+  private static final Type STRING_TYPE = Type.getType(String.class);
+  private static final Type OBJECT_TYPE = Type.getType(Object.class);
+  private static final String NULLABLE_DESCRIPTOR = "Ljavax/annotation/Nullable;";
+
+  /** The directory in the connector jar for the GraalVM native image reachability metadata. */
+  @VisibleForTesting
+  static final String NATIVE_IMAGE_METADATA_DIR =
+      "META-INF/native-image/com.google.cloud.connector";
+
+  private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
 
   @org.apache.maven.plugins.annotations.Parameter(
       defaultValue = "${project}",
@@ -109,6 +149,16 @@ public class ConnectorGeneratorMojo extends AbstractMojo {
   @org.apache.maven.plugins.annotations.Parameter(property = "connector.output.directory")
   private String outputDirectory;
 
+  @org.apache.maven.plugins.annotations.Parameter(
+      property = "connector.native.image",
+      defaultValue = "false")
+  private boolean nativeImage;
+
+  @org.apache.maven.plugins.annotations.Parameter(
+      property = "connector.generate.factory",
+      defaultValue = "true")
+  private boolean generateFactory;
+
   /**
    * Creates a new instance, only used for testing.
    *
@@ -121,6 +171,51 @@ public class ConnectorGeneratorMojo extends AbstractMojo {
   @VisibleForTesting
   public static ConnectorGeneratorMojo create(
       Path targetDir, Path outputDir, String connectorClass, String protoFileName) {
+    return create(targetDir, outputDir, connectorClass, protoFileName, false);
+  }
+
+  /**
+   * Creates a new instance, only used for testing.
+   *
+   * @param targetDir correspond to the ${project.build.directory}
+   * @param outputDir correspond to the ${project.build.outputDirectory}
+   * @param connectorClass name of the connector class to inspect
+   * @param protoFileName file name of the output text proto
+   * @param nativeImage whether to generate the static registry entry and the native image
+   *     reachability metadata
+   * @return a new mojo instance
+   */
+  @VisibleForTesting
+  public static ConnectorGeneratorMojo create(
+      Path targetDir,
+      Path outputDir,
+      String connectorClass,
+      String protoFileName,
+      boolean nativeImage) {
+    return create(targetDir, outputDir, connectorClass, protoFileName, nativeImage, true);
+  }
+
+  /**
+   * Creates a new instance, only used for testing.
+   *
+   * @param targetDir correspond to the ${project.build.directory}
+   * @param outputDir correspond to the ${project.build.outputDirectory}
+   * @param connectorClass name of the connector class to inspect
+   * @param protoFileName file name of the output text proto
+   * @param nativeImage whether to generate the static registry entry and the native image
+   *     reachability metadata
+   * @param generateFactory whether to generate the {@link ConnectorFactory} class, without which
+   *     the connector is instantiated reflectively
+   * @return a new mojo instance
+   */
+  @VisibleForTesting
+  public static ConnectorGeneratorMojo create(
+      Path targetDir,
+      Path outputDir,
+      String connectorClass,
+      String protoFileName,
+      boolean nativeImage,
+      boolean generateFactory) {
     Build build = new Build();
     build.setDirectory(targetDir.toString());
     build.setOutputDirectory(outputDir.toString());
@@ -162,7 +257,8 @@ public class ConnectorGeneratorMojo extends AbstractMojo {
     project.setArtifacts(artifacts);
     project.setBuild(build);
 
-    return new ConnectorGeneratorMojo(project, connectorClass, protoFileName);
+    return new ConnectorGeneratorMojo(
+        project, connectorClass, protoFileName, nativeImage, generateFactory);
   }
 
   @SuppressWarnings("unused")
@@ -171,10 +267,16 @@ public class ConnectorGeneratorMojo extends AbstractMojo {
   }
 
   private ConnectorGeneratorMojo(
-      MavenProject project, String connectorClass, String protoFileName) {
+      MavenProject project,
+      String connectorClass,
+      String protoFileName,
+      boolean nativeImage,
+      boolean generateFactory) {
     this.project = project;
     this.connectorClass = connectorClass;
     this.protoFileName = protoFileName;
+    this.nativeImage = nativeImage;
+    this.generateFactory = generateFactory;
   }
 
   @Override
@@ -191,8 +293,16 @@ public class ConnectorGeneratorMojo extends AbstractMojo {
                   "Processing data source class '%s', output to '%s'",
                   connectorClass, outputProtoPath));
 
+      ClassNode classNode = loadClassNode(connectorClass);
+      Connector connector = createConnector(classNode);
       try (Writer writer = Files.newBufferedWriter(outputProtoPath)) {
-        TextFormat.printer().print(createConnector(loadClassNode(connectorClass)), writer);
+        TextFormat.printer().print(connector, writer);
+      }
+      if (generateFactory) {
+        generateFactory(connector, classNode);
+      }
+      if (nativeImage) {
+        generateNativeImageMetadata(connector, classNode);
       }
     } catch (IOException e) {
       throw new MojoExecutionException(
@@ -214,6 +324,11 @@ public class ConnectorGeneratorMojo extends AbstractMojo {
         getAnnotationValue(dataSourceAnnotation, VALUE, Object::toString)
             .filter(s -> !s.isBlank())
             .orElse(getSimpleClassName(classNode));
+    try {
+      ConnectorLayout.checkDatasourceId(id);
+    } catch (IllegalArgumentException e) {
+      throw new MojoExecutionException(e.getMessage(), e);
+    }
 
     // Create the ConnectorConfig based on the parameters in the constructor
     ConnectorConfig connectorConfig = createConnectorConfig(constructor);
@@ -226,6 +341,352 @@ public class ConnectorGeneratorMojo extends AbstractMojo {
         .build();
   }
 
+  /**
+   * Generates the files for compiling the connector into a GraalVM native image together with the
+   * connector server. The files are written to the build output directory so that they are
+   * packaged into the connector jar. They are:
+   *
+   * <ul>
+   *   <li>The static registry entry, which is a copy of the connector specification under {@link
+   *       ConnectorLayout#STATIC_REGISTRY_DIR}.
+   *   <li>The reflection configuration for the {@link DataSource} and {@link Config} constructors
+   *       and the record classes used for the configurations, which are accessed reflectively
+   *       when instantiating the connector.
+   *   <li>The resource configuration for including the static registry entry in the image.
+   * </ul>
+   */
+  private void generateNativeImageMetadata(Connector connector, ClassNode classNode)
+      throws IOException, MojoExecutionException {
+    String dataSourceId = connector.getDataSource().getId();
+    Path outputDir = Path.of(project.getBuild().getOutputDirectory());
+
+    String registryEntry = ConnectorLayout.getStaticRegistryEntry(dataSourceId);
+    Files.createDirectories(outputDir.resolve(registryEntry).getParent());
+    try (Writer writer = Files.newBufferedWriter(outputDir.resolve(registryEntry))) {
+      TextFormat.printer().print(connector, writer);
+    }
+
+    Map<String, JsonObject> reflectConfig = new LinkedHashMap<>();
+    MethodNode constructor = findAnnotatedConstructor(DATA_SOURCE_TYPE, classNode);
+    addReflectConfig(classNode, constructor, reflectConfig);
+    if (connector.getConfig().getType() == ConnectorConfig.Type.CUSTOM_CLASS) {
+      addConfigReflectConfig(loadClassNode(connector.getConfig().getClassName()), reflectConfig);
+    }
+    if (generateFactory) {
+      JsonObject constructorConfig = new JsonObject();
+      constructorConfig.addProperty("name", "<init>");
+      constructorConfig.add("parameterTypes", new JsonArray());
+      JsonArray methods = new JsonArray();
+      methods.add(constructorConfig);
+      String factoryClassName = ConnectorFactory.getFactoryClassName(connectorClass);
+      JsonObject entry = new JsonObject();
+      entry.addProperty("name", factoryClassName);
+      entry.add("methods", methods);
+      reflectConfig.put(factoryClassName, entry);
+    }
+
+    JsonArray includes = new JsonArray();
+    JsonObject pattern = new JsonObject();
+    pattern.addProperty("pattern", "\\Q" + registryEntry + "\\E");
+    includes.add(pattern);
+    JsonObject resources = new JsonObject();
+    resources.add("includes", includes);
+    JsonObject resourceConfig = new JsonObject();
+    resourceConfig.add("resources", resources);
+
+    JsonArray reflectConfigArray = new JsonArray();
+    reflectConfig.values().forEach(reflectConfigArray::add);
+
+    Path metadataDir =
+        Files.createDirectories(outputDir.resolve(NATIVE_IMAGE_METADATA_DIR).resolve(dataSourceId));
+    writeJson(metadataDir.resolve("reflect-config.json"), reflectConfigArray);
+    writeJson(metadataDir.resolve("resource-config.json"), resourceConfig);
+    getLog()
+        .info(
+            String.format(
+                "Generated static registry entry '%s' and native image metadata in '%s'",
+                registryEntry, metadataDir));
+  }
+
+  /**
+   * Adds the reflection configuration for a configuration class, which is either a {@code record}
+   * class or a class with a public constructor annotated with {@link Config}.
+   */
+  private void addConfigReflectConfig(ClassNode classNode, Map<String, JsonObject> reflectConfig)
+      throws IOException, MojoExecutionException {
+    addReflectConfig(classNode, findConfigConstructor(classNode), reflectConfig);
+  }
+
+  /**
+   * Finds the constructor for creating instances of a configuration class. It is the canonical
+   * constructor for a {@code record} class; otherwise, the public constructor annotated with {@link
+   * Config}.
+   */
+  private MethodNode findConfigConstructor(ClassNode classNode) throws MojoExecutionException {
+    if (classNode.recordComponents == null) {
+      return findAnnotatedConstructor(CONFIG_TYPE, classNode);
+    }
+    String descriptor =
+        classNode.recordComponents.stream()
+            .map(component -> component.descriptor)
+            .collect(Collectors.joining("", "(", ")V"));
+    return classNode.methods.stream()
+        .filter(m -> m.name.equals("<init>") && m.desc.equals(descriptor))
+        .findFirst()
+        .orElseThrow(
+            () ->
+                new MojoExecutionException(
+                    "Missing canonical constructor in record class "
+                        + Type.getObjectType(classNode.name).getClassName()));
+  }
+
+  /**
+   * Adds the reflection configuration for the given class and constructor, followed by the
+   * configuration of the record classes in the constructor arguments.
+   */
+  private void addReflectConfig(
+      ClassNode classNode, MethodNode constructor, Map<String, JsonObject> reflectConfig)
+      throws IOException, MojoExecutionException {
+    String className = Type.getObjectType(classNode.name).getClassName();
+    if (reflectConfig.containsKey(className)) {
+      return;
+    }
+
+    JsonArray parameterTypes = new JsonArray();
+    Type[] argumentTypes = Type.getArgumentTypes(constructor.desc);
+    for (Type argumentType : argumentTypes) {
+      parameterTypes.add(argumentType.getClassName());
+    }
+    JsonObject method = new JsonObject();
+    method.addProperty("name", "<init>");
+    method.add("parameterTypes", parameterTypes);
+    JsonArray methods = new JsonArray();
+    methods.add(method);
+
+    JsonObject entry = new JsonObject();
+    entry.addProperty("name", className);
+    entry.addProperty("queryAllPublicConstructors", true);
+    if (classNode.recordComponents != null) {
+      // Record components are accessed through the fields and accessor methods
+      entry.addProperty("allDeclaredFields", true);
+      entry.addProperty("allPublicMethods", true);
+    }
+    entry.add("methods", methods);
+    reflectConfig.put(className, entry);
+
+    for (Type argumentType : argumentTypes) {
+      if (argumentType.getSort() != Type.OBJECT) {
+        continue;
+      }
+      ClassNode argumentClassNode = loadClassNode(argumentType.getClassName());
+      if (argumentClassNode.recordComponents != null) {
+        addConfigReflectConfig(argumentClassNode, reflectConfig);
+      }
+    }
+  }
+
+  /**
+   * Generates the {@link ConnectorFactory} class of the connector to the build output directory,
+   * which is packaged into the connector jar together with the connector classes.
+   *
+   * <p>The factory invokes the {@link DataSource} constructor with arguments converted from the
+   * data source parameters through {@link ParameterValues}. Constructor arguments are matched with
+   * the parameters in the connector specification in order, with record arguments expanded
+   * recursively, which is the same as the reflective instantiation done by the connector server
+   * for connectors without a factory.
+   */
+  private void generateFactory(Connector connector, ClassNode classNode)
+      throws IOException, MojoExecutionException {
+    String factoryName = ConnectorFactory.getFactoryClassName(classNode.name);
+    Type connectorType = Type.getObjectType(classNode.name);
+
+    ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    classWriter.visit(
+        classNode.version,
+        ACC_PUBLIC | ACC_FINAL | ACC_SUPER,
+        factoryName,
+        String.format(
+            "%sL%s<%s>;",
+            OBJECT_TYPE.getDescriptor(),
+            FACTORY_TYPE.getInternalName(),
+            connectorType.getDescriptor()),
+        OBJECT_TYPE.getInternalName(),
+        new String[] {FACTORY_TYPE.getInternalName()});
+
+    MethodVisitor init = classWriter.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+    init.visitCode();
+    init.visitVarInsn(ALOAD, 0);
+    init.visitMethodInsn(INVOKESPECIAL, OBJECT_TYPE.getInternalName(), "<init>", "()V", false);
+    init.visitInsn(RETURN);
+    init.visitMaxs(0, 0);
+    init.visitEnd();
+
+    MethodVisitor create =
+        classWriter.visitMethod(
+            ACC_PUBLIC,
+            "create",
+            Type.getMethodDescriptor(OBJECT_TYPE, STRUCT_TYPE),
+            null,
+            null);
+    create.visitCode();
+    Iterator<com.google.cloud.bigquery.federation.v1alpha1.Parameter> paramIterator =
+        connector.getDataSource().getParametersList().iterator();
+    MethodNode constructor = findAnnotatedConstructor(DATA_SOURCE_TYPE, classNode);
+    switch (connector.getConfig().getType()) {
+      case MULTI_PARAMS -> generateNew(create, classNode, constructor, paramIterator);
+      case CUSTOM_CLASS -> {
+        // Create an instance of the config class as the only argument of the connector constructor
+        create.visitTypeInsn(NEW, classNode.name);
+        create.visitInsn(DUP);
+        ClassNode configClassNode = loadClassNode(connector.getConfig().getClassName());
+        generateNew(
+            create, configClassNode, findConfigConstructor(configClassNode), paramIterator);
+        create.visitMethodInsn(INVOKESPECIAL, classNode.name, "<init>", constructor.desc, false);
+      }
+      default -> throw new MojoExecutionException("ConnectorConfig type is not set");
+    }
+    create.visitInsn(ARETURN);
+    create.visitMaxs(0, 0);
+    create.visitEnd();
+    classWriter.visitEnd();
+
+    Path factoryFile = Path.of(project.getBuild().getOutputDirectory(), factoryName + ".class");
+    Files.createDirectories(factoryFile.getParent());
+    Files.write(factoryFile, classWriter.toByteArray());
+    getLog().info(String.format("Generated connector factory class at '%s'", factoryFile));
+  }
+
+  /**
+   * Generates the instructions for creating a new instance of the given class through the given
+   * constructor, which leaves the new instance on the operand stack.
+   */
+  private void generateNew(
+      MethodVisitor methodVisitor,
+      ClassNode classNode,
+      MethodNode constructor,
+      Iterator<com.google.cloud.bigquery.federation.v1alpha1.Parameter> paramIterator)
+      throws IOException, MojoExecutionException {
+    methodVisitor.visitTypeInsn(NEW, classNode.name);
+    methodVisitor.visitInsn(DUP);
+
+    Type[] argumentTypes = Type.getArgumentTypes(constructor.desc);
+    String description =
+        Arrays.stream(argumentTypes)
+            .map(Type::getClassName)
+            .collect(
+                Collectors.joining(
+                    ",",
+                    "public " + Type.getObjectType(classNode.name).getClassName() + "(",
+                    ")"));
+    for (int i = 0; i < argumentTypes.length; i++) {
+      Type argumentType = argumentTypes[i];
+      if (argumentType.getSort() == Type.OBJECT) {
+        ClassNode argumentClassNode = loadClassNode(argumentType.getClassName());
+        if (argumentClassNode.recordComponents != null) {
+          generateNew(
+              methodVisitor,
+              argumentClassNode,
+              findConfigConstructor(argumentClassNode),
+              paramIterator);
+          continue;
+        }
+      }
+      checkArgument(paramIterator.hasNext(), "Missing parameter information");
+      generateArgument(
+          methodVisitor,
+          argumentType,
+          paramIterator.next().getId(),
+          hasNullable(constructor, i),
+          i,
+          description);
+    }
+    methodVisitor.visitMethodInsn(INVOKESPECIAL, classNode.name, "<init>", constructor.desc, false);
+  }
+
+  /**
+   * Generates the instructions for converting the value of a data source parameter into a
+   * constructor argument of the given type, which leaves the argument on the operand stack.
+   */
+  private static void generateArgument(
+      MethodVisitor methodVisitor,
+      Type argumentType,
+      String parameterId,
+      boolean nullable,
+      int index,
+      String constructorDescription) {
+    methodVisitor.visitVarInsn(ALOAD, 1);
+    methodVisitor.visitLdcInsn(parameterId);
+
+    String primitiveGetter = getPrimitiveGetter(argumentType);
+    if (primitiveGetter != null) {
+      // Primitive arguments take the default value for missing parameters, hence never null
+      methodVisitor.visitMethodInsn(
+          INVOKESTATIC,
+          PARAMETER_VALUES_TYPE.getInternalName(),
+          primitiveGetter,
+          Type.getMethodDescriptor(argumentType, STRUCT_TYPE, STRING_TYPE),
+          false);
+      return;
+    }
+
+    methodVisitor.visitLdcInsn(argumentType);
+    methodVisitor.visitMethodInsn(
+        INVOKESTATIC,
+        PARAMETER_VALUES_TYPE.getInternalName(),
+        "getObject",
+        Type.getMethodDescriptor(
+            OBJECT_TYPE, STRUCT_TYPE, STRING_TYPE, Type.getType(Class.class)),
+        false);
+    if (!nullable) {
+      methodVisitor.visitLdcInsn(parameterId);
+      methodVisitor.visitLdcInsn(index);
+      methodVisitor.visitLdcInsn(constructorDescription);
+      methodVisitor.visitMethodInsn(
+          INVOKESTATIC,
+          PARAMETER_VALUES_TYPE.getInternalName(),
+          "checkNotNull",
+          Type.getMethodDescriptor(
+              OBJECT_TYPE, OBJECT_TYPE, STRING_TYPE, Type.INT_TYPE, STRING_TYPE),
+          false);
+    }
+    methodVisitor.visitTypeInsn(CHECKCAST, argumentType.getInternalName());
+  }
+
+  /**
+   * Returns the name of the {@link ParameterValues} method for getting a primitive value of the
+   * given type, or {@code null} if it is not a primitive type.
+   */
+  @Nullable
+  private static String getPrimitiveGetter(Type type) {
+    return switch (type.getSort()) {
+      case Type.BOOLEAN -> "getBoolean";
+      case Type.CHAR -> "getChar";
+      case Type.BYTE -> "getByte";
+      case Type.SHORT -> "getShort";
+      case Type.INT -> "getInt";
+      case Type.LONG -> "getLong";
+      case Type.FLOAT -> "getFloat";
+      case Type.DOUBLE -> "getDouble";
+      default -> null;
+    };
+  }
+
+  /** Returns whether the argument at the given index is annotated with {@code Nullable}. */
+  private static boolean hasNullable(MethodNode constructor, int index) {
+    List<AnnotationNode>[] annotations = constructor.visibleParameterAnnotations;
+    if (annotations == null || index >= annotations.length || annotations[index] == null) {
+      return false;
+    }
+    return annotations[index].stream()
+        .anyMatch(annotation -> NULLABLE_DESCRIPTOR.equals(annotation.desc));
+  }
+
+  private static void writeJson(Path path, JsonElement json) throws IOException {
+    try (Writer writer = Files.newBufferedWriter(path)) {
+      GSON.toJson(json, writer);
+    }
+  }
+
   /**
    * Creates a {@link com.google.cloud.bigquery.federation.v1alpha1.DataSource} proto message.
    *
@@ -307,6 +768,9 @@ public class ConnectorGeneratorMojo extends AbstractMojo {
             .setId(dataSourceId)
             .setName(String.format("datasources/%s", dataSourceId))
             .addAllCapabilities(capabilities)
+            .addAllSupportedFunctionSignatures(
+                getAnnotationValue(dataSourceAnnotation, FUNCTIONS, this::getFunctions)
+                    .orElse(EnumSet.noneOf(FunctionSignatureId.class)))
             .addAllParameters(configParameters);
 
     getAnnotationValue(dataSourceAnnotation, MAX_STALENESS_MILLIS, Long.class::cast)
@@ -751,6 +1215,20 @@ public class ConnectorGeneratorMojo extends AbstractMojo {
             .collect(Collectors.toCollection(() -> EnumSet.noneOf(Capability.class)));
   }
 
+  /**
+   * Returns a list of {@link FunctionSignatureId} from the {@link DataSource#functions()}
+   * annotation value, which is a {@link List} of enum values as for {@link
+   * #getCapabilities(Object)}.
+   */
+  private EnumSet<FunctionSignatureId> getFunctions(Object annotationValue) {
+    checkArgument(annotationValue instanceof List, "The functions value must be a List");
+
+    return ((List<?>) annotationValue)
+        .stream()
+            .map(o -> getEnumValue(FunctionSignatureId.class, o))
+            .collect(Collectors.toCollection(() -> EnumSet.noneOf(FunctionSignatureId.class)));
+  }
+
   /**
    * Returns an enum value from the annotation value.
    *
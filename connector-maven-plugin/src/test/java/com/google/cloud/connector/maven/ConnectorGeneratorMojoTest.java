@@ -8,9 +8,13 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import com.google.cloud.connector.Connector;
 import com.google.cloud.connector.api.annotation.Config;
 import com.google.cloud.connector.api.annotation.DataSource;
+import com.google.cloud.connector.api.factory.ConnectorFactory;
+import com.google.cloud.connector.layout.ConnectorLayout;
 import com.google.cloud.connector.maven.sources.AllCapabilitiesDataSource;
 import com.google.cloud.connector.maven.sources.DirectConfigDataSource;
+import com.google.cloud.connector.maven.sources.DummyRecordConfig;
 import com.google.cloud.connector.maven.sources.DummyRecordConfigDataSource;
+import com.google.cloud.connector.maven.sources.InvalidIdDataSource;
 import com.google.cloud.connector.maven.sources.MissingConfig;
 import com.google.cloud.connector.maven.sources.MissingConfigDataSource;
 import com.google.cloud.connector.maven.sources.MissingDataSource;
@@ -18,11 +22,18 @@ import com.google.cloud.connector.maven.sources.MultipleDataSource;
 import com.google.cloud.connector.maven.sources.NoParamDataSource;
 import com.google.cloud.connector.maven.sources.ParamMissingValueDataSource;
 import com.google.cloud.connector.maven.sources.SemanticDataSource;
+import com.google.cloud.connector.maven.sources.SimpleConfig;
 import com.google.cloud.connector.maven.sources.SimpleDataSource;
 import com.google.common.io.Resources;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.protobuf.Struct;
 import com.google.protobuf.TextFormat;
+import com.google.protobuf.Value;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLClassLoader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -130,6 +141,120 @@ public class ConnectorGeneratorMojoTest {
     assertThat(generated).isEqualTo(expected);
   }
 
+  @Test
+  public void generate_nativeImageRecordConfig(@TempDir Path targetDir) throws Exception {
+    Path outputDir = targetDir.resolve("classes");
+    ConnectorGeneratorMojo.create(
+            targetDir,
+            outputDir,
+            DummyRecordConfigDataSource.class.getName(),
+            "dummy.textproto",
+            true)
+        .execute();
+
+    // The static registry entry is the same as the connector specification
+    assertThat(
+            Files.readString(
+                outputDir.resolve(ConnectorLayout.STATIC_REGISTRY_DIR + "/dummy.textproto")))
+        .isEqualTo(Files.readString(targetDir.resolve("dummy.textproto")));
+
+    Path metadataDir =
+        outputDir.resolve(ConnectorGeneratorMojo.NATIVE_IMAGE_METADATA_DIR).resolve("dummy");
+    JsonArray reflectConfig =
+        JsonParser.parseString(Files.readString(metadataDir.resolve("reflect-config.json")))
+            .getAsJsonArray();
+    assertThat(reflectConfig).hasSize(3);
+    assertConstructor(
+        reflectConfig.get(0).getAsJsonObject(),
+        DummyRecordConfigDataSource.class,
+        DummyRecordConfig.class.getName());
+    JsonObject recordConfig = reflectConfig.get(1).getAsJsonObject();
+    assertConstructor(recordConfig, DummyRecordConfig.class, "java.lang.String", "int");
+    assertThat(recordConfig.get("allDeclaredFields").getAsBoolean()).isTrue();
+    assertThat(reflectConfig.get(2).getAsJsonObject().get("name").getAsString())
+        .isEqualTo(
+            ConnectorFactory.getFactoryClassName(DummyRecordConfigDataSource.class.getName()));
+
+    JsonObject resourceConfig =
+        JsonParser.parseString(Files.readString(metadataDir.resolve("resource-config.json")))
+            .getAsJsonObject();
+    assertThat(
+            resourceConfig
+                .getAsJsonObject("resources")
+                .getAsJsonArray("includes")
+                .get(0)
+                .getAsJsonObject()
+                .get("pattern")
+                .getAsString())
+        .isEqualTo("\\QMETA-INF/connectors/dummy.textproto\\E");
+  }
+
+  @Test
+  public void generate_nativeImageClassConfig(@TempDir Path targetDir) throws Exception {
+    Path outputDir = targetDir.resolve("classes");
+    ConnectorGeneratorMojo.create(
+            targetDir, outputDir, SimpleDataSource.class.getName(), "simple.textproto", true)
+        .execute();
+
+    JsonArray reflectConfig =
+        JsonParser.parseString(
+                Files.readString(
+                    outputDir.resolve(
+                        ConnectorGeneratorMojo.NATIVE_IMAGE_METADATA_DIR
+                            + "/SimpleDataSource/reflect-config.json")))
+            .getAsJsonArray();
+    assertThat(reflectConfig).hasSize(3);
+    assertConstructor(
+        reflectConfig.get(0).getAsJsonObject(),
+        SimpleDataSource.class,
+        SimpleConfig.class.getName());
+    assertConstructor(
+        reflectConfig.get(1).getAsJsonObject(),
+        SimpleConfig.class,
+        "java.lang.String",
+        "java.lang.Long");
+    assertThat(
+            Files.exists(
+                outputDir.resolve(
+                    ConnectorLayout.STATIC_REGISTRY_DIR + "/SimpleDataSource.textproto")))
+        .isTrue();
+  }
+
+  @Test
+  public void generate_factory(@TempDir Path targetDir) throws Exception {
+    Path outputDir = targetDir.resolve("classes");
+    ConnectorGeneratorMojo.create(
+            targetDir, outputDir, DummyRecordConfigDataSource.class.getName(), "dummy.textproto")
+        .execute();
+
+    String factoryClassName =
+        ConnectorFactory.getFactoryClassName(DummyRecordConfigDataSource.class.getName());
+    assertThat(Files.exists(outputDir.resolve(factoryClassName.replace('.', '/') + ".class")))
+        .isTrue();
+
+    try (URLClassLoader classLoader =
+        new URLClassLoader(new URL[] {outputDir.toUri().toURL()}, getClass().getClassLoader())) {
+      ConnectorFactory<?> factory =
+          (ConnectorFactory<?>)
+              classLoader.loadClass(factoryClassName).getConstructor().newInstance();
+
+      Object instance =
+          factory.create(
+              Struct.newBuilder()
+                  .putFields("host", Value.newBuilder().setStringValue("localhost").build())
+                  .putFields("port", Value.newBuilder().setNumberValue(1234).build())
+                  .build());
+      assertThat(instance).isInstanceOf(DummyRecordConfigDataSource.class);
+      assertThat(((DummyRecordConfigDataSource) instance).getConfig())
+          .isEqualTo(new DummyRecordConfig("localhost", 1234));
+
+      IllegalArgumentException exception =
+          assertThrows(
+              IllegalArgumentException.class, () -> factory.create(Struct.getDefaultInstance()));
+      assertThat(exception).hasMessageThat().startsWith("Null value is not allowed for the 'host'");
+    }
+  }
+
   @Test
   public void fail_missingDataSource(@TempDir Path targetDir) {
     MojoExecutionException exception =
@@ -145,6 +270,16 @@ public class ConnectorGeneratorMojoTest {
                 DataSource.class.getName(), MissingDataSource.class.getName()));
   }
 
+  @Test
+  public void fail_invalidDataSourceId(@TempDir Path targetDir) {
+    MojoExecutionException exception =
+        assertThrows(
+            MojoExecutionException.class,
+            () -> createMojo(targetDir, InvalidIdDataSource.class, "fail").execute());
+
+    assertThat(exception).hasMessageThat().isEqualTo("Invalid data source id '../invalid'");
+  }
+
   @Test
   public void fail_missingConfig(@TempDir Path targetDir) {
     MojoExecutionException exception =
@@ -185,6 +320,19 @@ public class ConnectorGeneratorMojoTest {
     assertThat(exception).hasMessageThat().startsWith("Missing parameter name");
   }
 
+  private static void assertConstructor(
+      JsonObject entry, Class<?> cls, String... parameterTypes) {
+    assertThat(entry.get("name").getAsString()).isEqualTo(cls.getName());
+    assertThat(entry.get("queryAllPublicConstructors").getAsBoolean()).isTrue();
+    JsonObject method = entry.getAsJsonArray("methods").get(0).getAsJsonObject();
+    assertThat(method.get("name").getAsString()).isEqualTo("<init>");
+    JsonArray expectedTypes = new JsonArray();
+    for (String parameterType : parameterTypes) {
+      expectedTypes.add(parameterType);
+    }
+    assertThat(method.getAsJsonArray("parameterTypes")).isEqualTo(expectedTypes);
+  }
+
   private ConnectorGeneratorMojo createMojo(
       Path targetDir, Class<?> connectorClass, String protoFileName) throws URISyntaxException {
     String className = connectorClass.getName();
@@ -8,6 +8,9 @@ import static com.google.cloud.bigquery.federation.v1alpha1.DataSource.Capabilit
 import static com.google.cloud.bigquery.federation.v1alpha1.DataSource.Capability.SUPPORTS_SORTING;
 import static com.google.cloud.bigquery.federation.v1alpha1.DataSource.Capability.SUPPORTS_SOURCE_NESTING;
 import static com.google.cloud.bigquery.federation.v1alpha1.DataSource.Capability.SUPPORTS_TYPE_CAST;
+import static com.google.cloud.bigquery.federation.v1alpha1.FunctionSignatureId.FN_AND;
+import static com.google.cloud.bigquery.federation.v1alpha1.FunctionSignatureId.FN_EQUAL;
+import static com.google.cloud.bigquery.federation.v1alpha1.FunctionSignatureId.FN_LESS;
 
 import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
 import com.google.cloud.connector.api.AssetName;
@@ -36,7 +39,8 @@ public final class AllCapabilitiesDataSource
         SUPPORTS_JOIN,
         SUPPORTS_FILTER,
         SUPPORTS_COMPUTE
-      })
+      },
+      functions = {FN_EQUAL, FN_LESS, FN_AND})
   public AllCapabilitiesDataSource() {}
 
   @Override
@@ -18,6 +18,10 @@ public class DummyRecordConfigDataSource implements Connector, SynchronousQueryE
     this.config = config;
   }
 
+  public DummyRecordConfig getConfig() {
+    return config;
+  }
+
   @Override
   public RecordReader execute(AssetName assetName, DataQuery dataQuery) {
     throw new UnsupportedOperationException();
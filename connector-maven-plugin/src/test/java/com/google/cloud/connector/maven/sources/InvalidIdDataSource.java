@@ -0,0 +1,26 @@
+package com.google.cloud.connector.maven.sources;
+
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.connector.api.AssetName;
+import com.google.cloud.connector.api.Connector;
+import com.google.cloud.connector.api.RecordReader;
+import com.google.cloud.connector.api.SynchronousQueryExecutor;
+import com.google.cloud.connector.api.annotation.DataSource;
+import com.google.cloud.connector.api.schema.SchemaBuilder;
+
+/** A data source with an id that is not a valid directory name. */
+public class InvalidIdDataSource implements Connector, SynchronousQueryExecutor {
+
+  @DataSource("../invalid")
+  public InvalidIdDataSource() {}
+
+  @Override
+  public RecordReader execute(AssetName assetName, DataQuery dataQuery) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void resolveSchema(AssetName assetName, SchemaBuilder schemaBuilder) {
+    throw new UnsupportedOperationException();
+  }
+}
@@ -0,0 +1,73 @@
+package com.google.cloud.connector.server;
+
+import com.google.cloud.connector.Connector;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.flogger.FluentLogger;
+import com.google.protobuf.Struct;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A base {@link ConnectorLoader} that instantiates the connector class given by the connector
+ * specification through a {@link ConnectorInstantiator}, and tracks the instances it created such
+ * that they are closed together with the loader.
+ */
+abstract class AbstractConnectorLoader implements ConnectorLoader {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private final Queue<AutoCloseable> instances = new ConcurrentLinkedQueue<>();
+  private final Supplier<ConnectorInstantiator> instantiator =
+      Suppliers.memoize(this::createInstantiator);
+
+  /** Returns the {@link ClassLoader} for loading the connector classes. */
+  protected abstract ClassLoader getConnectorClassLoader();
+
+  /** Returns the connector specification. */
+  protected abstract Connector getConnector();
+
+  @Override
+  public com.google.cloud.bigquery.federation.v1alpha1.DataSource getDataSource() {
+    return getConnector().getDataSource();
+  }
+
+  @Override
+  public <T> T instantiateConnector(Struct parameters, Class<T> parentType) {
+    T instance = instantiator.get().instantiate(parameters, parentType);
+    // Only instances that need to be closed are tracked
+    if (instance instanceof AutoCloseable closeable) {
+      instances.add(closeable);
+    }
+    return instance;
+  }
+
+  @Override
+  public void preload() {
+    var unused = instantiator.get();
+  }
+
+  /** Closes all the connector instances created by this loader. */
+  protected void closeInstances() {
+    AutoCloseable instance;
+    while ((instance = instances.poll()) != null) {
+      try {
+        instance.close();
+      } catch (Exception e) {
+        logger.atWarning().withCause(e).log(
+            "Exception raised when closing instance of type '%s'", instance.getClass().getName());
+      }
+    }
+  }
+
+  /** Creates the {@link ConnectorInstantiator} for the connector class. */
+  private ConnectorInstantiator createInstantiator() {
+    Connector connector = getConnector();
+    try {
+      return ConnectorInstantiator.create(getConnectorClassLoader(), connector);
+    } catch (ReflectiveOperationException e) {
+      throw new RuntimeException(
+          "Failed to instantiate data source class '" + connector.getClassName() + "'", e);
+    }
+  }
+}
@@ -1,79 +1,327 @@
 package com.google.cloud.connector.server;
 
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+
 import com.google.cloud.bigquery.federation.v1alpha1.DataSource;
+import com.google.cloud.connector.server.metrics.ConnectorClassStats;
+import com.google.cloud.connector.server.metrics.ConnectorMetricsUtil;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.cache.RemovalListener;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.flogger.FluentLogger;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.inject.BindingAnnotation;
 import com.google.inject.Inject;
 import com.google.protobuf.Struct;
+import io.opentelemetry.api.OpenTelemetry;
 import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
 
 /**
  * A {@link ConnectorLoaderFactory} that caches {@link ConnectorLoader} created by a delegated
  * {@link ConnectorLoaderFactory}.
+ *
+ * <p>The cache is bounded by size and evicts loaders that are idle for longer than the configured
+ * duration. Each {@link ConnectorLoader} returned by {@link #get(String)} holds a reference to the
+ * cached loader until it is closed, hence eviction only closes the underlying loader after all
+ * the in-flight calls that are using it are completed. Datasource ids that have no connector are
+ * remembered for a short duration to avoid searching the file system repeatedly.
+ *
+ * <p>If {@link ConnectorLoaderConfig#isWatchConnectorRootDir()} is enabled, connectors that are
+ * changed in the connector root directory are reloaded and swapped into the cache, while calls
+ * that are in progress keep using the previous loader until they finish.
  */
 public class CachingConnectorLoaderFactory implements ConnectorLoaderFactory, Closeable {
 
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
   @Retention(RetentionPolicy.RUNTIME)
   @Target({ElementType.PARAMETER})
   @BindingAnnotation
   @interface InternalFactory {}
 
-  private final LoadingCache<String, ConnectorLoader> loaderCache;
+  private static final Duration WATCH_QUIET_PERIOD = Duration.ofSeconds(2);
+
+  private final ConnectorLoaderFactory loaderFactory;
+  private final Map<String, Long> loaderVersions;
+  private final LoadingCache<String, RefCountedConnectorLoader> loaderCache;
+  private final Cache<String, IOException> notFoundCache;
+  private final List<AutoCloseable> metricInstruments;
+  @Nullable private final ConnectorDirectoryWatcher directoryWatcher;
+  private volatile boolean closed;
 
   @Inject
   CachingConnectorLoaderFactory(
-      ConnectorLoaderConfig config, @InternalFactory ConnectorLoaderFactory loaderFactory) {
+      ConnectorLoaderConfig config,
+      OpenTelemetry openTelemetry,
+      @InternalFactory ConnectorLoaderFactory loaderFactory) {
+    this(config, openTelemetry, loaderFactory, Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  CachingConnectorLoaderFactory(
+      ConnectorLoaderConfig config, ConnectorLoaderFactory loaderFactory) {
+    this(config, OpenTelemetry.noop(), loaderFactory, Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  CachingConnectorLoaderFactory(
+      ConnectorLoaderConfig config,
+      OpenTelemetry openTelemetry,
+      ConnectorLoaderFactory loaderFactory,
+      Ticker ticker) {
     Preconditions.checkArgument(config.isEnableCache(), "ConnectorLoader caching is not enabled");
-    this.loaderCache = createLoaderCache(loaderFactory);
+    Preconditions.checkArgument(
+        config.getCacheMaxSize() > 0, "ConnectorLoader cache size must be positive");
+    Preconditions.checkArgument(
+        config.getCacheIdleTimeout().compareTo(Duration.ZERO) > 0,
+        "ConnectorLoader cache idle timeout must be positive");
+    this.loaderFactory = loaderFactory;
+    this.loaderVersions = new ConcurrentHashMap<>();
+    this.loaderCache = createLoaderCache(config, ticker);
+    this.notFoundCache =
+        CacheBuilder.newBuilder()
+            .maximumSize(config.getCacheMaxSize())
+            .expireAfterWrite(config.getCacheNotFoundTtl())
+            .build();
+    this.metricInstruments =
+        ImmutableList.<AutoCloseable>builder()
+            .addAll(ConnectorMetricsUtil.registerLoaderCacheMetrics(openTelemetry, loaderCache))
+            .add(
+                ConnectorMetricsUtil.registerLoaderVersionMetric(
+                    openTelemetry, this::getLoaderVersions))
+            .addAll(
+                ConnectorMetricsUtil.registerConnectorClassMetrics(
+                    openTelemetry, this::getConnectorClassStats))
+            .build();
+    this.directoryWatcher =
+        config.isWatchConnectorRootDir()
+            ? new ConnectorDirectoryWatcher(
+                config.getConnectorRootDir(), WATCH_QUIET_PERIOD, this::reload)
+            : null;
   }
 
   @Override
   public ConnectorLoader get(String datasourceId) {
+    IOException notFound = notFoundCache.getIfPresent(datasourceId);
+    if (notFound != null) {
+      throw new UncheckedIOException(notFound.getMessage(), notFound);
+    }
+
+    while (true) {
+      RefCountedConnectorLoader loader;
+      try {
+        loader = loaderCache.get(datasourceId);
+      } catch (Exception e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof UncheckedIOException ioException && isNotFound(ioException)) {
+          notFoundCache.put(datasourceId, ioException.getCause());
+        }
+        Throwables.throwIfUnchecked(cause);
+        throw new UncheckedExecutionException(cause);
+      }
+      if (loader.retain()) {
+        return loader;
+      }
+      // The loader was evicted and released by all the users concurrently. Make sure it is not
+      // in the cache anymore and try again.
+      loaderCache.asMap().remove(datasourceId, loader);
+    }
+  }
+
+  /**
+   * Reloads the connector for the given datasource. If the connector is currently cached, a new
+   * {@link ConnectorLoader} is created and preloaded, followed by replacing the cached one. The
+   * replaced loader will be closed after all the in-flight calls that are using it are completed.
+   * If failed to create the new loader, the cached one is retained, unless the connector no longer
+   * exists. The new loader is discarded if the connector was removed from the cache or loaded
+   * again while it was being preloaded.
+   *
+   * <p>The previous loader keeps its jar files open until all the calls that are using it are
+   * completed, hence connectors must be updated by moving new files or a new versioned directory
+   * into place, rather than by writing into the existing jar files.
+   *
+   * @param datasourceId the datasource identifier
+   */
+  void reload(String datasourceId) {
+    notFoundCache.invalidate(datasourceId);
+    if (closed || !loaderCache.asMap().containsKey(datasourceId)) {
+      // Not in use, the next get call will load the latest connector
+      return;
+    }
+
+    RefCountedConnectorLoader loader;
     try {
-      return loaderCache.get(datasourceId);
-    } catch (Exception e) {
-      Throwables.throwIfUnchecked(e.getCause());
-      throw new UncheckedExecutionException(e.getCause());
+      loader = newRefCountedLoader(datasourceId, loaderFactory.get(datasourceId));
+    } catch (UncheckedIOException e) {
+      if (isNotFound(e)) {
+        logger.atInfo().log("Connector '%s' was removed", datasourceId);
+        loaderCache.invalidate(datasourceId);
+      } else {
+        logger.atWarning().withCause(e).log(
+            "Failed to reload connector '%s'. Keep using the existing one", datasourceId);
+      }
+      return;
+    } catch (RuntimeException e) {
+      logger.atWarning().withCause(e).log(
+          "Failed to reload connector '%s'. Keep using the existing one", datasourceId);
+      return;
     }
+
+    try {
+      loader.preload();
+    } catch (RuntimeException e) {
+      logger.atWarning().withCause(e).log(
+          "Failed to preload connector '%s'. Keep using the existing one", datasourceId);
+      loader.closeDelegate();
+      return;
+    }
+
+    // Only replace the loader that was loaded before this one, such that a concurrent load of the
+    // connector is never replaced by an older version
+    RefCountedConnectorLoader cached =
+        loaderCache
+            .asMap()
+            .compute(
+                datasourceId,
+                (id, existing) ->
+                    existing == null || existing.version() > loader.version()
+                        ? existing
+                        : loader);
+    if (cached != loader) {
+      logger.atInfo().log(
+          "Discarded version %d of connector '%s' since it is no longer the latest",
+          loader.version(), datasourceId);
+      loader.closeDelegate();
+      return;
+    }
+    logger.atInfo().log("Reloaded connector '%s' to version %d", datasourceId, loader.version());
   }
 
-  /** Invalidates all cached entries. */
+  /** Invalidates all cached entries and closes all the loaders. */
   @Override
   public void close() {
+    closed = true;
+    if (directoryWatcher != null) {
+      try {
+        directoryWatcher.close();
+      } catch (IOException e) {
+        logger.atWarning().withCause(e).log("Failed to close connector directory watcher");
+      }
+    }
     loaderCache.invalidateAll();
+    notFoundCache.invalidateAll();
+    for (AutoCloseable instrument : metricInstruments) {
+      try {
+        instrument.close();
+      } catch (Exception e) {
+        logger.atWarning().withCause(e).log("Failed to close metric instrument");
+      }
+    }
   }
 
-  private static LoadingCache<String, ConnectorLoader> createLoaderCache(
-      ConnectorLoaderFactory loaderFactory) {
+  private Map<String, Long> getLoaderVersions() {
+    return loaderCache.asMap().entrySet().stream()
+        .collect(toImmutableMap(Map.Entry::getKey, entry -> entry.getValue().version()));
+  }
+
+  private Map<String, ConnectorClassStats> getConnectorClassStats() {
+    ImmutableMap.Builder<String, ConnectorClassStats> builder = ImmutableMap.builder();
+    loaderCache
+        .asMap()
+        .forEach(
+            (datasourceId, loader) ->
+                loader.getClassStats().ifPresent(stats -> builder.put(datasourceId, stats)));
+    return builder.buildOrThrow();
+  }
+
+  private RefCountedConnectorLoader newRefCountedLoader(
+      String datasourceId, ConnectorLoader loader) {
+    return new RefCountedConnectorLoader(
+        loader, loaderVersions.merge(datasourceId, 1L, Long::sum));
+  }
+
+  private LoadingCache<String, RefCountedConnectorLoader> createLoaderCache(
+      ConnectorLoaderConfig config, Ticker ticker) {
     return CacheBuilder.newBuilder()
+        .maximumSize(config.getCacheMaxSize())
+        .expireAfterAccess(config.getCacheIdleTimeout())
+        .ticker(ticker)
+        .recordStats()
         .removalListener(
-            (RemovalListener<String, ConnectorLoader>)
-                notification ->
-                    Optional.ofNullable(notification.getValue())
-                        .map(ForwardingConnectorLoader.class::cast)
-                        .ifPresent(ForwardingConnectorLoader::closeDelegate))
+            (RemovalListener<String, RefCountedConnectorLoader>)
+                notification -> {
+                  RefCountedConnectorLoader loader = notification.getValue();
+                  if (loader == null) {
+                    return;
+                  }
+                  logger.atFine().log(
+                      "Removing connector loader for '%s' from cache due to %s",
+                      notification.getKey(), notification.getCause());
+                  if (closed) {
+                    loader.closeDelegate();
+                  } else {
+                    loader.release();
+                  }
+                })
         .build(
             new CacheLoader<>() {
               @Override
-              public ConnectorLoader load(String datasourceId) {
-                return new ForwardingConnectorLoader(loaderFactory.get(datasourceId));
+              public RefCountedConnectorLoader load(String datasourceId) {
+                return newRefCountedLoader(datasourceId, loaderFactory.get(datasourceId));
               }
             });
   }
 
-  /** A {@link ConnectorLoader} that forwards to another {@link ConnectorLoader}. */
-  private record ForwardingConnectorLoader(ConnectorLoader delegate) implements ConnectorLoader {
+  private static boolean isNotFound(UncheckedIOException e) {
+    return e.getCause() instanceof NoSuchFileException
+        || e.getCause() instanceof FileNotFoundException;
+  }
+
+  /**
+   * A {@link ConnectorLoader} that forwards to another {@link ConnectorLoader} and closes it when
+   * all the references are released. One reference is held by the cache, which is released when
+   * the loader is removed from the cache. Every {@link #retain()} call must be paired with a
+   * {@link #close()} call.
+   */
+  private static final class RefCountedConnectorLoader implements ConnectorLoader {
+
+    private final ConnectorLoader delegate;
+    private final long version;
+    private final AtomicInteger refCount;
+
+    RefCountedConnectorLoader(ConnectorLoader delegate, long version) {
+      this.delegate = delegate;
+      this.version = version;
+      this.refCount = new AtomicInteger(1);
+    }
+
+    /** Returns the version of the loader, which is increased every time the connector is loaded. */
+    long version() {
+      return version;
+    }
 
     @Override
     public DataSource getDataSource() {
@@ -85,13 +333,50 @@ public class CachingConnectorLoaderFactory implements ConnectorLoaderFactory, Cl
       return delegate.instantiateConnector(parameters, parentType);
     }
 
+    @Override
+    public void preload() {
+      delegate.preload();
+    }
+
+    @Override
+    public Optional<ConnectorClassStats> getClassStats() {
+      return delegate.getClassStats();
+    }
+
     @Override
     public void close() {
-      // no-op
+      release();
+    }
+
+    /**
+     * Acquires a reference to this loader.
+     *
+     * @return {@code true} if a reference was acquired, or {@code false} if the delegate loader is
+     *     already closed
+     */
+    boolean retain() {
+      int count;
+      do {
+        count = refCount.get();
+        if (count <= 0) {
+          return false;
+        }
+      } while (!refCount.compareAndSet(count, count + 1));
+      return true;
+    }
+
+    /** Releases a reference and closes the delegate loader if it was the last reference. */
+    void release() {
+      if (refCount.decrementAndGet() == 0) {
+        delegate.close();
+      }
     }
 
+    /** Closes the delegate loader regardless of any outstanding references. */
     void closeDelegate() {
-      delegate.close();
+      if (refCount.getAndSet(0) > 0) {
+        delegate.close();
+      }
     }
   }
 }
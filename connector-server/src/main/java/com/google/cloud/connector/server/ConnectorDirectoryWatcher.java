@@ -0,0 +1,141 @@
+package com.google.cloud.connector.server;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import com.google.common.flogger.FluentLogger;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Watches the connector root directory for changes and notifies the datasource ids of the
+ * connector subdirectories that were changed.
+ *
+ * <p>Changes are collected until no new change happens for a quiet period, so that a connector
+ * being copied into the root directory is only notified once after the copy is completed.
+ */
+final class ConnectorDirectoryWatcher implements Closeable {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private final Path rootDir;
+  private final Duration quietPeriod;
+  private final Consumer<String> changeListener;
+  private final WatchService watchService;
+  private final Thread watchThread;
+
+  /**
+   * Creates a watcher and starts watching the given directory.
+   *
+   * @param rootDir the connector root directory
+   * @param quietPeriod the duration without changes to wait before notifying the changes
+   * @param changeListener the listener to call with the datasource id of each changed connector
+   * @throws UncheckedIOException if failed to watch the directory
+   */
+  ConnectorDirectoryWatcher(
+      Path rootDir, Duration quietPeriod, Consumer<String> changeListener) {
+    this.rootDir = rootDir;
+    this.quietPeriod = quietPeriod;
+    this.changeListener = changeListener;
+    try {
+      this.watchService = rootDir.getFileSystem().newWatchService();
+      registerAll(rootDir);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    this.watchThread = new Thread(this::watch, "connector-dir-watcher");
+    this.watchThread.setDaemon(true);
+    this.watchThread.start();
+  }
+
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+    watchThread.interrupt();
+  }
+
+  private void watch() {
+    Set<String> changed = new LinkedHashSet<>();
+    try {
+      while (true) {
+        WatchKey key =
+            changed.isEmpty()
+                ? watchService.take()
+                : watchService.poll(quietPeriod.toMillis(), TimeUnit.MILLISECONDS);
+        if (key == null) {
+          changed.forEach(this::notifyChange);
+          changed.clear();
+          continue;
+        }
+
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() == OVERFLOW) {
+            // Events were lost, treat all connectors as changed
+            try (Stream<Path> paths = Files.list(rootDir)) {
+              paths.map(p -> p.getFileName().toString()).forEach(changed::add);
+            }
+            continue;
+          }
+          Path path = dir.resolve((Path) event.context());
+          if (event.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            try {
+              registerAll(path);
+            } catch (IOException e) {
+              // The directory can be removed before it is registered
+              logger.atFine().withCause(e).log("Failed to watch directory %s", path);
+            }
+          }
+          Path relativePath = rootDir.relativize(path);
+          if (relativePath.getNameCount() > 0) {
+            changed.add(relativePath.getName(0).toString());
+          }
+        }
+        if (!key.reset() && dir.equals(rootDir)) {
+          logger.atWarning().log(
+              "Connector root directory %s is no longer accessible. Stop watching it.", rootDir);
+          return;
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      logger.atFine().log("Stopped watching connector root directory %s", rootDir);
+    } catch (IOException e) {
+      logger.atSevere().withCause(e).log("Failed to watch connector root directory %s", rootDir);
+    }
+  }
+
+  private void notifyChange(String datasourceId) {
+    logger.atInfo().log("Connector '%s' in %s was changed", datasourceId, rootDir);
+    try {
+      changeListener.accept(datasourceId);
+    } catch (RuntimeException e) {
+      logger.atWarning().withCause(e).log(
+          "Failed to handle change of connector '%s'", datasourceId);
+    }
+  }
+
+  /** Registers the given directory and all its subdirectories to the watch service. */
+  private void registerAll(Path dir) throws IOException {
+    try (Stream<Path> paths = Files.walk(dir)) {
+      for (Path path : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator) {
+        path.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+      }
+    }
+  }
+}
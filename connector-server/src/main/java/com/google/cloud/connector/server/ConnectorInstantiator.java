@@ -0,0 +1,379 @@
+package com.google.cloud.connector.server;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.cloud.bigquery.federation.v1alpha1.Parameter;
+import com.google.cloud.connector.Connector;
+import com.google.cloud.connector.ConnectorConfig;
+import com.google.cloud.connector.api.annotation.Config;
+import com.google.cloud.connector.api.annotation.DataSource;
+import com.google.cloud.connector.api.factory.ConnectorFactory;
+import com.google.common.base.Defaults;
+import com.google.common.primitives.Primitives;
+import com.google.protobuf.NullValue;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.RecordComponent;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.function.DoubleFunction;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+
+/**
+ * A precompiled plan for creating instances of a connector class.
+ *
+ * <p>If the connector is packaged with the {@link ConnectorFactory} generated by the
+ * connector-maven-plugin, new instances are created by the factory, which maps the request
+ * parameters to the constructor arguments without reflection.
+ *
+ * <p>Otherwise, all the reflective work, including finding the {@link DataSource} and {@link
+ * Config} constructors, matching constructor arguments to the {@link Parameter} ids declared by the
+ * data source and selecting the value conversion for each argument, is done once when the plan is
+ * created. Creating a new connector instance only converts the request parameters and invokes the
+ * bound constructor {@link MethodHandle}s.
+ */
+final class ConnectorInstantiator {
+
+  private static final Value NULL_VALUE =
+      Value.newBuilder().setNullValue(NullValue.NULL_VALUE).build();
+  private static final MethodType INVOKER_TYPE =
+      MethodType.methodType(Object.class, Object[].class);
+
+  private final String datasourceId;
+  private final Class<?> connectorClass;
+  private final ArgumentResolver resolver;
+
+  private ConnectorInstantiator(
+      String datasourceId, Class<?> connectorClass, ArgumentResolver resolver) {
+    this.datasourceId = datasourceId;
+    this.connectorClass = connectorClass;
+    this.resolver = resolver;
+  }
+
+  /**
+   * Creates a plan for instantiating the connector described by the given {@link Connector}
+   * specification. The generated {@link ConnectorFactory} of the connector class is used if it is
+   * available from the given {@link ClassLoader}.
+   *
+   * @param classLoader the {@link ClassLoader} for loading the connector classes
+   * @param connector the connector specification
+   * @return a new {@link ConnectorInstantiator}
+   * @throws ReflectiveOperationException if failed to load the connector classes or to find the
+   *     constructors that satisfy the contract
+   * @throws IllegalArgumentException if the connector specification doesn't match the connector
+   *     classes
+   */
+  static ConnectorInstantiator create(ClassLoader classLoader, Connector connector)
+      throws ReflectiveOperationException {
+    Class<?> connectorClass = classLoader.loadClass(connector.getClassName());
+    ConnectorFactory<?> factory = loadFactory(classLoader, connector.getClassName());
+    return new ConnectorInstantiator(
+        connector.getDataSource().getId(),
+        connectorClass,
+        factory == null
+            ? compileConnector(classLoader, connector, connectorClass)
+            : factory::create);
+  }
+
+  /**
+   * Creates a new connector instance.
+   *
+   * @param parameters the parameters for creating the connector instance
+   * @param parentType the expected parent type of the connector class
+   * @param <T> the parent type of the connector class
+   * @return a new connector instance
+   * @throws ClassCastException if the connector class is not a subtype of {@code parentType}
+   * @throws IllegalArgumentException if the parameters are invalid for creating the connector
+   */
+  <T> T instantiate(Struct parameters, Class<T> parentType) {
+    if (!parentType.isAssignableFrom(connectorClass)) {
+      throw new ClassCastException(
+          String.format(
+              "Connector '%s' implementation class '%s' cannot be cast to type '%s'",
+              datasourceId, connectorClass.getName(), parentType.getName()));
+    }
+
+    try {
+      return parentType.cast(resolver.resolve(parameters));
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new RuntimeException(
+          "Failed to instantiate data source class '" + connectorClass.getName() + "'", t);
+    }
+  }
+
+  /**
+   * Loads and creates the {@link ConnectorFactory} generated for the given connector class.
+   *
+   * @return the factory or {@code null} if the connector is not packaged with a factory
+   * @throws ReflectiveOperationException if failed to create the factory
+   */
+  @Nullable
+  private static ConnectorFactory<?> loadFactory(ClassLoader classLoader, String connectorClassName)
+      throws ReflectiveOperationException {
+    Class<?> factoryClass;
+    try {
+      factoryClass =
+          classLoader.loadClass(ConnectorFactory.getFactoryClassName(connectorClassName));
+    } catch (ClassNotFoundException e) {
+      return null;
+    }
+    checkArgument(
+        ConnectorFactory.class.isAssignableFrom(factoryClass),
+        "Class '%s' is not a '%s'",
+        factoryClass.getName(),
+        ConnectorFactory.class.getName());
+    return (ConnectorFactory<?>) factoryClass.getConstructor().newInstance();
+  }
+
+  /** Creates an {@link ArgumentResolver} that creates a new instance of the connector class. */
+  private static ArgumentResolver compileConnector(
+      ClassLoader classLoader, Connector connector, Class<?> connectorClass)
+      throws ReflectiveOperationException {
+    Iterator<Parameter> paramIterator = connector.getDataSource().getParametersList().iterator();
+    ConnectorConfig connectorConfig = connector.getConfig();
+
+    return switch (connectorConfig.getType()) {
+      case MULTI_PARAMS -> compile(connectorClass, DataSource.class, paramIterator);
+      case CUSTOM_CLASS -> {
+        // Create an instance of the config class, followed by creating the connector class by
+        // providing the config object.
+        Class<?> configClass = classLoader.loadClass(connectorConfig.getClassName());
+        ArgumentResolver configResolver = compile(configClass, Config.class, paramIterator);
+        Constructor<?> constructor = findConstructor(connectorClass, DataSource.class);
+        checkArgument(
+            constructor.getParameterCount() == 1
+                && constructor.getParameterTypes()[0].isAssignableFrom(configClass),
+            "Expected to have an argument of type '%s' to construct class '%s'",
+            configClass.getName(),
+            connectorClass.getName());
+        yield new ConstructorInvoker(bind(constructor), new ArgumentResolver[] {configResolver});
+      }
+      default ->
+          throw new IllegalArgumentException(
+              "Unknown configuration type for data source '"
+                  + connector.getDataSource().getName()
+                  + "'");
+    };
+  }
+
+  /**
+   * Creates an {@link ArgumentResolver} that creates a new instance of the given class. Arguments
+   * of the constructor are matched with the parameters provided by the given {@link Iterator} in
+   * order, except for record types, which are expanded recursively.
+   */
+  private static ArgumentResolver compile(
+      Class<?> cls, Class<? extends Annotation> annotation, Iterator<Parameter> paramIterator)
+      throws ReflectiveOperationException {
+    Constructor<?> constructor = findConstructor(cls, annotation);
+    Annotation[][] annotations = constructor.getParameterAnnotations();
+    Class<?>[] paramTypes = constructor.getParameterTypes();
+    ArgumentResolver[] resolvers = new ArgumentResolver[paramTypes.length];
+
+    for (int i = 0; i < paramTypes.length; i++) {
+      Class<?> paramType = paramTypes[i];
+      if (paramType.isRecord()) {
+        resolvers[i] = compile(paramType, Config.class, paramIterator);
+        continue;
+      }
+      checkArgument(paramIterator.hasNext(), "Missing parameter information");
+      resolvers[i] =
+          new ParameterResolver(
+              paramIterator.next().getId(),
+              createValueConverter(paramType),
+              hasNullable(annotations[i]),
+              i,
+              constructor.toString());
+    }
+    return new ConstructorInvoker(bind(constructor), resolvers);
+  }
+
+  /**
+   * Binds the given constructor to a {@link MethodHandle} of type {@code (Object[])Object} that can
+   * be called with {@link MethodHandle#invokeExact}.
+   */
+  private static MethodHandle bind(Constructor<?> constructor) throws IllegalAccessException {
+    return MethodHandles.publicLookup()
+        .unreflectConstructor(constructor)
+        .asSpreader(Object[].class, constructor.getParameterCount())
+        .asType(INVOKER_TYPE);
+  }
+
+  /**
+   * Finds the constructor for creating instances of the given class. It is either the canonical
+   * constructor if it is a {@link Record} class; otherwise, a public constructor that is annotated
+   * with the given annotation class.
+   *
+   * @throws NoSuchMethodException if no constructor was found that satisfy the contract
+   */
+  private static Constructor<?> findConstructor(
+      Class<?> cls, Class<? extends Annotation> annotation) throws NoSuchMethodException {
+    if (cls.isRecord()) {
+      return cls.getConstructor(
+          Arrays.stream(cls.getRecordComponents())
+              .map(RecordComponent::getType)
+              .toArray(Class[]::new));
+    }
+    for (Constructor<?> constructor : cls.getConstructors()) {
+      if (constructor.isAnnotationPresent(annotation)) {
+        return constructor;
+      }
+    }
+    throw new NoSuchMethodException(
+        String.format(
+            "No public constructor annotated with '%s' in class '%s'",
+            annotation.getName(), cls.getName()));
+  }
+
+  private static boolean hasNullable(Annotation[] annotations) {
+    for (Annotation annotation : annotations) {
+      if (annotation.annotationType().getName().equals(Nullable.class.getName())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Creates a {@link ValueConverter} that converts a proto {@link Value} into java object that can
+   * be assigned to the given type.
+   */
+  private static ValueConverter createValueConverter(Class<?> javaType) {
+    Class<?> type = Primitives.wrap(javaType);
+    return new ValueConverter(
+        javaType,
+        type,
+        Defaults.defaultValue(javaType),
+        createNumberConverter(type),
+        createStringConverter(type));
+  }
+
+  private static DoubleFunction<Object> createNumberConverter(Class<?> type) {
+    if (type.equals(Byte.class)) {
+      return value -> (byte) value;
+    }
+    if (type.equals(Character.class)) {
+      return value -> (char) (short) value;
+    }
+    if (type.equals(Short.class)) {
+      return value -> (short) value;
+    }
+    if (type.equals(Integer.class)) {
+      return value -> (int) value;
+    }
+    if (type.equals(Long.class)) {
+      return value -> (long) value;
+    }
+    if (type.equals(Float.class)) {
+      return value -> (float) value;
+    }
+    return type::cast;
+  }
+
+  private static Function<String, Object> createStringConverter(Class<?> type) {
+    if (URI.class.equals(type)) {
+      return URI::create;
+    }
+    if (URL.class.equals(type)) {
+      return value -> {
+        try {
+          return new URL(value);
+        } catch (MalformedURLException e) {
+          throw new IllegalArgumentException(e);
+        }
+      };
+    }
+    return type::cast;
+  }
+
+  /** Resolves a constructor argument from the request parameters. */
+  @FunctionalInterface
+  private interface ArgumentResolver {
+    @Nullable
+    Object resolve(Struct parameters) throws Throwable;
+  }
+
+  /**
+   * Converts a proto {@link Value} into java object of a given type, which is the boxed type of the
+   * given java type.
+   */
+  private record ValueConverter(
+      Class<?> javaType,
+      Class<?> type,
+      @Nullable Object defaultValue,
+      DoubleFunction<Object> numberConverter,
+      Function<String, Object> stringConverter) {
+
+    @Nullable
+    Object convert(Value value) {
+      return switch (value.getKindCase()) {
+        case KIND_NOT_SET, NULL_VALUE -> defaultValue;
+        case BOOL_VALUE -> type.cast(value.getBoolValue());
+        case NUMBER_VALUE -> numberConverter.apply(value.getNumberValue());
+        case STRING_VALUE -> stringConverter.apply(value.getStringValue());
+        default -> throw new IllegalArgumentException("Unsupported type " + value.getKindCase());
+      };
+    }
+  }
+
+  /**
+   * An {@link ArgumentResolver} that creates a new object by invoking a bound constructor with
+   * arguments resolved by the given resolvers.
+   */
+  private record ConstructorInvoker(MethodHandle constructor, ArgumentResolver[] resolvers)
+      implements ArgumentResolver {
+
+    @Override
+    public Object resolve(Struct parameters) throws Throwable {
+      Object[] arguments = new Object[resolvers.length];
+      for (int i = 0; i < arguments.length; i++) {
+        arguments[i] = resolvers[i].resolve(parameters);
+      }
+      return (Object) constructor.invokeExact(arguments);
+    }
+  }
+
+  /** An {@link ArgumentResolver} that provides the value of a data source {@link Parameter}. */
+  private record ParameterResolver(
+      String parameterId,
+      ValueConverter converter,
+      boolean nullable,
+      int index,
+      String constructor)
+      implements ArgumentResolver {
+
+    @Nullable
+    @Override
+    public Object resolve(Struct parameters) {
+      Value value = parameters.getFieldsOrDefault(parameterId, NULL_VALUE);
+      Object object;
+      try {
+        object = converter.convert(value);
+      } catch (ClassCastException e) {
+        // Same error as the generated ConnectorFactory raises through ParameterValues
+        throw new IllegalArgumentException(
+            String.format(
+                "Value of type %s for parameter '%s' cannot be converted to '%s'",
+                value.getKindCase(), parameterId, converter.javaType().getName()),
+            e);
+      }
+      if (object == null && !nullable) {
+        throw new IllegalArgumentException(
+            String.format(
+                "Null value is not allowed for the '%s' as the '%s' argument to constructor '%s'",
+                parameterId, index, constructor));
+      }
+      return object;
+    }
+  }
+}
@@ -1,7 +1,9 @@
 package com.google.cloud.connector.server;
 
 import com.google.cloud.bigquery.federation.v1alpha1.DataSource;
+import com.google.cloud.connector.server.metrics.ConnectorClassStats;
 import com.google.protobuf.Struct;
+import java.util.Optional;
 
 /** An interface for describing and instantiating a connector instance. */
 public interface ConnectorLoader extends AutoCloseable {
@@ -19,6 +21,23 @@ public interface ConnectorLoader extends AutoCloseable {
    */
   <T> T instantiateConnector(Struct parameters, Class<T> parentType);
 
+  /**
+   * Loads the connector classes ahead of the first {@link #instantiateConnector(Struct, Class)}
+   * call, such that the first call doesn't need to pay for the class loading cost. By default it
+   * does nothing.
+   */
+  default void preload() {
+    // no-op
+  }
+
+  /**
+   * Returns the statistics of the classes loaded for the connector, or empty if it is not
+   * available. By default it returns empty.
+   */
+  default Optional<ConnectorClassStats> getClassStats() {
+    return Optional.empty();
+  }
+
   /** Closes and releases all the resources. */
   @Override
   void close();
@@ -4,6 +4,7 @@ import static picocli.CommandLine.Help.Visibility.ALWAYS;
 
 import com.google.common.annotations.VisibleForTesting;
 import java.nio.file.Path;
+import java.time.Duration;
 import picocli.CommandLine.Option;
 
 /** Configuration class for the {@link ConnectorLoader}. */
@@ -25,6 +26,83 @@ public class ConnectorLoaderConfig {
       showDefaultValue = ALWAYS)
   private boolean enableCache;
 
+  @Option(
+      names = {"--loader-cache-max-size"},
+      description = "Maximum number of connector loaders to keep in the loader cache.",
+      defaultValue = "100",
+      showDefaultValue = ALWAYS)
+  private long cacheMaxSize = 100;
+
+  @Option(
+      names = {"--loader-cache-idle-timeout"},
+      description =
+          "Duration in ISO-8601 format after which an unused connector loader is evicted from the"
+              + " loader cache.",
+      defaultValue = "PT1H",
+      showDefaultValue = ALWAYS)
+  private Duration cacheIdleTimeout = Duration.ofHours(1);
+
+  @Option(
+      names = {"--loader-cache-not-found-ttl"},
+      description =
+          "Duration in ISO-8601 format to remember datasource ids that have no connector."
+              + " Set to zero to disable.",
+      defaultValue = "PT30S",
+      showDefaultValue = ALWAYS)
+  private Duration cacheNotFoundTtl = Duration.ofSeconds(30);
+
+  @Option(
+      names = {"--watch-connector-root-dir"},
+      description =
+          "Watch the connector root directory and reload connectors that are changed without"
+              + " restarting the server. Connectors must be updated by moving new files into"
+              + " place, since jar files are kept open by the loaders that are still in use. It"
+              + " only takes effect when the loader cache is enabled.")
+  private boolean watchConnectorRootDir;
+
+  @Option(
+      names = {"--preload-connectors"},
+      description =
+          "Load all the connectors under the connector root directory when the server starts,"
+              + " before registering the server endpoint. It only takes effect when the loader"
+              + " cache is enabled.")
+  private boolean preloadConnectors;
+
+  @Option(
+      names = {"--preload-threads"},
+      description = "Number of threads for loading connectors when the server starts.",
+      defaultValue = "4",
+      showDefaultValue = ALWAYS)
+  private int preloadThreads = 4;
+
+  @Option(
+      names = {"--preload-warm-up-records"},
+      description =
+          "Number of synthetic records to encode for warming up the record encoding path when"
+              + " connectors are preloaded. Set to zero to disable.",
+      defaultValue = "0",
+      showDefaultValue = ALWAYS)
+  private int preloadWarmUpRecords;
+
+  @Option(
+      names = {"--share-library-jars"},
+      description =
+          "Load the dependency jars of connectors through class loaders shared between connectors"
+              + " that have byte-identical copies of a jar and of the jars it depends on."
+              + " Dependency jars are the jar files that don't contain the connector specification"
+              + " file, or the connector class if the specification file is in the connector"
+              + " directory.")
+  private boolean shareLibraryJars;
+
+  @Option(
+      names = {"--static-connectors"},
+      description =
+          "Serve the connectors that are bundled in the server class path, which are registered"
+              + " under META-INF/connectors by the connector-maven-plugin in native image mode,"
+              + " before looking up the connector root directory. Bundled connectors are"
+              + " instantiated without class loader isolation.")
+  private boolean staticConnectors;
+
   @SuppressWarnings("unused")
   public ConnectorLoaderConfig() {
     // no-op, for picocli to use.
@@ -36,6 +114,32 @@ public class ConnectorLoaderConfig {
     this.enableCache = enableCache;
   }
 
+  @VisibleForTesting
+  ConnectorLoaderConfig(
+      String connectorRootDir,
+      long cacheMaxSize,
+      Duration cacheIdleTimeout,
+      Duration cacheNotFoundTtl) {
+    this(connectorRootDir, true);
+    this.cacheMaxSize = cacheMaxSize;
+    this.cacheIdleTimeout = cacheIdleTimeout;
+    this.cacheNotFoundTtl = cacheNotFoundTtl;
+  }
+
+  @VisibleForTesting
+  ConnectorLoaderConfig(String connectorRootDir, int preloadThreads, int preloadWarmUpRecords) {
+    this(connectorRootDir, true);
+    this.preloadConnectors = true;
+    this.preloadThreads = preloadThreads;
+    this.preloadWarmUpRecords = preloadWarmUpRecords;
+  }
+
+  @VisibleForTesting
+  ConnectorLoaderConfig(String connectorRootDir, boolean enableCache, boolean shareLibraryJars) {
+    this(connectorRootDir, enableCache);
+    this.shareLibraryJars = shareLibraryJars;
+  }
+
   public Path getConnectorRootDir() {
     return Path.of(connectorRootDir);
   }
@@ -43,4 +147,40 @@ public class ConnectorLoaderConfig {
   public boolean isEnableCache() {
     return enableCache;
   }
+
+  public long getCacheMaxSize() {
+    return cacheMaxSize;
+  }
+
+  public Duration getCacheIdleTimeout() {
+    return cacheIdleTimeout;
+  }
+
+  public Duration getCacheNotFoundTtl() {
+    return cacheNotFoundTtl;
+  }
+
+  public boolean isWatchConnectorRootDir() {
+    return watchConnectorRootDir;
+  }
+
+  public boolean isPreloadConnectors() {
+    return preloadConnectors;
+  }
+
+  public int getPreloadThreads() {
+    return preloadThreads;
+  }
+
+  public int getPreloadWarmUpRecords() {
+    return preloadWarmUpRecords;
+  }
+
+  public boolean isShareLibraryJars() {
+    return shareLibraryJars;
+  }
+
+  public boolean isStaticConnectors() {
+    return staticConnectors;
+  }
 }
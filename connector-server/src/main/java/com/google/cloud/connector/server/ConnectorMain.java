@@ -3,6 +3,7 @@ package com.google.cloud.connector.server;
 import com.google.common.flogger.FluentLogger;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import java.lang.management.ManagementFactory;
 import java.util.concurrent.Callable;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
@@ -42,7 +43,9 @@ public class ConnectorMain implements Callable<Integer> {
                 }));
 
     server.startAsync().awaitRunning();
-    logger.atInfo().log("Connector server started at port %d", server.getPort());
+    logger.atInfo().log(
+        "Connector server started at port %d, ready in %d ms since JVM start",
+        server.getPort(), ManagementFactory.getRuntimeMXBean().getUptime());
     server.awaitTerminated();
 
     return 0;
@@ -1,9 +1,12 @@
 package com.google.cloud.connector.server;
 
 import com.google.cloud.connector.api.discovery.EndpointRegistry;
+import com.google.cloud.connector.data.ResultStreamId;
 import com.google.cloud.connector.gcp.ServiceDirectoryEndpointConfig;
 import com.google.cloud.connector.gcp.ServiceDirectoryEndpointRegistry;
 import com.google.cloud.connector.server.metrics.OpenTelemetryProvider;
+import com.google.cloud.connector.server.query.QueryPlanner;
+import com.google.cloud.connector.server.query.SpillConfig;
 import com.google.common.flogger.FluentLogger;
 import com.google.inject.PrivateModule;
 import com.google.inject.Scopes;
@@ -16,6 +19,8 @@ import io.grpc.ServerBuilder;
 import io.grpc.alts.AltsServerCredentials;
 import io.opentelemetry.api.OpenTelemetry;
 import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import java.io.Closeable;
+import java.time.Duration;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -59,8 +64,120 @@ final class ConnectorModule extends PrivateModule {
       description = "By default, metrics are not pushed. This option will turn on pushing metrics.")
   private boolean enableMetrics;
 
+  @Option(
+      names = {"--stream-id-encoding"},
+      defaultValue = "JSON",
+      description =
+          "Encoding of the partitions in the stream ids returned by StartQuery, one of"
+              + " ${COMPLETION-CANDIDATES}. Default is ${DEFAULT-VALUE}, which servers of all"
+              + " versions accept. Stream ids of all the encodings are accepted by ReadStream."
+              + " Only switch to PROTO or PROTO_COMPRESSED once no server of a version that only"
+              + " accepts the JSON encoding is serving ReadStream.")
+  private ResultStreamId.Encoding streamIdEncoding;
+
+  @Option(
+      names = {"--coalesce-requests"},
+      description =
+          "Share one computation among identical concurrent ResolveSchema, GetDataSource and"
+              + " StartQuery calls, which have the same datasource, connector parameters and"
+              + " query.")
+  private boolean coalesceRequests;
+
+  @Option(
+      names = {"--coalesce-requests-threads"},
+      defaultValue = "16",
+      description =
+          "The max number of coalesced computations that run concurrently when"
+              + " --coalesce-requests is enabled. Further computations wait for a thread."
+              + " Default is ${DEFAULT-VALUE}.")
+  private int coalesceRequestsThreads;
+
+  @Option(
+      names = {"--shared-scan-buffer-batches"},
+      defaultValue = "0",
+      description =
+          "Share the read of a partition among concurrent ReadStream calls for the same partition"
+              + " and connector parameters, buffering up to the given number of data batches for"
+              + " the calls to consume at their own pace. Calls that arrive after the first batch"
+              + " has left the buffer read the partition by themselves. Default is"
+              + " ${DEFAULT-VALUE}, which disables sharing.")
+  private int sharedScanBufferBatches;
+
+  @Option(
+      names = {"--shared-scan-threads"},
+      defaultValue = "16",
+      description =
+          "The max number of shared scans that run concurrently when"
+              + " --shared-scan-buffer-batches is enabled. ReadStream calls that would start a scan"
+              + " beyond it read their partition by themselves. Default is ${DEFAULT-VALUE}.")
+  private int sharedScanThreads;
+
+  @Option(
+      names = {"--shared-scan-max-wait"},
+      defaultValue = "PT10S",
+      description =
+          "Duration in ISO-8601 format that a shared scan waits for its slowest ReadStream calls"
+              + " when its buffer is full. The calls still holding the oldest batch after it are"
+              + " dropped from the scan: they read the partition by themselves if they haven't"
+              + " sent any batch yet, and fail as UNAVAILABLE otherwise. Default is"
+              + " ${DEFAULT-VALUE}.")
+  private Duration sharedScanMaxWait;
+
+  @Option(
+      names = {"--inline-results-max-bytes"},
+      defaultValue = "0",
+      description =
+          "Read the stream of a StartQuery call eagerly if the query has a single stream, and"
+              + " return the data inline in the response if it fits in the given number of bytes."
+              + " Default is ${DEFAULT-VALUE}, which disables inlining.")
+  private long inlineResultsMaxBytes;
+
+  @Option(
+      names = {"--execute-query-parallelism"},
+      defaultValue = "0",
+      description =
+          "Execute ExecuteQuery calls for connectors that implement ParallelQueryExecutor by"
+              + " preparing the query and reading up to the given number of partitions"
+              + " concurrently, bounded by the max concurrency set by the connector. Default is"
+              + " ${DEFAULT-VALUE}, which executes queries through SynchronousQueryExecutor.")
+  private int executeQueryParallelism;
+
+  @Option(
+      names = {"--execute-query-ordering"},
+      defaultValue = "INTERLEAVED",
+      description =
+          "Order of the data batches of different partitions in the ExecuteQuery response when"
+              + " partitions are read concurrently, one of ${COMPLETION-CANDIDATES}. Default is"
+              + " ${DEFAULT-VALUE}.")
+  private ParallelQueryExecution.Ordering executeQueryOrdering;
+
+  @Option(
+      names = {"--execute-query-threads"},
+      defaultValue = "32",
+      description =
+          "The max number of partitions read concurrently by all the ExecuteQuery calls when"
+              + " --execute-query-parallelism is enabled. Further partition reads wait for a"
+              + " thread. Default is ${DEFAULT-VALUE}.")
+  private int executeQueryThreads;
+
+  @Option(
+      names = {"--server-side-evaluation"},
+      description =
+          "Evaluate the filter predicate, the compute and its aggregations, the having"
+              + " predicate, the sorting, the limit and the offset of queries on the server for"
+              + " connectors that don't support them, returning the parts that the server can't"
+              + " evaluate as the residual query. The records of StartQuery streams are only"
+              + " sorted and limited per stream, and their aggregations are left to the caller."
+              + " Joins are performed on the server for ExecuteQuery, by reading both sides."
+              + " Requires the PROTO or PROTO_COMPRESSED stream id encoding, which isn't the"
+              + " default, and isn't supported with Substrait.")
+  private boolean serverSideEvaluation;
+
   @Mixin private ServiceDirectoryEndpointConfig serviceDirectoryConfig;
   @Mixin private ConnectorLoaderConfig connectorLoaderConfig;
+  @Mixin private PartitionRegistryConfig partitionRegistryConfig;
+  @Mixin private QueryPartitioningConfig queryPartitioningConfig;
+  @Mixin private SpillConfig spillConfig;
 
   @Override
   protected void configure() {
@@ -78,6 +195,26 @@ final class ConnectorModule extends PrivateModule {
     bind(new TypeLiteral<ServerBuilder<?>>() {}).toInstance(serverBuilder);
 
     bind(ConnectorLoaderConfig.class).toInstance(connectorLoaderConfig);
+    bind(ResultStreamId.Encoding.class).toInstance(streamIdEncoding);
+    bind(PartitionRegistryConfig.class).toInstance(partitionRegistryConfig);
+    bind(QueryPartitioningConfig.class).toInstance(queryPartitioningConfig);
+    // Singleton such that StartQuery sees the reads in progress in ReaderService
+    bind(ReadConcurrency.class).in(Scopes.SINGLETON);
+    // Singleton such that handles issued by StartQuery can be resolved by ReadStream
+    bind(PartitionRegistry.class).in(Scopes.SINGLETON);
+    RequestCoalescer requestCoalescer =
+        new RequestCoalescer(coalesceRequests, coalesceRequestsThreads);
+    bind(RequestCoalescer.class).toInstance(requestCoalescer);
+    SharedScans sharedScans =
+        new SharedScans(sharedScanBufferBatches, sharedScanThreads, sharedScanMaxWait);
+    bind(SharedScans.class).toInstance(sharedScans);
+    bind(InlineResults.class).toInstance(new InlineResults(inlineResultsMaxBytes));
+    ParallelQueryExecution parallelQueryExecution =
+        new ParallelQueryExecution(
+            executeQueryParallelism, executeQueryOrdering, executeQueryThreads);
+    bind(ParallelQueryExecution.class).toInstance(parallelQueryExecution);
+    bind(QueryPlanner.class).toInstance(createQueryPlanner());
+    bind(SpillConfig.class).toInstance(spillConfig);
     if (connectorLoaderConfig.isEnableCache()) {
       install(
           new PrivateModule() {
@@ -85,7 +222,7 @@ final class ConnectorModule extends PrivateModule {
             protected void configure() {
               bind(ConnectorLoaderFactory.class)
                   .annotatedWith(CachingConnectorLoaderFactory.InternalFactory.class)
-                  .to(LocalPathConnectorLoaderFactory.class);
+                  .to(getLoaderFactoryClass());
               bind(ConnectorLoaderFactory.class)
                   .to(CachingConnectorLoaderFactory.class)
                   .in(Scopes.SINGLETON);
@@ -93,9 +230,11 @@ final class ConnectorModule extends PrivateModule {
             }
           });
     } else {
-      bind(ConnectorLoaderFactory.class).to(LocalPathConnectorLoaderFactory.class);
+      // Singleton such that all the loaders share the same library layers
+      bind(ConnectorLoaderFactory.class).to(getLoaderFactoryClass()).in(Scopes.SINGLETON);
     }
 
+    bind(ConnectorPreloader.class);
     bind(EndpointRegistry.class).toInstance(createEndpointRegistry());
 
     if (useSubstrait) {
@@ -109,6 +248,14 @@ final class ConnectorModule extends PrivateModule {
     serviceBinder.addBinding().to(ConnectorService.class);
     serviceBinder.addBinding().to(ReaderService.class);
     serviceBinder.addBinding().to(DataExploreService.class);
+    serviceBinder.addBinding().to(SubstraitConnectorService.class);
+    serviceBinder.addBinding().to(SubstraitReaderService.class);
+
+    // Components that own threads, closed by the ConnectorServer on shutdown
+    Multibinder<Closeable> closeableBinder = Multibinder.newSetBinder(binder(), Closeable.class);
+    closeableBinder.addBinding().toInstance(requestCoalescer);
+    closeableBinder.addBinding().toInstance(sharedScans);
+    closeableBinder.addBinding().toInstance(parallelQueryExecution);
 
     bind(ConnectorServer.class);
     expose(ConnectorServer.class);
@@ -116,6 +263,28 @@ final class ConnectorModule extends PrivateModule {
     bind(OpenTelemetry.class).toInstance(createOpenTelemetryInstance());
   }
 
+  /**
+   * Returns the {@link QueryPlanner}, which only evaluates queries on the server if the queries
+   * and the partitions can carry the parts to evaluate.
+   */
+  private QueryPlanner createQueryPlanner() {
+    if (serverSideEvaluation
+        && (useSubstrait || streamIdEncoding == ResultStreamId.Encoding.JSON)) {
+      logger.atWarning().log(
+          "Server side evaluation requires the PROTO or PROTO_COMPRESSED stream id encoding and"
+              + " is not supported with Substrait");
+      return new QueryPlanner(false);
+    }
+    return new QueryPlanner(serverSideEvaluation);
+  }
+
+  /** Returns the class of the {@link ConnectorLoaderFactory} that creates the loaders. */
+  private Class<? extends ConnectorLoaderFactory> getLoaderFactoryClass() {
+    return connectorLoaderConfig.isStaticConnectors()
+        ? StaticConnectorLoaderFactory.class
+        : LocalPathConnectorLoaderFactory.class;
+  }
+
   private EndpointRegistry createEndpointRegistry() {
     return serviceDirectoryConfig.isConfigured()
         ? new ServiceDirectoryEndpointRegistry(serviceDirectoryConfig)
@@ -0,0 +1,221 @@
+package com.google.cloud.connector.server;
+
+import static com.google.cloud.connector.server.common.BatchingRecordStreamResponder.DATE_TIME_ZONE_OFFSET;
+
+import com.google.cloud.bigquery.federation.v1alpha1.ArrayType;
+import com.google.cloud.bigquery.federation.v1alpha1.StructField;
+import com.google.cloud.bigquery.federation.v1alpha1.StructType;
+import com.google.cloud.bigquery.federation.v1alpha1.Type;
+import com.google.cloud.bigquery.federation.v1alpha1.TypeKind;
+import com.google.cloud.connector.data.ConnectorRecordBuilder;
+import com.google.cloud.connector.layout.ConnectorLayout;
+import com.google.cloud.connector.server.metrics.ConnectorMetricsUtil;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import io.opentelemetry.api.OpenTelemetry;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads all the connectors under the connector root directory ahead of the first request, such
+ * that the first request of each data source doesn't need to pay for creating the class loader,
+ * parsing the connector specification and loading the connector classes.
+ *
+ * <p>Connectors are loaded in parallel through the {@link ConnectorLoaderFactory}, which is
+ * expected to be caching so that the loaded connectors are retained, hence no more connectors than
+ * the size of the loader cache are loaded. Optionally, a number of synthetic records are encoded
+ * afterward to warm up the record encoding path.
+ */
+class ConnectorPreloader {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  private static final Type WARM_UP_RECORD_TYPE = createWarmUpRecordType();
+
+  private final ConnectorLoaderConfig config;
+  private final ConnectorLoaderFactory connectorLoaderFactory;
+  private final OpenTelemetry openTelemetry;
+
+  @Inject
+  ConnectorPreloader(
+      ConnectorLoaderConfig config,
+      ConnectorLoaderFactory connectorLoaderFactory,
+      OpenTelemetry openTelemetry) {
+    this.config = config;
+    this.connectorLoaderFactory = connectorLoaderFactory;
+    this.openTelemetry = openTelemetry;
+  }
+
+  /**
+   * Loads all the connectors under the connector root directory if it is enabled. Failure in
+   * loading a connector is logged and doesn't fail the call.
+   *
+   * @throws InterruptedException if interrupted while waiting for the connectors to load
+   */
+  void preload() throws InterruptedException {
+    if (!config.isPreloadConnectors()) {
+      return;
+    }
+    if (!config.isEnableCache()) {
+      logger.atWarning().log("Skip preloading connectors since the loader cache is not enabled");
+      return;
+    }
+
+    List<String> datasourceIds = ConnectorLayout.listDatasourceIds(config.getConnectorRootDir());
+    if (datasourceIds.isEmpty()) {
+      return;
+    }
+    // Connectors beyond the cache size would only evict the ones that are preloaded earlier
+    if (datasourceIds.size() > config.getCacheMaxSize()) {
+      logger.atWarning().log(
+          "Only preload %d of the %d connectors, limited by the loader cache size",
+          config.getCacheMaxSize(), datasourceIds.size());
+      datasourceIds = datasourceIds.subList(0, (int) config.getCacheMaxSize());
+    }
+
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    int threads = Math.max(1, Math.min(config.getPreloadThreads(), datasourceIds.size()));
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            threads,
+            new ThreadFactoryBuilder()
+                .setNameFormat("connector-preload-%d")
+                .setDaemon(true)
+                .build());
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (String datasourceId : datasourceIds) {
+        futures.add(executor.submit(() -> preload(datasourceId)));
+      }
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          // It shouldn't happen since failures are handled in the task
+          logger.atWarning().withCause(e.getCause()).log("Failed to preload connector");
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    warmUp(config.getPreloadWarmUpRecords());
+    logger.atInfo().log(
+        "Preloaded %d connectors in %s with %d threads", datasourceIds.size(), stopwatch, threads);
+  }
+
+  /** Loads the connector of the given data source and records the time spent. */
+  private void preload(String datasourceId) {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    try (ConnectorLoader loader = connectorLoaderFactory.get(datasourceId)) {
+      loader.preload();
+      Duration elapsed = stopwatch.elapsed();
+      ConnectorMetricsUtil.recordPreloadLatency(openTelemetry, datasourceId, elapsed);
+      logger.atInfo().log("Preloaded connector '%s' in %d ms", datasourceId, elapsed.toMillis());
+    } catch (RuntimeException e) {
+      logger.atWarning().withCause(e).log("Failed to preload connector '%s'", datasourceId);
+    }
+  }
+
+  /**
+   * Encodes the given number of synthetic records through {@link ConnectorRecordBuilder}, which
+   * covers setting values of all the simple types.
+   */
+  @VisibleForTesting
+  static void warmUp(int records) {
+    if (records <= 0) {
+      return;
+    }
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    long totalBytes = 0;
+    ConnectorRecordBuilder builder =
+        new ConnectorRecordBuilder(WARM_UP_RECORD_TYPE, DATE_TIME_ZONE_OFFSET);
+    for (int i = 0; i < records; i++) {
+      builder
+          .field("bool")
+          .set(i % 2 == 0)
+          .field("int32")
+          .set(i)
+          .field("int64")
+          .set((long) i)
+          .field("float")
+          .set((float) i)
+          .field("double")
+          .set((double) i)
+          .field("numeric")
+          .set(BigDecimal.valueOf(i, 2))
+          .field("string")
+          .set(Integer.toString(i))
+          .field("bytes")
+          .set(new byte[] {(byte) i})
+          .field("date")
+          .set(LocalDate.ofEpochDay(i))
+          .field("datetime")
+          .set(LocalDateTime.of(2000, 1, 1, 0, 0).plusSeconds(i))
+          .field("timestamp")
+          .set(OffsetDateTime.of(2000, 1, 1, 0, 0, 0, 0, DATE_TIME_ZONE_OFFSET).plusSeconds(i))
+          .field("time")
+          .set(LocalTime.ofSecondOfDay(i % 86400))
+          .field("null")
+          .setNull()
+          .field("array")
+          .array()
+          .add()
+          .set((long) i)
+          .endArray()
+          .endStruct();
+      totalBytes += builder.getValue().getSerializedSize();
+    }
+    logger.atInfo().log(
+        "Encoded %d synthetic records of %d bytes in %s for warm up",
+        records, totalBytes, stopwatch);
+  }
+
+  private static Type createWarmUpRecordType() {
+    StructType.Builder structType =
+        StructType.newBuilder()
+            .addFields(simpleField("bool", TypeKind.BOOL))
+            .addFields(simpleField("int32", TypeKind.INT32))
+            .addFields(simpleField("int64", TypeKind.INT64))
+            .addFields(simpleField("float", TypeKind.FLOAT))
+            .addFields(simpleField("double", TypeKind.DOUBLE))
+            .addFields(simpleField("numeric", TypeKind.NUMERIC))
+            .addFields(simpleField("string", TypeKind.STRING))
+            .addFields(simpleField("bytes", TypeKind.BYTES))
+            .addFields(simpleField("date", TypeKind.DATE))
+            .addFields(simpleField("datetime", TypeKind.DATETIME))
+            .addFields(simpleField("timestamp", TypeKind.TIMESTAMP))
+            .addFields(simpleField("time", TypeKind.TIME))
+            .addFields(simpleField("null", TypeKind.STRING))
+            .addFields(
+                StructField.newBuilder()
+                    .setFieldName("array")
+                    .setFieldType(
+                        Type.newBuilder()
+                            .setTypeKind(TypeKind.ARRAY)
+                            .setArrayType(
+                                ArrayType.newBuilder()
+                                    .setElementType(
+                                        Type.newBuilder().setTypeKind(TypeKind.INT64)))));
+    return Type.newBuilder().setTypeKind(TypeKind.STRUCT).setStructType(structType).build();
+  }
+
+  private static StructField simpleField(String name, TypeKind typeKind) {
+    return StructField.newBuilder()
+        .setFieldName(name)
+        .setFieldType(Type.newBuilder().setTypeKind(typeKind))
+        .build();
+  }
+}
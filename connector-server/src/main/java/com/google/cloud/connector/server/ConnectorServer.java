@@ -21,6 +21,8 @@ class ConnectorServer extends AbstractIdleService {
   private final Server server;
   private final EndpointRegistry endpointRegistry;
   private final ConnectorLoaderFactory connectorLoaderFactory;
+  private final ConnectorPreloader connectorPreloader;
+  private final Set<Closeable> closeables;
   private Closeable serviceRegistration;
 
   @Inject
@@ -28,7 +30,9 @@ class ConnectorServer extends AbstractIdleService {
       ServerBuilder<?> serverBuilder,
       EndpointRegistry endpointRegistry,
       Set<BindableService> services,
-      ConnectorLoaderFactory connectorLoaderFactory) {
+      ConnectorLoaderFactory connectorLoaderFactory,
+      ConnectorPreloader connectorPreloader,
+      Set<Closeable> closeables) {
 
     this.server =
         services.stream()
@@ -43,6 +47,8 @@ class ConnectorServer extends AbstractIdleService {
 
     this.endpointRegistry = endpointRegistry;
     this.connectorLoaderFactory = connectorLoaderFactory;
+    this.connectorPreloader = connectorPreloader;
+    this.closeables = closeables;
   }
 
   public int getPort() {
@@ -52,6 +58,8 @@ class ConnectorServer extends AbstractIdleService {
   @Override
   protected void startUp() throws Exception {
     server.start();
+    // Only register the endpoint after the connectors are loaded to avoid slow first requests
+    connectorPreloader.preload();
     serviceRegistration = endpointRegistry.register(getPort());
   }
 
@@ -67,6 +75,15 @@ class ConnectorServer extends AbstractIdleService {
     server.shutdown();
     server.awaitTermination();
 
+    for (Closeable closeable : closeables) {
+      try {
+        closeable.close();
+      } catch (Exception e) {
+        logger.atWarning().withCause(e).log(
+            "Failed to close '%s'", closeable.getClass().getSimpleName());
+      }
+    }
+
     if (connectorLoaderFactory instanceof Closeable) {
       try {
         ((Closeable) connectorLoaderFactory).close();
@@ -1,5 +1,6 @@
 package com.google.cloud.connector.server;
 
+import static com.google.cloud.connector.data.ResultStreamId.COLLECTION_ID_STREAM;
 import static com.google.cloud.connector.server.metrics.MetricsConstants.API_EXECUTE_QUERY;
 import static com.google.cloud.connector.server.metrics.MetricsConstants.API_RESOLVE_SCHEMA;
 import static com.google.cloud.connector.server.metrics.MetricsConstants.API_START_QUERY;
@@ -12,6 +13,7 @@ import com.google.cloud.bigquery.federation.v1alpha1.Data;
 import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
 import com.google.cloud.bigquery.federation.v1alpha1.DataSource;
 import com.google.cloud.bigquery.federation.v1alpha1.ExecuteQueryRequest;
+import com.google.cloud.bigquery.federation.v1alpha1.Expression;
 import com.google.cloud.bigquery.federation.v1alpha1.GetDataSourceRequest;
 import com.google.cloud.bigquery.federation.v1alpha1.ResolveSchemaRequest;
 import com.google.cloud.bigquery.federation.v1alpha1.Schema;
@@ -27,9 +29,16 @@ import com.google.cloud.connector.api.SynchronousQueryExecutor;
 import com.google.cloud.connector.api.exception.ConnectorException;
 import com.google.cloud.connector.data.AssetInfo;
 import com.google.cloud.connector.data.ConnectorParallelQueryPreparationContext;
+import com.google.cloud.connector.data.Partition;
+import com.google.cloud.connector.data.ResultStreamId;
 import com.google.cloud.connector.server.common.BatchingRecordStreamResponder;
 import com.google.cloud.connector.server.metrics.ConnectorMetricsUtil;
 import com.google.cloud.connector.server.metrics.DataBatchMetricsRecorder;
+import com.google.cloud.connector.server.query.EvaluatingObserver;
+import com.google.cloud.connector.server.query.HashJoin;
+import com.google.cloud.connector.server.query.QueryPlan;
+import com.google.cloud.connector.server.query.QueryPlanner;
+import com.google.cloud.connector.server.query.SpillConfig;
 import com.google.common.base.Preconditions;
 import com.google.common.flogger.FluentLogger;
 import com.google.inject.Inject;
@@ -43,6 +52,8 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
+import javax.annotation.Nullable;
 
 /**
  * Implementation of the {@link ConnectorServiceGrpc} gRPC service.
@@ -52,16 +63,43 @@ class ConnectorService extends ConnectorServiceImplBase implements BatchingRecor
   private final ConnectorLoaderFactory connectorLoaderFactory;
   private final Provider<DataSchemaBuilder> dataSchemaBuilderProvider;
   private final OpenTelemetry openTelemetry;
+  private final ResultStreamId.Encoding streamIdEncoding;
+  private final PartitionRegistry partitionRegistry;
+  private final RequestCoalescer requestCoalescer;
+  private final InlineResults inlineResults;
+  private final ParallelQueryExecution parallelQueryExecution;
+  private final QueryPartitioningConfig queryPartitioningConfig;
+  private final ReadConcurrency readConcurrency;
+  private final QueryPlanner queryPlanner;
+  private final SpillConfig spillConfig;
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
   @Inject
   ConnectorService(
       ConnectorLoaderFactory connectorLoaderFactory,
       Provider<DataSchemaBuilder> dataSchemaBuilderProvider,
-      OpenTelemetry openTelemetry) {
+      OpenTelemetry openTelemetry,
+      ResultStreamId.Encoding streamIdEncoding,
+      PartitionRegistry partitionRegistry,
+      RequestCoalescer requestCoalescer,
+      InlineResults inlineResults,
+      ParallelQueryExecution parallelQueryExecution,
+      QueryPartitioningConfig queryPartitioningConfig,
+      ReadConcurrency readConcurrency,
+      QueryPlanner queryPlanner,
+      SpillConfig spillConfig) {
     this.connectorLoaderFactory = connectorLoaderFactory;
     this.dataSchemaBuilderProvider = dataSchemaBuilderProvider;
     this.openTelemetry = openTelemetry;
+    this.streamIdEncoding = streamIdEncoding;
+    this.partitionRegistry = partitionRegistry;
+    this.requestCoalescer = requestCoalescer;
+    this.inlineResults = inlineResults;
+    this.parallelQueryExecution = parallelQueryExecution;
+    this.queryPartitioningConfig = queryPartitioningConfig;
+    this.readConcurrency = readConcurrency;
+    this.queryPlanner = queryPlanner;
+    this.spillConfig = spillConfig;
   }
 
   @Override
@@ -74,10 +112,18 @@ class ConnectorService extends ConnectorServiceImplBase implements BatchingRecor
     String dataSourceId = datasetName.datasource();
 
     String status = API_STATUS_FAILED;
-    try (ConnectorLoader loader = connectorLoaderFactory.get(dataSourceId)) {
-      Schema schema = resolveSchemaInternal(loader, request).toBuilder()
-          .setDataSource(loader.getDataSource())
-          .build();
+    try {
+      Schema schema =
+          requestCoalescer.execute(
+              ConnectorServiceGrpc.getResolveSchemaMethod().getFullMethodName(),
+              request,
+              () -> {
+                try (ConnectorLoader loader = connectorLoaderFactory.get(dataSourceId)) {
+                  return resolveSchemaInternal(loader, request).toBuilder()
+                      .setDataSource(queryPlanner.withServerCapabilities(loader.getDataSource()))
+                      .build();
+                }
+              });
       responseObserver.onNext(schema);
       responseObserver.onCompleted();
       status = API_STATUS_SUCCESS;
@@ -108,19 +154,13 @@ class ConnectorService extends ConnectorServiceImplBase implements BatchingRecor
     String dataSourceId = datasetName.datasource();
 
     String status = API_STATUS_FAILED;
-    try (ConnectorLoader loader = connectorLoaderFactory.get(dataSourceId)) {
-      ParallelQueryExecutor connector =
-          loader.instantiateConnector(request.getParameters(), ParallelQueryExecutor.class);
-
-      AssetName connectorAssetName = getAssetNameFromDataQuery(request.getDataQuery());
-      DataQuery.SourceCase connectorAssetType = request.getDataQuery().getSourceCase();
-      ConnectorParallelQueryPreparationContext context =
-          new ConnectorParallelQueryPreparationContext(
-              datasetName, new AssetInfo(
-                  connectorAssetName, request.getDataQuery().getNativeQuery()));
-      connector.prepareQuery(connectorAssetName, request.getDataQuery(), context);
-
-      responseObserver.onNext(context.buildStartQueryResponse());
+    try {
+      StartQueryResponse response =
+          requestCoalescer.execute(
+              ConnectorServiceGrpc.getStartQueryMethod().getFullMethodName(),
+              request,
+              () -> startQueryInternal(datasetName, request));
+      responseObserver.onNext(response);
       status = API_STATUS_SUCCESS;
       responseObserver.onCompleted();
     } catch (IllegalArgumentException | ValidationException ex) {
@@ -151,16 +191,63 @@ class ConnectorService extends ConnectorServiceImplBase implements BatchingRecor
 
     String status = API_STATUS_FAILED;
     try (ConnectorLoader loader = connectorLoaderFactory.get(dataSourceId)) {
-      SynchronousQueryExecutor connector =
-          loader.instantiateConnector(request.getParameters(), SynchronousQueryExecutor.class);
+      DataBatchMetricsRecorder metricsRecorder =
+          new DataBatchMetricsRecorder(openTelemetry, dataSourceId, API_EXECUTE_QUERY, start);
+      if (queryPlanner.isJoin(request.getDataQuery(), loader.getDataSource())) {
+        executeJoin(loader, request, responseObserver, metricsRecorder);
+        status = API_STATUS_SUCCESS;
+        return;
+      }
 
       AssetName connectorAsset = getAssetNameFromDataQuery(request.getDataQuery());
-      try (RecordReader reader = connector.execute(connectorAsset, request.getDataQuery())) {
+      QueryPlan plan = planQuery(loader, request.getDataQuery(), true);
+
+      // A single instance serves the query through whichever interface it is executed
+      Object connector = loader.instantiateConnector(request.getParameters(), Object.class);
+      if (parallelQueryExecution.isEnabled()
+          && connector instanceof ParallelQueryExecutor parallelConnector) {
+        if (!parallelQueryExecution.execute(
+            parallelConnector,
+            connectorAsset,
+            plan.connectorQuery(),
+            getPruningPredicate(request.getDataQuery()),
+            (partition, observer) ->
+                readPartition(
+                    parallelConnector,
+                    connectorAsset,
+                    partition,
+                    EvaluatingObserver.evaluating(
+                        observer, plan.partitionQuery(), null, spillConfig),
+                    metricsRecorder),
+            EvaluatingObserver.evaluating(
+                responseObserver, plan.mergeQuery(), plan.residualQuery(), spillConfig))) {
+          // The connector added no partition, or all of them were pruned, so the result is empty
+          sendNoRecordBatch(
+              EvaluatingObserver.evaluating(
+                  responseObserver, plan.serverQuery(), plan.residualQuery(), spillConfig),
+              resolveAssetSchema(connector, request.getDataQuery()),
+              metricsRecorder);
+        }
+        status = API_STATUS_SUCCESS;
+        return;
+      }
+
+      if (!(connector instanceof SynchronousQueryExecutor synchronousConnector)) {
+        throw new ClassCastException(
+            String.format(
+                "Connector '%s' implementation class '%s' cannot be cast to type '%s'",
+                dataSourceId,
+                connector.getClass().getName(),
+                SynchronousQueryExecutor.class.getName()));
+      }
+      try (RecordReader reader =
+          synchronousConnector.execute(connectorAsset, plan.connectorQuery())) {
         sendRecordsInBatches(
-            responseObserver,
+            EvaluatingObserver.evaluating(
+                responseObserver, plan.serverQuery(), plan.residualQuery(), spillConfig),
             reader,
             dataSchemaBuilderProvider.get(),
-            new DataBatchMetricsRecorder(openTelemetry, dataSourceId, API_EXECUTE_QUERY, start));
+            metricsRecorder);
         status = API_STATUS_SUCCESS;
       } catch (IOException e) {
         throw new UncheckedIOException(e);
@@ -185,8 +272,17 @@ class ConnectorService extends ConnectorServiceImplBase implements BatchingRecor
     DatasetName datasetName = DatasetName.fromName(request.getName());
     String dataSourceId = datasetName.datasource();
 
-    try (ConnectorLoader loader = connectorLoaderFactory.get(dataSourceId)) {
-      responseObserver.onNext(loader.getDataSource());
+    try {
+      DataSource dataSource =
+          requestCoalescer.execute(
+              ConnectorServiceGrpc.getGetDataSourceMethod().getFullMethodName(),
+              request,
+              () -> {
+                try (ConnectorLoader loader = connectorLoaderFactory.get(dataSourceId)) {
+                  return queryPlanner.withServerCapabilities(loader.getDataSource());
+                }
+              });
+      responseObserver.onNext(dataSource);
       responseObserver.onCompleted();
     } catch (IllegalArgumentException | ValidationException ex) {
       throw ConnectorException.newBuilder(
@@ -196,6 +292,235 @@ class ConnectorService extends ConnectorServiceImplBase implements BatchingRecor
     }
   }
 
+  private StartQueryResponse startQueryInternal(
+      DatasetName datasetName, StartQueryRequest request) {
+    try (ConnectorLoader loader = connectorLoaderFactory.get(datasetName.datasource())) {
+      if (queryPlanner.isJoin(request.getDataQuery(), loader.getDataSource())) {
+        throw new IllegalArgumentException(
+            "Joins that the connector doesn't support are only executed by ExecuteQuery");
+      }
+      ParallelQueryExecutor connector =
+          loader.instantiateConnector(request.getParameters(), ParallelQueryExecutor.class);
+
+      AssetName connectorAssetName = getAssetNameFromDataQuery(request.getDataQuery());
+      ConnectorParallelQueryPreparationContext context =
+          new ConnectorParallelQueryPreparationContext(
+              datasetName,
+              new AssetInfo(connectorAssetName, request.getDataQuery().getNativeQuery()),
+              streamIdEncoding,
+              queryPartitioningConfig.getMaxStreams());
+      QueryPlan plan = planQuery(loader, request.getDataQuery(), false);
+      context.setServerQuery(plan.serverQuery());
+      context.setFilterPredicate(getPruningPredicate(request.getDataQuery()));
+      connector.prepareQuery(connectorAssetName, plan.connectorQuery(), context);
+      if (context.getPrunedPartitions() > 0) {
+        logger.atInfo().log(
+            "Pruned %d partitions of dataset:{%s} by the filter predicate",
+            context.getPrunedPartitions(), datasetName);
+      }
+
+      StartQueryResponse response = context.buildStartQueryResponse();
+      if (plan.residualQuery() != null) {
+        StartQueryResponse.Builder builder =
+            response.toBuilder().setResidualQuery(plan.residualQuery());
+        builder.getResultSetsBuilder(0).setLabel(QueryPlanner.RESULT_SET_LABEL);
+        response = builder.build();
+      }
+      if (response.getMaxConcurrency() == 0 && readConcurrency.isEnabled()) {
+        int maxConcurrency =
+            readConcurrency.deriveMaxConcurrency(
+                response.getResultSetsList().stream()
+                    .flatMap(resultSet -> resultSet.getStreamsList().stream())
+                    .toList());
+        response = response.toBuilder().setMaxConcurrency(maxConcurrency).build();
+      }
+      if (inlineResults.isEnabled()) {
+        response = inlineResults(connector, datasetName.datasource(), response);
+      }
+      if (partitionRegistry.isEnabled()) {
+        response =
+            registerStreams(
+                response,
+                request.hasQueryTimeout()
+                    ? Duration.ofSeconds(
+                        request.getQueryTimeout().getSeconds(),
+                        request.getQueryTimeout().getNanos())
+                    : null);
+      }
+      return response;
+    }
+  }
+
+  /**
+   * Returns the split of the given query between the connector, the server and the caller, based
+   * on the capabilities that the connector declares.
+   *
+   * @param singleStream whether the records are returned in a single stream, as for ExecuteQuery
+   */
+  private QueryPlan planQuery(ConnectorLoader loader, DataQuery query, boolean singleStream) {
+    if (!queryPlanner.isEnabled()) {
+      return QueryPlan.ofConnector(query);
+    }
+    return queryPlanner.plan(query, loader.getDataSource(), singleStream);
+  }
+
+  /**
+   * Executes a query whose source is a join that the connector doesn't support, by reading both
+   * sides through the connector and joining them with a {@link HashJoin}.
+   */
+  private void executeJoin(
+      ConnectorLoader loader,
+      ExecuteQueryRequest request,
+      StreamObserver<Data> responseObserver,
+      DataBatchMetricsRecorder metricsRecorder) {
+    DataQuery query = request.getDataQuery();
+    DataSource dataSource = loader.getDataSource();
+    // Both sides are planned before either is read, such that unsupported sides fail early
+    planJoinSide(query.getJoin().getLeft(), dataSource);
+    planJoinSide(query.getJoin().getRight(), dataSource);
+    QueryPlan plan = queryPlanner.planJoin(query);
+
+    SynchronousQueryExecutor connector =
+        loader.instantiateConnector(request.getParameters(), SynchronousQueryExecutor.class);
+    try (HashJoin join = new HashJoin(query.getJoin(), spillConfig)) {
+      readJoinSide(
+          connector, dataSource, join.getBuildQuery(), join.buildObserver(), metricsRecorder);
+      readJoinSide(
+          connector,
+          dataSource,
+          join.getProbeQuery(dataSource),
+          join.probeObserver(
+              EvaluatingObserver.evaluating(
+                  responseObserver, plan.serverQuery(), plan.residualQuery(), spillConfig)),
+          metricsRecorder);
+    }
+  }
+
+  /** Reads a side of a join, evaluating the parts of its query that the connector can't. */
+  private void readJoinSide(
+      SynchronousQueryExecutor connector,
+      DataSource dataSource,
+      DataQuery side,
+      StreamObserver<Data> observer,
+      DataBatchMetricsRecorder metricsRecorder) {
+    QueryPlan plan = planJoinSide(side, dataSource);
+    try (RecordReader reader =
+        connector.execute(getAssetNameFromDataQuery(side), plan.connectorQuery())) {
+      sendRecordsInBatches(
+          EvaluatingObserver.evaluating(observer, plan.serverQuery(), null, spillConfig),
+          reader,
+          dataSchemaBuilderProvider.get(),
+          metricsRecorder);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Returns the split of the query of a side of a join between the connector and the server.
+   *
+   * @throws IllegalArgumentException if neither the connector nor the server can perform the whole
+   *     query, since the records are joined before the caller receives them
+   */
+  private QueryPlan planJoinSide(DataQuery side, DataSource dataSource) {
+    QueryPlan plan = queryPlanner.plan(side, dataSource, true);
+    if (plan.residualQuery() != null) {
+      throw new IllegalArgumentException(
+          String.format("Unsupported query of a side of the join: %s", plan.residualQuery()));
+    }
+    return plan;
+  }
+
+  /**
+   * Returns the filter predicate to prune the partitions of the query by, or {@code null} if
+   * partitions are not pruned.
+   */
+  @Nullable
+  private Expression getPruningPredicate(DataQuery dataQuery) {
+    return queryPartitioningConfig.isPrunePartitions() && dataQuery.hasFilterPredicate()
+        ? dataQuery.getFilterPredicate()
+        : null;
+  }
+
+  /** Reads a partition of a query and sends the records in batches. */
+  private void readPartition(
+      ParallelQueryExecutor connector,
+      AssetName assetName,
+      byte[] partition,
+      StreamObserver<Data> observer,
+      DataBatchMetricsRecorder metricsRecorder) {
+    try (RecordReader reader = connector.readPartition(assetName, partition)) {
+      sendRecordsInBatches(observer, reader, dataSchemaBuilderProvider.get(), metricsRecorder);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Reads the stream of the given response if it is the only stream, and sets its content inline
+   * in the response if it fits in the {@link InlineResults} limit. Streams without a partition
+   * query are not inlined, since they only carry the schema of the asset.
+   */
+  private StartQueryResponse inlineResults(
+      ParallelQueryExecutor connector, String dataSourceId, StartQueryResponse response) {
+    if (response.hasResidualQuery()
+        || response.getResultSetsCount() != 1
+        || response.getResultSets(0).getStreamsCount() != 1) {
+      return response;
+    }
+    List<Partition> partitions =
+        ResultStreamId.decodePartitions(response.getResultSets(0).getStreams(0).getId());
+    if (partitions.size() != 1 || partitions.get(0).isEmpty()) {
+      return response;
+    }
+    Partition partition = partitions.get(0);
+
+    DataBatchMetricsRecorder metricsRecorder =
+        new DataBatchMetricsRecorder(openTelemetry, dataSourceId, API_START_QUERY, Instant.now());
+    return inlineResults
+        .collect(
+            observer -> {
+              try (RecordReader reader =
+                  connector.readPartition(AssetName.ROOT_ASSET, partition.query())) {
+                sendRecordsInBatches(
+                    EvaluatingObserver.evaluating(
+                        observer, partition.serverQuery(), null, spillConfig),
+                    reader,
+                    dataSchemaBuilderProvider.get(),
+                    metricsRecorder);
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            })
+        .map(
+            data -> {
+              StartQueryResponse.Builder builder = response.toBuilder();
+              builder.getResultSetsBuilder(0).getStreamsBuilder(0).addAllInlineData(data);
+              return builder.build();
+            })
+        .orElse(response);
+  }
+
+  /**
+   * Registers the stream ids of the given response in the {@link PartitionRegistry} and replaces
+   * the stream names with names that carry the short handles. The self-describing stream ids are
+   * kept in {@code Stream.id}, which clients use to read a stream when its handle can't be
+   * resolved.
+   */
+  private StartQueryResponse registerStreams(
+      StartQueryResponse response, @Nullable Duration queryTimeout) {
+    StartQueryResponse.Builder builder = response.toBuilder();
+    for (StartQueryResponse.ResultSet.Builder resultSet : builder.getResultSetsBuilderList()) {
+      DatasetName resultSetName = DatasetName.fromName(resultSet.getName());
+      for (StartQueryResponse.ResultSet.Stream.Builder stream : resultSet.getStreamsBuilderList()) {
+        String handle = partitionRegistry.register(stream.getId(), queryTimeout);
+        stream.setName(
+            resultSetName.append(new DatasetName.Component(COLLECTION_ID_STREAM, handle)).name());
+      }
+    }
+    return builder.build();
+  }
+
   private Schema resolveSchemaInternal(ConnectorLoader loader, ResolveSchemaRequest request) {
     DataSchemaBuilder schemaBuilder = dataSchemaBuilderProvider.get();
     switch (request.getSourceCase()) {
@@ -214,6 +539,20 @@ class ConnectorService extends ConnectorServiceImplBase implements BatchingRecor
     return schemaBuilder.getSchema();
   }
 
+  /** Resolves the schema of the asset of the given query with the given connector instance. */
+  private Schema resolveAssetSchema(Object connector, DataQuery dataQuery) {
+    DataSchemaBuilder schemaBuilder = dataSchemaBuilderProvider.get();
+    switch (dataQuery.getSourceCase()) {
+      case NAMED_TABLE -> ((Connector) connector)
+          .resolveSchema(AssetName.fromNamedTable(dataQuery.getNamedTable()), schemaBuilder);
+      case NATIVE_QUERY -> ((NativeQuerySchemaResolver) connector)
+          .resolveSchema(AssetName.ROOT_ASSET, dataQuery.getNativeQuery(), schemaBuilder);
+      default -> throw new IllegalArgumentException(
+          String.format("Unsupported source case: %s", dataQuery.getSourceCase()));
+    }
+    return schemaBuilder.getSchema();
+  }
+
   private AssetName getAssetNameFromDataQuery(DataQuery dataQuery) {
     return switch (dataQuery.getSourceCase()) {
       case NAMED_TABLE -> AssetName.fromNamedTable(dataQuery.getNamedTable());
@@ -165,7 +165,7 @@ public class ExceptionHandler implements ServerInterceptor {
     }
   }
 
-  private static Code getGrpcStatusCode(FailureReason reason) {
+  static Code getGrpcStatusCode(FailureReason reason) {
     return switch (reason) {
       case INVALID_ARGUMENT -> Code.INVALID_ARGUMENT;
       case NOT_FOUND -> Code.NOT_FOUND;
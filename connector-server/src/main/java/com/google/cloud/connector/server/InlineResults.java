@@ -0,0 +1,100 @@
+package com.google.cloud.connector.server;
+
+import com.google.cloud.bigquery.federation.v1alpha1.Data;
+import com.google.common.flogger.FluentLogger;
+import io.grpc.stub.StreamObserver;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Reads small streams eagerly when StartQuery is called, such that the stream content can be
+ * returned inline with the StartQuery response, saving the round trip of the ReadStream call.
+ *
+ * <p>The read is abandoned as soon as the size of the {@link Data} batches exceeds the limit, in
+ * which case the stream is returned as usual for the caller to read it through ReadStream.
+ */
+final class InlineResults {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private final long maxBytes;
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxBytes maximum total serialized size of the {@link Data} batches of a stream that
+   *     can be returned inline. Results are never inlined if it is zero.
+   */
+  InlineResults(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /** Returns {@code true} if results can be inlined. */
+  boolean isEnabled() {
+    return maxBytes > 0;
+  }
+
+  /**
+   * Collects the {@link Data} batches of a stream.
+   *
+   * @param read the read of the stream, which sends the batches to the given {@link
+   *     StreamObserver}, followed by completing it
+   * @return the {@link Data} batches, or an empty {@link Optional} if the stream exceeds the size
+   *     limit or the read failed
+   */
+  Optional<List<Data>> collect(Consumer<StreamObserver<Data>> read) {
+    if (!isEnabled()) {
+      return Optional.empty();
+    }
+    Collector collector = new Collector();
+    try {
+      read.accept(collector);
+    } catch (LimitExceededException e) {
+      logger.atFine().log("Stream exceeds the inline result limit of %d bytes", maxBytes);
+      return Optional.empty();
+    } catch (RuntimeException e) {
+      // The failure is reported by ReadStream instead
+      logger.atWarning().withCause(e).log("Failed to read stream for inline result");
+      return Optional.empty();
+    }
+    return collector.completed ? Optional.of(collector.batches) : Optional.empty();
+  }
+
+  /** Thrown to stop reading a stream when it exceeds the size limit. */
+  private static final class LimitExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private LimitExceededException() {
+      super(null, null, false, false);
+    }
+  }
+
+  /** A {@link StreamObserver} that collects {@link Data} batches up to the size limit. */
+  private final class Collector implements StreamObserver<Data> {
+
+    private final List<Data> batches = new ArrayList<>();
+    private long bytes;
+    private boolean completed;
+
+    @Override
+    public void onNext(Data data) {
+      bytes += data.getSerializedSize();
+      if (bytes > maxBytes) {
+        throw new LimitExceededException();
+      }
+      batches.add(data);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      // Errors are thrown by the read
+    }
+
+    @Override
+    public void onCompleted() {
+      completed = true;
+    }
+  }
+}
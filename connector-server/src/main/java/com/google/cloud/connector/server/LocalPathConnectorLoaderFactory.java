@@ -1,22 +1,32 @@
 package com.google.cloud.connector.server;
 
+import com.google.cloud.connector.layout.ConnectorLayout;
 import com.google.inject.Inject;
+import javax.annotation.Nullable;
 
 /**
  * A straightforward implementation of {@link ConnectorLoaderFactory} that creates {@link
- * LocalPathConnectorLoader} directly.
+ * LocalPathConnectorLoader} directly. If {@link ConnectorLoaderConfig#isShareLibraryJars()} is
+ * enabled, dependency jars of the connectors are loaded through {@link SharedLibraryLayers}.
  */
 public class LocalPathConnectorLoaderFactory implements ConnectorLoaderFactory {
 
   private final ConnectorLoaderConfig config;
+  @Nullable private final SharedLibraryLayers libraryLayers;
 
   @Inject
   LocalPathConnectorLoaderFactory(ConnectorLoaderConfig config) {
     this.config = config;
+    this.libraryLayers =
+        config.isShareLibraryJars()
+            ? new SharedLibraryLayers(LocalPathConnectorLoader.CONNECTOR_PARENT_CLASSLOADER)
+            : null;
   }
 
   @Override
   public ConnectorLoader get(String datasourceId) {
-    return new LocalPathConnectorLoader(config.getConnectorRootDir().resolve(datasourceId));
+    return new LocalPathConnectorLoader(
+        config.getConnectorRootDir().resolve(ConnectorLayout.checkDatasourceId(datasourceId)),
+        libraryLayers);
   }
 }
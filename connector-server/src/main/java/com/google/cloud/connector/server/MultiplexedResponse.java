@@ -0,0 +1,80 @@
+package com.google.cloud.connector.server;
+
+import com.google.cloud.bigquery.federation.v1alpha1.Data;
+import com.google.cloud.bigquery.federation.v1alpha1.Schema;
+import com.google.protobuf.ByteString;
+import io.grpc.stub.StreamObserver;
+import javax.annotation.Nullable;
+
+/**
+ * Sends the {@link Data} batches of a sequence of partition reads through a single response
+ * stream. Each partition read completes its own {@link StreamObserver}, while the response stream
+ * is completed once by {@link #complete()}.
+ *
+ * <p>The schema is only sent with the first batch of the response, and again if a later partition
+ * has a different schema. Batches that are left without rows or split-off streams are dropped.
+ * When the response carries several streams, each batch is tagged with the {@code stream_id} of
+ * its stream.
+ */
+final class MultiplexedResponse {
+
+  private final StreamObserver<Data> responseObserver;
+  @Nullable private Schema lastSchema;
+
+  /**
+   * Creates an instance.
+   *
+   * @param responseObserver the {@link StreamObserver} of the call
+   */
+  MultiplexedResponse(StreamObserver<Data> responseObserver) {
+    this.responseObserver = responseObserver;
+  }
+
+  /**
+   * Returns a {@link StreamObserver} for the read of a partition.
+   *
+   * @param streamId the id to tag the batches with, or {@code null} to not tag them
+   */
+  StreamObserver<Data> partitionObserver(@Nullable ByteString streamId) {
+    return new StreamObserver<>() {
+      @Override
+      public void onNext(Data data) {
+        send(streamId == null ? data : data.toBuilder().setStreamId(streamId).build());
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        // Errors are thrown by the partition read
+      }
+
+      @Override
+      public void onCompleted() {
+        // The response continues with the next partition
+      }
+    };
+  }
+
+  /** Sends the message that marks the end of the given stream. */
+  void endStream(ByteString streamId) {
+    responseObserver.onNext(Data.newBuilder().setStreamId(streamId).build());
+  }
+
+  /** Completes the response stream. */
+  void complete() {
+    responseObserver.onCompleted();
+  }
+
+  private void send(Data data) {
+    if (data.hasSchema()) {
+      if (data.getSchema().equals(lastSchema)) {
+        data = data.toBuilder().clearSchema().build();
+        if (!data.hasDataBlock() && data.getSplitStreamsCount() == 0) {
+          return;
+        }
+      } else {
+        lastSchema = data.getSchema();
+      }
+    }
+    responseObserver.onNext(data);
+  }
+}
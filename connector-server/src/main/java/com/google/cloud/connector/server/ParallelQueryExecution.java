@@ -0,0 +1,443 @@
+package com.google.cloud.connector.server;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.cloud.bigquery.federation.v1alpha1.Data;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.bigquery.federation.v1alpha1.Expression;
+import com.google.cloud.connector.api.AssetName;
+import com.google.cloud.connector.api.ColumnStatistics;
+import com.google.cloud.connector.api.ParallelQueryExecutor;
+import com.google.cloud.connector.api.ParallelQueryPreparationContext;
+import com.google.cloud.connector.data.PartitionPruner;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * Executes a query through the {@link ParallelQueryExecutor} interface of a connector for the
+ * ExecuteQuery call, by reading the partitions of the query concurrently and merging their {@link
+ * Data} batches into the single response stream.
+ *
+ * <p>The number of partitions read concurrently is limited by the configured parallelism, as well
+ * as by the maximum concurrency set by the connector through {@link
+ * ParallelQueryPreparationContext#setMaxConcurrency(int)}. Batches of different partitions are
+ * either interleaved in the order they are read, or sent partition by partition in the order the
+ * partitions are added by the connector. Each partition buffers a bounded number of batches, such
+ * that partition reads wait for the response stream to catch up.
+ *
+ * <p>Partitions of all the calls are read on a shared, bounded pool of threads. A call doesn't
+ * return before the reads of its partitions have stopped, or a bounded time has passed after
+ * interrupting them.
+ */
+final class ParallelQueryExecution implements Closeable {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** Number of batches buffered for each partition that is being read. */
+  private static final int BUFFER_BATCHES_PER_PARTITION = 4;
+
+  /** Interval to check if the call has been cancelled when waiting for batches. */
+  private static final long POLL_INTERVAL_MILLIS = 100;
+
+  /** Time to wait for the partition reads of a call to stop after interrupting them. */
+  private static final long STOP_TIMEOUT_MILLIS = 10_000;
+
+  /** The order of the {@link Data} batches of different partitions in the response stream. */
+  enum Ordering {
+    /** Batches are sent as soon as they are read from any partition. */
+    INTERLEAVED,
+    /** Batches are sent partition by partition, in the order the partitions are added. */
+    PARTITION_ORDERED
+  }
+
+  private final int parallelism;
+  private final Ordering ordering;
+  private final ExecutorService executor;
+
+  /**
+   * Creates an instance.
+   *
+   * @param parallelism maximum number of partitions to read concurrently for a call. Queries are
+   *     not executed in parallel if it is zero.
+   * @param ordering the {@link Ordering} of the batches in the response stream
+   * @param threads maximum number of partitions read concurrently by all the calls. Reads beyond
+   *     it wait for a thread.
+   */
+  ParallelQueryExecution(int parallelism, Ordering ordering, int threads) {
+    checkArgument(threads > 0, "The number of threads must be positive");
+    ThreadPoolExecutor threadPool =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            60L,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat("execute-query-%d").setDaemon(true).build());
+    threadPool.allowCoreThreadTimeOut(true);
+    this.parallelism = parallelism;
+    this.ordering = ordering;
+    this.executor = threadPool;
+  }
+
+  /** Returns {@code true} if queries can be executed in parallel. */
+  boolean isEnabled() {
+    return parallelism > 0;
+  }
+
+  /**
+   * Executes the query by reading its partitions concurrently. The {@link StreamObserver} is
+   * completed after the batches of all the partitions are sent.
+   *
+   * @param connector the connector to prepare the query
+   * @param assetName the name of the asset to query
+   * @param dataQuery the query to execute
+   * @param filterPredicate the filter predicate to prune the partitions added with {@link
+   *     ColumnStatistics} by, or {@code null} to read all the partitions
+   * @param reader the {@link PartitionReader} to read the partitions of the query
+   * @param responseObserver the {@link StreamObserver} of the ExecuteQuery call
+   * @return {@code false} if the connector didn't add any partition or the filter predicate pruned
+   *     all of them, in which case the result is empty and nothing is sent to the {@link
+   *     StreamObserver}
+   * @throws RuntimeException the exception thrown by the connector, or a {@link
+   *     io.grpc.StatusRuntimeException} if the call is cancelled or its deadline has expired
+   */
+  boolean execute(
+      ParallelQueryExecutor connector,
+      AssetName assetName,
+      DataQuery dataQuery,
+      @Nullable Expression filterPredicate,
+      PartitionReader reader,
+      StreamObserver<Data> responseObserver) {
+    PreparationContext context = new PreparationContext(filterPredicate);
+    connector.prepareQuery(assetName, dataQuery, context);
+    List<byte[]> partitions = context.partitions;
+    if (context.prunedPartitions > 0) {
+      logger.atInfo().log("Pruned %d partitions by the filter predicate", context.prunedPartitions);
+    }
+    if (partitions.isEmpty()) {
+      return false;
+    }
+
+    int concurrency = Math.min(parallelism, partitions.size());
+    if (context.maxConcurrency > 0) {
+      concurrency = Math.min(concurrency, context.maxConcurrency);
+    }
+    logger.atInfo().log(
+        "Reading %d partitions with concurrency %d in %s order",
+        partitions.size(), concurrency, ordering);
+
+    List<BlockingQueue<Item>> queues = createQueues(partitions.size(), concurrency);
+    PartitionReads reads = new PartitionReads(partitions, queues, reader);
+    try {
+      reads.start(concurrency);
+
+      Merger merger = new Merger(responseObserver);
+      if (ordering == Ordering.PARTITION_ORDERED) {
+        for (BlockingQueue<Item> queue : queues) {
+          merger.drain(queue, 1);
+        }
+      } else {
+        merger.drain(queues.get(0), partitions.size());
+      }
+    } finally {
+      reads.stop();
+    }
+    responseObserver.onCompleted();
+    return true;
+  }
+
+  /** Interrupts the partition reads in progress and releases the threads. */
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Returns the queue of each partition. All the partitions share the same queue if the batches
+   * are interleaved.
+   */
+  private List<BlockingQueue<Item>> createQueues(int partitions, int concurrency) {
+    if (ordering == Ordering.INTERLEAVED) {
+      BlockingQueue<Item> queue =
+          new ArrayBlockingQueue<>(BUFFER_BATCHES_PER_PARTITION * concurrency);
+      return Collections.nCopies(partitions, queue);
+    }
+    List<BlockingQueue<Item>> queues = new ArrayList<>(partitions);
+    for (int i = 0; i < partitions; i++) {
+      queues.add(new ArrayBlockingQueue<>(BUFFER_BATCHES_PER_PARTITION));
+    }
+    return queues;
+  }
+
+  private static void readPartition(
+      PartitionReader reader, byte[] partition, BlockingQueue<Item> queue) {
+    try {
+      reader.read(
+          partition,
+          new StreamObserver<>() {
+            @Override
+            public void onNext(Data data) {
+              put(queue, new Item(data, null));
+            }
+
+            @Override
+            public void onError(Throwable t) {
+              // Errors are thrown by the reader
+            }
+
+            @Override
+            public void onCompleted() {
+              put(queue, new Item(null, null));
+            }
+          });
+    } catch (PartitionCancelledException e) {
+      // The call is gone
+    } catch (RuntimeException e) {
+      put(queue, new Item(null, e));
+    } catch (Error e) {
+      put(queue, new Item(null, new IllegalStateException(e)));
+      throw e;
+    }
+  }
+
+  private static void put(BlockingQueue<Item> queue, Item item) {
+    try {
+      queue.put(item);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PartitionCancelledException();
+    }
+  }
+
+  /**
+   * The partition reads of a call. Each of the workers of the call reads the next partition that is
+   * not read yet, in the order the partitions are added, such that at most the given concurrency of
+   * partitions are read at the same time.
+   */
+  private final class PartitionReads {
+
+    private final List<byte[]> partitions;
+    private final List<BlockingQueue<Item>> queues;
+    private final PartitionReader reader;
+    private final AtomicInteger nextPartition = new AtomicInteger();
+    private final List<Future<?>> workers = new ArrayList<>();
+    // Guarded by this
+    private boolean stopped;
+    private int running;
+
+    private PartitionReads(
+        List<byte[]> partitions, List<BlockingQueue<Item>> queues, PartitionReader reader) {
+      this.partitions = partitions;
+      this.queues = queues;
+      this.reader = reader;
+    }
+
+    void start(int concurrency) {
+      for (int i = 0; i < concurrency; i++) {
+        workers.add(executor.submit(this::work));
+      }
+    }
+
+    /**
+     * Interrupts the workers and waits for the running ones to stop, up to {@link
+     * #STOP_TIMEOUT_MILLIS}.
+     */
+    void stop() {
+      synchronized (this) {
+        stopped = true;
+      }
+      workers.forEach(worker -> worker.cancel(true));
+
+      boolean interrupted = false;
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(STOP_TIMEOUT_MILLIS);
+      synchronized (this) {
+        long remaining;
+        while (running > 0 && (remaining = deadline - System.nanoTime()) > 0) {
+          try {
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+        if (running > 0) {
+          logger.atWarning().log(
+              "%d partition reads didn't stop within %d ms", running, STOP_TIMEOUT_MILLIS);
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void work() {
+      synchronized (this) {
+        if (stopped) {
+          return;
+        }
+        running++;
+      }
+      try {
+        int index;
+        while (!Thread.currentThread().isInterrupted()
+            && (index = nextPartition.getAndIncrement()) < partitions.size()) {
+          readPartition(reader, partitions.get(index), queues.get(index));
+        }
+      } finally {
+        synchronized (this) {
+          running--;
+          notifyAll();
+        }
+      }
+    }
+  }
+
+  /** Reads a partition. */
+  @FunctionalInterface
+  interface PartitionReader {
+
+    /**
+     * Reads the partition and sends the batches to the given {@link StreamObserver}, followed by
+     * calling {@link StreamObserver#onCompleted()}.
+     */
+    void read(byte[] partition, StreamObserver<Data> observer);
+  }
+
+  /**
+   * A {@link Data} batch of a partition, the end of a partition if both fields are null, or the
+   * failure of a partition.
+   */
+  private record Item(@Nullable Data data, @Nullable RuntimeException failure) {}
+
+  /** Thrown to stop reading a partition when the call is gone. */
+  private static final class PartitionCancelledException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private PartitionCancelledException() {
+      super(null, null, false, false);
+    }
+  }
+
+  /**
+   * Collects the partitions added by the connector, except the ones that the filter predicate
+   * prunes.
+   */
+  private static final class PreparationContext implements ParallelQueryPreparationContext {
+
+    @Nullable private final Expression filterPredicate;
+    private final List<byte[]> partitions = new ArrayList<>();
+    private int maxConcurrency;
+    private int prunedPartitions;
+
+    private PreparationContext(@Nullable Expression filterPredicate) {
+      this.filterPredicate = filterPredicate;
+    }
+
+    @Override
+    public void addPartition(byte[] partitionData) {
+      partitions.add(partitionData);
+    }
+
+    @Override
+    public void addPartition(
+        byte[] partitionData,
+        long estimatedRows,
+        long estimatedBytes,
+        Map<String, ColumnStatistics> columnStatistics) {
+      if (filterPredicate != null && !PartitionPruner.mayMatch(filterPredicate, columnStatistics)) {
+        prunedPartitions++;
+        return;
+      }
+      addPartition(partitionData);
+    }
+
+    @Override
+    public void setMaxConcurrency(int maxConcurrency) {
+      this.maxConcurrency = maxConcurrency;
+    }
+  }
+
+  /**
+   * Sends the batches of the partitions to the response stream, with the schema only in the first
+   * batch of the stream.
+   */
+  private static final class Merger {
+
+    private final StreamObserver<Data> responseObserver;
+    private final Context context;
+    private boolean schemaSent;
+
+    private Merger(StreamObserver<Data> responseObserver) {
+      this.responseObserver = responseObserver;
+      this.context = Context.current();
+    }
+
+    /** Sends the batches from the queue until the given number of partitions have ended. */
+    void drain(BlockingQueue<Item> queue, int partitions) {
+      int ended = 0;
+      while (ended < partitions) {
+        Item item = take(queue);
+        if (item.failure() != null) {
+          throw item.failure();
+        }
+        if (item.data() == null) {
+          ended++;
+        } else {
+          send(item.data());
+        }
+      }
+    }
+
+    private void send(Data data) {
+      if (schemaSent && data.hasSchema()) {
+        // Only the first batch of the response stream carries the schema
+        data = data.toBuilder().clearSchema().build();
+        if (!data.hasDataBlock()) {
+          return;
+        }
+      }
+      schemaSent = true;
+      responseObserver.onNext(data);
+    }
+
+    private Item take(BlockingQueue<Item> queue) {
+      try {
+        while (true) {
+          if (context.isCancelled()) {
+            Status status = Contexts.statusFromCancelled(context);
+            throw (status == null ? Status.CANCELLED : status)
+                .withDescription("ExecuteQuery call was cancelled")
+                .asRuntimeException();
+          }
+          Item item = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+          if (item != null) {
+            return item;
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw Status.CANCELLED
+            .withDescription("ExecuteQuery call was interrupted")
+            .withCause(e)
+            .asRuntimeException();
+      }
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package com.google.cloud.connector.server;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Optional;
+import javax.annotation.Nullable;
+
+/**
+ * A bounded in-memory registry of the stream ids returned by StartQuery, which are keyed by short
+ * opaque handles.
+ *
+ * <p>Stream ids encode the partitions added by connectors, hence they can be kilobytes in size.
+ * When the registry is enabled, the stream names returned by StartQuery carry the handles instead,
+ * while the self-describing stream ids are still returned in {@code Stream.id}. Registered stream
+ * ids expire after the query timeout of the StartQuery request, and are evicted earlier when the
+ * registry is full. A handle can only be resolved by the server that issued it, hence clients fall
+ * back to reading the stream by its self-describing id when the handle cannot be resolved.
+ */
+class PartitionRegistry {
+
+  /** Prefix of the handles. The separator is not in the base64url alphabet. */
+  static final String HANDLE_PREFIX = "h1.";
+
+  /** Number of random bytes in a handle, which are base64 encoded to 16 characters. */
+  private static final int HANDLE_BYTES = 12;
+
+  /** Upper bound of the time to keep a stream id, regardless of the query timeout. */
+  private static final Duration MAX_TTL = Duration.ofDays(1);
+
+  /** Approximate number of bytes used by an entry in addition to the stream id. */
+  private static final int ENTRY_OVERHEAD = 128;
+
+  private final Duration defaultTtl;
+  private final Ticker ticker;
+  private final SecureRandom random;
+  @Nullable private final Cache<String, Entry> entries;
+
+  @Inject
+  PartitionRegistry(PartitionRegistryConfig config) {
+    this(config, Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  PartitionRegistry(PartitionRegistryConfig config, Ticker ticker) {
+    this.defaultTtl = config.getDefaultTtl();
+    this.ticker = ticker;
+    this.random = new SecureRandom();
+    this.entries =
+        config.isEnabled()
+            ? CacheBuilder.newBuilder()
+                .maximumWeight(config.getMaxBytes())
+                .<String, Entry>weigher(
+                    (handle, entry) -> ENTRY_OVERHEAD + 2 * entry.streamId().length())
+                .expireAfterWrite(MAX_TTL)
+                .ticker(ticker)
+                .build()
+            : null;
+  }
+
+  /** Returns {@code true} if the registry is enabled. */
+  boolean isEnabled() {
+    return entries != null;
+  }
+
+  /**
+   * Returns {@code true} if the given stream component is a handle issued by a registry.
+   *
+   * @param streamId the resource id of the stream component of a stream name
+   */
+  static boolean isHandle(String streamId) {
+    return streamId.startsWith(HANDLE_PREFIX);
+  }
+
+  /**
+   * Registers a stream id.
+   *
+   * @param streamId the self-describing stream id
+   * @param queryTimeout the query timeout of the StartQuery request, or {@code null} if the request
+   *     doesn't have one, in which case the default TTL is used
+   * @return the handle that resolves to the stream id
+   * @throws IllegalStateException if the registry is not enabled
+   */
+  String register(String streamId, @Nullable Duration queryTimeout) {
+    Preconditions.checkState(entries != null, "Partition registry is not enabled");
+    Duration ttl =
+        queryTimeout == null || queryTimeout.isZero() || queryTimeout.isNegative()
+            ? defaultTtl
+            : queryTimeout;
+    long expiresAt = ticker.read() + Math.min(ttl.toNanos(), MAX_TTL.toNanos());
+
+    byte[] bytes = new byte[HANDLE_BYTES];
+    random.nextBytes(bytes);
+    String handle = HANDLE_PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    entries.put(handle, new Entry(streamId, expiresAt));
+    return handle;
+  }
+
+  /**
+   * Resolves a handle to the stream id it was registered for.
+   *
+   * @param handle the handle returned by {@link #register(String, Duration)}
+   * @return the stream id, or an empty {@link Optional} if the handle is unknown to this registry,
+   *     has expired or was evicted
+   */
+  Optional<String> resolve(String handle) {
+    if (entries == null) {
+      return Optional.empty();
+    }
+    Entry entry = entries.getIfPresent(handle);
+    if (entry == null) {
+      return Optional.empty();
+    }
+    if (ticker.read() - entry.expiresAt() >= 0) {
+      entries.invalidate(handle);
+      return Optional.empty();
+    }
+    return Optional.of(entry.streamId());
+  }
+
+  /** Returns the number of registered stream ids. */
+  @VisibleForTesting
+  long size() {
+    if (entries == null) {
+      return 0;
+    }
+    entries.cleanUp();
+    return entries.size();
+  }
+
+  private record Entry(String streamId, long expiresAt) {}
+}
@@ -0,0 +1,54 @@
+package com.google.cloud.connector.server;
+
+import static picocli.CommandLine.Help.Visibility.ALWAYS;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.time.Duration;
+import picocli.CommandLine.Option;
+
+/** Configuration class for the {@link PartitionRegistry}. */
+public class PartitionRegistryConfig {
+
+  @Option(
+      names = {"--partition-registry-max-bytes"},
+      description =
+          "Maximum total size in bytes of the partitions kept in the server-side partition"
+              + " registry. When it is greater than zero, StartQuery returns streams named by short"
+              + " handles to the registered partitions instead of the encoded partitions. Set to"
+              + " zero to disable.",
+      defaultValue = "0",
+      showDefaultValue = ALWAYS)
+  private long maxBytes;
+
+  @Option(
+      names = {"--partition-registry-default-ttl"},
+      description =
+          "Duration in ISO-8601 format to keep a registered partition when the StartQuery request"
+              + " has no query timeout.",
+      defaultValue = "PT1H",
+      showDefaultValue = ALWAYS)
+  private Duration defaultTtl = Duration.ofHours(1);
+
+  @SuppressWarnings("unused")
+  public PartitionRegistryConfig() {
+    // no-op, for picocli to use.
+  }
+
+  @VisibleForTesting
+  PartitionRegistryConfig(long maxBytes, Duration defaultTtl) {
+    this.maxBytes = maxBytes;
+    this.defaultTtl = defaultTtl;
+  }
+
+  public boolean isEnabled() {
+    return maxBytes > 0;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public Duration getDefaultTtl() {
+    return defaultTtl;
+  }
+}
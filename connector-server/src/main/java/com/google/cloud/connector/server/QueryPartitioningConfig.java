@@ -0,0 +1,92 @@
+package com.google.cloud.connector.server;
+
+import static picocli.CommandLine.Help.Visibility.ALWAYS;
+
+import picocli.CommandLine.Option;
+
+/** Configuration class for the partitioning of the queries prepared by StartQuery. */
+public class QueryPartitioningConfig {
+
+  @Option(
+      names = {"--max-streams-per-query"},
+      description =
+          "Maximum number of streams returned by StartQuery. When a connector adds more"
+              + " partitions, consecutive partitions are coalesced into the same stream, which"
+              + " ReadStream reads one after another with the same connector instance. Partitions"
+              + " are not coalesced with the JSON stream id encoding, which is the default. The"
+              + " stream ids of coalesced partitions have version 2, which servers that only read"
+              + " version 1 reject. Set to zero for no limit.",
+      defaultValue = "0",
+      showDefaultValue = ALWAYS)
+  private int maxStreams;
+
+  @Option(
+      names = {"--bytes-per-concurrent-read"},
+      description =
+          "Estimated number of bytes that justify one more concurrent ReadStream call. When it is"
+              + " greater than zero and the connector doesn't set the max concurrency of a query,"
+              + " StartQuery derives the max concurrency from the estimated sizes of the streams."
+              + " Set to zero to disable.",
+      defaultValue = "0",
+      showDefaultValue = ALWAYS)
+  private long bytesPerConcurrentRead;
+
+  @Option(
+      names = {"--max-concurrent-reads"},
+      description =
+          "Number of concurrent ReadStream and ReadStreams calls this server is sized for. The max"
+              + " concurrency derived by StartQuery is capped by the number of calls that can be"
+              + " added to the calls in progress. Set to zero for no limit.",
+      defaultValue = "0",
+      showDefaultValue = ALWAYS)
+  private int maxConcurrentReads;
+
+  @Option(
+      names = {"--split-stream-after-bytes"},
+      description =
+          "Ask the readers of connectors that support splitting to split off part of their"
+              + " remaining records every time the given number of bytes is sent for a partition."
+              + " The split-off streams are published to the caller in the ReadStream responses."
+              + " Set to zero to disable.",
+      defaultValue = "0",
+      showDefaultValue = ALWAYS)
+  private long splitStreamAfterBytes;
+
+  @Option(
+      names = {"--prune-partitions"},
+      description =
+          "Drop the partitions for which the connector provides column statistics that prove no"
+              + " record can match the filter predicate of the query, such that StartQuery doesn't"
+              + " return streams that would be read for nothing. It applies to StartQuery and to"
+              + " ExecuteQuery with --execute-query-parallelism. Strings are compared by their"
+              + " UTF-8 bytes, hence the statistics of string columns are only used if the"
+              + " connector declares that they follow that order.",
+      defaultValue = "false",
+      showDefaultValue = ALWAYS)
+  private boolean prunePartitions;
+
+  @SuppressWarnings("unused")
+  public QueryPartitioningConfig() {
+    // no-op, for picocli to use.
+  }
+
+  public int getMaxStreams() {
+    return maxStreams;
+  }
+
+  public long getBytesPerConcurrentRead() {
+    return bytesPerConcurrentRead;
+  }
+
+  public int getMaxConcurrentReads() {
+    return maxConcurrentReads;
+  }
+
+  public long getSplitStreamAfterBytes() {
+    return splitStreamAfterBytes;
+  }
+
+  public boolean isPrunePartitions() {
+    return prunePartitions;
+  }
+}
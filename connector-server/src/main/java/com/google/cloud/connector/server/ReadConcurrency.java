@@ -0,0 +1,70 @@
+package com.google.cloud.connector.server;
+
+import com.google.cloud.bigquery.federation.v1alpha1.StartQueryResponse.ResultSet.Stream;
+import com.google.inject.Inject;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the stream reads in progress on this server, and derives the max concurrency of a query
+ * from the estimated sizes of its streams and the current load of the server.
+ *
+ * <p>The derived concurrency grows with the total estimated size of the streams, by one call for
+ * every {@link QueryPartitioningConfig#getBytesPerConcurrentRead()} bytes. It is capped by the
+ * number of streams, and by the number of calls the server can take in addition to the reads in
+ * progress, but it is always at least one.
+ */
+final class ReadConcurrency {
+
+  private final long bytesPerRead;
+  private final int maxReads;
+  private final AtomicInteger activeReads;
+
+  @Inject
+  ReadConcurrency(QueryPartitioningConfig config) {
+    this.bytesPerRead = config.getBytesPerConcurrentRead();
+    this.maxReads = config.getMaxConcurrentReads();
+    this.activeReads = new AtomicInteger();
+  }
+
+  /** Returns {@code true} if the max concurrency of queries can be derived. */
+  boolean isEnabled() {
+    return bytesPerRead > 0;
+  }
+
+  /** Records the start of a stream read. */
+  void readStarted() {
+    activeReads.incrementAndGet();
+  }
+
+  /** Records the end of a stream read started by {@link #readStarted()}. */
+  void readEnded() {
+    activeReads.decrementAndGet();
+  }
+
+  /** Returns the number of stream reads in progress. */
+  int getActiveReads() {
+    return activeReads.get();
+  }
+
+  /**
+   * Derives the max concurrency for reading the given streams.
+   *
+   * @param streams the streams of a query
+   * @return the max concurrency, or zero if it can't be derived because it is not enabled or a
+   *     stream has no size estimate
+   */
+  int deriveMaxConcurrency(List<Stream> streams) {
+    if (!isEnabled()
+        || streams.isEmpty()
+        || !streams.stream().allMatch(Stream::hasEstimatedBytes)) {
+      return 0;
+    }
+    long totalBytes = streams.stream().mapToLong(Stream::getEstimatedBytes).sum();
+    long concurrency = Math.min((totalBytes + bytesPerRead - 1) / bytesPerRead, streams.size());
+    if (maxReads > 0) {
+      concurrency = Math.min(concurrency, maxReads - activeReads.get());
+    }
+    return (int) Math.max(concurrency, 1);
+  }
+}
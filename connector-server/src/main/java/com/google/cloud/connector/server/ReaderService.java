@@ -2,11 +2,13 @@ package com.google.cloud.connector.server;
 
 import static com.google.cloud.connector.data.ResultStreamId.COLLECTION_ID_STREAM;
 import static com.google.cloud.connector.server.metrics.MetricsConstants.API_READ_STREAM;
+import static com.google.cloud.connector.server.metrics.MetricsConstants.API_READ_STREAMS;
 import static com.google.cloud.connector.server.metrics.MetricsConstants.API_STATUS_FAILED;
 import static com.google.cloud.connector.server.metrics.MetricsConstants.API_STATUS_SUCCESS;
 
 import com.google.cloud.bigquery.federation.v1alpha1.Data;
 import com.google.cloud.bigquery.federation.v1alpha1.ReadStreamRequest;
+import com.google.cloud.bigquery.federation.v1alpha1.ReadStreamsRequest;
 import com.google.cloud.bigquery.federation.v1alpha1.ReaderServiceGrpc;
 import com.google.cloud.bigquery.federation.v1alpha1.ReaderServiceGrpc.ReaderServiceImplBase;
 import com.google.cloud.connector.api.AssetName;
@@ -22,19 +24,21 @@ import com.google.cloud.connector.data.ResultStreamId;
 import com.google.cloud.connector.server.common.BatchingRecordStreamResponder;
 import com.google.cloud.connector.server.metrics.ConnectorMetricsUtil;
 import com.google.cloud.connector.server.metrics.DataBatchMetricsRecorder;
+import com.google.cloud.connector.server.query.EvaluatingObserver;
+import com.google.cloud.connector.server.query.SpillConfig;
 import com.google.common.flogger.FluentLogger;
-import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Struct;
 import io.cdap.cdap.etl.api.validation.ValidationException;
 import io.grpc.Context;
 import io.grpc.Deadline;
 import io.grpc.stub.StreamObserver;
 import io.opentelemetry.api.OpenTelemetry;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.List;
 
 /**
  * Implementation of the gRPC {@link ReaderServiceGrpc}.
@@ -46,16 +50,30 @@ class ReaderService extends ReaderServiceImplBase implements BatchingRecordStrea
   private final ConnectorLoaderFactory connectorLoaderFactory;
   private final OpenTelemetry openTelemetry;
   private final Provider<DataSchemaBuilder> dataSchemaBuilderProvider;
-  private static final Gson GSON = new Gson();
+  private final PartitionRegistry partitionRegistry;
+  private final SharedScans sharedScans;
+  private final ReadConcurrency readConcurrency;
+  private final StreamSplitter streamSplitter;
+  private final SpillConfig spillConfig;
 
   @Inject
   ReaderService(
       ConnectorLoaderFactory connectorLoaderFactory,
       Provider<DataSchemaBuilder> dataSchemaBuilderProvider,
-      OpenTelemetry openTelemetry) {
+      OpenTelemetry openTelemetry,
+      PartitionRegistry partitionRegistry,
+      SharedScans sharedScans,
+      ReadConcurrency readConcurrency,
+      StreamSplitter streamSplitter,
+      SpillConfig spillConfig) {
     this.connectorLoaderFactory = connectorLoaderFactory;
     this.dataSchemaBuilderProvider = dataSchemaBuilderProvider;
     this.openTelemetry = openTelemetry;
+    this.partitionRegistry = partitionRegistry;
+    this.sharedScans = sharedScans;
+    this.readConcurrency = readConcurrency;
+    this.streamSplitter = streamSplitter;
+    this.spillConfig = spillConfig;
   }
 
   @Override
@@ -72,57 +90,29 @@ class ReaderService extends ReaderServiceImplBase implements BatchingRecordStrea
 
     String status = API_STATUS_FAILED;
 
-    try (ConnectorLoader loader = connectorLoaderFactory.get(dataSourceId)) {
-      ParallelQueryExecutor connector =
-          loader.instantiateConnector(request.getParameters(), ParallelQueryExecutor.class);
-
+    readConcurrency.readStarted();
+    try {
       DataBatchMetricsRecorder metricsRecorder =
           new DataBatchMetricsRecorder(openTelemetry, dataSourceId, API_READ_STREAM, start);
 
-      byte[] partitionData;
-      Partition partition = null;
-      byte[] query;
-      try {
-        partitionData = ResultStreamId.decode(partitionId);
-        partition = GSON.fromJson(
-            new String(partitionData, StandardCharsets.UTF_8), Partition.class);
-        query = partition.query();
-      } catch (IllegalArgumentException | JsonSyntaxException ex) {
-        // TODO(harshpruthi): Remove support for old partition type after it goes obsolete.
-        // Keeping this logic for now to keep the change backward compatible.
-        LOG.atInfo().log("Received partition is not a valid 'Partition' object."
-            + "Treating the partition to be of older format.");
-        query = ResultStreamId.decode((partitionId));
-        //throw ConnectorException.newBuilder(String.format("Read Stream failed, "
-        //      + "invalid partition id provided:'%s'", request.getResultStream()), ex)
-        //    .setFailureReason(ConnectorException.FailureReason.INVALID_ARGUMENT)
-        //    .build();
-      }
+      // Accepts all the stream id encodings, including the legacy ones
+      String streamId = resolveStreamId(partitionId);
+      List<Partition> partitions = ResultStreamId.decodePartitions(streamId);
 
-      if (partition != null && partition.isEmpty()) {
-        if (partition.assetInfo() == null) {
-          throw new ConnectorException.Builder(
-              "Read Stream Failed: Neither query nor asset info was specified.", null)
-              .setFailureReason(ConnectorException.FailureReason.INVALID_ARGUMENT).build();
-        }
-        DataSchemaBuilder schemaBuilder = dataSchemaBuilderProvider.get();
-        resolveSchemaInternal(partition.assetInfo(), loader,
-            request, schemaBuilder);
-        sendNoRecordBatch(responseObserver, schemaBuilder.getSchema(), metricsRecorder);
-      } else {
-        try (RecordReader reader =
-            connector.readPartition(AssetName.ROOT_ASSET, query)) {
-          sendRecordsInBatches(
-              responseObserver,
-              reader,
-              dataSchemaBuilderProvider.get(),
+      if (partitions.size() == 1 && partitions.get(0).isEmpty()) {
+        try (ConnectorLoader loader = connectorLoaderFactory.get(dataSourceId)) {
+          sendSchema(
+              partitions.get(0), loader, request.getParameters(), responseObserver,
               metricsRecorder);
-        } catch (IOException e) {
-          throw ConnectorException.newBuilder(
-                  String.format("Read Stream Failed: %s", e.getMessage()), e)
-              .setFailureReason(ConnectorException.FailureReason.INTERNAL)
-              .build();
         }
+      } else {
+        sharedScans.read(
+            new SharedScans.Key(dataSourceId, streamId, request.getParameters()),
+            responseObserver,
+            metricsRecorder,
+            (observer, recorder) ->
+                readPartitions(
+                    request.getParameters(), datasetName, partitions, observer, recorder));
       }
       status = API_STATUS_SUCCESS;
       logger.atInfo().log("Successfully processed ReadPartition request");
@@ -132,21 +122,192 @@ class ReaderService extends ReaderServiceImplBase implements BatchingRecordStrea
       builder.setFailureReason(ConnectorException.FailureReason.INVALID_ARGUMENT);
       throw builder.build();
     } finally {
+      readConcurrency.readEnded();
       ConnectorMetricsUtil.recordApiCount(openTelemetry, dataSourceId, API_READ_STREAM, status);
     }
   }
 
+  @Override
+  public void readStreams(ReadStreamsRequest request, StreamObserver<Data> responseObserver) {
+    Instant start = Instant.now();
+    Deadline deadline = Context.current().getDeadline();
+    logger.atInfo().log("Received ReadStreams with deadline %s for %d streams",
+        deadline, request.getResultStreamsCount());
+
+    if (request.getResultStreamsCount() == 0) {
+      throw new ConnectorException.Builder(
+          "Read Streams Failed: No result stream was specified.", null)
+          .setFailureReason(ConnectorException.FailureReason.INVALID_ARGUMENT).build();
+    }
+    List<DatasetName> streamNames =
+        request.getResultStreamsList().stream().map(DatasetName::fromName).toList();
+    String dataSourceId = streamNames.get(0).datasource();
+
+    String status = API_STATUS_FAILED;
+
+    readConcurrency.readStarted();
+    try {
+      DataBatchMetricsRecorder metricsRecorder =
+          new DataBatchMetricsRecorder(openTelemetry, dataSourceId, API_READ_STREAMS, start);
+      for (DatasetName streamName : streamNames) {
+        if (!streamName.datasource().equals(dataSourceId)) {
+          throw new IllegalArgumentException(
+              String.format(
+                  "All the streams must belong to datasource '%s', got '%s'",
+                  dataSourceId, streamName.name()));
+        }
+      }
+
+      MultiplexedResponse response = new MultiplexedResponse(responseObserver);
+      // One connector instance reads all the partitions of all the streams
+      try (ConnectorLoader loader = connectorLoaderFactory.get(dataSourceId)) {
+        ParallelQueryExecutor connector = null;
+        for (DatasetName streamName : streamNames) {
+          String partitionId = streamName.getComponent(COLLECTION_ID_STREAM).resourceId();
+          ByteString streamTag = ByteString.copyFromUtf8(partitionId);
+          for (Partition partition :
+              ResultStreamId.decodePartitions(resolveStreamId(partitionId))) {
+            StreamObserver<Data> observer = response.partitionObserver(streamTag);
+            if (partition.isEmpty()) {
+              sendSchema(partition, loader, request.getParameters(), observer, metricsRecorder);
+              continue;
+            }
+            if (connector == null) {
+              connector =
+                  loader.instantiateConnector(request.getParameters(), ParallelQueryExecutor.class);
+            }
+            readPartition(connector, streamName, partition, observer, metricsRecorder);
+          }
+          response.endStream(streamTag);
+        }
+      }
+      response.complete();
+      status = API_STATUS_SUCCESS;
+      logger.atInfo().log("Successfully processed ReadStreams request");
+    } catch (IllegalArgumentException | ValidationException ex) {
+      throw ConnectorException.newBuilder("Read Streams Failed: " + ex.getMessage(), ex)
+          .setFailureReason(ConnectorException.FailureReason.INVALID_ARGUMENT)
+          .build();
+    } finally {
+      readConcurrency.readEnded();
+      ConnectorMetricsUtil.recordApiCount(openTelemetry, dataSourceId, API_READ_STREAMS, status);
+    }
+  }
+
+  /**
+   * Reads the records of the partitions of a stream and sends them in batches through the given
+   * {@link StreamObserver}, using the same connector instance for all the partitions. It is called
+   * by {@link SharedScans}, possibly on a thread that is shared by concurrent ReadStream calls of
+   * the same stream.
+   */
+  private void readPartitions(
+      Struct parameters,
+      DatasetName streamName,
+      List<Partition> partitions,
+      StreamObserver<Data> observer,
+      DataBatchMetricsRecorder metricsRecorder) {
+    try (ConnectorLoader loader = connectorLoaderFactory.get(streamName.datasource())) {
+      ParallelQueryExecutor connector =
+          loader.instantiateConnector(parameters, ParallelQueryExecutor.class);
+      if (partitions.size() == 1) {
+        readPartition(connector, streamName, partitions.get(0), observer, metricsRecorder);
+        return;
+      }
+      // Partitions coalesced by StartQuery are sent as one stream
+      MultiplexedResponse response = new MultiplexedResponse(observer);
+      for (Partition partition : partitions) {
+        readPartition(
+            connector, streamName, partition, response.partitionObserver(null), metricsRecorder);
+      }
+      response.complete();
+    }
+  }
+
+  /**
+   * Reads the records of a partition of the given stream and sends them in batches, together with
+   * the streams split off from the partition by the {@link StreamSplitter}.
+   */
+  private void readPartition(
+      ParallelQueryExecutor connector,
+      DatasetName streamName,
+      Partition partition,
+      StreamObserver<Data> observer,
+      DataBatchMetricsRecorder metricsRecorder) {
+    try (RecordReader reader = connector.readPartition(AssetName.ROOT_ASSET, partition.query())) {
+      // The server query is evaluated first, such that the read stops once its limit is reached
+      sendRecordsInBatches(
+          EvaluatingObserver.evaluating(
+              streamSplitter.splitting(reader, streamName, partition, observer),
+              partition.serverQuery(),
+              null,
+              spillConfig),
+          reader,
+          dataSchemaBuilderProvider.get(),
+          metricsRecorder);
+    } catch (IOException e) {
+      throw ConnectorException.newBuilder(
+              String.format("Read Stream Failed: %s", e.getMessage()), e)
+          .setFailureReason(ConnectorException.FailureReason.INTERNAL)
+          .build();
+    }
+  }
+
+  /** Sends the schema of the asset of a partition without query. */
+  private void sendSchema(
+      Partition partition,
+      ConnectorLoader loader,
+      Struct parameters,
+      StreamObserver<Data> observer,
+      DataBatchMetricsRecorder metricsRecorder) {
+    if (partition.assetInfo() == null) {
+      throw new ConnectorException.Builder(
+          "Read Stream Failed: Neither query nor asset info was specified.", null)
+          .setFailureReason(ConnectorException.FailureReason.INVALID_ARGUMENT).build();
+    }
+    DataSchemaBuilder schemaBuilder = dataSchemaBuilderProvider.get();
+    resolveSchemaInternal(partition.assetInfo(), loader, parameters, schemaBuilder);
+    sendNoRecordBatch(
+        EvaluatingObserver.evaluating(observer, partition.serverQuery(), null, spillConfig),
+        schemaBuilder.getSchema(),
+        metricsRecorder);
+  }
+
+  /**
+   * Resolves the stream id if the given stream id is a handle issued by the {@link
+   * PartitionRegistry}, otherwise returns the given stream id.
+   *
+   * @throws ConnectorException if the handle can't be resolved by this server
+   */
+  private String resolveStreamId(String streamId) {
+    if (!PartitionRegistry.isHandle(streamId)) {
+      return streamId;
+    }
+    return partitionRegistry
+        .resolve(streamId)
+        .orElseThrow(
+            () ->
+                ConnectorException.newBuilder(
+                        String.format(
+                            "Read Stream Failed: Stream handle '%s' has expired or was issued by"
+                                + " another server. Read the stream by the stream id returned"
+                                + " by StartQuery instead.",
+                            streamId),
+                        null)
+                    .setFailureReason(ConnectorException.FailureReason.NOT_FOUND)
+                    .build());
+  }
+
   private void resolveSchemaInternal(
       AssetInfo assetInfo, ConnectorLoader loader,
-      ReadStreamRequest request, DataSchemaBuilder schemaBuilder) {
+      Struct parameters, DataSchemaBuilder schemaBuilder) {
     switch (assetInfo.getSourceCase()) {
       case NAMED_TABLE -> {
-        var connector = loader.instantiateConnector(request.getParameters(), Connector.class);
+        var connector = loader.instantiateConnector(parameters, Connector.class);
         connector.resolveSchema(assetInfo.assetName(), schemaBuilder);
       }
       case NATIVE_QUERY -> {
         var connector =
-            loader.instantiateConnector(request.getParameters(), NativeQuerySchemaResolver.class);
+            loader.instantiateConnector(parameters, NativeQuerySchemaResolver.class);
         connector.resolveSchema(assetInfo.assetName(), assetInfo.nativeQuery(), schemaBuilder);
       }
       default -> throw new IllegalArgumentException(
@@ -0,0 +1,231 @@
+package com.google.cloud.connector.server;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.cloud.connector.api.exception.ConnectorException;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.protobuf.Message;
+import io.cdap.cdap.etl.api.validation.ValidationException;
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import java.io.Closeable;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent calls of idempotent RPCs, such that only one computation is
+ * performed for all the calls that arrive while it is in flight.
+ *
+ * <p>Calls are identical if they are for the same RPC method and have equal request messages,
+ * which include the datasource, the connector parameters and the query. The computation runs on a
+ * bounded pool of threads, in a fork of the gRPC context of the call that started it, which
+ * carries the context values but not the cancellation of the call. Each caller waits for the
+ * result within its own gRPC context, hence it is released when its own deadline expires or it is
+ * cancelled by the client. The computation is cancelled only when all the callers waiting for it
+ * are gone. Results are not cached, a call that arrives after all the callers of a computation
+ * have received the result starts a new one.
+ *
+ * <p>An exception thrown by the computation is rethrown to each caller as a new exception of the
+ * same kind with the original exception as the cause, such that callers never share a thrown
+ * exception instance.
+ */
+final class RequestCoalescer implements Closeable {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private final boolean enabled;
+  private final ListeningExecutorService executor;
+  private final Map<Key, Flight<?>> flights;
+
+  /**
+   * Creates an instance.
+   *
+   * @param enabled whether to coalesce calls. If {@code false}, every call performs its own
+   *     computation on the calling thread.
+   * @param threads the max number of computations that run concurrently. Computations beyond it
+   *     are queued until a thread is available.
+   */
+  RequestCoalescer(boolean enabled, int threads) {
+    checkArgument(threads > 0, "The number of threads must be positive");
+    ThreadPoolExecutor threadPool =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            60L,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder()
+                .setNameFormat("request-coalescer-%d")
+                .setDaemon(true)
+                .build());
+    threadPool.allowCoreThreadTimeOut(true);
+    this.enabled = enabled;
+    this.executor = MoreExecutors.listeningDecorator(threadPool);
+    this.flights = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Returns the result of the computation for the given request, which is shared with all the
+   * identical calls that are in flight.
+   *
+   * @param method the name of the RPC method
+   * @param request the request message
+   * @param computation the computation that produces the result of the request
+   * @param <V> type of the result
+   * @return the result of the computation
+   * @throws RuntimeException a copy of the exception thrown by the computation, or a {@link
+   *     StatusRuntimeException} if the call is cancelled or its deadline has expired
+   * @throws java.util.concurrent.RejectedExecutionException if the coalescer is closed
+   */
+  <V> V execute(String method, Message request, Supplier<V> computation) {
+    if (!enabled) {
+      return computation.get();
+    }
+
+    Key key = new Key(method, request);
+    @SuppressWarnings("unchecked")
+    Flight<V> flight =
+        (Flight<V>)
+            flights.compute(
+                key,
+                (k, current) -> {
+                  Flight<?> result = current;
+                  if (result == null) {
+                    Callable<V> task = computation::get;
+                    result = new Flight<>(executor.submit(Context.current().fork().wrap(task)));
+                  } else {
+                    logger.atFine().log("Coalesced %s request with an in-flight call", method);
+                  }
+                  result.waiters++;
+                  return result;
+                });
+
+    // Cancelling the waiting of this call doesn't cancel the shared computation
+    ListenableFuture<V> result = Futures.nonCancellationPropagating(flight.future);
+    Context context = Context.current();
+    Context.CancellationListener listener = ctx -> result.cancel(false);
+    context.addListener(listener, MoreExecutors.directExecutor());
+    try {
+      return result.get();
+    } catch (ExecutionException e) {
+      throw copyForCaller(e.getCause());
+    } catch (CancellationException e) {
+      Status status = context.isCancelled() ? Contexts.statusFromCancelled(context) : null;
+      throw (status == null ? Status.CANCELLED : status)
+          .withDescription(method + " call was cancelled")
+          .asRuntimeException();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Status.CANCELLED
+          .withDescription(method + " call was interrupted")
+          .withCause(e)
+          .asRuntimeException();
+    } finally {
+      context.removeListener(listener);
+      leave(key, flight);
+    }
+  }
+
+  /**
+   * Stops the computations in flight and releases the threads. The callers waiting for a
+   * computation are released with a {@code CANCELLED} status.
+   */
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    // Computations still in the queue are never run by the executor
+    flights.values().forEach(flight -> flight.future.cancel(true));
+  }
+
+  /** Returns the number of computations in flight. */
+  @VisibleForTesting
+  int size() {
+    return flights.size();
+  }
+
+  /** Returns the number of calls waiting for the computation of the given request. */
+  @VisibleForTesting
+  int getWaiters(String method, Message request) {
+    Flight<?> flight = flights.get(new Key(method, request));
+    return flight == null ? 0 : flight.waiters;
+  }
+
+  /**
+   * Removes a waiter from the flight. The flight is removed when it has no more waiters, and its
+   * computation is cancelled if it has not completed yet.
+   */
+  private void leave(Key key, Flight<?> flight) {
+    flights.computeIfPresent(
+        key,
+        (k, current) -> {
+          if (current != flight || --current.waiters > 0) {
+            return current;
+          }
+          if (!current.future.isDone()) {
+            logger.atFine().log("Cancelling %s since all the callers are gone", k.method());
+            current.future.cancel(true);
+          }
+          return null;
+        });
+  }
+
+  /**
+   * Returns a new exception for a caller of a computation that failed with the given exception.
+   * Exceptions that are handled by type by the services and the {@link ExceptionHandler} keep their
+   * type.
+   */
+  static RuntimeException copyForCaller(Throwable cause) {
+    if (cause instanceof Error error) {
+      throw error;
+    }
+    if (cause instanceof StatusRuntimeException e) {
+      return e.getStatus().withCause(e).asRuntimeException(e.getTrailers());
+    }
+    if (cause instanceof ConnectorException e) {
+      return ConnectorException.newBuilder(e.getMessage(), e)
+          .setFailureReason(e.getFailureReason())
+          .build();
+    }
+    if (cause instanceof IllegalArgumentException e) {
+      return new IllegalArgumentException(e.getMessage(), e);
+    }
+    if (cause instanceof ValidationException e) {
+      return new ValidationException(e.getFailures());
+    }
+    if (cause instanceof UncheckedIOException e) {
+      return new UncheckedIOException(e.getMessage(), e.getCause());
+    }
+    return new UncheckedExecutionException(cause.getMessage(), cause);
+  }
+
+  private record Key(String method, Message request) {}
+
+  /** The in-flight computation of a request. */
+  private static final class Flight<V> {
+
+    private final ListenableFuture<V> future;
+    // Only updated inside the compute methods of the flights map
+    private int waiters;
+
+    private Flight(ListenableFuture<V> future) {
+      this.future = future;
+    }
+  }
+}
@@ -0,0 +1,498 @@
+package com.google.cloud.connector.server;
+
+import com.google.cloud.datafusion.common.lang.CombineClassLoader;
+import com.google.cloud.datafusion.common.lang.JarIndexClassLoader;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipFile;
+
+/**
+ * Class loaders for the dependency jars of connectors that are shared between connectors.
+ *
+ * <p>Each dependency jar is loaded by a shared unit, which is keyed by the content hash of the jar
+ * and the keys of the units of the jars it depends on. Hence connectors that are packaged with a
+ * byte-identical jar load its classes once through the same class loader, as long as the jars it
+ * depends on are identical as well, so that the shared classes always link against the same
+ * versions of the other dependencies as when they are not shared. Dependencies between jars are
+ * found from the packages referred to by their class files, and from the service provider files
+ * that implement the services of another jar. Jars that depend on each other are loaded by the
+ * same unit.
+ *
+ * <p>The content hash and the dependencies of a jar file are remembered by the path, size and
+ * modification time of the file, so that unchanged jars are not read again.
+ *
+ * <p>Units are reference counted. A unit is closed when the last connector using it releases it.
+ */
+final class SharedLibraryLayers {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  private static final int MAX_JAR_INFO_CACHE_SIZE = 10000;
+  private static final String CLASS_SUFFIX = ".class";
+  private static final String SERVICES_DIR = "META-INF/services/";
+
+  private final ClassLoader parent;
+  private final Map<HashCode, Unit> units;
+  private final Cache<Path, JarInfo> jarInfoCache;
+
+  /**
+   * Creates an instance.
+   *
+   * @param parent the parent {@link ClassLoader} of all the layers
+   */
+  SharedLibraryLayers(ClassLoader parent) {
+    this.parent = parent;
+    this.units = new ConcurrentHashMap<>();
+    this.jarInfoCache = CacheBuilder.newBuilder().maximumSize(MAX_JAR_INFO_CACHE_SIZE).build();
+  }
+
+  /**
+   * Acquires the layer for loading the given jar files. Shared units are created for the jars
+   * that have no unit for the same content and dependencies yet. Each call must be paired with a
+   * {@link #release(Layer)} call.
+   *
+   * @param jarFiles the dependency jar files
+   * @return the {@link Layer} for the given jar files
+   * @throws UncheckedIOException if failed to read the jar files
+   */
+  Layer acquire(List<Path> jarFiles) {
+    List<JarInfo> jars = jarFiles.stream().map(this::getJarInfo).toList();
+    List<Unit> acquired = new ArrayList<>();
+    Map<JarInfo, Unit> jarUnits = new IdentityHashMap<>();
+    try {
+      // Components are in dependency order, hence the units of the dependencies are created first
+      for (List<JarInfo> component : findComponents(jars)) {
+        Set<Unit> dependencies = new LinkedHashSet<>();
+        for (JarInfo jar : component) {
+          for (JarInfo dependency : dependenciesOf(jar, jars)) {
+            Unit unit = jarUnits.get(dependency);
+            if (unit != null) {
+              dependencies.add(unit);
+            }
+          }
+        }
+        Unit unit = acquireUnit(component, List.copyOf(dependencies));
+        acquired.add(unit);
+        component.forEach(jar -> jarUnits.put(jar, unit));
+      }
+    } catch (RuntimeException e) {
+      acquired.forEach(this::releaseUnit);
+      throw e;
+    }
+    return new Layer(
+        ImmutableList.copyOf(acquired),
+        new CombineClassLoader(
+            null,
+            parent,
+            acquired.stream().map(unit -> (ClassLoader) unit.classLoader).toList()));
+  }
+
+  /**
+   * Releases a {@link Layer} acquired by {@link #acquire(List)}. The units of the layer are closed
+   * if they are no longer used by any connector.
+   *
+   * @param layer the layer to release
+   */
+  void release(Layer layer) {
+    layer.units.reverse().forEach(this::releaseUnit);
+  }
+
+  /** Returns the number of shared units currently in use. */
+  @VisibleForTesting
+  int size() {
+    return units.size();
+  }
+
+  /**
+   * Acquires the unit for the given jars, which are loaded by the same class loader.
+   *
+   * @param jars the jars that depend on each other, or a single jar
+   * @param dependencies the units of the jars that the given jars depend on
+   */
+  private Unit acquireUnit(List<JarInfo> jars, List<Unit> dependencies) {
+    // Jars are sorted by hash such that the class loading order doesn't depend on the connector
+    List<JarInfo> sortedJars =
+        jars.stream().sorted(Comparator.comparing(jar -> jar.hash().toString())).toList();
+    Hasher hasher = Hashing.sha256().newHasher();
+    sortedJars.forEach(jar -> hasher.putBytes(jar.hash().asBytes()));
+    dependencies.stream()
+        .map(unit -> unit.key.toString())
+        .sorted()
+        .forEach(key -> hasher.putByte((byte) 0).putUnencodedChars(key));
+    HashCode key = hasher.hash();
+
+    return units.compute(
+        key,
+        (k, unit) -> {
+          if (unit == null) {
+            ClassLoader unitParent =
+                dependencies.isEmpty()
+                    ? parent
+                    : new CombineClassLoader(
+                        null,
+                        parent,
+                        dependencies.stream().map(dep -> (ClassLoader) dep.classLoader).toList());
+            List<Path> jarFiles = sortedJars.stream().map(JarInfo::jarFile).toList();
+            unit =
+                new Unit(
+                    k,
+                    new JarIndexClassLoader(
+                        "shared-" + k.toString().substring(0, 12), null, jarFiles, unitParent));
+            logger.atInfo().log(
+                "Created shared library unit %s for %s with %d dependencies",
+                k, jarFiles, dependencies.size());
+          }
+          unit.refCount.incrementAndGet();
+          return unit;
+        });
+  }
+
+  private void releaseUnit(Unit unit) {
+    units.computeIfPresent(
+        unit.key,
+        (k, current) -> {
+          if (current != unit || current.refCount.decrementAndGet() > 0) {
+            return current;
+          }
+          try {
+            unit.classLoader.close();
+          } catch (IOException e) {
+            logger.atWarning().withCause(e).log("Failed to close shared library unit %s", k);
+          }
+          logger.atInfo().log("Closed shared library unit %s", k);
+          return null;
+        });
+  }
+
+  /**
+   * Returns the {@link JarInfo} of the given jar file, which is only read if the file was not
+   * read before or has changed since then.
+   */
+  private JarInfo getJarInfo(Path jarFile) {
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(jarFile, BasicFileAttributes.class);
+      JarInfo jarInfo = jarInfoCache.getIfPresent(jarFile);
+      if (jarInfo != null
+          && jarInfo.size() == attributes.size()
+          && jarInfo.lastModified().equals(attributes.lastModifiedTime())) {
+        return jarInfo;
+      }
+      jarInfo = JarInfo.read(jarFile, attributes);
+      jarInfoCache.put(jarFile, jarInfo);
+      return jarInfo;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Returns the jars among the given jars that the given jar depends on. */
+  private static List<JarInfo> dependenciesOf(JarInfo jar, List<JarInfo> jars) {
+    List<JarInfo> dependencies = new ArrayList<>();
+    for (JarInfo other : jars) {
+      if (other != jar && jar.dependsOn(other)) {
+        dependencies.add(other);
+      }
+    }
+    return dependencies;
+  }
+
+  /**
+   * Finds the strongly connected components of the dependency graph of the given jars with
+   * Tarjan's algorithm, which are returned in dependency order.
+   */
+  private static List<List<JarInfo>> findComponents(List<JarInfo> jars) {
+    Map<JarInfo, Integer> indexes = new IdentityHashMap<>();
+    Map<JarInfo, Integer> lowLinks = new IdentityHashMap<>();
+    Deque<JarInfo> stack = new ArrayDeque<>();
+    Set<JarInfo> onStack = Collections.newSetFromMap(new IdentityHashMap<>());
+    List<List<JarInfo>> components = new ArrayList<>();
+
+    // Iterative depth first search, where each frame is a jar and its remaining dependencies
+    for (JarInfo root : jars) {
+      if (indexes.containsKey(root)) {
+        continue;
+      }
+      Deque<Map.Entry<JarInfo, ArrayDeque<JarInfo>>> frames = new ArrayDeque<>();
+      visit(root, jars, indexes, lowLinks, stack, onStack, frames);
+      while (!frames.isEmpty()) {
+        Map.Entry<JarInfo, ArrayDeque<JarInfo>> frame = frames.peek();
+        JarInfo jar = frame.getKey();
+        JarInfo dependency = frame.getValue().poll();
+        if (dependency != null) {
+          if (!indexes.containsKey(dependency)) {
+            visit(dependency, jars, indexes, lowLinks, stack, onStack, frames);
+          } else if (onStack.contains(dependency)) {
+            lowLinks.put(jar, Math.min(lowLinks.get(jar), indexes.get(dependency)));
+          }
+          continue;
+        }
+        frames.pop();
+        if (!frames.isEmpty()) {
+          JarInfo caller = frames.peek().getKey();
+          lowLinks.put(caller, Math.min(lowLinks.get(caller), lowLinks.get(jar)));
+        }
+        if (lowLinks.get(jar).equals(indexes.get(jar))) {
+          List<JarInfo> component = new ArrayList<>();
+          JarInfo member;
+          do {
+            member = stack.pop();
+            onStack.remove(member);
+            component.add(member);
+          } while (member != jar);
+          components.add(component);
+        }
+      }
+    }
+    return components;
+  }
+
+  private static void visit(
+      JarInfo jar,
+      List<JarInfo> jars,
+      Map<JarInfo, Integer> indexes,
+      Map<JarInfo, Integer> lowLinks,
+      Deque<JarInfo> stack,
+      Set<JarInfo> onStack,
+      Deque<Map.Entry<JarInfo, ArrayDeque<JarInfo>>> frames) {
+    indexes.put(jar, indexes.size());
+    lowLinks.put(jar, indexes.get(jar));
+    stack.push(jar);
+    onStack.add(jar);
+    frames.push(Map.entry(jar, new ArrayDeque<>(dependenciesOf(jar, jars))));
+  }
+
+  /**
+   * The content hash and the package dependencies of a jar file.
+   *
+   * @param jarFile the path of the jar file
+   * @param size the size of the file when it was read
+   * @param lastModified the modification time of the file when it was read
+   * @param hash the SHA-256 hash of the file content
+   * @param packages the package directories of the classes in the jar, e.g. {@code com/example/}
+   * @param referencedPackages the package directories of the classes referred to by the classes
+   *     in the jar
+   * @param servicePackages the package directories of the services that the jar provides
+   */
+  private record JarInfo(
+      Path jarFile,
+      long size,
+      FileTime lastModified,
+      HashCode hash,
+      ImmutableSet<String> packages,
+      ImmutableSet<String> referencedPackages,
+      ImmutableSet<String> servicePackages) {
+
+    /**
+     * Returns whether this jar depends on the given jar, which is either when it refers to classes
+     * in the packages of the given jar, or when the given jar refers to the services that it
+     * provides, such that the service loader of the given jar can find the providers.
+     */
+    boolean dependsOn(JarInfo other) {
+      return intersects(referencedPackages, other.packages)
+          || intersects(other.servicePackages, packages);
+    }
+
+    static JarInfo read(Path jarFile, BasicFileAttributes attributes) throws IOException {
+      HashCode hash = MoreFiles.asByteSource(jarFile).hash(Hashing.sha256());
+      ImmutableSet.Builder<String> packages = ImmutableSet.builder();
+      Set<String> referencedPackages = new HashSet<>();
+      ImmutableSet.Builder<String> servicePackages = ImmutableSet.builder();
+      try (JarFile jar =
+          new JarFile(jarFile.toFile(), false, ZipFile.OPEN_READ, Runtime.version())) {
+        Iterator<JarEntry> entries = jar.versionedStream().iterator();
+        while (entries.hasNext()) {
+          JarEntry entry = entries.next();
+          String name = entry.getName();
+          if (name.endsWith(CLASS_SUFFIX)) {
+            packages.add(packageOf(name));
+            try (InputStream is = jar.getInputStream(entry)) {
+              addReferencedPackages(is.readAllBytes(), referencedPackages);
+            }
+          } else if (name.startsWith(SERVICES_DIR) && name.length() > SERVICES_DIR.length()) {
+            servicePackages.add(
+                packageOf(name.substring(SERVICES_DIR.length()).replace('.', '/')));
+          }
+        }
+      }
+      return new JarInfo(
+          jarFile,
+          attributes.size(),
+          attributes.lastModifiedTime(),
+          hash,
+          packages.build(),
+          ImmutableSet.copyOf(referencedPackages),
+          servicePackages.build());
+    }
+  }
+
+  private static boolean intersects(Set<String> first, Set<String> second) {
+    for (String element : first) {
+      if (second.contains(element)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Adds the packages of the classes referred to by the given class file, which are the classes
+   * in the constant pool and the class types in the descriptors and signatures.
+   */
+  private static void addReferencedPackages(byte[] classFile, Set<String> packages)
+      throws IOException {
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(classFile));
+    if (input.readInt() != 0xCAFEBABE) {
+      return;
+    }
+    input.readUnsignedShort(); // minor version
+    input.readUnsignedShort(); // major version
+    int count = input.readUnsignedShort();
+    String[] strings = new String[count];
+    List<Integer> classNames = new ArrayList<>();
+    for (int i = 1; i < count; i++) {
+      int tag = input.readUnsignedByte();
+      switch (tag) {
+        case 1 -> strings[i] = input.readUTF();
+        case 7 -> classNames.add(input.readUnsignedShort());
+        case 8, 16, 19, 20 -> input.readUnsignedShort();
+        case 15 -> {
+          input.readUnsignedByte();
+          input.readUnsignedShort();
+        }
+        case 3, 4, 9, 10, 11, 12, 17, 18 -> input.readInt();
+        case 5, 6 -> {
+          input.readLong();
+          // Long and double constants take two entries
+          i++;
+        }
+        default -> throw new IOException("Unknown constant pool tag " + tag);
+      }
+    }
+    for (int index : classNames) {
+      String name = strings[index];
+      if (name != null && !name.startsWith("[")) {
+        packages.add(packageOf(name));
+      }
+    }
+    for (String string : strings) {
+      if (string != null) {
+        addDescriptorPackages(string, packages);
+      }
+    }
+  }
+
+  /** Adds the packages of the class types, e.g. {@code Lcom/example/Type;}, in the given string. */
+  private static void addDescriptorPackages(String descriptor, Set<String> packages) {
+    int start = descriptor.indexOf('L');
+    while (start >= 0) {
+      int end = start + 1;
+      int lastSlash = -1;
+      while (end < descriptor.length()) {
+        char c = descriptor.charAt(end);
+        if (c == ';' || c == '<') {
+          break;
+        }
+        if (c == '/') {
+          lastSlash = end;
+        }
+        end++;
+      }
+      if (end < descriptor.length() && lastSlash > start) {
+        packages.add(descriptor.substring(start + 1, lastSlash + 1));
+      }
+      start = descriptor.indexOf('L', start + 1);
+    }
+  }
+
+  /** Returns the package directory of a class or resource, e.g. {@code com/example/}. */
+  private static String packageOf(String name) {
+    return name.substring(0, name.lastIndexOf('/') + 1);
+  }
+
+  /** A class loader for one or more dependency jars that is shared between connectors. */
+  private static final class Unit {
+
+    private final HashCode key;
+    private final JarIndexClassLoader classLoader;
+    // Only updated inside the compute methods of the units map
+    private final AtomicInteger refCount;
+
+    private Unit(HashCode key, JarIndexClassLoader classLoader) {
+      this.key = key;
+      this.classLoader = classLoader;
+      this.refCount = new AtomicInteger();
+    }
+  }
+
+  /** The shared units that load the dependency jars of a connector. */
+  static final class Layer {
+
+    private final ImmutableList<Unit> units;
+    private final ClassLoader classLoader;
+
+    private Layer(ImmutableList<Unit> units, ClassLoader classLoader) {
+      this.units = units;
+      this.classLoader = classLoader;
+    }
+
+    /** Returns the {@link ClassLoader} for loading classes from all the dependency jars. */
+    ClassLoader getClassLoader() {
+      return classLoader;
+    }
+
+    /** Returns the number of classes defined by the units of this layer. */
+    long getDefinedClassCount() {
+      return units.stream().mapToLong(unit -> unit.classLoader.getDefinedClassCount()).sum();
+    }
+
+    /** Returns the total size of the class files defined by the units of this layer. */
+    long getDefinedClassBytes() {
+      return units.stream().mapToLong(unit -> unit.classLoader.getDefinedClassBytes()).sum();
+    }
+
+    /**
+     * Returns the size of the class files defined by the units of this layer that is attributed to
+     * a connector using it, which is the size of each unit divided evenly among all the connectors
+     * using the unit.
+     */
+    long getAttributedClassBytes() {
+      return units.stream()
+          .mapToLong(
+              unit ->
+                  unit.classLoader.getDefinedClassBytes() / Math.max(1, unit.refCount.get()))
+          .sum();
+    }
+  }
+}
@@ -0,0 +1,503 @@
+package com.google.cloud.connector.server;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.cloud.bigquery.federation.v1alpha1.Data;
+import com.google.cloud.bigquery.federation.v1alpha1.StructValue;
+import com.google.cloud.connector.server.metrics.DataBatchMetricsRecorder;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.protobuf.Struct;
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import java.io.Closeable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.Nullable;
+
+/**
+ * Shares the read of a partition among concurrent ReadStream calls for the same partition and
+ * connector parameters.
+ *
+ * <p>The first call of a partition starts a scan, which reads the partition on a separate thread
+ * and puts the encoded {@link Data} batches into a bounded buffer. Every call attached to the scan
+ * sends the batches from the buffer at its own pace. The scan waits when the buffer is full of
+ * batches that are not sent by all the calls yet. A call that arrives while the scan is running
+ * attaches to it and replays the batches from the beginning, as long as the first batch is still in
+ * the buffer. Otherwise, it reads the partition by itself. The scan is cancelled when all the calls
+ * attached to it are gone.
+ *
+ * <p>A scan waits for its slowest calls up to a maximum time, after which it drops the calls that
+ * hold the oldest batch, unless all the calls are equally behind. A dropped call that has not sent
+ * any batch reads the partition by itself, while the others fail with {@code UNAVAILABLE}, since a
+ * read of their own can't resume in the middle of the partition.
+ *
+ * <p>Scans run on a bounded pool of threads. A call that would start a scan while all the threads
+ * are busy reads the partition by itself. Each call records the metrics of the batches it sends
+ * with its own {@link DataBatchMetricsRecorder}.
+ */
+final class SharedScans implements Closeable {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private final int bufferBatches;
+  private final Duration maxWait;
+  private final ExecutorService executor;
+  // Permits for the scans that are running, such that the executor never rejects a scan
+  private final Semaphore threads;
+  private final Map<Key, Scan> scans;
+
+  /**
+   * Creates an instance.
+   *
+   * @param bufferBatches maximum number of {@link Data} batches buffered by each scan. Scans are
+   *     not shared if it is zero.
+   * @param maxThreads maximum number of scans that run concurrently
+   * @param maxWait maximum time a scan waits for the slowest call when its buffer is full, before
+   *     dropping that call from the scan
+   */
+  SharedScans(int bufferBatches, int maxThreads, Duration maxWait) {
+    checkArgument(maxThreads > 0, "The number of threads must be positive");
+    checkArgument(
+        !maxWait.isNegative() && !maxWait.isZero(), "The maximum wait must be positive");
+    this.bufferBatches = bufferBatches;
+    this.maxWait = maxWait;
+    this.executor =
+        new ThreadPoolExecutor(
+            0,
+            maxThreads,
+            60L,
+            TimeUnit.SECONDS,
+            new SynchronousQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat("shared-scan-%d").setDaemon(true).build());
+    this.threads = new Semaphore(maxThreads);
+    this.scans = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Sends the {@link Data} batches of a partition through the given {@link StreamObserver}.
+   *
+   * @param key the key that identifies the partition read
+   * @param responseObserver the {@link StreamObserver} of the ReadStream call
+   * @param metricsRecorder the {@link DataBatchMetricsRecorder} of the ReadStream call
+   * @param source the source that reads the partition and sends the batches to a {@link
+   *     StreamObserver}, followed by completing it
+   * @throws RuntimeException the exception thrown by the source, or a {@link
+   *     io.grpc.StatusRuntimeException} if the call is cancelled or its deadline has expired
+   */
+  void read(
+      Key key,
+      StreamObserver<Data> responseObserver,
+      DataBatchMetricsRecorder metricsRecorder,
+      ScanSource source) {
+    if (bufferBatches <= 0) {
+      source.read(responseObserver, metricsRecorder);
+      return;
+    }
+
+    Subscriber subscriber = new Subscriber(metricsRecorder);
+    Scan[] created = new Scan[1];
+    Scan scan =
+        scans.compute(
+            key,
+            (k, current) -> {
+              if (current != null && current.attach(subscriber)) {
+                logger.atFine().log("Attached ReadStream to the shared scan of %s", k.streamId());
+                return current;
+              }
+              if (current != null || !threads.tryAcquire()) {
+                // Late joiner that can't replay from the buffer, or no thread for a new scan
+                return current;
+              }
+              created[0] = new Scan(k);
+              created[0].attach(subscriber);
+              return created[0];
+            });
+
+    if (created[0] == null && (scan == null || !scan.isAttached(subscriber))) {
+      source.read(responseObserver, metricsRecorder);
+      return;
+    }
+    if (created[0] != null) {
+      scan.start(source);
+    }
+    if (!scan.send(subscriber, responseObserver)) {
+      logger.atFine().log("Reading %s by itself after falling behind its shared scan",
+          key.streamId());
+      source.read(responseObserver, metricsRecorder);
+    }
+  }
+
+  /** Cancels the scans in progress and releases the threads. */
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  /** Returns the number of scans that late joiners can attach to. */
+  @VisibleForTesting
+  int size() {
+    return scans.size();
+  }
+
+  /** Returns the number of ReadStream calls attached to the scan of the given key. */
+  @VisibleForTesting
+  int getSubscribers(Key key) {
+    Scan scan = scans.get(key);
+    if (scan == null) {
+      return 0;
+    }
+    scan.lock.lock();
+    try {
+      return scan.subscribers.size();
+    } finally {
+      scan.lock.unlock();
+    }
+  }
+
+  /** Reads a partition. */
+  @FunctionalInterface
+  interface ScanSource {
+
+    /**
+     * Reads the partition and sends the batches to the given {@link StreamObserver}, followed by
+     * calling {@link StreamObserver#onCompleted()}.
+     *
+     * @param observer the {@link StreamObserver} that receives the batches
+     * @param metricsRecorder the {@link DataBatchMetricsRecorder} for the batches sent to the
+     *     observer, which records nothing when the batches are recorded by the calls attached to
+     *     a shared scan
+     */
+    void read(StreamObserver<Data> observer, DataBatchMetricsRecorder metricsRecorder);
+  }
+
+  /**
+   * Key of a shared scan.
+   *
+   * @param dataSourceId the datasource of the partition
+   * @param streamId the self-describing stream id that encodes the partition
+   * @param parameters the connector parameters
+   */
+  record Key(String dataSourceId, String streamId, Struct parameters) {}
+
+  /** The read position of a ReadStream call attached to a scan. */
+  private static final class Subscriber {
+    private final DataBatchMetricsRecorder metricsRecorder;
+    private long position;
+    // Set when the scan drops the subscriber for falling behind, guarded by the lock of the scan
+    private boolean dropped;
+
+    private Subscriber(DataBatchMetricsRecorder metricsRecorder) {
+      this.metricsRecorder = metricsRecorder;
+    }
+  }
+
+  /** A running read of a partition. */
+  private final class Scan implements StreamObserver<Data> {
+
+    private final Key key;
+    private final ReentrantLock lock;
+    private final Condition changed;
+    // Ring buffer of the batches in [firstSeq, nextSeq), guarded by the lock
+    private final Data[] buffer;
+    private final List<Subscriber> subscribers;
+    private long firstSeq;
+    private long nextSeq;
+    private boolean completed;
+    private boolean cancelled;
+    @Nullable private RuntimeException failure;
+    @Nullable private Future<?> producer;
+
+    private Scan(Key key) {
+      this.key = key;
+      this.lock = new ReentrantLock();
+      this.changed = lock.newCondition();
+      this.buffer = new Data[bufferBatches];
+      this.subscribers = new ArrayList<>();
+    }
+
+    /** Attaches a subscriber if the scan still has the first batch. */
+    boolean attach(Subscriber subscriber) {
+      lock.lock();
+      try {
+        if (firstSeq > 0 || cancelled || failure != null) {
+          return false;
+        }
+        subscribers.add(subscriber);
+        return true;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    boolean isAttached(Subscriber subscriber) {
+      lock.lock();
+      try {
+        return subscribers.contains(subscriber);
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void start(ScanSource source) {
+      Future<?> future;
+      try {
+        future =
+            executor.submit(
+                () -> {
+                  try {
+                    source.read(this, DataBatchMetricsRecorder.noop());
+                    fail(new IllegalStateException("Partition read ended without completion"));
+                  } catch (Throwable t) {
+                    onError(t);
+                  } finally {
+                    scans.remove(key, this);
+                    threads.release();
+                  }
+                });
+      } catch (RejectedExecutionException e) {
+        // The executor is shut down
+        threads.release();
+        scans.remove(key, this);
+        fail(e);
+        return;
+      }
+      lock.lock();
+      try {
+        producer = future;
+        if (cancelled) {
+          future.cancel(true);
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Sends all the batches of the scan to the given {@link StreamObserver}.
+     *
+     * @return {@code false} if the subscriber was dropped from the scan before it sent any batch,
+     *     in which case the call reads the partition by itself
+     */
+    boolean send(Subscriber subscriber, StreamObserver<Data> responseObserver) {
+      Instant batchStart = Instant.now();
+      Context context = Context.current();
+      Context.CancellationListener listener = ctx -> signal();
+      context.addListener(listener, MoreExecutors.directExecutor());
+      try {
+        while (true) {
+          Data data;
+          lock.lock();
+          try {
+            while (subscriber.position >= nextSeq
+                && !completed
+                && failure == null
+                && !subscriber.dropped
+                && !context.isCancelled()) {
+              changed.awaitUninterruptibly();
+            }
+            if (context.isCancelled()) {
+              Status status = Contexts.statusFromCancelled(context);
+              throw (status == null ? Status.CANCELLED : status)
+                  .withDescription("ReadStream call was cancelled")
+                  .asRuntimeException();
+            }
+            if (subscriber.dropped) {
+              if (subscriber.position == 0) {
+                return false;
+              }
+              throw Status.UNAVAILABLE
+                  .withDescription("ReadStream call fell behind the shared scan of its partition")
+                  .asRuntimeException();
+            }
+            if (subscriber.position >= nextSeq) {
+              if (failure != null) {
+                // Each call gets its own exception, which the gRPC layer may attach state to
+                throw RequestCoalescer.copyForCaller(failure);
+              }
+              break;
+            }
+            data = buffer[(int) (subscriber.position % buffer.length)];
+          } finally {
+            lock.unlock();
+          }
+
+          responseObserver.onNext(data);
+          batchStart = recordMetrics(subscriber.metricsRecorder, data, batchStart);
+
+          lock.lock();
+          try {
+            subscriber.position++;
+            changed.signalAll();
+          } finally {
+            lock.unlock();
+          }
+        }
+      } finally {
+        context.removeListener(listener);
+        detach(subscriber);
+      }
+      responseObserver.onCompleted();
+      return true;
+    }
+
+    /**
+     * Puts a batch into the buffer, waiting for the slowest subscriber if the buffer is full, and
+     * dropping it if it doesn't send the oldest batch within the maximum wait.
+     */
+    @Override
+    public void onNext(Data data) {
+      boolean evictedFirst = false;
+      lock.lock();
+      try {
+        long waitNanos = maxWait.toNanos();
+        while (!cancelled && nextSeq - firstSeq == buffer.length && firstSeq >= minPosition()) {
+          if (waitNanos <= 0) {
+            dropSlowest();
+            waitNanos = maxWait.toNanos();
+            continue;
+          }
+          waitNanos = changed.awaitNanos(waitNanos);
+        }
+        if (cancelled) {
+          throw new IllegalStateException("Shared scan of " + key.streamId() + " was cancelled");
+        }
+        if (nextSeq - firstSeq == buffer.length) {
+          evictedFirst = firstSeq == 0;
+          firstSeq++;
+        }
+        buffer[(int) (nextSeq % buffer.length)] = data;
+        nextSeq++;
+        changed.signalAll();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Shared scan of " + key.streamId() + " was cancelled", e);
+      } finally {
+        lock.unlock();
+      }
+      if (evictedFirst) {
+        // Late joiners can no longer replay from the beginning
+        scans.remove(key, this);
+      }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      fail(t instanceof RuntimeException e ? e : new IllegalStateException(t));
+    }
+
+    @Override
+    public void onCompleted() {
+      lock.lock();
+      try {
+        completed = true;
+        changed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /** Fails the scan, unless it is cancelled or has completed. */
+    private void fail(RuntimeException e) {
+      lock.lock();
+      try {
+        if (!cancelled && !completed && failure == null) {
+          failure = e;
+        }
+        changed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Records the metrics of a batch sent by a subscriber, the same as if it read the batch by
+     * itself, and returns the start of its next batch.
+     */
+    private Instant recordMetrics(
+        DataBatchMetricsRecorder metricsRecorder, Data data, Instant batchStart) {
+      if (data.hasSchema()) {
+        metricsRecorder.recordLatency();
+      }
+      List<StructValue> rows = data.getDataBlock().getRowset().getRowsList();
+      long bytes = rows.stream().mapToLong(StructValue::getSerializedSize).sum();
+      Instant now = Instant.now();
+      metricsRecorder.recordMetrics(rows.size(), bytes, Duration.between(batchStart, now));
+      return now;
+    }
+
+    private void signal() {
+      lock.lock();
+      try {
+        changed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private long minPosition() {
+      return subscribers.stream().mapToLong(s -> s.position).min().orElse(nextSeq);
+    }
+
+    /**
+     * Drops the subscribers that hold the oldest batch, such that the scan proceeds for the others.
+     * Nothing is dropped if all the subscribers are at the same position. Called with the lock
+     * held.
+     */
+    private void dropSlowest() {
+      long min = minPosition();
+      if (subscribers.stream().allMatch(s -> s.position == min)) {
+        return;
+      }
+      for (Subscriber subscriber : subscribers) {
+        subscriber.dropped = subscriber.position == min;
+      }
+      int before = subscribers.size();
+      subscribers.removeIf(s -> s.dropped);
+      changed.signalAll();
+      logger.atWarning().log(
+          "Dropped %d ReadStream calls that fell behind the shared scan of %s",
+          before - subscribers.size(), key.streamId());
+    }
+
+    /** Detaches a subscriber and cancels the scan if it has no more subscribers. */
+    private void detach(Subscriber subscriber) {
+      boolean cancel;
+      lock.lock();
+      try {
+        subscribers.remove(subscriber);
+        cancel = subscribers.isEmpty() && !completed && failure == null;
+        if (cancel) {
+          cancelled = true;
+          if (producer != null) {
+            producer.cancel(true);
+          }
+        }
+        changed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+      if (cancel) {
+        logger.atFine().log("Cancelled the shared scan of %s", key.streamId());
+        scans.remove(key, this);
+      }
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package com.google.cloud.connector.server;
+
+import com.google.cloud.connector.Connector;
+
+/**
+ * A {@link ConnectorLoader} for a connector that is bundled in the class path of the connector
+ * server. The connector classes are loaded by the server {@link ClassLoader} without isolation, and
+ * closing the loader only closes the connector instances created by it.
+ */
+final class StaticConnectorLoader extends AbstractConnectorLoader {
+
+  private final ClassLoader classLoader;
+  private final Connector connector;
+
+  /**
+   * Creates an instance.
+   *
+   * @param classLoader the {@link ClassLoader} that has the connector classes
+   * @param connector the connector specification
+   */
+  StaticConnectorLoader(ClassLoader classLoader, Connector connector) {
+    this.classLoader = classLoader;
+    this.connector = connector;
+  }
+
+  @Override
+  protected ClassLoader getConnectorClassLoader() {
+    return classLoader;
+  }
+
+  @Override
+  protected Connector getConnector() {
+    return connector;
+  }
+
+  @Override
+  public void close() {
+    closeInstances();
+  }
+}
@@ -0,0 +1,44 @@
+package com.google.cloud.connector.server;
+
+import com.google.cloud.connector.layout.ConnectorLayout;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.inject.Inject;
+import java.net.URL;
+
+/**
+ * A {@link ConnectorLoaderFactory} that serves the connectors bundled in the class path of the
+ * connector server through the static connector registry, and creates {@link
+ * LocalPathConnectorLoader} for the data sources that are not in the registry.
+ *
+ * <p>A connector is in the registry if its specification is available as the resource given by
+ * {@link ConnectorLayout#getStaticRegistryEntry(String)}, which is generated by the
+ * connector-maven-plugin in native image mode. It allows connectors to be compiled into the GraalVM
+ * native image of the server, where classes cannot be loaded dynamically from the connector root
+ * directory.
+ */
+class StaticConnectorLoaderFactory implements ConnectorLoaderFactory {
+
+  private final ClassLoader classLoader;
+  private final ConnectorLoaderFactory fallbackFactory;
+
+  @Inject
+  StaticConnectorLoaderFactory(LocalPathConnectorLoaderFactory fallbackFactory) {
+    this(StaticConnectorLoaderFactory.class.getClassLoader(), fallbackFactory);
+  }
+
+  @VisibleForTesting
+  StaticConnectorLoaderFactory(ClassLoader classLoader, ConnectorLoaderFactory fallbackFactory) {
+    this.classLoader = classLoader;
+    this.fallbackFactory = fallbackFactory;
+  }
+
+  @Override
+  public ConnectorLoader get(String datasourceId) {
+    URL specFileUrl = classLoader.getResource(ConnectorLayout.getStaticRegistryEntry(datasourceId));
+    if (specFileUrl == null) {
+      return fallbackFactory.get(datasourceId);
+    }
+    return new StaticConnectorLoader(
+        classLoader, LocalPathConnectorLoader.parseConnectorSpec(specFileUrl));
+  }
+}
@@ -0,0 +1,104 @@
+package com.google.cloud.connector.server;
+
+import static com.google.cloud.connector.data.ResultStreamId.COLLECTION_ID_STREAM;
+
+import com.google.cloud.bigquery.federation.v1alpha1.Data;
+import com.google.cloud.connector.api.DatasetName;
+import com.google.cloud.connector.api.RecordReader;
+import com.google.cloud.connector.api.SplittableRecordReader;
+import com.google.cloud.connector.data.Partition;
+import com.google.cloud.connector.data.ResultStreamId;
+import com.google.common.flogger.FluentLogger;
+import com.google.inject.Inject;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Splits the remaining records of partition reads off into new streams while the reads run, such
+ * that callers can read the split-off streams with idle readers instead of waiting for a few
+ * skewed partitions.
+ *
+ * <p>Every time the batches sent for a partition reach the configured size, the {@link
+ * SplittableRecordReader} of the partition is asked to split off part of its remaining records.
+ * The name of the stream of the split-off partition is published in {@code Data.split_streams} of
+ * the batch that is being sent.
+ */
+final class StreamSplitter {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private final long splitAfterBytes;
+  private final ResultStreamId.Encoding encoding;
+
+  @Inject
+  StreamSplitter(QueryPartitioningConfig config, ResultStreamId.Encoding encoding) {
+    this.splitAfterBytes = config.getSplitStreamAfterBytes();
+    this.encoding = encoding;
+  }
+
+  /** Returns {@code true} if streams can be split. */
+  boolean isEnabled() {
+    return splitAfterBytes > 0;
+  }
+
+  /**
+   * Returns a {@link StreamObserver} that forwards the batches of a partition read to the given
+   * {@link StreamObserver}, together with the streams split off from the read.
+   *
+   * @param reader the {@link RecordReader} of the partition. Nothing is split off if it is not a
+   *     {@link SplittableRecordReader}.
+   * @param streamName the name of the stream that is read
+   * @param partition the {@link Partition} that is read, whose asset info and server query the
+   *     split-off partitions keep
+   * @param observer the {@link StreamObserver} to forward the batches to
+   */
+  StreamObserver<Data> splitting(
+      RecordReader reader,
+      DatasetName streamName,
+      Partition partition,
+      StreamObserver<Data> observer) {
+    if (!isEnabled() || !(reader instanceof SplittableRecordReader splittableReader)) {
+      return observer;
+    }
+    DatasetName resultSetName =
+        DatasetName.fromComponents(
+            streamName.components().stream()
+                .filter(component -> !component.collectionId().equals(COLLECTION_ID_STREAM))
+                .toList());
+
+    return new StreamObserver<>() {
+      private long bytes;
+
+      @Override
+      public void onNext(Data data) {
+        bytes += data.getSerializedSize();
+        if (bytes >= splitAfterBytes) {
+          bytes = 0;
+          byte[] split = splittableReader.trySplit();
+          if (split != null) {
+            String streamId =
+                ResultStreamId.encodePartition(
+                    new Partition(split, partition.assetInfo(), partition.serverQuery()),
+                    encoding);
+            String splitStream =
+                resultSetName
+                    .append(new DatasetName.Component(COLLECTION_ID_STREAM, streamId))
+                    .name();
+            logger.atInfo().log("Split stream %s off %s", splitStream, streamName.name());
+            data = data.toBuilder().addSplitStreams(splitStream).build();
+          }
+        }
+        observer.onNext(data);
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        observer.onError(t);
+      }
+
+      @Override
+      public void onCompleted() {
+        observer.onCompleted();
+      }
+    };
+  }
+}
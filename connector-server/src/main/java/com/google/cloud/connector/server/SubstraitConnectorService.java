@@ -0,0 +1,227 @@
+package com.google.cloud.connector.server;
+
+import com.google.cloud.bigquery.federation.v2alpha1.ConnectorServiceGrpc;
+import com.google.cloud.bigquery.federation.v2alpha1.ConnectorServiceGrpc.ConnectorServiceImplBase;
+import com.google.cloud.bigquery.federation.v2alpha1.Data;
+import com.google.cloud.bigquery.federation.v2alpha1.DataSource;
+import com.google.cloud.bigquery.federation.v2alpha1.DataSourceConfig;
+import com.google.cloud.bigquery.federation.v2alpha1.ExecuteQueryRequest;
+import com.google.cloud.bigquery.federation.v2alpha1.GetDataSourceRequest;
+import com.google.cloud.bigquery.federation.v2alpha1.ResolveSchemaRequest;
+import com.google.cloud.bigquery.federation.v2alpha1.ResolveSchemaResponse;
+import com.google.cloud.bigquery.federation.v2alpha1.StartQueryRequest;
+import com.google.cloud.bigquery.federation.v2alpha1.StartQueryResponse;
+import com.google.cloud.bigquery.federation.v2alpha1.TestConnectionRequest;
+import com.google.cloud.bigquery.federation.v2alpha1.TestConnectionResponse;
+import com.google.cloud.connector.api.Connector;
+import com.google.cloud.connector.api.DatasetName;
+import com.google.cloud.connector.api.exception.ConnectorException;
+import com.google.cloud.connector.server.common.MappingStreamObserver;
+import com.google.cloud.connector.server.query.SubstraitPlanner;
+import com.google.cloud.connector.server.query.SubstraitQueryPlan;
+import com.google.common.flogger.FluentLogger;
+import com.google.inject.Inject;
+import com.google.rpc.Code;
+import com.google.rpc.Status;
+import io.cdap.cdap.etl.api.validation.ValidationException;
+import io.grpc.stub.StreamObserver;
+import io.substrait.proto.Plan;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Implementation of the v2alpha1 {@link ConnectorServiceGrpc} gRPC service, which serves the
+ * connectors through the v1alpha1 {@link ConnectorService}.
+ *
+ * <p>Substrait plans are split by the {@link SubstraitPlanner}: the relations that the connector
+ * supports are passed to it as the query of the v1alpha1 request, and the others are returned as
+ * the residual plan of the response, or of the first {@link Data} of ExecuteQuery. A residual plan
+ * fails the request if the v1alpha1 service still returns a residual query for the connector query,
+ * since the caller can only be given one of them. The parameters of the connectors are the generic
+ * parameter values of the {@link DataSourceConfig}.
+ */
+class SubstraitConnectorService extends ConnectorServiceImplBase {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private final ConnectorService connectorService;
+  private final ConnectorLoaderFactory connectorLoaderFactory;
+
+  @Inject
+  SubstraitConnectorService(
+      ConnectorService connectorService, ConnectorLoaderFactory connectorLoaderFactory) {
+    this.connectorService = connectorService;
+    this.connectorLoaderFactory = connectorLoaderFactory;
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public void startQuery(
+      StartQueryRequest request, StreamObserver<StartQueryResponse> responseObserver) {
+    SubstraitQueryPlan plan =
+        plan(
+            request.getDatasource(),
+            request.getQueryCase() == StartQueryRequest.QueryCase.DATA_QUERY,
+            request.getDataQuery(),
+            request.getSubstraitPlan());
+    var v1Request =
+        com.google.cloud.bigquery.federation.v1alpha1.StartQueryRequest.newBuilder()
+            .setDataset(request.getDatasource())
+            .setParameters(SubstraitMessages.parameters(request.getDatasourceConfig()))
+            .setDataQuery(plan.connectorQuery());
+    if (request.getDatasourceConfig().getQuery().hasTimeout()) {
+      v1Request.setQueryTimeout(request.getDatasourceConfig().getQuery().getTimeout());
+    }
+    connectorService.startQuery(
+        v1Request.build(),
+        new MappingStreamObserver<>(
+            responseObserver,
+            response -> SubstraitMessages.startQueryResponse(response, plan.residualPlan())));
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public void executeQuery(ExecuteQueryRequest request, StreamObserver<Data> responseObserver) {
+    SubstraitQueryPlan plan =
+        plan(
+            request.getDatasource(),
+            request.getQueryCase() == ExecuteQueryRequest.QueryCase.DATA_QUERY,
+            request.getDataQuery(),
+            request.getSubstraitPlan());
+    AtomicBoolean first = new AtomicBoolean(true);
+    connectorService.executeQuery(
+        com.google.cloud.bigquery.federation.v1alpha1.ExecuteQueryRequest.newBuilder()
+            .setDataset(request.getDatasource())
+            .setParameters(SubstraitMessages.parameters(request.getDatasourceConfig()))
+            .setDataQuery(plan.connectorQuery())
+            .build(),
+        new MappingStreamObserver<>(
+            responseObserver,
+            data ->
+                SubstraitMessages.data(
+                    data, first.getAndSet(false) ? plan.residualPlan() : null)));
+  }
+
+  // The federation schemas of the v1alpha1 service have no other field in the v2alpha1 messages
+  @Override
+  @SuppressWarnings("deprecation")
+  public void resolveSchema(
+      ResolveSchemaRequest request, StreamObserver<ResolveSchemaResponse> responseObserver) {
+    var v1Request =
+        com.google.cloud.bigquery.federation.v1alpha1.ResolveSchemaRequest.newBuilder()
+            .setDataset(request.getDatasource())
+            .setParameters(SubstraitMessages.parameters(request.getDatasourceConfig()));
+    switch (request.getSourceCase()) {
+      case TABLE -> v1Request.setTable(request.getTable());
+      case NATIVE_QUERY -> v1Request.setNativeQuery(request.getNativeQuery());
+      default -> throw ConnectorException.newBuilder(
+              "Resolve Schema Failed: Either a table or a native query is required")
+          .setFailureReason(ConnectorException.FailureReason.INVALID_ARGUMENT)
+          .build();
+    }
+    DataSource dataSource = dataSource(request.getDatasource());
+    connectorService.resolveSchema(
+        v1Request.build(),
+        new MappingStreamObserver<>(
+            responseObserver,
+            schema -> {
+              ResolveSchemaResponse.Builder response =
+                  ResolveSchemaResponse.newBuilder()
+                      .setName(schema.getName())
+                      .setDataSource(dataSource);
+              if (schema.hasSubstraitSchema()) {
+                response.setSubstraitSchema(
+                    SubstraitMessages.substraitSchema(schema.getSubstraitSchema()));
+              } else {
+                response.setFederationSchema(SubstraitMessages.schema(schema));
+              }
+              return response.build();
+            }));
+  }
+
+  @Override
+  public void getDataSource(
+      GetDataSourceRequest request, StreamObserver<DataSource> responseObserver) {
+    responseObserver.onNext(dataSource(request.getName()));
+    responseObserver.onCompleted();
+  }
+
+  /**
+   * Tests the given connection settings by instantiating the connector with them, and responds
+   * with the status of the failure to do so, if any.
+   */
+  @Override
+  public void testConnection(
+      TestConnectionRequest request, StreamObserver<TestConnectionResponse> responseObserver) {
+    logger.atInfo().log("Received TestConnection request for datasource:{%s}",
+        request.getDatasource());
+
+    String dataSourceId = DatasetName.fromName(request.getDatasource()).datasource();
+    Status status = Status.newBuilder().setCode(Code.OK_VALUE).build();
+    try (ConnectorLoader loader = connectorLoaderFactory.get(dataSourceId)) {
+      loader.instantiateConnector(
+          SubstraitMessages.parameters(request.getConnectionConfig()), Connector.class);
+    } catch (IllegalArgumentException | ValidationException ex) {
+      status = failure(Code.INVALID_ARGUMENT, ex);
+    } catch (ConnectorException ex) {
+      status = failure(ExceptionHandler.getGrpcStatusCode(ex.getFailureReason()), ex);
+    }
+    responseObserver.onNext(
+        TestConnectionResponse.newBuilder().setConnectionTestStatus(status).build());
+    responseObserver.onCompleted();
+  }
+
+  private DataSource dataSource(String name) {
+    String dataSourceId = DatasetName.fromName(name).datasource();
+    try (ConnectorLoader loader = connectorLoaderFactory.get(dataSourceId)) {
+      return SubstraitMessages.dataSource(loader.getDataSource());
+    } catch (IllegalArgumentException | ValidationException ex) {
+      throw ConnectorException.newBuilder(
+              String.format("GetDataSource Failed '%s': %s", dataSourceId, ex.getMessage()), ex)
+          .setFailureReason(ConnectorException.FailureReason.INVALID_ARGUMENT)
+          .build();
+    }
+  }
+
+  /**
+   * Splits the query of a request between the connector and the caller.
+   *
+   * @param datasource the name of the data source of the request
+   * @param isDataQuery whether the request has a deprecated {@link
+   *     com.google.cloud.bigquery.federation.v2alpha1.DataQuery}, which is passed to the
+   *     connector as is
+   * @param dataQuery the deprecated query of the request
+   * @param substraitPlan the Substrait plan of the request
+   */
+  private SubstraitQueryPlan plan(
+      String datasource,
+      boolean isDataQuery,
+      com.google.cloud.bigquery.federation.v2alpha1.DataQuery dataQuery,
+      Plan substraitPlan) {
+    String dataSourceId = DatasetName.fromName(datasource).datasource();
+    try {
+      if (isDataQuery) {
+        return new SubstraitQueryPlan(SubstraitMessages.dataQuery(dataQuery), null);
+      }
+      try (ConnectorLoader loader = connectorLoaderFactory.get(dataSourceId)) {
+        SubstraitQueryPlan plan = SubstraitPlanner.plan(substraitPlan, loader.getDataSource());
+        logger.atFine().log(
+            "Split the Substrait plan for datasource:{%s} into the query {%s} and %s",
+            dataSourceId,
+            plan.connectorQuery(),
+            plan.residualPlan() == null ? "no residual plan" : "a residual plan");
+        return plan;
+      }
+    } catch (IllegalArgumentException ex) {
+      throw ConnectorException.newBuilder("Query Planning Failed: " + ex.getMessage(), ex)
+          .setFailureReason(ConnectorException.FailureReason.INVALID_ARGUMENT)
+          .build();
+    }
+  }
+
+  private static Status failure(Code code, Exception ex) {
+    return Status.newBuilder()
+        .setCode(code.getNumber())
+        .setMessage(String.valueOf(ex.getMessage()))
+        .build();
+  }
+}
@@ -0,0 +1,278 @@
+package com.google.cloud.connector.server;
+
+import com.google.cloud.bigquery.federation.v1alpha1.Data;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.bigquery.federation.v1alpha1.DataSource;
+import com.google.cloud.bigquery.federation.v1alpha1.Schema;
+import com.google.cloud.bigquery.federation.v1alpha1.StartQueryResponse;
+import com.google.cloud.bigquery.federation.v1alpha1.SubstraitSchema;
+import com.google.cloud.bigquery.federation.v2alpha1.DataSourceConfig;
+import com.google.cloud.bigquery.federation.v2alpha1.DataSourceConfig.GenericParameterValues;
+import com.google.cloud.bigquery.federation.v2alpha1.DataSourceConfig.ParameterValue;
+import com.google.cloud.bigquery.federation.v2alpha1.FieldMetadata;
+import com.google.cloud.bigquery.federation.v2alpha1.Type;
+import com.google.cloud.connector.server.query.QueryPlanner;
+import com.google.cloud.connector.server.query.SubstraitPlanner;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import io.substrait.proto.Plan;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Conversions between the v1alpha1 messages that the connectors are served with and the v2alpha1
+ * messages of the {@link SubstraitConnectorService} and the {@link SubstraitReaderService}. The
+ * messages whose fields are numbered alike in both versions, such as the rows and the types, are
+ * converted through their serialized form.
+ */
+final class SubstraitMessages {
+
+  private SubstraitMessages() {}
+
+  /**
+   * Returns the connector parameters of the given configuration, which are the generic parameter
+   * values of its connection, data and query settings.
+   */
+  static Struct parameters(DataSourceConfig config) {
+    Struct.Builder parameters = parameters(config.getConnection()).toBuilder();
+    putAll(parameters, config.getData().getGeneric());
+    putAll(parameters, config.getQuery().getGeneric());
+    return parameters.build();
+  }
+
+  /** Returns the connector parameters of the given connection settings. */
+  static Struct parameters(DataSourceConfig.Connection connection) {
+    Struct.Builder parameters = Struct.newBuilder();
+    putAll(parameters, connection.getEndpoint().getGeneric());
+    putAll(parameters, connection.getAuthentication().getGeneric());
+    putAll(parameters, connection.getSecurity().getGeneric());
+    putAll(parameters, connection.getNetwork().getGeneric());
+    putAll(parameters, connection.getOptions().getGeneric());
+    return parameters.build();
+  }
+
+  /**
+   * Returns the v2alpha1 message of the given {@link DataSource}, which declares the Substrait
+   * functions of the connector in its Substrait capabilities.
+   */
+  static com.google.cloud.bigquery.federation.v2alpha1.DataSource dataSource(
+      DataSource dataSource) {
+    var builder =
+        com.google.cloud.bigquery.federation.v2alpha1.DataSource.newBuilder()
+            .setName(dataSource.getName())
+            .setId(dataSource.getId())
+            .addAllSupportedFunctionsValue(dataSource.getSupportedFunctionsValueList())
+            .addAllSupportedFunctionSignaturesValue(
+                dataSource.getSupportedFunctionSignaturesValueList())
+            .setSubstraitCapabilities(SubstraitPlanner.getCapabilities(dataSource));
+    for (DataSource.Capability capability : dataSource.getCapabilitiesList()) {
+      builder.addCapabilities(
+          com.google.cloud.bigquery.federation.v2alpha1.DataSource.Capability.valueOf(
+              capability.name()));
+      // Projections also select columns
+      if (capability == DataSource.Capability.SUPPORTS_COMPUTE) {
+        builder.addCapabilities(
+            com.google.cloud.bigquery.federation.v2alpha1.DataSource.Capability
+                .SUPPORTS_COLUMN_SELECTION);
+      }
+    }
+    if (dataSource.hasMaxStaleness()) {
+      builder.setMaxStaleness(dataSource.getMaxStaleness());
+    }
+    return builder.build();
+  }
+
+  /** Returns the v1alpha1 message of the given deprecated v2alpha1 query. */
+  static DataQuery dataQuery(com.google.cloud.bigquery.federation.v2alpha1.DataQuery query) {
+    if (query.hasGroupingKeys()) {
+      throw new IllegalArgumentException("Grouping keys are not supported");
+    }
+    return convert(query, DataQuery.parser());
+  }
+
+  /**
+   * Returns the v2alpha1 response of the given {@link StartQueryResponse}, which only carries the
+   * names of the streams.
+   *
+   * @param response the response of the v1alpha1 service
+   * @param residualPlan the plan that the caller must perform on the result set, if any
+   * @throws IllegalStateException if both the response has a residual query and a residual plan is
+   *     given, since the caller can only be given one of them
+   */
+  // The residual queries of the v1alpha1 service have no other field in the v2alpha1 messages
+  @SuppressWarnings("deprecation")
+  static com.google.cloud.bigquery.federation.v2alpha1.StartQueryResponse startQueryResponse(
+      StartQueryResponse response, @Nullable Plan residualPlan) {
+    checkResidue(response.hasResidualQuery(), residualPlan);
+    var builder =
+        com.google.cloud.bigquery.federation.v2alpha1.StartQueryResponse.newBuilder()
+            .setMaxConcurrency(response.getMaxConcurrency());
+    for (StartQueryResponse.ResultSet resultSet : response.getResultSetsList()) {
+      var resultSetBuilder =
+          builder.addResultSetsBuilder()
+              .setName(resultSet.getName())
+              .setId(resultSet.getId())
+              .setLabel(resultSet.getLabel());
+      for (StartQueryResponse.ResultSet.Stream stream : resultSet.getStreamsList()) {
+        resultSetBuilder.addStreamsBuilder().setName(stream.getName()).setId(stream.getId());
+      }
+    }
+    if (residualPlan != null) {
+      builder.setResidualPlan(residualPlan);
+      builder.getResultSetsBuilder(0).setLabel(QueryPlanner.RESULT_SET_LABEL);
+    } else if (response.hasResidualQuery()) {
+      builder.setResidualQuery(
+          convert(
+              response.getResidualQuery(),
+              com.google.cloud.bigquery.federation.v2alpha1.DataQuery.parser()));
+    }
+    return builder.build();
+  }
+
+  /** Returns the v2alpha1 message of the given {@link Data}. */
+  static com.google.cloud.bigquery.federation.v2alpha1.Data data(Data data) {
+    return data(data, null);
+  }
+
+  /**
+   * Returns the v2alpha1 message of the given {@link Data}.
+   *
+   * @param data the data of the v1alpha1 service
+   * @param residualPlan the plan that the caller must perform on the data, if any
+   * @throws IllegalStateException if both the data has a residual query and a residual plan is
+   *     given, since the caller can only be given one of them
+   */
+  // The federation schemas and residual queries of the v1alpha1 service have no other field in the
+  // v2alpha1 messages
+  @SuppressWarnings("deprecation")
+  static com.google.cloud.bigquery.federation.v2alpha1.Data data(
+      Data data, @Nullable Plan residualPlan) {
+    checkResidue(data.hasDataQuery(), residualPlan);
+    var builder =
+        com.google.cloud.bigquery.federation.v2alpha1.Data.newBuilder()
+            .setResultsetId(data.getResultsetId())
+            .setStreamId(data.getStreamId())
+            .setDataSizeBytes(data.getDataSizeBytes());
+    if (data.hasSchema()) {
+      if (data.getSchema().hasSubstraitSchema()) {
+        builder.setSubstraitSchema(substraitSchema(data.getSchema().getSubstraitSchema()));
+      } else {
+        builder.setFederationSchema(schema(data.getSchema()));
+      }
+    }
+    if (data.hasDataQuery()) {
+      builder.setResidualQuery(
+          convert(
+              data.getDataQuery(),
+              com.google.cloud.bigquery.federation.v2alpha1.DataQuery.parser()));
+    }
+    if (data.hasRowset()) {
+      builder.setRowset(
+          convert(
+              data.getRowset(),
+              com.google.cloud.bigquery.federation.v2alpha1.Data.RowSet.parser()));
+    }
+    if (data.hasDataBlock()) {
+      builder.setDataBlock(
+          convert(
+              data.getDataBlock(),
+              com.google.cloud.bigquery.federation.v2alpha1.Data.DataBlock.parser()));
+    }
+    if (residualPlan != null) {
+      builder.setResidualPlan(residualPlan);
+    }
+    return builder.build();
+  }
+
+  /** Returns the v2alpha1 message of the given {@link Schema}, without its data source. */
+  static com.google.cloud.bigquery.federation.v2alpha1.Schema schema(Schema schema) {
+    var builder = com.google.cloud.bigquery.federation.v2alpha1.Schema.newBuilder();
+    for (Schema.Field field : schema.getFieldsList()) {
+      var fieldBuilder =
+          builder.addFieldsBuilder()
+              .setFieldName(field.getFieldName())
+              .setDisplayName(field.getDisplayName());
+      if (field.hasType()) {
+        fieldBuilder.setType(convert(field.getType(), Type.parser()));
+      }
+      if (field.hasFieldMetadata()) {
+        fieldBuilder.setFieldMetadata(convert(field.getFieldMetadata(), FieldMetadata.parser()));
+      }
+    }
+    if (schema.hasMetadata()) {
+      builder.setMetadata(schema.getMetadata());
+    }
+    return builder.build();
+  }
+
+  /**
+   * Returns the v2alpha1 message of the given {@link SubstraitSchema}, whose metadata of the fields
+   * is listed by the index of the fields.
+   */
+  static com.google.cloud.bigquery.federation.v2alpha1.SubstraitSchema substraitSchema(
+      SubstraitSchema schema) {
+    var builder =
+        com.google.cloud.bigquery.federation.v2alpha1.SubstraitSchema.newBuilder()
+            .setSchema(schema.getSchema());
+    if (!schema.getFieldsMetadataMap().isEmpty()) {
+      long fields =
+          schema.getFieldsMetadataMap().keySet().stream().mapToLong(Long::longValue).max()
+              .getAsLong()
+              + 1;
+      for (long i = 0; i < fields; i++) {
+        Schema.FieldMetadata metadata = schema.getFieldsMetadataMap().get(i);
+        builder.addFieldsMetadata(
+            metadata == null
+                ? FieldMetadata.getDefaultInstance()
+                : convert(metadata, FieldMetadata.parser()));
+      }
+    }
+    if (schema.hasMetadata()) {
+      builder.setMetadata(schema.getMetadata());
+    }
+    return builder.build();
+  }
+
+  private static void putAll(Struct.Builder parameters, GenericParameterValues values) {
+    for (Map.Entry<String, ParameterValue> entry : values.getValuesMap().entrySet()) {
+      ParameterValue value = entry.getValue();
+      Value.Builder parameter = Value.newBuilder();
+      switch (value.getValueCase()) {
+        case STRING_VALUE -> parameter.setStringValue(value.getStringValue());
+        case BOOL_VALUE -> parameter.setBoolValue(value.getBoolValue());
+        case INTEGER_VALUE -> parameter.setNumberValue(value.getIntegerValue());
+        case DOUBLE_VALUE -> parameter.setNumberValue(value.getDoubleValue());
+        case SECRET_VALUE -> parameter.setStringValue(value.getSecretValue().getPlaintext());
+        default -> {
+          continue;
+        }
+      }
+      parameters.putFields(entry.getKey(), parameter.build());
+    }
+  }
+
+  /**
+   * Checks that a residual query of the v1alpha1 service doesn't meet a residual plan, which are
+   * exclusive in the v2alpha1 messages. The residual query is computed by the {@link QueryPlanner}
+   * from the query that the {@link SubstraitPlanner} passes to the connector, so it can't be
+   * composed into the residual plan.
+   */
+  private static void checkResidue(boolean hasResidualQuery, @Nullable Plan residualPlan) {
+    if (hasResidualQuery && residualPlan != null) {
+      throw new IllegalStateException(
+          "The connector query of a Substrait plan with a residual plan has a residual query");
+    }
+  }
+
+  /** Converts the given message to a message whose fields are numbered alike. */
+  private static <T> T convert(MessageLite message, Parser<T> parser) {
+    try {
+      return parser.parseFrom(message.toByteString());
+    } catch (InvalidProtocolBufferException e) {
+      throw new IllegalStateException("Failed to convert " + message.getClass(), e);
+    }
+  }
+}
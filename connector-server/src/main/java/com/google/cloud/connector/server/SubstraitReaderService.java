@@ -0,0 +1,33 @@
+package com.google.cloud.connector.server;
+
+import com.google.cloud.bigquery.federation.v2alpha1.Data;
+import com.google.cloud.bigquery.federation.v2alpha1.ReadStreamRequest;
+import com.google.cloud.bigquery.federation.v2alpha1.ReaderServiceGrpc;
+import com.google.cloud.bigquery.federation.v2alpha1.ReaderServiceGrpc.ReaderServiceImplBase;
+import com.google.cloud.connector.server.common.MappingStreamObserver;
+import com.google.inject.Inject;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Implementation of the v2alpha1 {@link ReaderServiceGrpc} gRPC service, which reads the streams
+ * returned by the {@link SubstraitConnectorService} through the v1alpha1 {@link ReaderService}.
+ */
+class SubstraitReaderService extends ReaderServiceImplBase {
+
+  private final ReaderService readerService;
+
+  @Inject
+  SubstraitReaderService(ReaderService readerService) {
+    this.readerService = readerService;
+  }
+
+  @Override
+  public void readStream(ReadStreamRequest request, StreamObserver<Data> responseObserver) {
+    readerService.readStream(
+        com.google.cloud.bigquery.federation.v1alpha1.ReadStreamRequest.newBuilder()
+            .setResultStream(request.getResultStream())
+            .setParameters(SubstraitMessages.parameters(request.getDatasourceConfig()))
+            .build(),
+        new MappingStreamObserver<>(responseObserver, SubstraitMessages::data));
+  }
+}
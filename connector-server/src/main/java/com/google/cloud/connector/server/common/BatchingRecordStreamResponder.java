@@ -78,6 +78,12 @@ public interface BatchingRecordStreamResponder {
     LOG.atInfo().log("Sending data in batches");
     while (sendBatch(dataStreamObserver, dataBuilder, recordReader, recordSchema, metricsRecorder)
         > 0) {
+      if (dataStreamObserver instanceof LimitedStreamObserver<Data> limitedObserver
+          && limitedObserver.isLimitReached()) {
+        // Stop reading, such that the record reader is closed and the source query ends early
+        LOG.atInfo().log("Stopped sending data, the limit of the query is reached");
+        break;
+      }
       dataBuilder = Data.newBuilder();
     }
     LOG.atInfo().log("Sending data complete");
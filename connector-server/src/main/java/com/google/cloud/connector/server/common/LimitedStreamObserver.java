@@ -0,0 +1,15 @@
+package com.google.cloud.connector.server.common;
+
+import io.grpc.stub.StreamObserver;
+
+/**
+ * A {@link StreamObserver} that may need no more values before the end of the stream, for example
+ * because it applies the limit of a query. Senders check it to stop reading the source early.
+ *
+ * @param <T> the type of the values
+ */
+public interface LimitedStreamObserver<T> extends StreamObserver<T> {
+
+  /** Returns {@code true} if the values sent from now on would be dropped. */
+  boolean isLimitReached();
+}
@@ -0,0 +1,44 @@
+package com.google.cloud.connector.server.common;
+
+import io.grpc.stub.StreamObserver;
+import java.util.function.Function;
+
+/**
+ * A {@link StreamObserver} that maps the values it receives before forwarding them, for example to
+ * respond with the messages of another version of a service.
+ *
+ * @param <T> the type of the received values
+ * @param <R> the type of the forwarded values
+ */
+public final class MappingStreamObserver<T, R> implements StreamObserver<T> {
+
+  private final StreamObserver<R> observer;
+  private final Function<? super T, ? extends R> mapper;
+
+  /**
+   * Creates an instance.
+   *
+   * @param observer the {@link StreamObserver} to forward the mapped values to
+   * @param mapper the function mapping the received values
+   */
+  public MappingStreamObserver(
+      StreamObserver<R> observer, Function<? super T, ? extends R> mapper) {
+    this.observer = observer;
+    this.mapper = mapper;
+  }
+
+  @Override
+  public void onNext(T value) {
+    observer.onNext(mapper.apply(value));
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    observer.onError(t);
+  }
+
+  @Override
+  public void onCompleted() {
+    observer.onCompleted();
+  }
+}
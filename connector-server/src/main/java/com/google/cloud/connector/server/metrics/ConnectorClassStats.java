@@ -0,0 +1,22 @@
+package com.google.cloud.connector.server.metrics;
+
+/**
+ * Statistics of the classes loaded for a connector. The size of the class files is used as an
+ * approximation of the metaspace used.
+ *
+ * @param classCount number of classes defined by the class loader of the connector
+ * @param classBytes total size of the class files defined by the class loader of the connector
+ * @param sharedClassCount number of classes defined by the shared library class loaders used by
+ *     the connector, or {@code 0} if there is none
+ * @param sharedClassBytes total size of the class files defined by the shared library class
+ *     loaders used by the connector, or {@code 0} if there is none
+ * @param attributedSharedClassBytes size of the class files of the shared library class loaders
+ *     that is attributed to the connector, which is the size of each class loader divided evenly
+ *     among all the connectors sharing it
+ */
+public record ConnectorClassStats(
+    long classCount,
+    long classBytes,
+    long sharedClassCount,
+    long sharedClassBytes,
+    long attributedSharedClassBytes) {}
@@ -1,18 +1,40 @@
 package com.google.cloud.connector.server.metrics;
 
+import static com.google.cloud.connector.server.metrics.MetricsConstants.ATTRIBUTE_CLASS_LOADER;
+import static com.google.cloud.connector.server.metrics.MetricsConstants.ATTRIBUTE_DATASOURCE;
+import static com.google.cloud.connector.server.metrics.MetricsConstants.CLASS_LOADER_CONNECTOR;
+import static com.google.cloud.connector.server.metrics.MetricsConstants.CLASS_LOADER_SHARED;
 import static com.google.cloud.connector.server.metrics.MetricsConstants.METER_NAME;
+import static com.google.cloud.connector.server.metrics.MetricsConstants.METRIC_CONNECTOR_CLASSES;
+import static com.google.cloud.connector.server.metrics.MetricsConstants.METRIC_CONNECTOR_CLASS_BYTES;
+import static com.google.cloud.connector.server.metrics.MetricsConstants.METRIC_LOADED_CLASSES;
+import static com.google.cloud.connector.server.metrics.MetricsConstants.METRIC_LOADER_CACHE_EVICTIONS;
+import static com.google.cloud.connector.server.metrics.MetricsConstants.METRIC_LOADER_CACHE_HITS;
+import static com.google.cloud.connector.server.metrics.MetricsConstants.METRIC_LOADER_CACHE_LOADS;
+import static com.google.cloud.connector.server.metrics.MetricsConstants.METRIC_LOADER_CACHE_SIZE;
+import static com.google.cloud.connector.server.metrics.MetricsConstants.METRIC_LOADER_VERSION;
+import static com.google.cloud.connector.server.metrics.MetricsConstants.METRIC_PRELOAD_LATENCY;
 import static com.google.cloud.connector.server.metrics.OpenTelemetryUtil.getApiCounter;
 import static com.google.cloud.connector.server.metrics.OpenTelemetryUtil.getAttributes;
 import static com.google.cloud.connector.server.metrics.OpenTelemetryUtil.getBytesReadCounter;
+import static com.google.cloud.connector.server.metrics.OpenTelemetryUtil.getHistogram;
 import static com.google.cloud.connector.server.metrics.OpenTelemetryUtil.getLatencyHistogram;
 import static com.google.cloud.connector.server.metrics.OpenTelemetryUtil.getRowCounter;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.api.metrics.LongCounter;
 import io.opentelemetry.api.metrics.LongHistogram;
 import io.opentelemetry.api.metrics.Meter;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
 import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 /** Util functions for recording connector server metrics. */
 public class ConnectorMetricsUtil {
@@ -123,4 +145,148 @@ public class ConnectorMetricsUtil {
     LongCounter bytesReadCounter = getBytesReadCounter(meter);
     bytesReadCounter.add(bytesRead, attributes);
   }
+
+  /**
+   * Records the time spent in preloading a connector.
+   *
+   * @param openTelemetry {@link OpenTelemetry}
+   * @param datasourceId Datasource ID
+   * @param duration time taken to preload the connector
+   */
+  public static void recordPreloadLatency(
+      OpenTelemetry openTelemetry, String datasourceId, Duration duration) {
+    Meter meter = openTelemetry.getMeter(METER_NAME);
+    getHistogram(meter, METRIC_PRELOAD_LATENCY)
+        .record(
+            duration.toMillis(),
+            Attributes.of(AttributeKey.stringKey(ATTRIBUTE_DATASOURCE), datasourceId));
+  }
+
+  /**
+   * Registers metrics for a connector loader cache. The metrics are observed from the cache
+   * statistics, which requires the cache to be built with {@link CacheBuilder#recordStats()}.
+   *
+   * @param openTelemetry {@link OpenTelemetry}
+   * @param cache the loader cache
+   * @return the list of instruments registered, which should be closed when the cache is discarded
+   */
+  public static List<AutoCloseable> registerLoaderCacheMetrics(
+      OpenTelemetry openTelemetry, Cache<?, ?> cache) {
+    Meter meter = openTelemetry.getMeter(METER_NAME);
+    ClassLoadingMXBean classLoadingBean = ManagementFactory.getClassLoadingMXBean();
+    return List.of(
+        meter
+            .counterBuilder(METRIC_LOADER_CACHE_HITS)
+            .setDescription("Connector loader cache hits")
+            .setUnit("cnt")
+            .buildWithCallback(measurement -> measurement.record(cache.stats().hitCount())),
+        meter
+            .counterBuilder(METRIC_LOADER_CACHE_LOADS)
+            .setDescription("Connector loaders created")
+            .setUnit("cnt")
+            .buildWithCallback(measurement -> measurement.record(cache.stats().loadCount())),
+        meter
+            .counterBuilder(METRIC_LOADER_CACHE_EVICTIONS)
+            .setDescription("Connector loaders evicted")
+            .setUnit("cnt")
+            .buildWithCallback(measurement -> measurement.record(cache.stats().evictionCount())),
+        meter
+            .gaugeBuilder(METRIC_LOADER_CACHE_SIZE)
+            .setDescription("Connector loaders in the cache")
+            .setUnit("cnt")
+            .ofLongs()
+            .buildWithCallback(measurement -> measurement.record(cache.size())),
+        meter
+            .gaugeBuilder(METRIC_LOADED_CLASSES)
+            .setDescription("Classes currently loaded in the JVM")
+            .setUnit("cnt")
+            .ofLongs()
+            .buildWithCallback(
+                measurement -> measurement.record(classLoadingBean.getLoadedClassCount())));
+  }
+
+  /**
+   * Registers a gauge metric for the version of the connector loader of each data source.
+   *
+   * @param openTelemetry {@link OpenTelemetry}
+   * @param versionsSupplier provides the current loader version keyed by datasource ID
+   * @return the instrument registered, which should be closed when it is no longer needed
+   */
+  public static AutoCloseable registerLoaderVersionMetric(
+      OpenTelemetry openTelemetry, Supplier<Map<String, Long>> versionsSupplier) {
+    return openTelemetry
+        .getMeter(METER_NAME)
+        .gaugeBuilder(METRIC_LOADER_VERSION)
+        .setDescription("Version of the connector loader in use")
+        .ofLongs()
+        .buildWithCallback(
+            measurement ->
+                versionsSupplier
+                    .get()
+                    .forEach(
+                        (datasourceId, version) ->
+                            measurement.record(
+                                version,
+                                Attributes.of(
+                                    AttributeKey.stringKey(ATTRIBUTE_DATASOURCE), datasourceId))));
+  }
+
+  /**
+   * Registers gauge metrics for the classes loaded for each connector. Classes loaded by a shared
+   * library class loader are reported separately, with the size divided evenly among the
+   * connectors sharing it.
+   *
+   * @param openTelemetry {@link OpenTelemetry}
+   * @param statsSupplier provides the current {@link ConnectorClassStats} keyed by datasource ID
+   * @return the instruments registered, which should be closed when they are no longer needed
+   */
+  public static List<AutoCloseable> registerConnectorClassMetrics(
+      OpenTelemetry openTelemetry, Supplier<Map<String, ConnectorClassStats>> statsSupplier) {
+    Meter meter = openTelemetry.getMeter(METER_NAME);
+    return List.of(
+        meter
+            .gaugeBuilder(METRIC_CONNECTOR_CLASSES)
+            .setDescription("Classes loaded for the connector")
+            .setUnit("cnt")
+            .ofLongs()
+            .buildWithCallback(
+                measurement ->
+                    statsSupplier
+                        .get()
+                        .forEach(
+                            (datasourceId, stats) -> {
+                              measurement.record(
+                                  stats.classCount(),
+                                  classLoaderAttributes(datasourceId, CLASS_LOADER_CONNECTOR));
+                              measurement.record(
+                                  stats.sharedClassCount(),
+                                  classLoaderAttributes(datasourceId, CLASS_LOADER_SHARED));
+                            })),
+        meter
+            .gaugeBuilder(METRIC_CONNECTOR_CLASS_BYTES)
+            .setDescription("Size of the class files loaded for the connector")
+            .setUnit("bytes")
+            .ofLongs()
+            .buildWithCallback(
+                measurement ->
+                    statsSupplier
+                        .get()
+                        .forEach(
+                            (datasourceId, stats) -> {
+                              measurement.record(
+                                  stats.classBytes(),
+                                  classLoaderAttributes(datasourceId, CLASS_LOADER_CONNECTOR));
+                              measurement.record(
+                                  stats.attributedSharedClassBytes(),
+                                  classLoaderAttributes(datasourceId, CLASS_LOADER_SHARED));
+                            })));
+  }
+
+  private static Attributes classLoaderAttributes(String datasourceId, String classLoader) {
+    return Attributes.of(
+        AttributeKey.stringKey(ATTRIBUTE_DATASOURCE),
+        datasourceId,
+        AttributeKey.stringKey(ATTRIBUTE_CLASS_LOADER),
+        classLoader);
+  }
 }
@@ -10,6 +10,7 @@ import io.opentelemetry.api.metrics.ObservableDoubleGauge;
 import io.opentelemetry.api.metrics.ObservableDoubleMeasurement;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Wrapper class to encapsulate information required to send row count, bytes read, throughput and
@@ -24,6 +25,7 @@ public class DataBatchMetricsRecorder {
   // To record throughput across multiple batches
   private final Throughput averageThroughput;
   private final ObservableDoubleGauge throughputGauge;
+  private final AtomicBoolean latencyRecorded = new AtomicBoolean();
 
   /**
    * Constructs new {@link DataBatchMetricsRecorder}.
@@ -43,6 +45,14 @@ public class DataBatchMetricsRecorder {
     this.averageThroughput = new Throughput();
   }
 
+  /**
+   * Returns a {@link DataBatchMetricsRecorder} that records nothing, for reads whose batches are
+   * recorded by the calls that send them.
+   */
+  public static DataBatchMetricsRecorder noop() {
+    return new DataBatchMetricsRecorder(OpenTelemetry.noop(), "", "", Instant.now());
+  }
+
   /**
    * Records gauge metrics for row count, bytes read and throughput.
    *
@@ -50,7 +60,7 @@ public class DataBatchMetricsRecorder {
    * @param bytesRead {@link Long}
    * @param duration {@link Duration}
    */
-  public void recordMetrics(Integer rowCount, Long bytesRead, Duration duration) {
+  public synchronized void recordMetrics(Integer rowCount, Long bytesRead, Duration duration) {
     ConnectorMetricsUtil.recordRowCount(openTelemetry, datasourceId, apiName, rowCount);
     ConnectorMetricsUtil.recordBytesReadCount(openTelemetry, datasourceId, apiName, bytesRead);
     double throughput = ((double) bytesRead) / ((double) duration.toNanos() / 1_000_000_000);
@@ -61,9 +71,13 @@ public class DataBatchMetricsRecorder {
 
   /**
    * Record latency metric for Read Stream and Execute Query. Usage: used to send latency from start
-   * of api to first batch of data sent.
+   * of api to first batch of data sent. Only the first call records the latency, such that calls
+   * that read several partitions record it once.
    */
   public void recordLatency() {
+    if (!latencyRecorded.compareAndSet(false, true)) {
+      return;
+    }
     ConnectorMetricsUtil.recordLatency(
         openTelemetry,
         datasourceId,
@@ -86,7 +100,7 @@ public class DataBatchMetricsRecorder {
   /**
    * Record the average throughput value.
    */
-  private void recordAverageThroughput(ObservableDoubleMeasurement measurement) {
+  private synchronized void recordAverageThroughput(ObservableDoubleMeasurement measurement) {
     if (!averageThroughput.isRecorded()) {
       measurement.record(averageThroughput.getValue(),
           OpenTelemetryUtil.getAttributes(datasourceId, apiName));
@@ -13,6 +13,7 @@ public class MetricsConstants {
   public static final String ATTRIBUTE_API_NAME = "method";
   public static final String ATTRIBUTE_STATUS = "error_code";
   public static final String ATTRIBUTE_DATASOURCE = "datasource_id";
+  public static final String ATTRIBUTE_CLASS_LOADER = "class_loader";
 
   /**
    * Constants for Api names.
@@ -21,6 +22,7 @@ public class MetricsConstants {
   public static final String API_START_QUERY = "StartQuery";
   public static final String API_EXECUTE_QUERY = "ExecuteQuery";
   public static final String API_READ_STREAM = "ReadStream";
+  public static final String API_READ_STREAMS = "ReadStreams";
   public static final String API_BROWSE_ASSET = "BrowseAsset";
 
   /**
@@ -38,4 +40,20 @@ public class MetricsConstants {
   public static final String METRIC_ROWS_READ = "rows_read_count";
   public static final String METRIC_BYTES_READ = "bytes_read_count";
   public static final String METRIC_THROUGHPUT = "throughput_count";
+  public static final String METRIC_LOADER_CACHE_HITS = "connector_loader_cache_hit_count";
+  public static final String METRIC_LOADER_CACHE_LOADS = "connector_loader_cache_load_count";
+  public static final String METRIC_LOADER_CACHE_EVICTIONS =
+      "connector_loader_cache_eviction_count";
+  public static final String METRIC_LOADER_CACHE_SIZE = "connector_loader_cache_size";
+  public static final String METRIC_LOADED_CLASSES = "loaded_class_count";
+  public static final String METRIC_LOADER_VERSION = "connector_loader_version";
+  public static final String METRIC_PRELOAD_LATENCY = "connector_preload_latencies";
+  public static final String METRIC_CONNECTOR_CLASSES = "connector_class_count";
+  public static final String METRIC_CONNECTOR_CLASS_BYTES = "connector_class_bytes";
+
+  /**
+   * Constants for class loader types.
+   */
+  public static final String CLASS_LOADER_CONNECTOR = "connector";
+  public static final String CLASS_LOADER_SHARED = "shared";
 }
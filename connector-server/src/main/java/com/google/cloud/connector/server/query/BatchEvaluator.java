@@ -0,0 +1,152 @@
+package com.google.cloud.connector.server.query;
+
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.ComputeElement;
+import com.google.cloud.bigquery.federation.v1alpha1.Expression;
+import com.google.cloud.bigquery.federation.v1alpha1.Schema;
+import com.google.cloud.bigquery.federation.v1alpha1.StructValue;
+import com.google.cloud.bigquery.federation.v1alpha1.Type;
+import com.google.cloud.bigquery.federation.v1alpha1.Value;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Evaluates the filter predicate and the compute of a query for batches of records, with the
+ * expressions compiled once against the schema of the records.
+ *
+ * <p>The conjuncts of the filter predicate are evaluated one after another, each only for the
+ * records that passed the previous ones, and the compute elements are only evaluated for the
+ * records that passed the whole filter.
+ */
+public final class BatchEvaluator {
+
+  private final List<CompiledExpression> conjuncts;
+  @Nullable private final List<CompiledExpression> projections;
+  private final Schema outputSchema;
+
+  /**
+   * Creates an instance.
+   *
+   * @param query the query with the filter predicate and the compute to evaluate. Other parts of
+   *     the query are ignored.
+   * @param schema the schema of the records
+   * @throws IllegalArgumentException if an expression of the query can't be compiled
+   */
+  public BatchEvaluator(DataQuery query, Schema schema) {
+    this.conjuncts = new ArrayList<>();
+    if (query.hasFilterPredicate()) {
+      for (Expression conjunct : QueryPlanner.conjuncts(query.getFilterPredicate())) {
+        conjuncts.add(ExpressionCompiler.compile(conjunct, schema));
+      }
+    }
+    if (!query.hasCompute()) {
+      this.projections = null;
+      this.outputSchema = schema;
+      return;
+    }
+
+    this.projections = new ArrayList<>();
+    Schema.Builder builder = schema.toBuilder().clearFields();
+    List<ComputeElement> elements = query.getCompute().getElementsList();
+    for (int i = 0; i < elements.size(); i++) {
+      ComputeElement element = elements.get(i);
+      CompiledExpression projection = ExpressionCompiler.compile(element.getExpression(), schema);
+      projections.add(projection);
+      builder.addFields(outputField(element, i, projection.getType(), schema));
+    }
+    this.outputSchema = builder.build();
+  }
+
+  /** Returns the schema of the evaluated records. */
+  public Schema getOutputSchema() {
+    return outputSchema;
+  }
+
+  /**
+   * Evaluates the query for a batch of records.
+   *
+   * @param rows the records read from the connector
+   * @return the records that match the filter predicate, with the values of the compute elements
+   *     if the query has a compute
+   */
+  public List<StructValue> evaluate(List<StructValue> rows) {
+    int[] selection = new int[rows.size()];
+    for (int i = 0; i < selection.length; i++) {
+      selection[i] = i;
+    }
+    int count = selection.length;
+    for (CompiledExpression conjunct : conjuncts) {
+      Value[] values = conjunct.evaluate(rows, selection, count);
+      int selected = 0;
+      for (int i = 0; i < count; i++) {
+        if (values[i].getValueCase() == Value.ValueCase.BOOL_VALUE && values[i].getBoolValue()) {
+          selection[selected++] = selection[i];
+        }
+      }
+      count = selected;
+      if (count == 0) {
+        return List.of();
+      }
+    }
+
+    if (projections == null) {
+      if (count == rows.size()) {
+        return rows;
+      }
+      List<StructValue> result = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        result.add(rows.get(selection[i]));
+      }
+      return result;
+    }
+
+    Value[][] columns = new Value[projections.size()][];
+    for (int column = 0; column < columns.length; column++) {
+      columns[column] = projections.get(column).evaluate(rows, selection, count);
+    }
+    List<StructValue> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      StructValue.Builder row = StructValue.newBuilder();
+      for (Value[] column : columns) {
+        row.addFields(column[i]);
+      }
+      result.add(row.build());
+    }
+    return result;
+  }
+
+  /**
+   * Returns the field of a compute element in the output schema. Field references keep the
+   * metadata of the referenced field.
+   *
+   * @param element the compute element
+   * @param index the index of the element in the compute
+   * @param type the type of the values of the element
+   * @param schema the schema of the records the element is evaluated for
+   */
+  static Schema.Field outputField(ComputeElement element, int index, Type type, Schema schema) {
+    Expression expression = element.getExpression();
+    Schema.Field.Builder field = Schema.Field.newBuilder();
+    if (expression.hasField()) {
+      String fieldName = expression.getField().getFieldName();
+      field =
+          schema.getFieldsList().stream()
+              .filter(inputField -> inputField.getFieldName().equals(fieldName))
+              .findFirst()
+              .map(Schema.Field::toBuilder)
+              .orElse(field);
+    }
+    String name = element.getFieldName();
+    if (name.isEmpty()) {
+      name =
+          expression.hasField()
+              ? expression.getField().getFieldName()
+              : String.format("_f%d", index);
+    }
+    if (!name.equals(field.getFieldName())) {
+      field.setFieldName(name).clearDisplayName();
+    }
+    return field.setType(type).build();
+  }
+}
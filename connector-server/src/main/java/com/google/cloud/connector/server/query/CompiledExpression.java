@@ -0,0 +1,29 @@
+package com.google.cloud.connector.server.query;
+
+import com.google.cloud.bigquery.federation.v1alpha1.StructValue;
+import com.google.cloud.bigquery.federation.v1alpha1.Type;
+import com.google.cloud.bigquery.federation.v1alpha1.Value;
+import java.util.List;
+
+/**
+ * An {@link com.google.cloud.bigquery.federation.v1alpha1.Expression} compiled by {@link
+ * ExpressionCompiler} against the schema of the records, which evaluates the expression for a batch
+ * of records at once, one column at a time.
+ */
+public interface CompiledExpression {
+
+  /** Returns the {@link Type} of the values of the expression. */
+  Type getType();
+
+  /**
+   * Evaluates the expression for the selected records of a batch.
+   *
+   * @param rows the records of the batch
+   * @param selection the indexes of the selected records in {@code rows}
+   * @param count the number of selected records, which are the first elements of {@code selection}
+   * @return the value of the expression for each selected record, in the order of the selection
+   * @throws IllegalArgumentException if the expression can't be evaluated for the values of a
+   *     record
+   */
+  Value[] evaluate(List<StructValue> rows, int[] selection, int count);
+}
@@ -0,0 +1,232 @@
+package com.google.cloud.connector.server.query;
+
+import com.google.cloud.bigquery.federation.v1alpha1.Data;
+import com.google.cloud.bigquery.federation.v1alpha1.Data.DataBlock;
+import com.google.cloud.bigquery.federation.v1alpha1.Data.RowSet;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.bigquery.federation.v1alpha1.Schema;
+import com.google.cloud.bigquery.federation.v1alpha1.StructValue;
+import com.google.cloud.connector.server.common.BatchingRecordStreamResponder;
+import com.google.cloud.connector.server.common.LimitedStreamObserver;
+import com.google.common.collect.Iterators;
+import io.grpc.stub.StreamObserver;
+import java.util.Iterator;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link StreamObserver} that evaluates the server query of a {@link QueryPlan} for the {@link
+ * Data} batches of a read before forwarding them, and attaches the residual query to the first
+ * batch.
+ *
+ * <p>The {@link BatchEvaluator}, the {@link HashAggregator}, the evaluator of the having predicate
+ * and the {@link SortLimitOperator} are created from the schema of the first batch, which is
+ * replaced by the schema of the evaluated records. Batches left without records are dropped,
+ * unless they carry more than the records. Aggregated and sorted records are sent when the read
+ * completes.
+ */
+public final class EvaluatingObserver implements LimitedStreamObserver<Data> {
+
+  /** The number of aggregated records evaluated at once by the having predicate. */
+  private static final int AGGREGATED_BATCH_SIZE = 1024;
+
+  private final StreamObserver<Data> observer;
+  @Nullable private final DataQuery serverQuery;
+  private final SpillConfig spillConfig;
+  @Nullable private DataQuery residualQuery;
+  @Nullable private BatchEvaluator evaluator;
+  @Nullable private HashAggregator aggregator;
+  @Nullable private BatchEvaluator havingEvaluator;
+  @Nullable private SortLimitOperator operator;
+  private boolean schemaReceived;
+
+  private EvaluatingObserver(
+      StreamObserver<Data> observer,
+      @Nullable DataQuery serverQuery,
+      @Nullable DataQuery residualQuery,
+      SpillConfig spillConfig) {
+    this.observer = observer;
+    this.serverQuery = serverQuery;
+    this.residualQuery = residualQuery;
+    this.spillConfig = spillConfig;
+  }
+
+  /**
+   * Returns a {@link StreamObserver} that evaluates the given queries for the batches it forwards
+   * to the given {@link StreamObserver}.
+   *
+   * @param observer the {@link StreamObserver} to forward the batches to
+   * @param serverQuery the query to evaluate for the records, or {@code null} to forward them as
+   *     read
+   * @param residualQuery the residual query to attach to the first batch, if any
+   * @param spillConfig the {@link SpillConfig} of the aggregation and the sorting of the server
+   *     query
+   * @return the given {@link StreamObserver} if there is nothing to evaluate or attach
+   */
+  public static StreamObserver<Data> evaluating(
+      StreamObserver<Data> observer,
+      @Nullable DataQuery serverQuery,
+      @Nullable DataQuery residualQuery,
+      SpillConfig spillConfig) {
+    if (serverQuery == null && residualQuery == null) {
+      return observer;
+    }
+    return new EvaluatingObserver(observer, serverQuery, residualQuery, spillConfig);
+  }
+
+  @Override
+  public void onNext(Data data) {
+    Data.Builder builder = data.toBuilder();
+    if (residualQuery != null) {
+      builder.setDataQuery(residualQuery);
+      residualQuery = null;
+    }
+    if (serverQuery != null && data.hasSchema()) {
+      schemaReceived = true;
+      builder.setSchema(createOperators(data.getSchema()));
+    }
+    if (serverQuery != null && data.getDataBlock().hasRowset()) {
+      if (!schemaReceived) {
+        throw new IllegalStateException("Received records before the schema");
+      }
+      List<StructValue> rows = data.getDataBlock().getRowset().getRowsList();
+      if (evaluator != null) {
+        rows = evaluator.evaluate(rows);
+      }
+      if (aggregator != null) {
+        aggregator.add(rows);
+        rows = List.of();
+      } else {
+        rows = evaluateAggregated(rows);
+      }
+      if (rows.isEmpty()) {
+        builder.clearDataBlock();
+      } else {
+        builder.setDataBlock(
+            DataBlock.newBuilder().setRowset(RowSet.newBuilder().addAllRows(rows)));
+      }
+    }
+    if (builder.hasSchema()
+        || builder.hasDataBlock()
+        || builder.hasDataQuery()
+        || builder.getSplitStreamsCount() > 0) {
+      observer.onNext(builder.build());
+    }
+  }
+
+  @Override
+  public boolean isLimitReached() {
+    return operator != null && operator.isLimitReached();
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    closeOperators();
+    observer.onError(t);
+  }
+
+  @Override
+  public void onCompleted() {
+    try {
+      if (aggregator != null) {
+        send(
+            Iterators.concat(
+                Iterators.transform(
+                    Iterators.partition(aggregator.finish(), AGGREGATED_BATCH_SIZE),
+                    aggregated -> evaluateAggregated(aggregated).iterator())));
+      }
+      if (operator != null) {
+        send(operator.finish());
+      }
+    } finally {
+      closeOperators();
+    }
+    observer.onCompleted();
+  }
+
+  /**
+   * Creates the operators of the server query for the records of the given schema.
+   *
+   * @return the schema of the evaluated records
+   */
+  private Schema createOperators(Schema schema) {
+    closeOperators();
+    evaluator = null;
+    havingEvaluator = null;
+    boolean aggregation =
+        serverQuery.hasCompute() && HashAggregator.isAggregation(serverQuery.getCompute());
+    // The records are filtered before they are aggregated
+    DataQuery recordQuery =
+        aggregation ? serverQuery.toBuilder().clearCompute().build() : serverQuery;
+    if (recordQuery.hasFilterPredicate() || recordQuery.hasCompute()) {
+      evaluator = new BatchEvaluator(recordQuery, schema);
+      schema = evaluator.getOutputSchema();
+    }
+    if (aggregation) {
+      aggregator = new HashAggregator(serverQuery.getCompute(), schema, spillConfig);
+      schema = aggregator.getOutputSchema();
+    }
+    if (serverQuery.hasHavingPredicate()) {
+      havingEvaluator =
+          new BatchEvaluator(
+              DataQuery.newBuilder().setFilterPredicate(serverQuery.getHavingPredicate()).build(),
+              schema);
+    }
+    if (serverQuery.getSortingCount() > 0 || serverQuery.hasLimit() || serverQuery.hasOffset()) {
+      operator = new SortLimitOperator(serverQuery, schema, spillConfig);
+    }
+    return schema;
+  }
+
+  /**
+   * Evaluates the having predicate, the sorting, the limit and the offset for records that are
+   * aggregated, or don't need to.
+   */
+  private List<StructValue> evaluateAggregated(List<StructValue> rows) {
+    if (havingEvaluator != null) {
+      rows = havingEvaluator.evaluate(rows);
+    }
+    return operator != null ? operator.add(rows) : rows;
+  }
+
+  private void send(Iterator<StructValue> rows) {
+    send(observer, rows);
+  }
+
+  /**
+   * Sends the records to the given {@link StreamObserver} in batches of the size sent by {@link
+   * BatchingRecordStreamResponder}.
+   */
+  static void send(StreamObserver<Data> observer, Iterator<StructValue> rows) {
+    RowSet.Builder rowSet = RowSet.newBuilder();
+    long batchBytes = 0;
+    while (rows.hasNext()) {
+      StructValue row = rows.next();
+      rowSet.addRows(row);
+      batchBytes += row.getSerializedSize();
+      if (batchBytes >= BatchingRecordStreamResponder.MAX_BATCH_SIZE_BYTES) {
+        observer.onNext(toData(rowSet));
+        rowSet = RowSet.newBuilder();
+        batchBytes = 0;
+      }
+    }
+    if (rowSet.getRowsCount() > 0) {
+      observer.onNext(toData(rowSet));
+    }
+  }
+
+  private void closeOperators() {
+    if (aggregator != null) {
+      aggregator.close();
+      aggregator = null;
+    }
+    if (operator != null) {
+      operator.close();
+      operator = null;
+    }
+  }
+
+  private static Data toData(RowSet.Builder rowSet) {
+    return Data.newBuilder().setDataBlock(DataBlock.newBuilder().setRowset(rowSet)).build();
+  }
+}
@@ -0,0 +1,1064 @@
+package com.google.cloud.connector.server.query;
+
+import com.google.cloud.bigquery.federation.v1alpha1.CastExpression;
+import com.google.cloud.bigquery.federation.v1alpha1.Expression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionExpression;
+import com.google.cloud.bigquery.federation.v1alpha1.Functions.FunctionId;
+import com.google.cloud.bigquery.federation.v1alpha1.Schema;
+import com.google.cloud.bigquery.federation.v1alpha1.StructValue;
+import com.google.cloud.bigquery.federation.v1alpha1.Type;
+import com.google.cloud.bigquery.federation.v1alpha1.TypeKind;
+import com.google.cloud.bigquery.federation.v1alpha1.Value;
+import com.google.cloud.connector.data.FunctionIds;
+import com.google.cloud.connector.data.Values;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Range;
+import com.google.protobuf.NullValue;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * Compiles {@link Expression} trees into {@link CompiledExpression} evaluators, such that the field
+ * references of an expression are resolved against the schema of the records once, and the
+ * expression is then evaluated for whole batches of records.
+ *
+ * <p>Constants, field references, casts to BOOL, INT64, DOUBLE, NUMERIC, BIGNUMERIC and STRING, the
+ * logical operators, the comparisons, BETWEEN, IN, IS NULL and the arithmetic operators are
+ * supported. The logical operators follow the three-valued logic of SQL, and only evaluate their
+ * further arguments for the records that are not decided by the previous ones. The other functions
+ * are null if any of their arguments is null. Comparisons of a field to a constant compare INT64
+ * and DOUBLE values as primitives, and IN lists of constants are looked up in a hash set.
+ *
+ * <p>The compiled expressions are immutable, and cached by the expression and the fields of the
+ * schema, such that the queries that are repeated, as the queries of dashboards are, reuse them.
+ *
+ * <p>A field reference with an alias resolves to the field named {@code alias.field_name} if the
+ * schema has one, as for the fields that {@link HashJoin} qualifies, and to its field name
+ * otherwise.
+ */
+public final class ExpressionCompiler {
+
+  /** The functions that can be compiled, with the numbers of arguments they take. */
+  private static final ImmutableMap<FunctionId, Range<Integer>> FUNCTIONS =
+      ImmutableMap.<FunctionId, Range<Integer>>builder()
+          .put(FunctionId.AND, Range.atLeast(1))
+          .put(FunctionId.OR, Range.atLeast(1))
+          .put(FunctionId.NOT, Range.singleton(1))
+          .put(FunctionId.IS_NULL, Range.singleton(1))
+          .put(FunctionId.EQUAL, Range.singleton(2))
+          .put(FunctionId.NOT_EQUAL, Range.singleton(2))
+          .put(FunctionId.LESS, Range.singleton(2))
+          .put(FunctionId.LESS_OR_EQUAL, Range.singleton(2))
+          .put(FunctionId.GREATER, Range.singleton(2))
+          .put(FunctionId.GREATER_OR_EQUAL, Range.singleton(2))
+          .put(FunctionId.BETWEEN, Range.singleton(3))
+          .put(FunctionId.IN, Range.atLeast(2))
+          .put(FunctionId.ADD, Range.singleton(2))
+          .put(FunctionId.SUBTRACT, Range.singleton(2))
+          .put(FunctionId.MULTIPLY, Range.singleton(2))
+          .put(FunctionId.DIVIDE, Range.singleton(2))
+          .buildOrThrow();
+
+  /** The types that CAST converts values to. */
+  private static final ImmutableSet<TypeKind> CAST_TYPES =
+      ImmutableSet.of(
+          TypeKind.BOOL,
+          TypeKind.INT64,
+          TypeKind.DOUBLE,
+          TypeKind.NUMERIC,
+          TypeKind.BIGNUMERIC,
+          TypeKind.STRING);
+
+  /** The numeric types that CAST converts values of to and from each other. */
+  private static final ImmutableSet<TypeKind> NUMBER_TYPES =
+      ImmutableSet.of(
+          TypeKind.INT32,
+          TypeKind.INT64,
+          TypeKind.UINT32,
+          TypeKind.UINT64,
+          TypeKind.FLOAT,
+          TypeKind.DOUBLE,
+          TypeKind.NUMERIC,
+          TypeKind.BIGNUMERIC);
+
+  /** The literals of integers that strings are converted to INT64 from, in decimal or hex. */
+  private static final Pattern INTEGER_LITERAL =
+      Pattern.compile("([+-]?)(?:(\\d+)|0[xX]([0-9a-fA-F]+))");
+
+  /** The literals of floating point numbers that strings are converted to DOUBLE from. */
+  private static final Pattern FLOAT_LITERAL =
+      Pattern.compile("[+-]?(?:\\d+\\.?\\d*|\\.\\d+)(?:[eE][+-]?\\d+)?");
+
+  /** The types that the arithmetic operators compute their values in. */
+  private static final ImmutableSet<TypeKind> ARITHMETIC_TYPES =
+      ImmutableSet.of(TypeKind.INT64, TypeKind.DOUBLE, TypeKind.NUMERIC, TypeKind.BIGNUMERIC);
+
+  /** The number of digits after the decimal point of NUMERIC values. */
+  private static final int NUMERIC_SCALE = 9;
+
+  /** The number of digits after the decimal point of BIGNUMERIC values. */
+  private static final int BIGNUMERIC_SCALE = 38;
+
+  /** The bound of the absolute NUMERIC values, which is 10^29. */
+  private static final BigDecimal NUMERIC_LIMIT = BigDecimal.TEN.pow(29);
+
+  /** The bound of the absolute BIGNUMERIC values, which is 2^255 / 10^38. */
+  private static final BigDecimal BIGNUMERIC_LIMIT =
+      new BigDecimal(BigInteger.TWO.pow(255), BIGNUMERIC_SCALE);
+
+  /** The precision of divisions, which covers the 38 digit scale of BIGNUMERIC values. */
+  private static final MathContext DIVISION_CONTEXT = new MathContext(77, RoundingMode.HALF_UP);
+
+  /** The most compiled expressions that are cached. */
+  private static final long MAX_CACHED_EXPRESSIONS = 10_000;
+
+  private static final Cache<CacheKey, CompiledExpression> CACHE =
+      CacheBuilder.newBuilder().maximumSize(MAX_CACHED_EXPRESSIONS).build();
+
+  private static final Value NULL = Value.newBuilder().setNullValue(NullValue.NULL_VALUE).build();
+  private static final Value TRUE = Value.newBuilder().setBoolValue(true).build();
+  private static final Value FALSE = Value.newBuilder().setBoolValue(false).build();
+  private static final Type BOOL_TYPE = type(TypeKind.BOOL);
+
+  private ExpressionCompiler() {}
+
+  /** Returns the functions that can be compiled. */
+  public static Set<FunctionId> getSupportedFunctions() {
+    return FUNCTIONS.keySet();
+  }
+
+  /**
+   * Returns {@code true} if the given expression can be compiled, provided that the fields it
+   * references are in the schema of the records.
+   */
+  public static boolean isSupported(Expression expression) {
+    return switch (expression.getExpressionCase()) {
+      case CONSTANT, FIELD -> true;
+      case CAST -> CAST_TYPES.contains(expression.getCast().getType().getTypeKind())
+          && isCastable(
+              typeKindOf(expression.getCast().getArgument()),
+              expression.getCast().getType().getTypeKind())
+          && isSupported(expression.getCast().getArgument());
+      case FUNCTION -> {
+        FunctionExpression function = expression.getFunction();
+        FunctionId functionId = FunctionIds.of(function);
+        Range<Integer> arguments = FUNCTIONS.get(functionId);
+        yield arguments != null
+            && arguments.contains(function.getArgumentsCount())
+            && (!isArithmetic(functionId)
+                || !expression.hasType()
+                || ARITHMETIC_TYPES.contains(expression.getType().getTypeKind()))
+            && function.getArgumentsList().stream().allMatch(ExpressionCompiler::isSupported);
+      }
+      default -> false;
+    };
+  }
+
+  /**
+   * Compiles the given expression.
+   *
+   * @param expression the expression to compile
+   * @param schema the schema of the records the expression is evaluated for
+   * @return the {@link CompiledExpression}, which is cached for the expression and the fields of
+   *     the schema
+   * @throws IllegalArgumentException if the expression is not supported, or it references a field
+   *     that is not in the schema
+   */
+  public static CompiledExpression compile(Expression expression, Schema schema) {
+    CacheKey key = new CacheKey(expression, schema.getFieldsList());
+    CompiledExpression compiled = CACHE.getIfPresent(key);
+    if (compiled == null) {
+      Map<String, Integer> indexes = new HashMap<>();
+      for (int i = 0; i < schema.getFieldsCount(); i++) {
+        indexes.putIfAbsent(schema.getFields(i).getFieldName(), i);
+      }
+      compiled = compile(expression, schema, indexes);
+      CACHE.put(key, compiled);
+    }
+    return compiled;
+  }
+
+  private static CompiledExpression compile(
+      Expression expression, Schema schema, Map<String, Integer> indexes) {
+    switch (expression.getExpressionCase()) {
+      case CONSTANT -> {
+        Value value = expression.getConstant();
+        return new Constant(
+            value, expression.hasType() ? expression.getType() : type(typeKindOf(value)));
+      }
+      case FIELD -> {
+        String fieldName = expression.getField().getFieldName();
+        String alias = expression.getField().getAlias();
+        Integer index = alias.isEmpty() ? null : indexes.get(alias + "." + fieldName);
+        if (index == null) {
+          index = indexes.get(fieldName);
+        }
+        if (index == null) {
+          throw new IllegalArgumentException(
+              String.format("Field '%s' is not in the schema of the records", fieldName));
+        }
+        return new FieldReference(index, schema.getFields(index).getType());
+      }
+      case FUNCTION -> {
+        return compileFunction(expression, schema, indexes);
+      }
+      case CAST -> {
+        CastExpression cast = expression.getCast();
+        TypeKind typeKind = cast.getType().getTypeKind();
+        if (!CAST_TYPES.contains(typeKind)) {
+          throw new IllegalArgumentException(String.format("Unsupported cast to %s", typeKind));
+        }
+        CompiledExpression argument = compile(cast.getArgument(), schema, indexes);
+        TypeKind argumentTypeKind = argument.getType().getTypeKind();
+        if (!isCastable(argumentTypeKind, typeKind)) {
+          throw new IllegalArgumentException(
+              String.format("Unsupported cast of %s to %s", argumentTypeKind, typeKind));
+        }
+        return new Cast(argument, cast.getType());
+      }
+      default -> throw new IllegalArgumentException(
+          String.format("Unsupported expression: %s", expression.getExpressionCase()));
+    }
+  }
+
+  private static CompiledExpression compileFunction(
+      Expression expression, Schema schema, Map<String, Integer> indexes) {
+    FunctionExpression function = expression.getFunction();
+    FunctionId functionId = FunctionIds.of(function);
+    Range<Integer> arity = FUNCTIONS.get(functionId);
+    if (arity == null || !arity.contains(function.getArgumentsCount())) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Unsupported function %s with %d arguments",
+              function.getFunctionCase() == FunctionExpression.FunctionCase.FUNCTION_SIGNATURE_ID
+                  ? function.getFunctionSignatureId()
+                  : functionId,
+              function.getArgumentsCount()));
+    }
+    List<CompiledExpression> arguments = new ArrayList<>(function.getArgumentsCount());
+    for (Expression argument : function.getArgumentsList()) {
+      arguments.add(compile(argument, schema, indexes));
+    }
+    return switch (functionId) {
+      case AND -> new Logical(false, arguments);
+      case OR -> new Logical(true, arguments);
+      case NOT -> new Not(arguments.get(0));
+      case IS_NULL -> new IsNull(arguments.get(0));
+      case IN -> in(arguments.get(0), arguments.subList(1, arguments.size()));
+      // x BETWEEN a AND b is x >= a AND x <= b
+      case BETWEEN -> new Logical(
+          false,
+          List.of(
+              comparison(FunctionId.GREATER_OR_EQUAL, arguments.get(0), arguments.get(1)),
+              comparison(FunctionId.LESS_OR_EQUAL, arguments.get(0), arguments.get(2))));
+      case ADD, SUBTRACT, MULTIPLY, DIVIDE -> {
+        Type type =
+            expression.hasType()
+                ? expression.getType()
+                : arithmeticType(functionId, arguments.get(0), arguments.get(1));
+        if (!ARITHMETIC_TYPES.contains(type.getTypeKind())) {
+          throw new IllegalArgumentException(
+              String.format("Unsupported %s of type %s", functionId, type.getTypeKind()));
+        }
+        yield new Arithmetic(functionId, arguments.get(0), arguments.get(1), type);
+      }
+      default -> comparison(functionId, arguments.get(0), arguments.get(1));
+    };
+  }
+
+  /** Returns a comparison, which compares a field to a constant without evaluating the constant. */
+  private static CompiledExpression comparison(
+      FunctionId functionId, CompiledExpression left, CompiledExpression right) {
+    if (left instanceof FieldReference field && right instanceof Constant constant) {
+      return new FieldComparison(functionId, field.index(), constant.value(), false);
+    }
+    if (left instanceof Constant constant && right instanceof FieldReference field) {
+      return new FieldComparison(functionId, field.index(), constant.value(), true);
+    }
+    return new Comparison(functionId, left, right);
+  }
+
+  /**
+   * Returns IN, which looks the values up in a hash set if the candidates are constants of the same
+   * INT64, STRING or BOOL type, or NULL.
+   */
+  private static CompiledExpression in(
+      CompiledExpression value, List<CompiledExpression> candidates) {
+    Set<Value> constants = new HashSet<>();
+    boolean nullCandidate = false;
+    Value.ValueCase valueCase = null;
+    for (CompiledExpression candidate : candidates) {
+      if (!(candidate instanceof Constant constant)) {
+        return new In(value, candidates);
+      }
+      Value.ValueCase candidateCase = constant.value().getValueCase();
+      if (Values.isNull(constant.value())) {
+        nullCandidate = true;
+      } else if ((valueCase != null && candidateCase != valueCase)
+          || (candidateCase != Value.ValueCase.INT64_VALUE
+              && candidateCase != Value.ValueCase.STRING_VALUE
+              && candidateCase != Value.ValueCase.BOOL_VALUE)) {
+        return new In(value, candidates);
+      } else {
+        valueCase = candidateCase;
+        constants.add(constant.value());
+      }
+    }
+    return new ConstantIn(value, candidates, valueCase, constants, nullCandidate);
+  }
+
+  private static Type type(TypeKind typeKind) {
+    return Type.newBuilder().setTypeKind(typeKind).build();
+  }
+
+  private static TypeKind typeKindOf(Value value) {
+    return switch (value.getValueCase()) {
+      case BOOL_VALUE -> TypeKind.BOOL;
+      case INT32_VALUE -> TypeKind.INT32;
+      case INT64_VALUE -> TypeKind.INT64;
+      case UINT32_VALUE -> TypeKind.UINT32;
+      case UINT64_VALUE -> TypeKind.UINT64;
+      case FLOAT_VALUE -> TypeKind.FLOAT;
+      case DOUBLE_VALUE -> TypeKind.DOUBLE;
+      case NUMERIC_VALUE -> TypeKind.NUMERIC;
+      case BIGNUMERIC_VALUE -> TypeKind.BIGNUMERIC;
+      case STRING_VALUE -> TypeKind.STRING;
+      case BYTES_VALUE -> TypeKind.BYTES;
+      case DATE_VALUE -> TypeKind.DATE;
+      case DATETIME_VALUE -> TypeKind.DATETIME;
+      case TIMESTAMP_VALUE -> TypeKind.TIMESTAMP;
+      case TIME_VALUE -> TypeKind.TIME;
+      default -> TypeKind.TYPE_KIND_UNKNOWN;
+    };
+  }
+
+  /**
+   * Returns the type of the values of an expression if the expression declares it, and {@link
+   * TypeKind#TYPE_KIND_UNKNOWN} otherwise.
+   */
+  private static TypeKind typeKindOf(Expression expression) {
+    if (expression.hasType()) {
+      return expression.getType().getTypeKind();
+    }
+    return switch (expression.getExpressionCase()) {
+      case CONSTANT -> typeKindOf(expression.getConstant());
+      case CAST -> expression.getCast().getType().getTypeKind();
+      default -> TypeKind.TYPE_KIND_UNKNOWN;
+    };
+  }
+
+  /**
+   * Returns {@code true} if CAST converts the values of a type to another, following the
+   * conversions of BigQuery. Values of an unknown type are checked when they are converted.
+   */
+  private static boolean isCastable(TypeKind from, TypeKind to) {
+    if (from == TypeKind.TYPE_KIND_UNKNOWN || from == to) {
+      return true;
+    }
+    return switch (to) {
+      case BOOL -> from == TypeKind.STRING || isIntegralType(from);
+      case INT64, STRING -> from == TypeKind.STRING
+          || from == TypeKind.BOOL
+          || NUMBER_TYPES.contains(from);
+      default -> from == TypeKind.STRING || NUMBER_TYPES.contains(from);
+    };
+  }
+
+  private static boolean isArithmetic(FunctionId functionId) {
+    return switch (functionId) {
+      case ADD, SUBTRACT, MULTIPLY, DIVIDE -> true;
+      default -> false;
+    };
+  }
+
+  /**
+   * Returns the type of an arithmetic function whose expression has no type, which is the type of
+   * the BigQuery function for the types of the arguments. Division is never INT64, and UINT64
+   * arguments, which BigQuery doesn't have, are computed in DOUBLE unless the other argument is
+   * NUMERIC or BIGNUMERIC.
+   */
+  private static Type arithmeticType(
+      FunctionId functionId, CompiledExpression left, CompiledExpression right) {
+    TypeKind leftKind = left.getType().getTypeKind();
+    TypeKind rightKind = right.getType().getTypeKind();
+    if (leftKind == TypeKind.BIGNUMERIC || rightKind == TypeKind.BIGNUMERIC) {
+      return type(TypeKind.BIGNUMERIC);
+    }
+    if (leftKind == TypeKind.NUMERIC || rightKind == TypeKind.NUMERIC) {
+      return type(TypeKind.NUMERIC);
+    }
+    if (functionId != FunctionId.DIVIDE
+        && isIntegralType(leftKind)
+        && isIntegralType(rightKind)) {
+      return type(TypeKind.INT64);
+    }
+    return type(TypeKind.DOUBLE);
+  }
+
+  private static boolean isIntegralType(TypeKind typeKind) {
+    return typeKind == TypeKind.INT32 || typeKind == TypeKind.INT64 || typeKind == TypeKind.UINT32;
+  }
+
+  /** Returns the truth value of a BOOL value, or {@code null} if the value is null. */
+  @Nullable
+  private static Boolean toBoolean(Value value) {
+    if (Values.isNull(value)) {
+      return null;
+    }
+    if (value.getValueCase() != Value.ValueCase.BOOL_VALUE) {
+      throw new IllegalArgumentException(
+          String.format("Expected a BOOL value, got %s", value.getValueCase()));
+    }
+    return value.getBoolValue();
+  }
+
+  private static Value of(boolean value) {
+    return value ? TRUE : FALSE;
+  }
+
+  /** A constant. */
+  private record Constant(Value value, Type type) implements CompiledExpression {
+
+    @Override
+    public Type getType() {
+      return type;
+    }
+
+    @Override
+    public Value[] evaluate(List<StructValue> rows, int[] selection, int count) {
+      Value[] values = new Value[count];
+      Arrays.fill(values, value);
+      return values;
+    }
+  }
+
+  /** A reference to a field of the records. */
+  private record FieldReference(int index, Type type) implements CompiledExpression {
+
+    @Override
+    public Type getType() {
+      return type;
+    }
+
+    @Override
+    public Value[] evaluate(List<StructValue> rows, int[] selection, int count) {
+      Value[] values = new Value[count];
+      for (int i = 0; i < count; i++) {
+        StructValue row = rows.get(selection[i]);
+        values[i] = index < row.getFieldsCount() ? row.getFields(index) : NULL;
+      }
+      return values;
+    }
+  }
+
+  /**
+   * AND, which is decided by the first false argument, or OR, which is decided by the first true
+   * argument. Each argument is only evaluated for the records that are not decided yet.
+   */
+  private record Logical(boolean decidingValue, List<CompiledExpression> arguments)
+      implements CompiledExpression {
+
+    @Override
+    public Type getType() {
+      return BOOL_TYPE;
+    }
+
+    @Override
+    public Value[] evaluate(List<StructValue> rows, int[] selection, int count) {
+      Value[] values = new Value[count];
+      Arrays.fill(values, of(!decidingValue));
+      // The records that are not decided yet, and their positions in the result
+      int[] pending = Arrays.copyOf(selection, count);
+      int[] positions = new int[count];
+      Arrays.setAll(positions, i -> i);
+      int pendingCount = count;
+
+      for (CompiledExpression argument : arguments) {
+        if (pendingCount == 0) {
+          break;
+        }
+        Value[] argumentValues = argument.evaluate(rows, pending, pendingCount);
+        int remaining = 0;
+        for (int i = 0; i < pendingCount; i++) {
+          Boolean value = toBoolean(argumentValues[i]);
+          if (value != null && value == decidingValue) {
+            values[positions[i]] = of(decidingValue);
+            continue;
+          }
+          if (value == null) {
+            values[positions[i]] = NULL;
+          }
+          pending[remaining] = pending[i];
+          positions[remaining] = positions[i];
+          remaining++;
+        }
+        pendingCount = remaining;
+      }
+      return values;
+    }
+  }
+
+  /** NOT. */
+  private record Not(CompiledExpression argument) implements CompiledExpression {
+
+    @Override
+    public Type getType() {
+      return BOOL_TYPE;
+    }
+
+    @Override
+    public Value[] evaluate(List<StructValue> rows, int[] selection, int count) {
+      Value[] values = argument.evaluate(rows, selection, count);
+      for (int i = 0; i < count; i++) {
+        Boolean value = toBoolean(values[i]);
+        values[i] = value == null ? NULL : of(!value);
+      }
+      return values;
+    }
+  }
+
+  /** IS NULL. */
+  private record IsNull(CompiledExpression argument) implements CompiledExpression {
+
+    @Override
+    public Type getType() {
+      return BOOL_TYPE;
+    }
+
+    @Override
+    public Value[] evaluate(List<StructValue> rows, int[] selection, int count) {
+      Value[] values = argument.evaluate(rows, selection, count);
+      for (int i = 0; i < count; i++) {
+        values[i] = of(Values.isNull(values[i]));
+      }
+      return values;
+    }
+  }
+
+  /** A comparison of two values. */
+  private record Comparison(
+      FunctionId functionId, CompiledExpression left, CompiledExpression right)
+      implements CompiledExpression {
+
+    @Override
+    public Type getType() {
+      return BOOL_TYPE;
+    }
+
+    @Override
+    public Value[] evaluate(List<StructValue> rows, int[] selection, int count) {
+      Value[] leftValues = left.evaluate(rows, selection, count);
+      Value[] rightValues = right.evaluate(rows, selection, count);
+      Value[] values = new Value[count];
+      for (int i = 0; i < count; i++) {
+        values[i] = compare(functionId, leftValues[i], rightValues[i]);
+      }
+      return values;
+    }
+  }
+
+  /**
+   * A comparison of a field to a constant, which compares INT64 values and DOUBLE values that are
+   * not NaN as primitives, and other values as {@link Comparison} does.
+   */
+  private record FieldComparison(
+      FunctionId functionId, int index, Value constant, boolean constantFirst)
+      implements CompiledExpression {
+
+    @Override
+    public Type getType() {
+      return BOOL_TYPE;
+    }
+
+    @Override
+    public Value[] evaluate(List<StructValue> rows, int[] selection, int count) {
+      Value.ValueCase constantCase = constant.getValueCase();
+      Value[] values = new Value[count];
+      for (int i = 0; i < count; i++) {
+        StructValue row = rows.get(selection[i]);
+        Value value = index < row.getFieldsCount() ? row.getFields(index) : NULL;
+        if (value.getValueCase() == constantCase
+            && constantCase == Value.ValueCase.INT64_VALUE) {
+          values[i] = of(holds(functionId, compareInt64(value.getInt64Value())));
+        } else if (value.getValueCase() == constantCase
+            && constantCase == Value.ValueCase.DOUBLE_VALUE
+            && !Double.isNaN(value.getDoubleValue())
+            && !Double.isNaN(constant.getDoubleValue())) {
+          values[i] = of(holds(functionId, compareDouble(value.getDoubleValue())));
+        } else {
+          values[i] =
+              constantFirst
+                  ? compare(functionId, constant, value)
+                  : compare(functionId, value, constant);
+        }
+      }
+      return values;
+    }
+
+    private int compareInt64(long value) {
+      long constantValue = constant.getInt64Value();
+      return constantFirst
+          ? Long.compare(constantValue, value)
+          : Long.compare(value, constantValue);
+    }
+
+    private int compareDouble(double value) {
+      // Adding zero turns -0.0 into 0.0, which Double.compare orders differently
+      double constantValue = constant.getDoubleValue() + 0.0;
+      return constantFirst
+          ? Double.compare(constantValue, value + 0.0)
+          : Double.compare(value + 0.0, constantValue);
+    }
+  }
+
+  private static Value compare(FunctionId functionId, Value left, Value right) {
+    if (Values.isNull(left) || Values.isNull(right)) {
+      return NULL;
+    }
+    OptionalInt comparison = Values.compare(left, right);
+    if (comparison.isEmpty()) {
+      if (isNaN(left) || isNaN(right)) {
+        // NaN is not equal to any value
+        return of(functionId == FunctionId.NOT_EQUAL);
+      }
+      throw new IllegalArgumentException(
+          String.format(
+              "Values of %s and %s can't be compared", left.getValueCase(), right.getValueCase()));
+    }
+    return of(holds(functionId, comparison.getAsInt()));
+  }
+
+  /** Returns whether a comparison holds for the result of comparing the left and right values. */
+  private static boolean holds(FunctionId functionId, int result) {
+    return switch (functionId) {
+      case EQUAL -> result == 0;
+      case NOT_EQUAL -> result != 0;
+      case LESS -> result < 0;
+      case LESS_OR_EQUAL -> result <= 0;
+      case GREATER -> result > 0;
+      case GREATER_OR_EQUAL -> result >= 0;
+      default -> throw new IllegalStateException("Not a comparison: " + functionId);
+    };
+  }
+
+  private static boolean isNaN(Value value) {
+    return (value.getValueCase() == Value.ValueCase.DOUBLE_VALUE
+            && Double.isNaN(value.getDoubleValue()))
+        || (value.getValueCase() == Value.ValueCase.FLOAT_VALUE
+            && Float.isNaN(value.getFloatValue()));
+  }
+
+  /** IN, which is null if no value is equal and any of the values is null. */
+  private record In(CompiledExpression value, List<CompiledExpression> candidates)
+      implements CompiledExpression {
+
+    @Override
+    public Type getType() {
+      return BOOL_TYPE;
+    }
+
+    @Override
+    public Value[] evaluate(List<StructValue> rows, int[] selection, int count) {
+      Value[] values = value.evaluate(rows, selection, count);
+      Value[] result = new Value[count];
+      Arrays.fill(result, FALSE);
+      for (CompiledExpression candidate : candidates) {
+        Value[] candidateValues = candidate.evaluate(rows, selection, count);
+        for (int i = 0; i < count; i++) {
+          if (result[i] != TRUE) {
+            Value equal = compare(FunctionId.EQUAL, values[i], candidateValues[i]);
+            if (equal == TRUE || Values.isNull(equal)) {
+              result[i] = equal;
+            }
+          }
+        }
+      }
+      return result;
+    }
+  }
+
+  /**
+   * IN with a list of constants of the same type, or NULL, which looks the values of that type up
+   * in a hash set, and compares other values as {@link In} does.
+   */
+  private record ConstantIn(
+      CompiledExpression value,
+      List<CompiledExpression> candidates,
+      @Nullable Value.ValueCase valueCase,
+      Set<Value> constants,
+      boolean nullCandidate)
+      implements CompiledExpression {
+
+    @Override
+    public Type getType() {
+      return BOOL_TYPE;
+    }
+
+    @Override
+    public Value[] evaluate(List<StructValue> rows, int[] selection, int count) {
+      Value[] values = value.evaluate(rows, selection, count);
+      Value[] result = new Value[count];
+      for (int i = 0; i < count; i++) {
+        if (Values.isNull(values[i])) {
+          result[i] = NULL;
+        } else if (values[i].getValueCase() != valueCase) {
+          result[i] = in(values[i]);
+        } else if (constants.contains(values[i])) {
+          result[i] = TRUE;
+        } else {
+          result[i] = nullCandidate ? NULL : FALSE;
+        }
+      }
+      return result;
+    }
+
+    /** Compares a value of another type to each candidate. */
+    private Value in(Value value) {
+      Value result = FALSE;
+      for (CompiledExpression candidate : candidates) {
+        Value equal = compare(FunctionId.EQUAL, value, ((Constant) candidate).value());
+        if (equal == TRUE) {
+          return TRUE;
+        }
+        if (Values.isNull(equal)) {
+          result = NULL;
+        }
+      }
+      return result;
+    }
+  }
+
+  /** CAST, which converts the values to the target type. */
+  private record Cast(CompiledExpression argument, Type type) implements CompiledExpression {
+
+    @Override
+    public Type getType() {
+      return type;
+    }
+
+    @Override
+    public Value[] evaluate(List<StructValue> rows, int[] selection, int count) {
+      Value[] values = argument.evaluate(rows, selection, count);
+      for (int i = 0; i < count; i++) {
+        values[i] = cast(values[i], type.getTypeKind());
+      }
+      return values;
+    }
+  }
+
+  /**
+   * Converts a value to the given type, following the conversion rules of BigQuery for the
+   * supported types. Numbers are rounded half away from zero when converted to INT64, NUMERIC or
+   * BIGNUMERIC, and strings must be integer literals to be converted to INT64. The differences with
+   * BigQuery are that surrounding whitespace of strings is ignored, and that DOUBLE values are
+   * converted to strings without exponent.
+   *
+   * @throws IllegalArgumentException if the value can't be converted, or is out of the range of
+   *     the type
+   */
+  private static Value cast(Value value, TypeKind typeKind) {
+    if (Values.isNull(value)) {
+      return NULL;
+    }
+    return switch (typeKind) {
+      case BOOL -> of(castToBoolean(value));
+      case INT64 -> Value.newBuilder().setInt64Value(castToLong(value)).build();
+      case DOUBLE -> Value.newBuilder().setDoubleValue(castToDouble(value)).build();
+      case NUMERIC -> Value.newBuilder()
+          .setNumericValue(castToNumber(value, TypeKind.NUMERIC))
+          .build();
+      case BIGNUMERIC -> Value.newBuilder()
+          .setBignumericValue(castToNumber(value, TypeKind.BIGNUMERIC))
+          .build();
+      default -> Value.newBuilder().setStringValue(castToString(value)).build();
+    };
+  }
+
+  private static boolean castToBoolean(Value value) {
+    if (value.getValueCase() == Value.ValueCase.BOOL_VALUE) {
+      return value.getBoolValue();
+    }
+    if (isIntegral(value)) {
+      return toLong(value) != 0;
+    }
+    if (value.getValueCase() == Value.ValueCase.STRING_VALUE) {
+      String string = value.getStringValue().trim();
+      if (string.equalsIgnoreCase("true") || string.equalsIgnoreCase("false")) {
+        return Boolean.parseBoolean(string);
+      }
+    }
+    throw castError(value, TypeKind.BOOL);
+  }
+
+  private static long castToLong(Value value) {
+    if (isIntegral(value)) {
+      return toLong(value);
+    }
+    if (value.getValueCase() == Value.ValueCase.BOOL_VALUE) {
+      return value.getBoolValue() ? 1 : 0;
+    }
+    try {
+      if (value.getValueCase() == Value.ValueCase.STRING_VALUE) {
+        Matcher matcher = INTEGER_LITERAL.matcher(value.getStringValue().trim());
+        if (!matcher.matches()) {
+          throw castError(value, TypeKind.INT64);
+        }
+        BigInteger number =
+            matcher.group(2) != null
+                ? new BigInteger(matcher.group(2))
+                : new BigInteger(matcher.group(3), 16);
+        return (matcher.group(1).equals("-") ? number.negate() : number).longValueExact();
+      }
+      return toNumber(value).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    } catch (IllegalArgumentException | ArithmeticException e) {
+      throw castError(value, TypeKind.INT64);
+    }
+  }
+
+  private static double castToDouble(Value value) {
+    if (value.getValueCase() == Value.ValueCase.STRING_VALUE) {
+      String string = value.getStringValue().trim();
+      return switch (string.toLowerCase(Locale.ROOT)) {
+        case "nan", "+nan", "-nan" -> Double.NaN;
+        case "inf", "+inf", "infinity", "+infinity" -> Double.POSITIVE_INFINITY;
+        case "-inf", "-infinity" -> Double.NEGATIVE_INFINITY;
+        default -> {
+          // Double.parseDouble also accepts hex and type suffixes, which BigQuery doesn't
+          if (!FLOAT_LITERAL.matcher(string).matches()) {
+            throw castError(value, TypeKind.DOUBLE);
+          }
+          yield Double.parseDouble(string);
+        }
+      };
+    }
+    try {
+      return toDouble(value);
+    } catch (IllegalArgumentException e) {
+      throw castError(value, TypeKind.DOUBLE);
+    }
+  }
+
+  private static String castToNumber(Value value, TypeKind typeKind) {
+    try {
+      BigDecimal number =
+          value.getValueCase() == Value.ValueCase.STRING_VALUE
+              ? new BigDecimal(value.getStringValue().trim())
+              : toNumber(value);
+      return toNumeric(number, typeKind);
+    } catch (IllegalArgumentException | ArithmeticException e) {
+      throw castError(value, typeKind);
+    }
+  }
+
+  private static String castToString(Value value) {
+    return switch (value.getValueCase()) {
+      case STRING_VALUE -> value.getStringValue();
+      case NUMERIC_VALUE, BIGNUMERIC_VALUE, UINT64_VALUE -> toNumber(value).toPlainString();
+      case BOOL_VALUE -> Boolean.toString(value.getBoolValue());
+      case INT32_VALUE, INT64_VALUE, UINT32_VALUE -> Long.toString(toLong(value));
+      case FLOAT_VALUE, DOUBLE_VALUE -> doubleToString(toDouble(value));
+      default -> throw castError(value, TypeKind.STRING);
+    };
+  }
+
+  private static String doubleToString(double value) {
+    if (Double.isNaN(value)) {
+      return "nan";
+    }
+    if (Double.isInfinite(value)) {
+      return value > 0 ? "inf" : "-inf";
+    }
+    return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+  }
+
+  private static IllegalArgumentException castError(Value value, TypeKind typeKind) {
+    return new IllegalArgumentException(
+        String.format("Can't cast the %s value %s to %s", value.getValueCase(), value, typeKind));
+  }
+
+  /** An arithmetic operator. */
+  private record Arithmetic(
+      FunctionId functionId, CompiledExpression left, CompiledExpression right, Type type)
+      implements CompiledExpression {
+
+    @Override
+    public Type getType() {
+      return type;
+    }
+
+    @Override
+    public Value[] evaluate(List<StructValue> rows, int[] selection, int count) {
+      Value[] leftValues = left.evaluate(rows, selection, count);
+      Value[] rightValues = right.evaluate(rows, selection, count);
+      Value[] values = new Value[count];
+      TypeKind typeKind = type.getTypeKind();
+      for (int i = 0; i < count; i++) {
+        values[i] = calculate(functionId, leftValues[i], rightValues[i], typeKind);
+      }
+      return values;
+    }
+  }
+
+  /**
+   * Computes an arithmetic operator in the given result type, such that the values always have the
+   * type of the expression. INT64 and NUMERIC results that overflow are errors, as in BigQuery.
+   */
+  private static Value calculate(
+      FunctionId functionId, Value left, Value right, TypeKind typeKind) {
+    if (Values.isNull(left) || Values.isNull(right)) {
+      return NULL;
+    }
+    return switch (typeKind) {
+      case INT64 -> Value.newBuilder()
+          .setInt64Value(calculateLong(functionId, left, right))
+          .build();
+      case DOUBLE -> {
+        double leftDouble = toDouble(left);
+        double rightDouble = toDouble(right);
+        if (functionId == FunctionId.DIVIDE && rightDouble == 0) {
+          throw new ArithmeticException("division by zero");
+        }
+        yield Value.newBuilder()
+            .setDoubleValue(calculateDouble(functionId, leftDouble, rightDouble))
+            .build();
+      }
+      case NUMERIC -> Value.newBuilder()
+          .setNumericValue(toNumeric(calculateNumber(functionId, left, right), typeKind))
+          .build();
+      case BIGNUMERIC -> Value.newBuilder()
+          .setBignumericValue(toNumeric(calculateNumber(functionId, left, right), typeKind))
+          .build();
+      default -> throw new IllegalStateException("Unsupported arithmetic type: " + typeKind);
+    };
+  }
+
+  /**
+   * Computes an INT64 result, exactly if both arguments are integral, and otherwise as a NUMERIC
+   * that is rounded half away from zero.
+   */
+  private static long calculateLong(FunctionId functionId, Value left, Value right) {
+    if (isIntegral(left) && isIntegral(right) && functionId != FunctionId.DIVIDE) {
+      return calculateLong(functionId, toLong(left), toLong(right));
+    }
+    BigDecimal number = calculateNumber(functionId, left, right);
+    try {
+      return number.setScale(0, RoundingMode.HALF_UP).longValueExact();
+    } catch (ArithmeticException e) {
+      throw new ArithmeticException("INT64 overflow: " + number);
+    }
+  }
+
+  private static long calculateLong(FunctionId functionId, long left, long right) {
+    return switch (functionId) {
+      case ADD -> Math.addExact(left, right);
+      case SUBTRACT -> Math.subtractExact(left, right);
+      default -> Math.multiplyExact(left, right);
+    };
+  }
+
+  private static double calculateDouble(FunctionId functionId, double left, double right) {
+    return switch (functionId) {
+      case ADD -> left + right;
+      case SUBTRACT -> left - right;
+      case MULTIPLY -> left * right;
+      default -> left / right;
+    };
+  }
+
+  private static BigDecimal calculateNumber(FunctionId functionId, Value left, Value right) {
+    BigDecimal leftNumber = toNumber(left);
+    BigDecimal rightNumber = toNumber(right);
+    if (functionId == FunctionId.DIVIDE && rightNumber.signum() == 0) {
+      throw new ArithmeticException("division by zero");
+    }
+    return calculateNumber(functionId, leftNumber, rightNumber);
+  }
+
+  private static BigDecimal calculateNumber(
+      FunctionId functionId, BigDecimal left, BigDecimal right) {
+    return switch (functionId) {
+      case ADD -> left.add(right);
+      case SUBTRACT -> left.subtract(right);
+      case MULTIPLY -> left.multiply(right);
+      default -> left.divide(right, DIVISION_CONTEXT);
+    };
+  }
+
+  /**
+   * Returns the string of a NUMERIC or BIGNUMERIC value, rounded half away from zero to the scale
+   * of the type.
+   *
+   * @throws ArithmeticException if the value is out of the range of the type
+   */
+  private static String toNumeric(BigDecimal number, TypeKind typeKind) {
+    boolean bignumeric = typeKind == TypeKind.BIGNUMERIC;
+    BigDecimal rounded =
+        number.setScale(bignumeric ? BIGNUMERIC_SCALE : NUMERIC_SCALE, RoundingMode.HALF_UP);
+    if (rounded.abs().compareTo(bignumeric ? BIGNUMERIC_LIMIT : NUMERIC_LIMIT) >= 0) {
+      throw new ArithmeticException(String.format("%s overflow: %s", typeKind, number));
+    }
+    return rounded.signum() == 0 ? "0" : rounded.stripTrailingZeros().toPlainString();
+  }
+
+  private static boolean isIntegral(Value value) {
+    return switch (value.getValueCase()) {
+      case INT32_VALUE, INT64_VALUE, UINT32_VALUE -> true;
+      default -> false;
+    };
+  }
+
+  private static long toLong(Value value) {
+    return switch (value.getValueCase()) {
+      case INT32_VALUE -> value.getInt32Value();
+      case UINT32_VALUE -> Integer.toUnsignedLong(value.getUint32Value());
+      default -> value.getInt64Value();
+    };
+  }
+
+  private static double toDouble(Value value) {
+    return switch (value.getValueCase()) {
+      case FLOAT_VALUE -> value.getFloatValue();
+      case DOUBLE_VALUE -> value.getDoubleValue();
+      default -> toNumber(value).doubleValue();
+    };
+  }
+
+  /**
+   * The key of a cached compiled expression. The expression is compiled against the fields of the
+   * schema only, and the protobuf messages memoize their hash codes.
+   */
+  private record CacheKey(Expression expression, List<Schema.Field> fields) {}
+
+  private static BigDecimal toNumber(Value value) {
+    BigDecimal number = Values.toBigDecimal(value);
+    if (number == null) {
+      throw new IllegalArgumentException(
+          String.format("Expected a numeric value, got %s", value.getValueCase()));
+    }
+    return number;
+  }
+
+  /** Discards the cached compiled expressions. */
+  @VisibleForTesting
+  static void invalidateCache() {
+    CACHE.invalidateAll();
+  }
+}
@@ -0,0 +1,194 @@
+package com.google.cloud.connector.server.query;
+
+import com.google.cloud.bigquery.federation.v1alpha1.StructValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.flogger.FluentLogger;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Sorts records that may not fit in memory. Records are buffered until their serialized size
+ * reaches the buffer size, then sorted and spilled to a run file. The sorted records are returned
+ * by merging the runs with the records left in the buffer. At most {@link #MERGE_FAN_IN} runs are
+ * read at a time, such that the oldest runs are first merged into larger runs if there are more.
+ *
+ * <p>The run files are deleted when the sorter is closed.
+ */
+final class ExternalSorter implements Closeable {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** Maximum number of runs that are merged at a time, which bounds the open run files. */
+  @VisibleForTesting static final int MERGE_FAN_IN = 64;
+
+  private final Comparator<StructValue> comparator;
+  private final long bufferBytes;
+  private final Path spillDirectory;
+  private final List<StructValue> buffer = new ArrayList<>();
+  private final List<Path> runs = new ArrayList<>();
+  private final List<InputStream> runInputs = new ArrayList<>();
+  private long bufferedBytes;
+
+  /**
+   * Creates an instance.
+   *
+   * @param comparator the order of the records
+   * @param bufferBytes the serialized size of the records to buffer before spilling them
+   * @param spillDirectory the directory of the run files
+   */
+  ExternalSorter(Comparator<StructValue> comparator, long bufferBytes, Path spillDirectory) {
+    this.comparator = comparator;
+    this.bufferBytes = bufferBytes;
+    this.spillDirectory = spillDirectory;
+  }
+
+  /** Adds a record to sort. */
+  void add(StructValue record) {
+    buffer.add(record);
+    bufferedBytes += record.getSerializedSize();
+    if (bufferedBytes >= bufferBytes) {
+      spill();
+    }
+  }
+
+  /** Returns the number of runs spilled to files. */
+  int getSpilledRuns() {
+    return runs.size();
+  }
+
+  /**
+   * Returns the records added so far in sorted order. The records must not be added after this
+   * method is called.
+   */
+  Iterator<StructValue> sorted() {
+    buffer.sort(comparator);
+    if (runs.isEmpty()) {
+      return buffer.iterator();
+    }
+    // The last merge also reads the buffer
+    while (runs.size() >= MERGE_FAN_IN) {
+      mergeRuns();
+    }
+    List<Iterator<StructValue>> iterators = new ArrayList<>(runs.size() + 1);
+    for (Path run : runs) {
+      InputStream input = openRun(run);
+      runInputs.add(input);
+      iterators.add(readRun(run, input));
+    }
+    iterators.add(buffer.iterator());
+    return Iterators.mergeSorted(iterators, comparator);
+  }
+
+  @Override
+  public void close() {
+    for (InputStream input : runInputs) {
+      try {
+        input.close();
+      } catch (IOException e) {
+        logger.atWarning().withCause(e).log("Failed to close a sort run");
+      }
+    }
+    for (Path run : runs) {
+      try {
+        Files.deleteIfExists(run);
+      } catch (IOException e) {
+        logger.atWarning().withCause(e).log("Failed to delete sort run %s", run);
+      }
+    }
+    runInputs.clear();
+    runs.clear();
+    buffer.clear();
+  }
+
+  private void spill() {
+    buffer.sort(comparator);
+    Path run = writeRun(buffer.iterator());
+    logger.atInfo().log(
+        "Spilled %d records of %d bytes to sort run %s", buffer.size(), bufferedBytes, run);
+    buffer.clear();
+    bufferedBytes = 0;
+  }
+
+  /** Merges the oldest {@link #MERGE_FAN_IN} runs into a new run, and deletes them. */
+  private void mergeRuns() {
+    List<Path> merged = new ArrayList<>(runs.subList(0, MERGE_FAN_IN));
+    runs.subList(0, MERGE_FAN_IN).clear();
+    List<InputStream> inputs = new ArrayList<>(merged.size());
+    try {
+      List<Iterator<StructValue>> iterators = new ArrayList<>(merged.size());
+      for (Path run : merged) {
+        InputStream input = openRun(run);
+        inputs.add(input);
+        iterators.add(readRun(run, input));
+      }
+      Path run = writeRun(Iterators.mergeSorted(iterators, comparator));
+      logger.atInfo().log("Merged %d sort runs to sort run %s", merged.size(), run);
+    } finally {
+      for (InputStream input : inputs) {
+        try {
+          input.close();
+        } catch (IOException e) {
+          logger.atWarning().withCause(e).log("Failed to close a sort run");
+        }
+      }
+      for (Path run : merged) {
+        try {
+          Files.deleteIfExists(run);
+        } catch (IOException e) {
+          logger.atWarning().withCause(e).log("Failed to delete sort run %s", run);
+        }
+      }
+    }
+  }
+
+  /** Writes sorted records to a new run file, which is deleted when the sorter is closed. */
+  private Path writeRun(Iterator<StructValue> records) {
+    try {
+      Path run = Files.createTempFile(spillDirectory, "sort-run-", ".bin");
+      runs.add(run);
+      try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(run))) {
+        while (records.hasNext()) {
+          records.next().writeDelimitedTo(output);
+        }
+      }
+      return run;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to spill sorted records", e);
+    }
+  }
+
+  private static InputStream openRun(Path run) {
+    try {
+      return new BufferedInputStream(Files.newInputStream(run));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to read sort run " + run, e);
+    }
+  }
+
+  private static Iterator<StructValue> readRun(Path run, InputStream input) {
+    return new AbstractIterator<>() {
+      @Override
+      protected StructValue computeNext() {
+        try {
+          StructValue record = StructValue.parseDelimitedFrom(input);
+          return record != null ? record : endOfData();
+        } catch (IOException e) {
+          throw new UncheckedIOException("Failed to read sort run " + run, e);
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,836 @@
+package com.google.cloud.connector.server.query;
+
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.Compute;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.ComputeElement;
+import com.google.cloud.bigquery.federation.v1alpha1.Expression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionExpression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionSignatureId;
+import com.google.cloud.bigquery.federation.v1alpha1.Schema;
+import com.google.cloud.bigquery.federation.v1alpha1.StructValue;
+import com.google.cloud.bigquery.federation.v1alpha1.Type;
+import com.google.cloud.bigquery.federation.v1alpha1.TypeKind;
+import com.google.cloud.bigquery.federation.v1alpha1.Value;
+import com.google.cloud.connector.data.Values;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.flogger.FluentLogger;
+import com.google.protobuf.NullValue;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.IntStream;
+import javax.annotation.Nullable;
+
+/**
+ * Evaluates the aggregations of the compute of a query for the records of a read, with the groups
+ * of records kept in a hash table.
+ *
+ * <p>The compute elements that call an aggregate function are aggregated for each group of
+ * records, which is identified by the values of the other compute elements, as in an implied GROUP
+ * BY on them. COUNT(*), COUNT, SUM, AVG, MIN and MAX are supported, and their arguments as well as
+ * the other compute elements are compiled by the {@link ExpressionCompiler}. Groups identified by a
+ * single INT64 value are looked up by the primitive value, and other groups by their values.
+ *
+ * <p>Once the approximate size of the groups reaches the buffer size, the partial aggregates of all
+ * the groups are spilled to files, each holding the groups of a range of hashes. When the read
+ * completes, the groups spilled to each file are merged and returned one file at a time, such that
+ * only the groups of a single file are kept in memory.
+ */
+final class HashAggregator implements Closeable {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** The aggregate functions that can be evaluated. */
+  private static final ImmutableSet<FunctionSignatureId> AGGREGATE_FUNCTIONS =
+      ImmutableSet.of(
+          FunctionSignatureId.FN_COUNT_STAR,
+          FunctionSignatureId.FN_COUNT,
+          FunctionSignatureId.FN_SUM_INT64,
+          FunctionSignatureId.FN_SUM_DOUBLE,
+          FunctionSignatureId.FN_SUM_NUMERIC,
+          FunctionSignatureId.FN_SUM_BIGNUMERIC,
+          FunctionSignatureId.FN_AVG_INT64,
+          FunctionSignatureId.FN_AVG_DOUBLE,
+          FunctionSignatureId.FN_AVG_NUMERIC,
+          FunctionSignatureId.FN_AVG_BIGNUMERIC,
+          FunctionSignatureId.FN_MIN,
+          FunctionSignatureId.FN_MAX);
+
+  /** The number of bits of the hash of the groups that picks the file they are spilled to. */
+  private static final int SPILL_PARTITION_BITS = 4;
+
+  private static final int SPILL_PARTITIONS = 1 << SPILL_PARTITION_BITS;
+
+  /** The approximate size in bytes of a group, besides the size of its values. */
+  private static final long GROUP_OVERHEAD_BYTES = 64;
+
+  /** The approximate size in bytes of an aggregate of a group. */
+  private static final long AGGREGATE_BYTES = 32;
+
+  private static final Value NULL = Value.newBuilder().setNullValue(NullValue.NULL_VALUE).build();
+  private static final Expression COUNT_STAR_ARGUMENT =
+      Expression.newBuilder().setConstant(Value.newBuilder().setBoolValue(true)).build();
+
+  private final List<CompiledExpression> keys = new ArrayList<>();
+  private final List<Aggregate> aggregates = new ArrayList<>();
+
+  /**
+   * The source of each compute element, which is the index of a key if non-negative, and {@code
+   * -(index of an aggregate + 1)} otherwise.
+   */
+  private final int[] elementSources;
+
+  private final Schema outputSchema;
+  private final long bufferBytes;
+  private final Path spillDirectory;
+  private final Path[] spillFiles = new Path[SPILL_PARTITIONS];
+  private final OutputStream[] spillOutputs = new OutputStream[SPILL_PARTITIONS];
+  private GroupTable table;
+
+  /**
+   * Creates an instance.
+   *
+   * @param compute the compute with the aggregations to evaluate
+   * @param schema the schema of the records
+   * @param config the {@link SpillConfig} of the groups
+   * @throws IllegalArgumentException if a compute element can't be compiled
+   */
+  HashAggregator(Compute compute, Schema schema, SpillConfig config) {
+    List<ComputeElement> elements = compute.getElementsList();
+    this.elementSources = new int[elements.size()];
+    Schema.Builder builder = schema.toBuilder().clearFields();
+    for (int i = 0; i < elements.size(); i++) {
+      ComputeElement element = elements.get(i);
+      Expression expression = element.getExpression();
+      Type type;
+      if (isAggregate(expression)) {
+        Aggregate aggregate = compileAggregate(expression, schema);
+        elementSources[i] = -(aggregates.size() + 1);
+        aggregates.add(aggregate);
+        type = aggregate.type();
+      } else {
+        CompiledExpression key = ExpressionCompiler.compile(expression, schema);
+        elementSources[i] = keys.size();
+        keys.add(key);
+        type = key.getType();
+      }
+      builder.addFields(BatchEvaluator.outputField(element, i, type, schema));
+    }
+    this.outputSchema = builder.build();
+    this.bufferBytes = config.getAggregationBufferBytes();
+    this.spillDirectory = config.getSpillDirectory();
+    this.table = new GroupTable(aggregates, keys.size());
+  }
+
+  /** Returns the aggregate functions that can be evaluated. */
+  static ImmutableSet<FunctionSignatureId> getSupportedFunctions() {
+    return AGGREGATE_FUNCTIONS;
+  }
+
+  /** Returns {@code true} if an element of the given compute calls an aggregate function. */
+  static boolean isAggregation(Compute compute) {
+    return compute.getElementsList().stream()
+        .anyMatch(element -> containsAggregate(element.getExpression()));
+  }
+
+  /**
+   * Returns {@code true} if the aggregations of the given compute can be evaluated, provided that
+   * the fields it references are in the schema of the records. Aggregate functions can only be
+   * called by the top-level expression of a compute element.
+   */
+  static boolean isSupported(Compute compute) {
+    for (ComputeElement element : compute.getElementsList()) {
+      Expression expression = element.getExpression();
+      boolean supported =
+          isAggregate(expression)
+              ? expression.getFunction().getArgumentsCount() == arity(expression)
+                  && expression.getFunction().getArgumentsList().stream()
+                      .allMatch(ExpressionCompiler::isSupported)
+              : ExpressionCompiler.isSupported(expression);
+      if (!supported) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns the schema of the aggregated records. */
+  Schema getOutputSchema() {
+    return outputSchema;
+  }
+
+  /** Returns the number of files the groups were spilled to. */
+  int getSpillFiles() {
+    return (int) Arrays.stream(spillFiles).filter(Objects::nonNull).count();
+  }
+
+  /**
+   * Adds a batch of records to their groups.
+   *
+   * @throws IllegalArgumentException if a compute element can't be evaluated for the values of a
+   *     record
+   */
+  void add(List<StructValue> rows) {
+    int count = rows.size();
+    if (count == 0) {
+      return;
+    }
+    int[] selection = new int[count];
+    for (int i = 0; i < count; i++) {
+      selection[i] = i;
+    }
+    Value[][] keyColumns = new Value[keys.size()][];
+    for (int column = 0; column < keyColumns.length; column++) {
+      keyColumns[column] = keys.get(column).evaluate(rows, selection, count);
+    }
+    int[] groups = new int[count];
+    for (int i = 0; i < count; i++) {
+      groups[i] = table.group(keyColumns, i);
+    }
+    for (int aggregate = 0; aggregate < aggregates.size(); aggregate++) {
+      Value[] arguments = aggregates.get(aggregate).argument().evaluate(rows, selection, count);
+      for (int i = 0; i < count; i++) {
+        table.accumulator(groups[i], aggregate).add(arguments[i]);
+      }
+    }
+    if (table.getBytes() >= bufferBytes) {
+      spill();
+    }
+  }
+
+  /**
+   * Returns the aggregated records, one for each group, after the last batch is added. An
+   * aggregation without other compute elements returns a single record, even if no record was
+   * added.
+   */
+  Iterator<StructValue> finish() {
+    if (keys.isEmpty() && table.size() == 0) {
+      table.group(new Value[0]);
+    }
+    if (getSpillFiles() == 0) {
+      return results(table);
+    }
+
+    spill();
+    closeSpillOutputs();
+    table = null;
+    return Iterators.concat(
+        Iterators.transform(
+            Arrays.stream(spillFiles).filter(Objects::nonNull).iterator(), this::mergeSpillFile));
+  }
+
+  @Override
+  public void close() {
+    closeSpillOutputs();
+    for (int partition = 0; partition < SPILL_PARTITIONS; partition++) {
+      if (spillFiles[partition] != null) {
+        try {
+          Files.deleteIfExists(spillFiles[partition]);
+        } catch (IOException e) {
+          logger.atWarning().withCause(e).log(
+              "Failed to delete spill file %s", spillFiles[partition]);
+        }
+        spillFiles[partition] = null;
+      }
+    }
+    table = null;
+  }
+
+  /** Writes the keys and the partial aggregates of all the groups to the spill files. */
+  private void spill() {
+    try {
+      for (int group = 0; group < table.size(); group++) {
+        Value[] key = table.key(group);
+        StructValue.Builder state = StructValue.newBuilder().addAllFields(Arrays.asList(key));
+        for (int aggregate = 0; aggregate < aggregates.size(); aggregate++) {
+          table.accumulator(group, aggregate).writeState(state);
+        }
+        state.build().writeDelimitedTo(spillOutput(partition(key)));
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to spill aggregated groups", e);
+    }
+    logger.atInfo().log("Spilled %d groups of about %d bytes", table.size(), table.getBytes());
+    table = new GroupTable(aggregates, keys.size());
+  }
+
+  private OutputStream spillOutput(int partition) throws IOException {
+    if (spillOutputs[partition] == null) {
+      spillFiles[partition] = Files.createTempFile(spillDirectory, "aggregation-", ".bin");
+      spillOutputs[partition] =
+          new BufferedOutputStream(Files.newOutputStream(spillFiles[partition]));
+    }
+    return spillOutputs[partition];
+  }
+
+  private void closeSpillOutputs() {
+    for (int partition = 0; partition < SPILL_PARTITIONS; partition++) {
+      if (spillOutputs[partition] != null) {
+        try {
+          spillOutputs[partition].close();
+        } catch (IOException e) {
+          logger.atWarning().withCause(e).log(
+              "Failed to close spill file %s", spillFiles[partition]);
+        }
+        spillOutputs[partition] = null;
+      }
+    }
+  }
+
+  /** Merges the partial aggregates of the groups spilled to the given file. */
+  private Iterator<StructValue> mergeSpillFile(Path spillFile) {
+    GroupTable merged = new GroupTable(aggregates, keys.size());
+    try (InputStream input = new BufferedInputStream(Files.newInputStream(spillFile))) {
+      StructValue state;
+      while ((state = StructValue.parseDelimitedFrom(input)) != null) {
+        List<Value> values = state.getFieldsList();
+        int group = merged.group(values.subList(0, keys.size()).toArray(new Value[0]));
+        int offset = keys.size();
+        for (int aggregate = 0; aggregate < aggregates.size(); aggregate++) {
+          Accumulator accumulator = merged.accumulator(group, aggregate);
+          accumulator.mergeState(values, offset);
+          offset += accumulator.stateSize();
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to read spill file " + spillFile, e);
+    }
+    return results(merged);
+  }
+
+  private Iterator<StructValue> results(GroupTable groups) {
+    return IntStream.range(0, groups.size()).mapToObj(group -> result(groups, group)).iterator();
+  }
+
+  private StructValue result(GroupTable groups, int group) {
+    StructValue.Builder row = StructValue.newBuilder();
+    for (int source : elementSources) {
+      row.addFields(
+          source >= 0
+              ? groups.key(group)[source]
+              : groups.accumulator(group, -source - 1).result());
+    }
+    return row.build();
+  }
+
+  /**
+   * Returns the spill file of the group with the given key, from the high bits of the mixed hash
+   * of the key, such that the groups of a file don't share the bits that pick their buckets in the
+   * hash table.
+   */
+  private static int partition(Value[] key) {
+    return (Arrays.hashCode(key) * 0x9E3779B9) >>> (Integer.SIZE - SPILL_PARTITION_BITS);
+  }
+
+  private static boolean containsAggregate(Expression expression) {
+    return expression.hasFunction()
+        && (isAggregate(expression)
+            || expression.getFunction().getArgumentsList().stream()
+                .anyMatch(HashAggregator::containsAggregate));
+  }
+
+  private static boolean isAggregate(Expression expression) {
+    return expression.hasFunction()
+        && expression.getFunction().getFunctionCase()
+            == FunctionExpression.FunctionCase.FUNCTION_SIGNATURE_ID
+        && AGGREGATE_FUNCTIONS.contains(expression.getFunction().getFunctionSignatureId());
+  }
+
+  private static int arity(Expression expression) {
+    return expression.getFunction().getFunctionSignatureId() == FunctionSignatureId.FN_COUNT_STAR
+        ? 0
+        : 1;
+  }
+
+  private static Aggregate compileAggregate(Expression expression, Schema schema) {
+    FunctionExpression function = expression.getFunction();
+    FunctionSignatureId signatureId = function.getFunctionSignatureId();
+    if (function.getArgumentsCount() != arity(expression)) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Unsupported function %s with %d arguments",
+              signatureId, function.getArgumentsCount()));
+    }
+    CompiledExpression argument =
+        ExpressionCompiler.compile(
+            signatureId == FunctionSignatureId.FN_COUNT_STAR
+                ? COUNT_STAR_ARGUMENT
+                : function.getArguments(0),
+            schema);
+    Type type =
+        expression.hasType() ? expression.getType() : resultType(signatureId, argument.getType());
+    return new Aggregate(signatureId, argument, type);
+  }
+
+  private static Type resultType(FunctionSignatureId signatureId, Type argumentType) {
+    return switch (signatureId) {
+      case FN_COUNT_STAR, FN_COUNT, FN_SUM_INT64 -> type(TypeKind.INT64);
+      case FN_SUM_DOUBLE, FN_AVG_INT64, FN_AVG_DOUBLE -> type(TypeKind.DOUBLE);
+      case FN_SUM_NUMERIC, FN_AVG_NUMERIC -> type(TypeKind.NUMERIC);
+      case FN_SUM_BIGNUMERIC, FN_AVG_BIGNUMERIC -> type(TypeKind.BIGNUMERIC);
+      default -> argumentType;
+    };
+  }
+
+  private static Type type(TypeKind typeKind) {
+    return Type.newBuilder().setTypeKind(typeKind).build();
+  }
+
+  /** Returns the value with -0.0 turned into 0.0, such that both are in the same group. */
+  private static Value normalize(Value value) {
+    if (value.getValueCase() == Value.ValueCase.DOUBLE_VALUE && value.getDoubleValue() == 0) {
+      return Value.newBuilder().setDoubleValue(0).build();
+    }
+    if (value.getValueCase() == Value.ValueCase.FLOAT_VALUE && value.getFloatValue() == 0) {
+      return Value.newBuilder().setFloatValue(0).build();
+    }
+    return value;
+  }
+
+  private static boolean isNaN(Value value) {
+    return (value.getValueCase() == Value.ValueCase.DOUBLE_VALUE
+            && Double.isNaN(value.getDoubleValue()))
+        || (value.getValueCase() == Value.ValueCase.FLOAT_VALUE
+            && Float.isNaN(value.getFloatValue()));
+  }
+
+  private static long toLong(Value value) {
+    return switch (value.getValueCase()) {
+      case INT32_VALUE -> value.getInt32Value();
+      case UINT32_VALUE -> Integer.toUnsignedLong(value.getUint32Value());
+      case INT64_VALUE -> value.getInt64Value();
+      default -> toNumber(value).longValueExact();
+    };
+  }
+
+  private static double toDouble(Value value) {
+    return switch (value.getValueCase()) {
+      case DOUBLE_VALUE -> value.getDoubleValue();
+      case FLOAT_VALUE -> value.getFloatValue();
+      default -> toNumber(value).doubleValue();
+    };
+  }
+
+  private static BigDecimal toNumber(Value value) {
+    BigDecimal number = Values.toBigDecimal(value);
+    if (number == null) {
+      throw new IllegalArgumentException(
+          String.format("Expected a numeric value, got %s", value.getValueCase()));
+    }
+    return number;
+  }
+
+  private static Value numberValue(BigDecimal number, boolean bignumeric) {
+    String value = number.stripTrailingZeros().toPlainString();
+    return bignumeric
+        ? Value.newBuilder().setBignumericValue(value).build()
+        : Value.newBuilder().setNumericValue(value).build();
+  }
+
+  /** A call of an aggregate function in the compute. */
+  private record Aggregate(
+      FunctionSignatureId signatureId, CompiledExpression argument, Type type) {
+
+    Accumulator newAccumulator() {
+      return switch (signatureId) {
+        case FN_COUNT_STAR, FN_COUNT -> new Count();
+        case FN_SUM_INT64 -> new LongSum();
+        case FN_SUM_DOUBLE -> new DoubleSum(false);
+        case FN_AVG_INT64, FN_AVG_DOUBLE -> new DoubleSum(true);
+        case FN_SUM_NUMERIC -> new NumberSum(false, false);
+        case FN_SUM_BIGNUMERIC -> new NumberSum(false, true);
+        case FN_AVG_NUMERIC -> new NumberSum(true, false);
+        case FN_AVG_BIGNUMERIC -> new NumberSum(true, true);
+        case FN_MIN -> new Extremum(false);
+        default -> new Extremum(true);
+      };
+    }
+  }
+
+  /**
+   * The partial aggregate of an aggregate function for a group. Null values are ignored, and
+   * aggregates of no value other than counts are null.
+   */
+  private interface Accumulator {
+
+    /** Adds the value of the argument for a record of the group. */
+    void add(Value value);
+
+    /** Returns the aggregated value. */
+    Value result();
+
+    /** Returns the number of values of the state of the partial aggregate. */
+    int stateSize();
+
+    /** Adds the values of the state of the partial aggregate to the given record. */
+    void writeState(StructValue.Builder state);
+
+    /** Merges the state of another partial aggregate, from the given offset of its values. */
+    void mergeState(List<Value> state, int offset);
+  }
+
+  /** COUNT and COUNT(*), which counts a constant. */
+  private static final class Count implements Accumulator {
+    private long count;
+
+    @Override
+    public void add(Value value) {
+      if (!Values.isNull(value)) {
+        count++;
+      }
+    }
+
+    @Override
+    public Value result() {
+      return Value.newBuilder().setInt64Value(count).build();
+    }
+
+    @Override
+    public int stateSize() {
+      return 1;
+    }
+
+    @Override
+    public void writeState(StructValue.Builder state) {
+      state.addFields(result());
+    }
+
+    @Override
+    public void mergeState(List<Value> state, int offset) {
+      count += state.get(offset).getInt64Value();
+    }
+  }
+
+  /** SUM of integers, which fails on overflow. */
+  private static final class LongSum implements Accumulator {
+    private long sum;
+    private boolean empty = true;
+
+    @Override
+    public void add(Value value) {
+      if (Values.isNull(value)) {
+        return;
+      }
+      sum = Math.addExact(sum, toLong(value));
+      empty = false;
+    }
+
+    @Override
+    public Value result() {
+      return empty ? NULL : Value.newBuilder().setInt64Value(sum).build();
+    }
+
+    @Override
+    public int stateSize() {
+      return 1;
+    }
+
+    @Override
+    public void writeState(StructValue.Builder state) {
+      state.addFields(result());
+    }
+
+    @Override
+    public void mergeState(List<Value> state, int offset) {
+      add(state.get(offset));
+    }
+  }
+
+  /** SUM or AVG of floating point values. */
+  private static final class DoubleSum implements Accumulator {
+    private final boolean average;
+    private double sum;
+    private long count;
+
+    DoubleSum(boolean average) {
+      this.average = average;
+    }
+
+    @Override
+    public void add(Value value) {
+      if (Values.isNull(value)) {
+        return;
+      }
+      sum += toDouble(value);
+      count++;
+    }
+
+    @Override
+    public Value result() {
+      if (count == 0) {
+        return NULL;
+      }
+      return Value.newBuilder().setDoubleValue(average ? sum / count : sum).build();
+    }
+
+    @Override
+    public int stateSize() {
+      return 2;
+    }
+
+    @Override
+    public void writeState(StructValue.Builder state) {
+      state.addFields(Value.newBuilder().setDoubleValue(sum));
+      state.addFields(Value.newBuilder().setInt64Value(count));
+    }
+
+    @Override
+    public void mergeState(List<Value> state, int offset) {
+      sum += state.get(offset).getDoubleValue();
+      count += state.get(offset + 1).getInt64Value();
+    }
+  }
+
+  /** SUM or AVG of NUMERIC or BIGNUMERIC values. */
+  private static final class NumberSum implements Accumulator {
+    private final boolean average;
+    private final boolean bignumeric;
+    private BigDecimal sum = BigDecimal.ZERO;
+    private long count;
+
+    NumberSum(boolean average, boolean bignumeric) {
+      this.average = average;
+      this.bignumeric = bignumeric;
+    }
+
+    @Override
+    public void add(Value value) {
+      if (!Values.isNull(value)) {
+        sum = sum.add(toNumber(value));
+        count++;
+      }
+    }
+
+    @Override
+    public Value result() {
+      if (count == 0) {
+        return NULL;
+      }
+      return numberValue(
+          average ? sum.divide(BigDecimal.valueOf(count), MathContext.DECIMAL128) : sum,
+          bignumeric);
+    }
+
+    @Override
+    public int stateSize() {
+      return 2;
+    }
+
+    @Override
+    public void writeState(StructValue.Builder state) {
+      state.addFields(numberValue(sum, true));
+      state.addFields(Value.newBuilder().setInt64Value(count));
+    }
+
+    @Override
+    public void mergeState(List<Value> state, int offset) {
+      sum = sum.add(toNumber(state.get(offset)));
+      count += state.get(offset + 1).getInt64Value();
+    }
+  }
+
+  /** MIN or MAX, which are NaN if any value is NaN. */
+  private static final class Extremum implements Accumulator {
+    private final boolean max;
+    @Nullable private Value extremum;
+
+    Extremum(boolean max) {
+      this.max = max;
+    }
+
+    @Override
+    public void add(Value value) {
+      if (Values.isNull(value) || (extremum != null && isNaN(extremum))) {
+        return;
+      }
+      if (extremum == null || isNaN(value)) {
+        extremum = value;
+        return;
+      }
+      int comparison =
+          Values.compare(value, extremum)
+              .orElseThrow(
+                  () ->
+                      new IllegalArgumentException(
+                          String.format(
+                              "Can't compare values of %s and %s",
+                              value.getValueCase(), extremum.getValueCase())));
+      if (max ? comparison > 0 : comparison < 0) {
+        extremum = value;
+      }
+    }
+
+    @Override
+    public Value result() {
+      return extremum == null ? NULL : extremum;
+    }
+
+    @Override
+    public int stateSize() {
+      return 1;
+    }
+
+    @Override
+    public void writeState(StructValue.Builder state) {
+      state.addFields(result());
+    }
+
+    @Override
+    public void mergeState(List<Value> state, int offset) {
+      add(state.get(offset));
+    }
+  }
+
+  /** The groups of records, in the order they are first seen, with their partial aggregates. */
+  private static final class GroupTable {
+    private final List<Aggregate> aggregates;
+    private final List<Value[]> keys = new ArrayList<>();
+    private final List<Accumulator[]> accumulators = new ArrayList<>();
+    private final Map<List<Value>, Integer> groups = new HashMap<>();
+    @Nullable private final LongGroupIndex longGroups;
+    private long bytes;
+
+    GroupTable(List<Aggregate> aggregates, int keyCount) {
+      this.aggregates = aggregates;
+      this.longGroups = keyCount == 1 ? new LongGroupIndex() : null;
+    }
+
+    int size() {
+      return keys.size();
+    }
+
+    /** Returns the approximate size in bytes of the groups. */
+    long getBytes() {
+      return bytes;
+    }
+
+    Value[] key(int group) {
+      return keys.get(group);
+    }
+
+    Accumulator accumulator(int group, int aggregate) {
+      return accumulators.get(group)[aggregate];
+    }
+
+    /** Returns the group of the values of the given row of the key columns, added if new. */
+    int group(Value[][] keyColumns, int row) {
+      if (longGroups != null && keyColumns[0][row].getValueCase() == Value.ValueCase.INT64_VALUE) {
+        // Looks up the group without allocating its key
+        long value = keyColumns[0][row].getInt64Value();
+        int group = longGroups.get(value);
+        if (group < 0) {
+          group = newGroup(new Value[] {keyColumns[0][row]});
+          longGroups.put(value, group);
+        }
+        return group;
+      }
+      Value[] key = new Value[keyColumns.length];
+      for (int column = 0; column < key.length; column++) {
+        key[column] = keyColumns[column][row];
+      }
+      return group(key);
+    }
+
+    /** Returns the group of the given key, added if new. */
+    int group(Value[] key) {
+      if (longGroups != null && key[0].getValueCase() == Value.ValueCase.INT64_VALUE) {
+        return group(new Value[][] {key}, 0);
+      }
+      for (int column = 0; column < key.length; column++) {
+        key[column] = normalize(key[column]);
+      }
+      List<Value> values = Arrays.asList(key);
+      Integer group = groups.get(values);
+      if (group == null) {
+        group = newGroup(key);
+        groups.put(values, group);
+      }
+      return group;
+    }
+
+    private int newGroup(Value[] key) {
+      Accumulator[] groupAccumulators = new Accumulator[aggregates.size()];
+      for (int aggregate = 0; aggregate < groupAccumulators.length; aggregate++) {
+        groupAccumulators[aggregate] = aggregates.get(aggregate).newAccumulator();
+      }
+      keys.add(key);
+      accumulators.add(groupAccumulators);
+      bytes += GROUP_OVERHEAD_BYTES + AGGREGATE_BYTES * groupAccumulators.length;
+      for (Value value : key) {
+        bytes += value.getSerializedSize();
+      }
+      return keys.size() - 1;
+    }
+  }
+
+  /** An open addressing hash table from INT64 values to groups, which doesn't box the values. */
+  private static final class LongGroupIndex {
+    private long[] values = new long[16];
+    private int[] groups = newGroups(16);
+    private int size;
+
+    /** Returns the group of the given value, or -1 if none. */
+    int get(long value) {
+      int mask = values.length - 1;
+      for (int slot = hash(value) & mask; groups[slot] >= 0; slot = (slot + 1) & mask) {
+        if (values[slot] == value) {
+          return groups[slot];
+        }
+      }
+      return -1;
+    }
+
+    /** Adds a value that is not in the table yet. */
+    void put(long value, int group) {
+      if ((size + 1) * 2 > values.length) {
+        long[] oldValues = values;
+        int[] oldGroups = groups;
+        values = new long[oldValues.length * 2];
+        groups = newGroups(oldValues.length * 2);
+        for (int slot = 0; slot < oldValues.length; slot++) {
+          if (oldGroups[slot] >= 0) {
+            insert(oldValues[slot], oldGroups[slot]);
+          }
+        }
+      }
+      insert(value, group);
+      size++;
+    }
+
+    private void insert(long value, int group) {
+      int mask = values.length - 1;
+      int slot = hash(value) & mask;
+      while (groups[slot] >= 0) {
+        slot = (slot + 1) & mask;
+      }
+      values[slot] = value;
+      groups[slot] = group;
+    }
+
+    private static int hash(long value) {
+      long hash = value * 0x9E3779B97F4A7C15L;
+      return (int) (hash ^ (hash >>> 32));
+    }
+
+    private static int[] newGroups(int length) {
+      int[] groups = new int[length];
+      Arrays.fill(groups, -1);
+      return groups;
+    }
+  }
+}
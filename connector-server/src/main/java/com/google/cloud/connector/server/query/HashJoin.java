@@ -0,0 +1,945 @@
+package com.google.cloud.connector.server.query;
+
+import com.google.cloud.bigquery.federation.v1alpha1.Data;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.bigquery.federation.v1alpha1.DataSource;
+import com.google.cloud.bigquery.federation.v1alpha1.DataSource.Capability;
+import com.google.cloud.bigquery.federation.v1alpha1.Expression;
+import com.google.cloud.bigquery.federation.v1alpha1.FieldExpression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionExpression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionSignatureId;
+import com.google.cloud.bigquery.federation.v1alpha1.Functions.FunctionId;
+import com.google.cloud.bigquery.federation.v1alpha1.JoinOperator;
+import com.google.cloud.bigquery.federation.v1alpha1.Schema;
+import com.google.cloud.bigquery.federation.v1alpha1.StructValue;
+import com.google.cloud.bigquery.federation.v1alpha1.Value;
+import com.google.cloud.connector.data.FunctionIds;
+import com.google.cloud.connector.data.Values;
+import com.google.cloud.connector.server.common.LimitedStreamObserver;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.ImmutableLongArray;
+import com.google.protobuf.NullValue;
+import io.grpc.stub.StreamObserver;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import javax.annotation.Nullable;
+
+/**
+ * Joins the records of the two sides of a {@link JoinOperator} on the server, for connectors that
+ * don't declare {@link Capability#SUPPORTS_JOIN}. The records of the build side are kept in a hash
+ * table, which the records of the probe side are looked up in as they are read.
+ *
+ * <p>The conjuncts of the join predicate that compare a field of each side for equality make the
+ * key of the hash table, and records with a NULL key match no record. The other conjuncts are
+ * compiled by the {@link ExpressionCompiler} and evaluated for the joined records of equal keys.
+ * The fields of the key conjuncts are resolved to a side by their alias, which is the table name of
+ * the side, or else by the schema of the build side. INNER, LEFT and FULL joins are supported. The
+ * right side is the build side, unless an INNER join limits the left side to fewer records.
+ *
+ * <p>Once the build side is read, the probe query of an INNER join is restricted to the build keys,
+ * as an IN list of up to {@value #MAX_PROBE_KEYS} keys or else the range of each key field, if the
+ * connector supports filters and the function, such that the connector skips the probe records
+ * that can't match.
+ *
+ * <p>The hash table is split in partitions by the hash of the keys. Once the approximate size of
+ * the build records reaches the buffer size, the largest partitions are spilled to files, as are
+ * the probe records of spilled partitions whose key passes a bloom filter of the spilled keys. When
+ * the probe side is read, the spilled partitions are joined one at a time.
+ *
+ * <p>The joined records have the fields of the left side followed by the fields of the right
+ * side. The fields that both sides have are named {@code alias.field_name} by the alias of their
+ * side, which is {@code left} or {@code right} if the sides don't have distinct table names.
+ */
+public final class HashJoin implements Closeable {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** The most build keys that the probe query lists in an IN predicate. */
+  static final int MAX_PROBE_KEYS = 1000;
+
+  private static final ImmutableSet<JoinOperator.Type> SUPPORTED_TYPES =
+      ImmutableSet.of(JoinOperator.Type.INNER, JoinOperator.Type.LEFT, JoinOperator.Type.FULL);
+
+  /** The number of bits of the hash of the keys that picks the partition of the hash table. */
+  private static final int PARTITION_BITS = 4;
+
+  private static final int PARTITIONS = 1 << PARTITION_BITS;
+
+  /** The approximate size in bytes of a build record in the hash table, beyond its values. */
+  private static final long RECORD_OVERHEAD_BYTES = 64;
+
+  /** The number of spilled probe records that are joined at once. */
+  private static final int SPILLED_BATCH_SIZE = 1024;
+
+  /** The false positive probability of the bloom filter of the spilled keys. */
+  private static final double BLOOM_FILTER_FPP = 0.01;
+
+  private static final HashFunction KEY_HASH = Hashing.murmur3_128();
+  private static final Value NULL = Value.newBuilder().setNullValue(NullValue.NULL_VALUE).build();
+
+  private final JoinOperator join;
+  private final boolean buildLeft;
+  private final boolean probeOuter;
+  private final boolean buildOuter;
+  private final String leftAlias;
+  private final String rightAlias;
+  private final List<FunctionExpression> keyConjuncts = new ArrayList<>();
+  @Nullable private final Expression residualPredicate;
+  private final long bufferBytes;
+  private final Path spillDirectory;
+
+  private final List<Map<List<Value>, List<BuildRecord>>> partitions = new ArrayList<>();
+  private final long[] partitionBytes = new long[PARTITIONS];
+  private final SpillFile[] buildSpills = new SpillFile[PARTITIONS];
+  private final SpillFile[] probeSpills = new SpillFile[PARTITIONS];
+  /** The build records without a key, which a FULL join returns unmatched. */
+  private final List<StructValue> unkeyedBuildRecords = new ArrayList<>();
+  @Nullable private ImmutableLongArray.Builder spilledHashes = ImmutableLongArray.builder();
+  @Nullable private BloomFilter<Long> bloomFilter;
+  private long bytes;
+  private long keyedBuildRecords;
+  private int spilledPartitions;
+  private boolean buildCompleted;
+
+  @Nullable private Schema buildSchema;
+  private int[] buildKeyIndexes;
+  private List<String> probeKeyNames;
+  private int[] probeKeyIndexes;
+  /** The distinct build keys of a single key field, until there are too many to list. */
+  @Nullable private Set<Value> keyValues;
+  private Value[] minKeys;
+  private Value[] maxKeys;
+  private boolean keyRanges = true;
+  private int leftWidth;
+  private int rightWidth;
+  @Nullable private CompiledExpression residual;
+
+  /**
+   * Creates an instance.
+   *
+   * @param join the {@link JoinOperator} to perform
+   * @param config the {@link SpillConfig} of the build records
+   * @throws IllegalArgumentException if the join is not supported
+   */
+  public HashJoin(JoinOperator join, SpillConfig config) {
+    if (!isSupported(join)) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Unsupported %s join with predicate: %s", join.getType(), join.getPredicate()));
+    }
+    this.join = join;
+    this.buildLeft =
+        join.getType() == JoinOperator.Type.INNER
+            && join.getLeft().hasLimit()
+            && (!join.getRight().hasLimit()
+                || join.getLeft().getLimit().getValue() < join.getRight().getLimit().getValue());
+    this.probeOuter = join.getType() != JoinOperator.Type.INNER;
+    this.buildOuter = join.getType() == JoinOperator.Type.FULL;
+    String left = alias(join.getLeft());
+    String right = alias(join.getRight());
+    boolean distinct = !left.isEmpty() && !right.isEmpty() && !left.equals(right);
+    this.leftAlias = distinct ? left : "left";
+    this.rightAlias = distinct ? right : "right";
+
+    List<Expression> residualConjuncts = new ArrayList<>();
+    for (Expression conjunct : QueryPlanner.conjuncts(join.getPredicate())) {
+      if (isKeyConjunct(conjunct)) {
+        keyConjuncts.add(conjunct.getFunction());
+      } else {
+        residualConjuncts.add(conjunct);
+      }
+    }
+    this.residualPredicate =
+        residualConjuncts.isEmpty() ? null : QueryPlanner.and(residualConjuncts);
+    this.bufferBytes = config.getJoinBufferBytes();
+    this.spillDirectory = config.getSpillDirectory();
+    for (int partition = 0; partition < PARTITIONS; partition++) {
+      partitions.add(new HashMap<>());
+    }
+  }
+
+  /**
+   * Returns {@code true} if the given join can be performed, which requires a supported type and
+   * at least one conjunct of the join predicate that compares a field of each side for equality.
+   */
+  public static boolean isSupported(JoinOperator join) {
+    if (!SUPPORTED_TYPES.contains(join.getType()) || !join.hasPredicate()) {
+      return false;
+    }
+    boolean keyed = false;
+    for (Expression conjunct : QueryPlanner.conjuncts(join.getPredicate())) {
+      if (isKeyConjunct(conjunct)) {
+        keyed = true;
+      } else if (!ExpressionCompiler.isSupported(conjunct)) {
+        return false;
+      }
+    }
+    return keyed;
+  }
+
+  /** Returns the query of the build side, which is read first. */
+  public DataQuery getBuildQuery() {
+    return buildLeft ? join.getLeft() : join.getRight();
+  }
+
+  /** Returns a {@link StreamObserver} that adds the records of the build side to the hash table. */
+  public StreamObserver<Data> buildObserver() {
+    return new BuildObserver();
+  }
+
+  /**
+   * Returns the query of the probe side, which is restricted to the keys of the build records if
+   * the join drops the unmatched probe records and the connector can filter by them. Probe queries
+   * with a limit, an offset, a compute or a having predicate are not restricted, since the filter
+   * predicate applies before them and would change their records.
+   *
+   * @param dataSource the {@link DataSource} declared by the connector of the probe side
+   * @throws IllegalStateException if the build side is not read yet
+   */
+  public DataQuery getProbeQuery(DataSource dataSource) {
+    if (!buildCompleted) {
+      throw new IllegalStateException("The build side of the join is not read yet");
+    }
+    DataQuery probeQuery = buildLeft ? join.getRight() : join.getLeft();
+    Expression keyPredicate =
+        probeOuter
+                || probeQuery.hasLimit()
+                || probeQuery.hasOffset()
+                || probeQuery.hasCompute()
+                || probeQuery.hasHavingPredicate()
+            ? null
+            : keyPredicate(dataSource);
+    if (keyPredicate == null) {
+      return probeQuery;
+    }
+    return probeQuery.toBuilder()
+        .setFilterPredicate(
+            probeQuery.hasFilterPredicate()
+                ? QueryPlanner.and(List.of(probeQuery.getFilterPredicate(), keyPredicate))
+                : keyPredicate)
+        .build();
+  }
+
+  /**
+   * Returns a {@link StreamObserver} that joins the records of the probe side, and forwards the
+   * joined records to the given {@link StreamObserver}. The unmatched build records of a FULL join
+   * and the records of the spilled partitions are forwarded when the probe side completes. The
+   * limit is reached if no probe record can match.
+   *
+   * @param observer the {@link StreamObserver} to forward the joined records to
+   * @throws IllegalStateException if the build side is not read yet
+   */
+  public LimitedStreamObserver<Data> probeObserver(StreamObserver<Data> observer) {
+    if (!buildCompleted) {
+      throw new IllegalStateException("The build side of the join is not read yet");
+    }
+    return new ProbeObserver(observer);
+  }
+
+  /** Returns the number of partitions of the hash table that were spilled to files. */
+  int getSpilledPartitions() {
+    return spilledPartitions;
+  }
+
+  @Override
+  public void close() {
+    for (int partition = 0; partition < PARTITIONS; partition++) {
+      partitions.set(partition, new HashMap<>());
+      deleteSpills(partition);
+    }
+    unkeyedBuildRecords.clear();
+  }
+
+  /** Resolves the key fields of the build side, and the names of those of the probe side. */
+  private void resolveBuildKeys(Schema schema) {
+    buildSchema = schema;
+    buildKeyIndexes = new int[keyConjuncts.size()];
+    probeKeyNames = new ArrayList<>();
+    for (int i = 0; i < keyConjuncts.size(); i++) {
+      FieldExpression first = keyConjuncts.get(i).getArguments(0).getField();
+      FieldExpression second = keyConjuncts.get(i).getArguments(1).getField();
+      boolean firstBuild = isBuildField(first, second, schema);
+      buildKeyIndexes[i] = fieldIndex(schema, (firstBuild ? first : second).getFieldName());
+      probeKeyNames.add((firstBuild ? second : first).getFieldName());
+    }
+    keyValues = buildKeyIndexes.length == 1 ? new LinkedHashSet<>() : null;
+    minKeys = new Value[buildKeyIndexes.length];
+    maxKeys = new Value[buildKeyIndexes.length];
+  }
+
+  /**
+   * Returns {@code true} if the first field of a key conjunct is a field of the build side, and the
+   * second one a field of the probe side, as opposed to the reverse.
+   */
+  private boolean isBuildField(FieldExpression first, FieldExpression second, Schema schema) {
+    if (!first.getAlias().isEmpty()) {
+      return isBuildAlias(first.getAlias());
+    }
+    if (!second.getAlias().isEmpty()) {
+      return !isBuildAlias(second.getAlias());
+    }
+    boolean firstInBuild = fieldIndexOf(schema, first.getFieldName()) >= 0;
+    boolean secondInBuild = fieldIndexOf(schema, second.getFieldName()) >= 0;
+    // Fields that the build schema has both or neither of are resolved by their position, the
+    // first field to the left side
+    return firstInBuild != secondInBuild ? firstInBuild : buildLeft;
+  }
+
+  private boolean isBuildAlias(String alias) {
+    String buildAlias = buildLeft ? leftAlias : rightAlias;
+    String probeAlias = buildLeft ? rightAlias : leftAlias;
+    if (alias.equals(buildAlias) || alias.equals(probeAlias)) {
+      return alias.equals(buildAlias);
+    }
+    throw new IllegalArgumentException(
+        String.format("Alias '%s' names neither side of the join", alias));
+  }
+
+  private void addBuildRecord(StructValue row) {
+    List<Value> key = key(row, buildKeyIndexes);
+    if (key == null) {
+      if (buildOuter) {
+        unkeyedBuildRecords.add(row);
+        bytes += row.getSerializedSize() + RECORD_OVERHEAD_BYTES;
+      }
+      return;
+    }
+    keyedBuildRecords++;
+    addKeyBounds(key);
+    long hash = hash(key);
+    int partition = partition(hash);
+    if (buildSpills[partition] != null) {
+      buildSpills[partition].write(row);
+      spilledHashes.add(hash);
+      return;
+    }
+    Map<List<Value>, List<BuildRecord>> table = partitions.get(partition);
+    table.computeIfAbsent(key, k -> new ArrayList<>(1)).add(new BuildRecord(row));
+    long recordBytes = row.getSerializedSize() + RECORD_OVERHEAD_BYTES;
+    partitionBytes[partition] += recordBytes;
+    bytes += recordBytes;
+    if (bytes > bufferBytes) {
+      spillPartitions();
+    }
+  }
+
+  /** Adds a build key to the distinct keys and the ranges of the key fields. */
+  private void addKeyBounds(List<Value> key) {
+    if (keyValues != null && keyValues.add(key.get(0)) && keyValues.size() > MAX_PROBE_KEYS) {
+      keyValues = null;
+    }
+    for (int i = 0; i < key.size() && keyRanges; i++) {
+      Value value = key.get(i);
+      if (minKeys[i] == null) {
+        minKeys[i] = value;
+        maxKeys[i] = value;
+        continue;
+      }
+      OptionalInt toMin = Values.compare(value, minKeys[i]);
+      OptionalInt toMax = Values.compare(value, maxKeys[i]);
+      if (toMin.isEmpty() || toMax.isEmpty()) {
+        keyRanges = false;
+      } else if (toMin.getAsInt() < 0) {
+        minKeys[i] = value;
+      } else if (toMax.getAsInt() > 0) {
+        maxKeys[i] = value;
+      }
+    }
+  }
+
+  /** Spills the largest partitions in memory, until the build records fit in the buffer. */
+  private void spillPartitions() {
+    while (bytes > bufferBytes) {
+      int largest = -1;
+      for (int partition = 0; partition < PARTITIONS; partition++) {
+        if (buildSpills[partition] == null
+            && partitionBytes[partition] > 0
+            && (largest < 0 || partitionBytes[partition] > partitionBytes[largest])) {
+          largest = partition;
+        }
+      }
+      if (largest < 0) {
+        // Only the build records without a key are left in memory
+        return;
+      }
+      SpillFile spill = new SpillFile(spillDirectory, "join-build-");
+      buildSpills[largest] = spill;
+      for (Map.Entry<List<Value>, List<BuildRecord>> entry : partitions.get(largest).entrySet()) {
+        long hash = hash(entry.getKey());
+        for (BuildRecord record : entry.getValue()) {
+          spill.write(record.row);
+          spilledHashes.add(hash);
+        }
+      }
+      logger.atInfo().log(
+          "Spilled a partition of the join of about %d bytes", partitionBytes[largest]);
+      partitions.set(largest, new HashMap<>());
+      bytes -= partitionBytes[largest];
+      partitionBytes[largest] = 0;
+      spilledPartitions++;
+    }
+  }
+
+  private void completeBuild() {
+    for (SpillFile spill : buildSpills) {
+      if (spill != null) {
+        spill.finishWrite();
+      }
+    }
+    ImmutableLongArray hashes = spilledHashes.build();
+    spilledHashes = null;
+    if (!hashes.isEmpty()) {
+      BloomFilter<Long> filter =
+          BloomFilter.create(Funnels.longFunnel(), hashes.length(), BLOOM_FILTER_FPP);
+      hashes.forEach(filter::put);
+      bloomFilter = filter;
+    }
+    buildCompleted = true;
+    logger.atInfo().log(
+        "Built the hash table of the join from %d records with a key, %d partitions spilled",
+        keyedBuildRecords, spilledPartitions);
+  }
+
+  /**
+   * Returns the predicate that restricts the probe records to the keys of the build records, or
+   * {@code null} if the connector can't filter by it.
+   */
+  @Nullable
+  private Expression keyPredicate(DataSource dataSource) {
+    if (keyedBuildRecords == 0
+        || !dataSource.getCapabilitiesList().contains(Capability.SUPPORTS_FILTER)) {
+      return null;
+    }
+    if (keyValues != null && supports(dataSource, FunctionId.IN, FunctionSignatureId.FN_IN)) {
+      List<Expression> arguments = new ArrayList<>();
+      arguments.add(probeField(0));
+      for (Value value : keyValues) {
+        arguments.add(Expression.newBuilder().setConstant(value).build());
+      }
+      return function(FunctionSignatureId.FN_IN, arguments);
+    }
+    if (keyRanges && supports(dataSource, FunctionId.BETWEEN, FunctionSignatureId.FN_BETWEEN)) {
+      List<Expression> ranges = new ArrayList<>();
+      for (int i = 0; i < minKeys.length; i++) {
+        ranges.add(
+            function(
+                FunctionSignatureId.FN_BETWEEN,
+                List.of(
+                    probeField(i),
+                    Expression.newBuilder().setConstant(minKeys[i]).build(),
+                    Expression.newBuilder().setConstant(maxKeys[i]).build())));
+      }
+      return QueryPlanner.and(ranges);
+    }
+    return null;
+  }
+
+  private Expression probeField(int key) {
+    return Expression.newBuilder()
+        .setField(FieldExpression.newBuilder().setFieldName(probeKeyNames.get(key)))
+        .build();
+  }
+
+  /**
+   * Resolves the key fields of the probe side, and compiles the residual conjuncts of the join
+   * predicate.
+   *
+   * @return the schema of the joined records
+   */
+  private Schema resolveProbeKeys(Schema schema) {
+    probeKeyIndexes = probeKeyNames.stream().mapToInt(name -> fieldIndex(schema, name)).toArray();
+    Schema left = buildLeft ? buildSchema : schema;
+    Schema right = buildLeft ? schema : buildSchema;
+    leftWidth = left.getFieldsCount();
+    rightWidth = right.getFieldsCount();
+    Schema.Builder joined = Schema.newBuilder();
+    addFields(joined, left, leftAlias, right);
+    addFields(joined, right, rightAlias, left);
+    Schema joinedSchema = joined.build();
+    if (residualPredicate != null) {
+      residual = ExpressionCompiler.compile(residualPredicate, joinedSchema);
+    }
+    return joinedSchema;
+  }
+
+  /**
+   * Joins a batch of probe records with the build records of equal keys.
+   *
+   * @param probeRows the probe records
+   * @param spill whether the probe records of spilled partitions are spilled, rather than looked up
+   *     in the partition in memory
+   * @return the joined records, and the unmatched probe records if the join returns them
+   */
+  private List<StructValue> probe(List<StructValue> probeRows, boolean spill) {
+    List<StructValue> candidates = new ArrayList<>();
+    List<BuildRecord> candidateRecords = new ArrayList<>();
+    // The number of candidates of each probe record, or -1 if the probe record is spilled
+    int[] candidateCounts = new int[probeRows.size()];
+    for (int i = 0; i < probeRows.size(); i++) {
+      StructValue row = probeRows.get(i);
+      List<Value> key = key(row, probeKeyIndexes);
+      if (key == null) {
+        continue;
+      }
+      long hash = hash(key);
+      int partition = partition(hash);
+      if (spill && buildSpills[partition] != null) {
+        if (bloomFilter.mightContain(hash)) {
+          probeSpill(partition).write(row);
+          candidateCounts[i] = -1;
+        }
+        continue;
+      }
+      List<BuildRecord> records = partitions.get(partition).get(key);
+      if (records != null) {
+        for (BuildRecord record : records) {
+          candidates.add(joinedRecord(record.row, row));
+          candidateRecords.add(record);
+        }
+        candidateCounts[i] = records.size();
+      }
+    }
+
+    boolean[] matches = matches(candidates);
+    List<StructValue> joined = new ArrayList<>(candidates.size());
+    int candidate = 0;
+    for (int i = 0; i < probeRows.size(); i++) {
+      if (candidateCounts[i] < 0) {
+        continue;
+      }
+      boolean matched = false;
+      for (int end = candidate + candidateCounts[i]; candidate < end; candidate++) {
+        if (matches[candidate]) {
+          joined.add(candidates.get(candidate));
+          candidateRecords.get(candidate).matched = true;
+          matched = true;
+        }
+      }
+      if (!matched && probeOuter) {
+        joined.add(joinedRecord(null, probeRows.get(i)));
+      }
+    }
+    return joined;
+  }
+
+  /** Returns whether each joined record of equal keys matches the residual conjuncts. */
+  private boolean[] matches(List<StructValue> candidates) {
+    boolean[] matches = new boolean[candidates.size()];
+    if (residual == null) {
+      Arrays.fill(matches, true);
+      return matches;
+    }
+    if (candidates.isEmpty()) {
+      return matches;
+    }
+    int[] selection = IntStream.range(0, candidates.size()).toArray();
+    Value[] values = residual.evaluate(candidates, selection, selection.length);
+    for (int i = 0; i < matches.length; i++) {
+      matches[i] =
+          values[i].getValueCase() == Value.ValueCase.BOOL_VALUE && values[i].getBoolValue();
+    }
+    return matches;
+  }
+
+  private void completeProbe(StreamObserver<Data> observer) {
+    for (SpillFile spill : probeSpills) {
+      if (spill != null) {
+        spill.finishWrite();
+      }
+    }
+    if (buildOuter) {
+      List<StructValue> unmatched = new ArrayList<>();
+      for (StructValue row : unkeyedBuildRecords) {
+        unmatched.add(joinedRecord(row, null));
+      }
+      EvaluatingObserver.send(observer, unmatched.iterator());
+      for (Map<List<Value>, List<BuildRecord>> partition : partitions) {
+        EvaluatingObserver.send(observer, unmatched(partition).iterator());
+      }
+    }
+    unkeyedBuildRecords.clear();
+    for (int partition = 0; partition < PARTITIONS; partition++) {
+      partitions.set(partition, new HashMap<>());
+    }
+
+    for (int partition = 0; partition < PARTITIONS; partition++) {
+      if (buildSpills[partition] != null) {
+        joinSpilledPartition(partition, observer);
+      }
+    }
+  }
+
+  /**
+   * Joins the spilled records of a partition, with only the build records of the partition kept in
+   * memory.
+   */
+  private void joinSpilledPartition(int partition, StreamObserver<Data> observer) {
+    Map<List<Value>, List<BuildRecord>> table = new HashMap<>();
+    buildSpills[partition].read(
+        row ->
+            table
+                .computeIfAbsent(key(row, buildKeyIndexes), k -> new ArrayList<>(1))
+                .add(new BuildRecord(row)));
+    partitions.set(partition, table);
+    if (probeSpills[partition] != null) {
+      List<StructValue> batch = new ArrayList<>(SPILLED_BATCH_SIZE);
+      probeSpills[partition].read(
+          row -> {
+            batch.add(row);
+            if (batch.size() == SPILLED_BATCH_SIZE) {
+              EvaluatingObserver.send(observer, probe(batch, false).iterator());
+              batch.clear();
+            }
+          });
+      EvaluatingObserver.send(observer, probe(batch, false).iterator());
+    }
+    if (buildOuter) {
+      EvaluatingObserver.send(observer, unmatched(table).iterator());
+    }
+    partitions.set(partition, new HashMap<>());
+    deleteSpills(partition);
+  }
+
+  /** Returns the build records of a partition that matched no probe record, joined with NULLs. */
+  private List<StructValue> unmatched(Map<List<Value>, List<BuildRecord>> partition) {
+    List<StructValue> unmatched = new ArrayList<>();
+    for (List<BuildRecord> records : partition.values()) {
+      for (BuildRecord record : records) {
+        if (!record.matched) {
+          unmatched.add(joinedRecord(record.row, null));
+        }
+      }
+    }
+    return unmatched;
+  }
+
+  /** Returns the joined record of a build record and a probe record, either of them NULLs. */
+  private StructValue joinedRecord(@Nullable StructValue buildRow, @Nullable StructValue probeRow) {
+    StructValue left = buildLeft ? buildRow : probeRow;
+    StructValue right = buildLeft ? probeRow : buildRow;
+    StructValue.Builder joined = StructValue.newBuilder();
+    addValues(joined, left, leftWidth);
+    addValues(joined, right, rightWidth);
+    return joined.build();
+  }
+
+  private SpillFile probeSpill(int partition) {
+    if (probeSpills[partition] == null) {
+      probeSpills[partition] = new SpillFile(spillDirectory, "join-probe-");
+    }
+    return probeSpills[partition];
+  }
+
+  private void deleteSpills(int partition) {
+    if (buildSpills[partition] != null) {
+      buildSpills[partition].delete();
+      buildSpills[partition] = null;
+    }
+    if (probeSpills[partition] != null) {
+      probeSpills[partition].delete();
+      probeSpills[partition] = null;
+    }
+  }
+
+  /**
+   * Returns {@code true} if the given conjunct compares two fields for equality, which are not
+   * aliased to the same side.
+   */
+  private static boolean isKeyConjunct(Expression conjunct) {
+    if (!conjunct.hasFunction() || FunctionIds.of(conjunct.getFunction()) != FunctionId.EQUAL) {
+      return false;
+    }
+    List<Expression> arguments = conjunct.getFunction().getArgumentsList();
+    return arguments.size() == 2
+        && arguments.get(0).hasField()
+        && arguments.get(1).hasField()
+        && (arguments.get(0).getField().getAlias().isEmpty()
+            || !arguments.get(0).getField().getAlias().equals(
+                arguments.get(1).getField().getAlias()));
+  }
+
+  /** Returns the alias of a side of the join, which is its table name. */
+  private static String alias(DataQuery side) {
+    return switch (side.getSourceCase()) {
+      case TABLE -> side.getTable();
+      case NAMED_TABLE -> Iterables.getLast(side.getNamedTable().getNamesList(), "");
+      default -> "";
+    };
+  }
+
+  /**
+   * Returns the key of a record, or {@code null} if any of its values is NULL, such that the
+   * record matches no record.
+   */
+  @Nullable
+  private static List<Value> key(StructValue row, int[] indexes) {
+    Value[] key = new Value[indexes.length];
+    for (int i = 0; i < indexes.length; i++) {
+      key[i] = normalize(row.getFields(indexes[i]));
+      if (key[i] == null) {
+        return null;
+      }
+    }
+    return Arrays.asList(key);
+  }
+
+  /**
+   * Returns the value in the form that equal values of the integer or the floating point types
+   * share, or {@code null} if the value is equal to no value.
+   */
+  @Nullable
+  private static Value normalize(Value value) {
+    return switch (value.getValueCase()) {
+      case NULL_VALUE, VALUE_NOT_SET -> null;
+      case INT32_VALUE -> Value.newBuilder().setInt64Value(value.getInt32Value()).build();
+      case UINT32_VALUE -> Value.newBuilder()
+          .setInt64Value(Integer.toUnsignedLong(value.getUint32Value()))
+          .build();
+      case FLOAT_VALUE -> normalize(value.getFloatValue());
+      case DOUBLE_VALUE -> normalize(value.getDoubleValue());
+      default -> value;
+    };
+  }
+
+  @Nullable
+  private static Value normalize(double value) {
+    // Adding zero turns -0.0 into 0.0, which is equal to it
+    return Double.isNaN(value) ? null : Value.newBuilder().setDoubleValue(value + 0.0).build();
+  }
+
+  private static long hash(List<Value> key) {
+    Hasher hasher = KEY_HASH.newHasher();
+    for (Value value : key) {
+      hasher.putBytes(value.toByteArray());
+    }
+    return hasher.hash().asLong();
+  }
+
+  /** Returns the partition of the key with the given hash, from the high bits of the hash. */
+  private static int partition(long hash) {
+    return (int) (hash >>> (Long.SIZE - PARTITION_BITS));
+  }
+
+  private static boolean supports(
+      DataSource dataSource, FunctionId functionId, FunctionSignatureId signatureId) {
+    return dataSource.getSupportedFunctionSignaturesList().contains(signatureId)
+        || dataSource.getSupportedFunctionsList().contains(functionId);
+  }
+
+  private static Expression function(FunctionSignatureId signatureId, List<Expression> arguments) {
+    return Expression.newBuilder()
+        .setFunction(
+            FunctionExpression.newBuilder()
+                .setFunctionSignatureId(signatureId)
+                .addAllArguments(arguments))
+        .build();
+  }
+
+  /** Adds the fields of a side, named by the alias of the side if the other side has them too. */
+  private static void addFields(
+      Schema.Builder joined, Schema side, String alias, Schema otherSide) {
+    Set<String> otherNames = new HashSet<>();
+    for (Schema.Field field : otherSide.getFieldsList()) {
+      otherNames.add(field.getFieldName());
+    }
+    for (Schema.Field field : side.getFieldsList()) {
+      joined.addFields(
+          otherNames.contains(field.getFieldName())
+              ? field.toBuilder().setFieldName(alias + "." + field.getFieldName()).build()
+              : field);
+    }
+  }
+
+  private static void addValues(StructValue.Builder joined, @Nullable StructValue row, int width) {
+    if (row != null) {
+      joined.addAllFields(row.getFieldsList());
+      return;
+    }
+    for (int i = 0; i < width; i++) {
+      joined.addFields(NULL);
+    }
+  }
+
+  private static int fieldIndex(Schema schema, String fieldName) {
+    int index = fieldIndexOf(schema, fieldName);
+    if (index < 0) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Field '%s' of the join predicate is not in the schema of its side", fieldName));
+    }
+    return index;
+  }
+
+  private static int fieldIndexOf(Schema schema, String fieldName) {
+    for (int i = 0; i < schema.getFieldsCount(); i++) {
+      if (schema.getFields(i).getFieldName().equals(fieldName)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /** Adds the records of the build side to the hash table. */
+  private final class BuildObserver implements StreamObserver<Data> {
+
+    @Override
+    public void onNext(Data data) {
+      if (data.hasSchema()) {
+        resolveBuildKeys(data.getSchema());
+      }
+      if (data.getDataBlock().hasRowset()) {
+        if (buildSchema == null) {
+          throw new IllegalStateException("Received records before the schema");
+        }
+        for (StructValue row : data.getDataBlock().getRowset().getRowsList()) {
+          addBuildRecord(row);
+        }
+      }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      // The read of the build side fails, and the owner of the join closes it
+    }
+
+    @Override
+    public void onCompleted() {
+      completeBuild();
+    }
+  }
+
+  /** Joins the records of the probe side, and forwards the joined records. */
+  private final class ProbeObserver implements LimitedStreamObserver<Data> {
+    private final StreamObserver<Data> observer;
+
+    ProbeObserver(StreamObserver<Data> observer) {
+      this.observer = observer;
+    }
+
+    @Override
+    public void onNext(Data data) {
+      if (data.hasSchema()) {
+        if (buildSchema == null) {
+          throw new IllegalStateException("The build side of the join has no schema");
+        }
+        observer.onNext(Data.newBuilder().setSchema(resolveProbeKeys(data.getSchema())).build());
+      }
+      if (data.getDataBlock().hasRowset()) {
+        if (probeKeyIndexes == null) {
+          throw new IllegalStateException("Received records before the schema");
+        }
+        EvaluatingObserver.send(
+            observer, probe(data.getDataBlock().getRowset().getRowsList(), true).iterator());
+      }
+    }
+
+    @Override
+    public boolean isLimitReached() {
+      return keyedBuildRecords == 0 && !probeOuter;
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      observer.onError(t);
+    }
+
+    @Override
+    public void onCompleted() {
+      completeProbe(observer);
+      observer.onCompleted();
+    }
+  }
+
+  /** A record of the build side, and whether it matched a probe record. */
+  private static final class BuildRecord {
+    private final StructValue row;
+    private boolean matched;
+
+    BuildRecord(StructValue row) {
+      this.row = row;
+    }
+  }
+
+  /** A file of records spilled by the join, which is written and then read. */
+  private static final class SpillFile {
+    private final Path path;
+    @Nullable private OutputStream output;
+
+    SpillFile(Path directory, String prefix) {
+      try {
+        path = Files.createTempFile(directory, prefix, ".bin");
+        output = new BufferedOutputStream(Files.newOutputStream(path));
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to create a spill file of the join", e);
+      }
+    }
+
+    void write(StructValue row) {
+      try {
+        row.writeDelimitedTo(output);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to write spill file " + path, e);
+      }
+    }
+
+    void finishWrite() {
+      if (output != null) {
+        try {
+          output.close();
+        } catch (IOException e) {
+          throw new UncheckedIOException("Failed to write spill file " + path, e);
+        } finally {
+          output = null;
+        }
+      }
+    }
+
+    void read(Consumer<StructValue> consumer) {
+      try (InputStream input = new BufferedInputStream(Files.newInputStream(path))) {
+        StructValue row;
+        while ((row = StructValue.parseDelimitedFrom(input)) != null) {
+          consumer.accept(row);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to read spill file " + path, e);
+      }
+    }
+
+    void delete() {
+      try {
+        if (output != null) {
+          output.close();
+          output = null;
+        }
+        Files.deleteIfExists(path);
+      } catch (IOException e) {
+        logger.atWarning().withCause(e).log("Failed to delete spill file %s", path);
+      }
+    }
+  }
+}
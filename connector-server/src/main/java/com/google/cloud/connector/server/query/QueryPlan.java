@@ -0,0 +1,72 @@
+package com.google.cloud.connector.server.query;
+
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import javax.annotation.Nullable;
+
+/**
+ * The split of a query between the connector, the server and the caller, made by {@link
+ * QueryPlanner}.
+ *
+ * @param connectorQuery the query to pass to the connector, without the parts that the connector
+ *     doesn't support
+ * @param serverQuery the parts of the query that the server evaluates on the records returned by
+ *     the connector, if any
+ * @param residualQuery the query that the caller must perform on the result set, with the parts
+ *     that neither the connector nor the server evaluate, if any
+ */
+public record QueryPlan(
+    DataQuery connectorQuery,
+    @Nullable DataQuery serverQuery,
+    @Nullable DataQuery residualQuery) {
+
+  /** Returns a plan in which the connector performs the whole query. */
+  public static QueryPlan ofConnector(DataQuery query) {
+    return new QueryPlan(query, null, null);
+  }
+
+  /**
+   * Returns the part of the server query to evaluate for each partition, when the records of the
+   * partitions are merged into a single stream that {@link #mergeQuery()} is evaluated for. Only
+   * the filter predicate is evaluated for each partition if the server query aggregates records.
+   */
+  @Nullable
+  public DataQuery partitionQuery() {
+    if (serverQuery == null) {
+      return null;
+    }
+    DataQuery.Builder query = serverQuery.toBuilder().clearSorting().clearLimit().clearOffset();
+    if (isAggregation()) {
+      query.clearCompute().clearHavingPredicate();
+    } else {
+      QueryPlanner.setOrdering(query, QueryPlanner.streamQuery(serverQuery));
+    }
+    DataQuery partitionQuery = query.build();
+    return partitionQuery.equals(DataQuery.getDefaultInstance()) ? null : partitionQuery;
+  }
+
+  /**
+   * Returns the part of the server query to evaluate for the records of all the partitions, which
+   * is the sorting, the limit and the offset of the server query, following its aggregation and
+   * having predicate if the server query aggregates records.
+   */
+  @Nullable
+  public DataQuery mergeQuery() {
+    if (serverQuery == null) {
+      return null;
+    }
+    DataQuery.Builder query = DataQuery.newBuilder();
+    if (isAggregation()) {
+      query.setCompute(serverQuery.getCompute());
+      if (serverQuery.hasHavingPredicate()) {
+        query.setHavingPredicate(serverQuery.getHavingPredicate());
+      }
+    }
+    QueryPlanner.setOrdering(query, serverQuery);
+    DataQuery mergeQuery = query.build();
+    return mergeQuery.equals(DataQuery.getDefaultInstance()) ? null : mergeQuery;
+  }
+
+  private boolean isAggregation() {
+    return serverQuery.hasCompute() && HashAggregator.isAggregation(serverQuery.getCompute());
+  }
+}
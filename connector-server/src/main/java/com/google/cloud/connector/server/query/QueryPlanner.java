@@ -0,0 +1,315 @@
+package com.google.cloud.connector.server.query;
+
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.Compute;
+import com.google.cloud.bigquery.federation.v1alpha1.DataSource;
+import com.google.cloud.bigquery.federation.v1alpha1.DataSource.Capability;
+import com.google.cloud.bigquery.federation.v1alpha1.Expression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionExpression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionSignatureId;
+import com.google.cloud.bigquery.federation.v1alpha1.Functions.FunctionId;
+import com.google.cloud.connector.data.FunctionIds;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.math.LongMath;
+import com.google.protobuf.Int64Value;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits queries between the connector and the server, such that the server evaluates the filter
+ * predicate, the compute, the sorting, the limit and the offset of a query for connectors that
+ * don't declare the matching {@link Capability}, instead of returning all the records for the
+ * caller to process.
+ *
+ * <p>The server declares the capabilities that the connector lacks on its behalf. The conjuncts of
+ * the filter predicate that can't be compiled by the {@link ExpressionCompiler}, as well as the
+ * compute if it can't be compiled or follows such a conjunct, are returned to the caller as the
+ * residual query, together with the having predicate and the operators that follow them. The
+ * aggregations of the compute are evaluated by the {@link HashAggregator} for queries returned in
+ * a single stream, and followed by the having predicate if it can be compiled. The
+ * server sorts and limits the records of queries returned in a single stream. For queries
+ * returned in several streams, each stream only returns the records within the limit and the
+ * offset, and the caller sorts and limits the records of all the streams. Joins that the connector
+ * doesn't support are performed by the {@link HashJoin} for ExecuteQuery, and the other parts of
+ * their query are evaluated for the joined records. Since StartQuery can't join, the server only
+ * declares joins for connectors that support synchronous queries but not parallel queries.
+ */
+public final class QueryPlanner {
+
+  /** The label of the result set that the residual query references as its table. */
+  public static final String RESULT_SET_LABEL = "connector-result";
+
+  /** The function signatures declared on behalf of connectors, which the server can evaluate. */
+  private static final ImmutableList<FunctionSignatureId> FUNCTION_SIGNATURES =
+      ImmutableList.of(
+          FunctionSignatureId.FN_AND,
+          FunctionSignatureId.FN_OR,
+          FunctionSignatureId.FN_NOT,
+          FunctionSignatureId.FN_IS_NULL,
+          FunctionSignatureId.FN_EQUAL,
+          FunctionSignatureId.FN_NOT_EQUAL,
+          FunctionSignatureId.FN_LESS,
+          FunctionSignatureId.FN_LESS_OR_EQUAL,
+          FunctionSignatureId.FN_GREATER,
+          FunctionSignatureId.FN_GREATER_OR_EQUAL,
+          FunctionSignatureId.FN_BETWEEN,
+          FunctionSignatureId.FN_IN,
+          FunctionSignatureId.FN_ADD_INT64,
+          FunctionSignatureId.FN_ADD_DOUBLE,
+          FunctionSignatureId.FN_SUBTRACT_INT64,
+          FunctionSignatureId.FN_SUBTRACT_DOUBLE,
+          FunctionSignatureId.FN_MULTIPLY_INT64,
+          FunctionSignatureId.FN_MULTIPLY_DOUBLE,
+          FunctionSignatureId.FN_DIVIDE_DOUBLE);
+
+  /** The capabilities of the operators applied by {@link SortLimitOperator}. */
+  private static final ImmutableList<Capability> ORDERING_CAPABILITIES =
+      ImmutableList.of(
+          Capability.SUPPORTS_SORTING, Capability.SUPPORTS_LIMIT, Capability.SUPPORTS_OFFSET);
+
+  private final boolean enabled;
+
+  /**
+   * Creates an instance.
+   *
+   * @param enabled whether the server evaluates queries. If {@code false}, connectors perform the
+   *     whole queries.
+   */
+  public QueryPlanner(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /** Returns {@code true} if the server evaluates queries. */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Returns the given {@link DataSource} with the capabilities that the server provides on behalf
+   * of the connector. The functions that the server can evaluate are only added if the connector
+   * declares neither {@link Capability#SUPPORTS_FILTER} nor {@link Capability#SUPPORTS_COMPUTE},
+   * since the functions declared by the connector apply to both.
+   */
+  public DataSource withServerCapabilities(DataSource dataSource) {
+    boolean supportsFilter = supports(dataSource, Capability.SUPPORTS_FILTER);
+    boolean supportsCompute = supports(dataSource, Capability.SUPPORTS_COMPUTE);
+    if (!enabled) {
+      return dataSource;
+    }
+    DataSource.Builder builder = dataSource.toBuilder();
+    if (!supportsFilter) {
+      builder.addCapabilities(Capability.SUPPORTS_FILTER);
+    }
+    if (!supportsCompute) {
+      builder.addCapabilities(Capability.SUPPORTS_COMPUTE);
+    }
+    for (Capability capability : ORDERING_CAPABILITIES) {
+      if (!supports(dataSource, capability)) {
+        builder.addCapabilities(capability);
+      }
+    }
+    // Joins are only read through ExecuteQuery, so they are not declared for connectors that
+    // callers can start queries on
+    if (!supports(dataSource, Capability.SUPPORTS_JOIN)
+        && supports(dataSource, Capability.SUPPORTS_SYNCHRONOUS_QUERIES)
+        && !supports(dataSource, Capability.SUPPORTS_PARALLEL_QUERIES)) {
+      builder.addCapabilities(Capability.SUPPORTS_JOIN);
+    }
+    if (!supportsFilter && !supportsCompute) {
+      if (!supports(dataSource, Capability.SUPPORTS_TYPE_CAST)) {
+        builder.addCapabilities(Capability.SUPPORTS_TYPE_CAST);
+      }
+      for (FunctionId functionId : ExpressionCompiler.getSupportedFunctions()) {
+        if (!dataSource.getSupportedFunctionsList().contains(functionId)) {
+          builder.addSupportedFunctions(functionId);
+        }
+      }
+      for (FunctionSignatureId signatureId :
+          Iterables.concat(FUNCTION_SIGNATURES, HashAggregator.getSupportedFunctions())) {
+        if (!dataSource.getSupportedFunctionSignaturesList().contains(signatureId)) {
+          builder.addSupportedFunctionSignatures(signatureId);
+        }
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Splits the given query between the connector, the server and the caller.
+   *
+   * @param query the query to perform
+   * @param dataSource the {@link DataSource} declared by the connector
+   * @param singleStream whether the records are returned in a single stream, such that the server
+   *     can sort and limit all of them
+   * @return the {@link QueryPlan}, in which the connector performs the whole query if the server
+   *     doesn't evaluate queries or the connector supports all of the query
+   */
+  public QueryPlan plan(DataQuery query, DataSource dataSource, boolean singleStream) {
+    boolean evaluateFilter =
+        query.hasFilterPredicate() && !supports(dataSource, Capability.SUPPORTS_FILTER);
+    // The compute follows the filter predicate, so it can't be left to the connector if the filter
+    // predicate isn't
+    boolean evaluateCompute =
+        query.hasCompute()
+            && (evaluateFilter || !supports(dataSource, Capability.SUPPORTS_COMPUTE));
+    boolean evaluateOrdering =
+        (query.getSortingCount() > 0 && !supports(dataSource, Capability.SUPPORTS_SORTING))
+            || (query.hasLimit() && !supports(dataSource, Capability.SUPPORTS_LIMIT))
+            || (query.hasOffset() && !supports(dataSource, Capability.SUPPORTS_OFFSET));
+    if (!enabled || (!evaluateFilter && !evaluateCompute && !evaluateOrdering)) {
+      return QueryPlan.ofConnector(query);
+    }
+
+    DataQuery.Builder connectorQuery = query.toBuilder();
+    DataQuery.Builder serverQuery = DataQuery.newBuilder();
+    DataQuery.Builder residualQuery = DataQuery.newBuilder();
+    if (evaluateFilter) {
+      connectorQuery.clearFilterPredicate();
+      List<Expression> serverConjuncts = new ArrayList<>();
+      List<Expression> residualConjuncts = new ArrayList<>();
+      for (Expression conjunct : conjuncts(query.getFilterPredicate())) {
+        (ExpressionCompiler.isSupported(conjunct) ? serverConjuncts : residualConjuncts)
+            .add(conjunct);
+      }
+      if (!serverConjuncts.isEmpty()) {
+        serverQuery.setFilterPredicate(and(serverConjuncts));
+      }
+      if (!residualConjuncts.isEmpty()) {
+        residualQuery.setFilterPredicate(and(residualConjuncts));
+      }
+    }
+    if (evaluateCompute) {
+      connectorQuery.clearCompute();
+      // The compute can only be evaluated once the whole filter predicate is
+      if (!residualQuery.hasFilterPredicate() && canEvaluate(query.getCompute(), singleStream)) {
+        serverQuery.setCompute(query.getCompute());
+      } else {
+        residualQuery.setCompute(query.getCompute());
+      }
+    }
+
+    if ((evaluateFilter || evaluateCompute) && query.hasHavingPredicate()) {
+      // The having predicate follows the filter predicate and the compute
+      connectorQuery.clearHavingPredicate();
+      if (serverQuery.hasCompute() && ExpressionCompiler.isSupported(query.getHavingPredicate())) {
+        serverQuery.setHavingPredicate(query.getHavingPredicate());
+      } else {
+        residualQuery.setHavingPredicate(query.getHavingPredicate());
+      }
+    }
+
+    // The connector applies the sorting, the limit and the offset together or none of them
+    connectorQuery.clearSorting().clearLimit().clearOffset();
+    boolean residual =
+        residualQuery.hasFilterPredicate()
+            || residualQuery.hasCompute()
+            || residualQuery.hasHavingPredicate();
+    if (residual || !singleStream) {
+      setOrdering(residualQuery, query);
+    }
+    if (!residual) {
+      setOrdering(serverQuery, singleStream ? query : streamQuery(query));
+    }
+
+    return new QueryPlan(
+        connectorQuery.build(),
+        isEmpty(serverQuery) ? null : serverQuery.build(),
+        isEmpty(residualQuery) ? null : residualQuery.setTable(RESULT_SET_LABEL).build());
+  }
+
+  /**
+   * Returns {@code true} if the server joins the sides of the given query with a {@link HashJoin},
+   * which it does if the source of the query is a join that the connector doesn't support.
+   */
+  public boolean isJoin(DataQuery query, DataSource dataSource) {
+    return enabled
+        && query.getSourceCase() == DataQuery.SourceCase.JOIN
+        && !supports(dataSource, Capability.SUPPORTS_JOIN);
+  }
+
+  /**
+   * Splits a query whose sides the server joins between the server and the caller. The server
+   * evaluates the parts of the query that follow the join for the joined records, such that the
+   * connector only reads the sides.
+   *
+   * @param query the query with a join as its source
+   * @return the {@link QueryPlan}, whose connector query is not used
+   */
+  public QueryPlan planJoin(DataQuery query) {
+    return plan(query.toBuilder().clearJoin().build(), DataSource.getDefaultInstance(), true);
+  }
+
+  /**
+   * Returns the part of the sorting, the limit and the offset of the given query that each of
+   * several streams can apply, which is the sorting and the limit of the records within the limit
+   * and the offset. The query has neither if the given query has no limit.
+   */
+  static DataQuery streamQuery(DataQuery query) {
+    if (!query.hasLimit()) {
+      return DataQuery.getDefaultInstance();
+    }
+    return DataQuery.newBuilder()
+        .addAllSorting(query.getSortingList())
+        .setLimit(
+            Int64Value.of(
+                LongMath.saturatedAdd(query.getLimit().getValue(), query.getOffset().getValue())))
+        .build();
+  }
+
+  /** Sets the sorting, the limit and the offset of the given query to the given builder. */
+  static void setOrdering(DataQuery.Builder builder, DataQuery query) {
+    builder.addAllSorting(query.getSortingList());
+    if (query.hasLimit()) {
+      builder.setLimit(query.getLimit());
+    }
+    if (query.hasOffset()) {
+      builder.setOffset(query.getOffset());
+    }
+  }
+
+  /**
+   * Returns {@code true} if the server can evaluate the given compute. Aggregations can only be
+   * evaluated for the records of a single stream.
+   */
+  private static boolean canEvaluate(Compute compute, boolean singleStream) {
+    if (HashAggregator.isAggregation(compute)) {
+      return singleStream && HashAggregator.isSupported(compute);
+    }
+    return compute.getElementsList().stream()
+        .allMatch(element -> ExpressionCompiler.isSupported(element.getExpression()));
+  }
+
+  /** Returns the conjuncts of the given predicate, which is the predicate itself if not an AND. */
+  static List<Expression> conjuncts(Expression predicate) {
+    if (!predicate.hasFunction() || FunctionIds.of(predicate.getFunction()) != FunctionId.AND) {
+      return List.of(predicate);
+    }
+    List<Expression> conjuncts = new ArrayList<>();
+    for (Expression argument : predicate.getFunction().getArgumentsList()) {
+      conjuncts.addAll(conjuncts(argument));
+    }
+    return conjuncts;
+  }
+
+  /** Returns the conjunction of the given conjuncts, which is the conjunct itself if only one. */
+  static Expression and(List<Expression> conjuncts) {
+    if (conjuncts.size() == 1) {
+      return conjuncts.get(0);
+    }
+    return Expression.newBuilder()
+        .setFunction(
+            FunctionExpression.newBuilder()
+                .setFunctionSignatureId(FunctionSignatureId.FN_AND)
+                .addAllArguments(conjuncts))
+        .build();
+  }
+
+  private static boolean isEmpty(DataQuery.Builder query) {
+    return query.build().equals(DataQuery.getDefaultInstance());
+  }
+
+  private static boolean supports(DataSource dataSource, Capability capability) {
+    return dataSource.getCapabilitiesList().contains(capability);
+  }
+}
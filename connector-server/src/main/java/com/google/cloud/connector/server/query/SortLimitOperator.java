@@ -0,0 +1,227 @@
+package com.google.cloud.connector.server.query;
+
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.Sorting;
+import com.google.cloud.bigquery.federation.v1alpha1.Schema;
+import com.google.cloud.bigquery.federation.v1alpha1.StructValue;
+import com.google.cloud.bigquery.federation.v1alpha1.Value;
+import com.google.cloud.connector.data.Values;
+import com.google.common.collect.Iterators;
+import com.google.common.math.LongMath;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import javax.annotation.Nullable;
+
+/**
+ * Applies the sorting, the limit and the offset of a query to the records of a read.
+ *
+ * <p>Without sorting, records pass through as they are added until the limit is reached, such that
+ * the read can stop early. With sorting and a limit, a bounded heap keeps the first {@code limit +
+ * offset} records. Full sorts, sorts with a limit too large for the heap, and sorts whose heap
+ * records exceed the sort buffer size go through an {@link ExternalSorter}. Sorted records are only
+ * returned by {@link #finish()}.
+ *
+ * <p>Ascending sorts order nulls first and NaN right after them, and descending sorts the reverse.
+ */
+final class SortLimitOperator implements Closeable {
+
+  /** Maximum number of records kept in the heap of a sort with a limit. */
+  private static final long MAX_HEAP_RECORDS = 100_000;
+
+  private final long offset;
+  private final long limit;
+  private final SpillConfig config;
+  @Nullable private final Comparator<StructValue> comparator;
+  private final int heapSize;
+  @Nullable private PriorityQueue<StructValue> heap;
+  private long heapBytes;
+  @Nullable private ExternalSorter sorter;
+  // The last record kept by the heap before it moved to the sorter, if the heap was full
+  @Nullable private StructValue cutoff;
+  private long skipped;
+  private long returned;
+
+  /**
+   * Creates an instance.
+   *
+   * @param query the query with the sorting, the limit and the offset to apply. Other parts of the
+   *     query are ignored.
+   * @param schema the schema of the records
+   * @param config the {@link SpillConfig} of full sorts
+   * @throws IllegalArgumentException if the query sorts by a field that is not in the schema
+   */
+  SortLimitOperator(DataQuery query, Schema schema, SpillConfig config) {
+    this.offset = query.hasOffset() ? Math.max(query.getOffset().getValue(), 0) : 0;
+    this.limit = query.hasLimit() ? Math.max(query.getLimit().getValue(), 0) : Long.MAX_VALUE;
+    this.config = config;
+    if (query.getSortingCount() == 0) {
+      this.comparator = null;
+      this.heap = null;
+      this.heapSize = 0;
+      this.sorter = null;
+      return;
+    }
+
+    this.comparator = comparator(query.getSortingList(), schema);
+    long kept = LongMath.saturatedAdd(limit, offset);
+    if (kept <= MAX_HEAP_RECORDS) {
+      // The head of the heap is the last of the records kept so far
+      this.heapSize = (int) kept;
+      this.heap = new PriorityQueue<>(Math.max(heapSize, 1), comparator.reversed());
+      this.sorter = null;
+    } else {
+      this.heapSize = 0;
+      this.heap = null;
+      this.sorter = newSorter();
+    }
+  }
+
+  /**
+   * Adds a batch of records.
+   *
+   * @return the records to return right away, which are the records within the offset and the
+   *     limit if the query has no sorting, and none otherwise
+   */
+  List<StructValue> add(List<StructValue> records) {
+    if (comparator == null) {
+      return pass(records);
+    }
+    for (StructValue record : records) {
+      if (sorter != null) {
+        // Records after the cutoff can't be within the limit
+        if (cutoff == null || comparator.compare(record, cutoff) < 0) {
+          sorter.add(record);
+        }
+      } else if (heap.size() < heapSize) {
+        heap.add(record);
+        heapBytes += record.getSerializedSize();
+      } else if (heapSize > 0 && comparator.compare(record, heap.peek()) < 0) {
+        heapBytes -= heap.poll().getSerializedSize();
+        heap.add(record);
+        heapBytes += record.getSerializedSize();
+      }
+      if (heapBytes > config.getSortBufferBytes()) {
+        spillHeap();
+      }
+    }
+    return List.of();
+  }
+
+  /** Returns {@code true} if no more records can be returned, whatever records are added. */
+  boolean isLimitReached() {
+    return limit == 0 || (comparator == null && returned >= limit);
+  }
+
+  /** Returns the sorted records within the offset and the limit, after the last batch is added. */
+  Iterator<StructValue> finish() {
+    if (comparator == null) {
+      return Collections.emptyIterator();
+    }
+    Iterator<StructValue> sorted;
+    if (sorter != null) {
+      sorted = sorter.sorted();
+    } else {
+      List<StructValue> records = new ArrayList<>(heap);
+      records.sort(comparator);
+      sorted = records.iterator();
+    }
+    for (long i = 0; i < offset && sorted.hasNext(); i++) {
+      sorted.next();
+    }
+    return Iterators.limit(sorted, (int) Math.min(limit, Integer.MAX_VALUE));
+  }
+
+  @Override
+  public void close() {
+    if (sorter != null) {
+      sorter.close();
+    }
+  }
+
+  /** Moves the records of the heap to an {@link ExternalSorter} that spills them. */
+  private void spillHeap() {
+    if (heap.size() == heapSize) {
+      cutoff = heap.peek();
+    }
+    sorter = newSorter();
+    heap.forEach(sorter::add);
+    heap = null;
+    heapBytes = 0;
+  }
+
+  private ExternalSorter newSorter() {
+    return new ExternalSorter(comparator, config.getSortBufferBytes(), config.getSpillDirectory());
+  }
+
+  private List<StructValue> pass(List<StructValue> records) {
+    int from = 0;
+    if (skipped < offset) {
+      from = (int) Math.min(offset - skipped, records.size());
+      skipped += from;
+    }
+    int to = from + (int) Math.min(records.size() - from, limit - returned);
+    returned += to - from;
+    return from == 0 && to == records.size() ? records : records.subList(from, to);
+  }
+
+  /**
+   * Returns the order of records by the given sorting.
+   *
+   * @throws IllegalArgumentException if a field of the sorting is not in the schema
+   */
+  static Comparator<StructValue> comparator(List<Sorting> sorting, Schema schema) {
+    Comparator<StructValue> comparator = null;
+    for (Sorting key : sorting) {
+      int index = fieldIndex(schema, key.getFieldName());
+      Comparator<StructValue> keyComparator =
+          (left, right) -> compareValues(left.getFields(index), right.getFields(index));
+      if (key.getSortingOrder() == Sorting.SortingOrder.DESCENDING) {
+        keyComparator = keyComparator.reversed();
+      }
+      comparator = comparator == null ? keyComparator : comparator.thenComparing(keyComparator);
+    }
+    return comparator;
+  }
+
+  private static int fieldIndex(Schema schema, String fieldName) {
+    for (int i = 0; i < schema.getFieldsCount(); i++) {
+      if (schema.getFields(i).getFieldName().equals(fieldName)) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException(
+        String.format("Sorting field '%s' is not in the schema of the records", fieldName));
+  }
+
+  private static int compareValues(Value left, Value right) {
+    boolean leftNull = Values.isNull(left);
+    boolean rightNull = Values.isNull(right);
+    if (leftNull || rightNull) {
+      return Boolean.compare(rightNull, leftNull);
+    }
+    boolean leftNaN = isNaN(left);
+    boolean rightNaN = isNaN(right);
+    if (leftNaN || rightNaN) {
+      return Boolean.compare(rightNaN, leftNaN);
+    }
+    return Values.compare(left, right)
+        .orElseThrow(
+            () ->
+                new IllegalArgumentException(
+                    String.format(
+                        "Can't sort values of %s and %s",
+                        left.getValueCase(), right.getValueCase())));
+  }
+
+  private static boolean isNaN(Value value) {
+    return (value.getValueCase() == Value.ValueCase.DOUBLE_VALUE
+            && Double.isNaN(value.getDoubleValue()))
+        || (value.getValueCase() == Value.ValueCase.FLOAT_VALUE
+            && Float.isNaN(value.getFloatValue()));
+  }
+}
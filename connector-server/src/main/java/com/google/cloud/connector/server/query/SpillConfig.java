@@ -0,0 +1,71 @@
+package com.google.cloud.connector.server.query;
+
+import static picocli.CommandLine.Help.Visibility.ALWAYS;
+
+import java.nio.file.Path;
+import picocli.CommandLine.Option;
+
+/** Configuration class for the operators that spill records to files on the server. */
+public class SpillConfig {
+
+  @Option(
+      names = {"--sort-buffer-bytes"},
+      description =
+          "Serialized size in bytes of the records that a sort on the server keeps in memory,"
+              + " also with a limit. Once exceeded, the records are sorted and spilled to a file"
+              + " in the spill directory, and the spilled files are merged, at most 64 at a time,"
+              + " when the read completes.",
+      defaultValue = "67108864",
+      showDefaultValue = ALWAYS)
+  private long sortBufferBytes;
+
+  @Option(
+      names = {"--aggregation-buffer-bytes"},
+      description =
+          "Approximate size in bytes of the groups that an aggregation on the server keeps in"
+              + " memory. Once exceeded, the groups are spilled to files in the spill directory,"
+              + " and the spilled groups are merged one file at a time when the read completes.",
+      defaultValue = "67108864",
+      showDefaultValue = ALWAYS)
+  private long aggregationBufferBytes;
+
+  @Option(
+      names = {"--join-buffer-bytes"},
+      description =
+          "Approximate size in bytes of the records of the build side that a join on the server"
+              + " keeps in memory. Once exceeded, the largest partitions of the records are"
+              + " spilled to files in the spill directory, and joined one partition at a time"
+              + " when the other side is read.",
+      defaultValue = "67108864",
+      showDefaultValue = ALWAYS)
+  private long joinBufferBytes;
+
+  @Option(
+      names = {"--spill-directory"},
+      description =
+          "Directory of the files spilled by sorts, aggregations and joins on the server.",
+      defaultValue = "${sys:java.io.tmpdir}",
+      showDefaultValue = ALWAYS)
+  private Path spillDirectory;
+
+  @SuppressWarnings("unused")
+  public SpillConfig() {
+    // no-op, for picocli to use.
+  }
+
+  public long getSortBufferBytes() {
+    return sortBufferBytes;
+  }
+
+  public long getAggregationBufferBytes() {
+    return aggregationBufferBytes;
+  }
+
+  public long getJoinBufferBytes() {
+    return joinBufferBytes;
+  }
+
+  public Path getSpillDirectory() {
+    return spillDirectory;
+  }
+}
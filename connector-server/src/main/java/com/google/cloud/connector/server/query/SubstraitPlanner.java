@@ -0,0 +1,961 @@
+package com.google.cloud.connector.server.query;
+
+import com.google.cloud.bigquery.federation.v1alpha1.CastExpression;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.Compute;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.ComputeElement;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.Sorting;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.Sorting.SortingOrder;
+import com.google.cloud.bigquery.federation.v1alpha1.DataSource;
+import com.google.cloud.bigquery.federation.v1alpha1.DataSource.Capability;
+import com.google.cloud.bigquery.federation.v1alpha1.Expression;
+import com.google.cloud.bigquery.federation.v1alpha1.FieldExpression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionExpression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionSignatureId;
+import com.google.cloud.bigquery.federation.v1alpha1.NamedTable;
+import com.google.cloud.bigquery.federation.v1alpha1.TypeKind;
+import com.google.cloud.bigquery.federation.v1alpha1.Value;
+import com.google.cloud.connector.data.FunctionIds;
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.Int64Value;
+import com.google.protobuf.NullValue;
+import io.substrait.proto.Capabilities;
+import io.substrait.proto.Expression.Cast;
+import io.substrait.proto.Expression.FieldReference;
+import io.substrait.proto.Expression.Literal;
+import io.substrait.proto.Expression.ScalarFunction;
+import io.substrait.proto.Expression.SingularOrList;
+import io.substrait.proto.FilterRel;
+import io.substrait.proto.FunctionArgument;
+import io.substrait.proto.NamedStruct;
+import io.substrait.proto.Plan;
+import io.substrait.proto.PlanRel;
+import io.substrait.proto.ProjectRel;
+import io.substrait.proto.ReadRel;
+import io.substrait.proto.Rel;
+import io.substrait.proto.RelCommon;
+import io.substrait.proto.RelRoot;
+import io.substrait.proto.SimpleExtensionDeclaration.ExtensionFunction;
+import io.substrait.proto.SimpleExtensionURI;
+import io.substrait.proto.SortField;
+import io.substrait.proto.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+import javax.annotation.Nullable;
+
+/**
+ * Splits Substrait plans between the connector and the caller for the v2alpha1 services. The
+ * relations of a plan that the connector supports are passed to it as a {@link DataQuery}, and the
+ * others are returned to the caller as the residual plan, which reads the result set of the
+ * connector instead of the named table.
+ *
+ * <p>Connectors declare the relations they can execute through their {@link Capability
+ * capabilities}: filters require {@link Capability#SUPPORTS_FILTER}, projections {@link
+ * Capability#SUPPORTS_COMPUTE}, sorts {@link Capability#SUPPORTS_SORTING} and fetches {@link
+ * Capability#SUPPORTS_LIMIT} and {@link Capability#SUPPORTS_OFFSET}. The Substrait functions that
+ * they can execute are the ones matching their supported function signatures, as published by
+ * {@link #getCapabilities(DataSource)}.
+ *
+ * <p>The plan must read a named table through a chain of single-input relations, which are pushed
+ * to the connector from the read upwards until the first relation that the connector doesn't
+ * support. The conjuncts of a filter that the connector doesn't support are kept in the residual
+ * plan, together with the relations that follow them.
+ */
+public final class SubstraitPlanner {
+
+  private static final String BOOLEAN_URI = "/functions_boolean.yaml";
+  private static final String COMPARISON_URI = "/functions_comparison.yaml";
+  private static final String ARITHMETIC_URI = "/functions_arithmetic.yaml";
+  private static final String DECIMAL_URI = "/functions_arithmetic_decimal.yaml";
+  private static final String STRING_URI = "/functions_string.yaml";
+
+  /** The key of the Substrait function translated to the negation of {@code is_null}. */
+  private static final String IS_NOT_NULL = "is_not_null:any";
+
+  /** The Substrait functions that map to function signatures of connectors. */
+  private static final ImmutableList<SubstraitFunction> FUNCTIONS =
+      ImmutableList.of(
+          function(BOOLEAN_URI, "and:bool", null, FunctionSignatureId.FN_AND),
+          function(BOOLEAN_URI, "or:bool", null, FunctionSignatureId.FN_OR),
+          function(BOOLEAN_URI, "not:bool", null, FunctionSignatureId.FN_NOT),
+          function(COMPARISON_URI, "equal:any_any", null, FunctionSignatureId.FN_EQUAL),
+          function(COMPARISON_URI, "not_equal:any_any", null, FunctionSignatureId.FN_NOT_EQUAL),
+          function(COMPARISON_URI, "lt:any_any", null, FunctionSignatureId.FN_LESS),
+          function(COMPARISON_URI, "lte:any_any", null, FunctionSignatureId.FN_LESS_OR_EQUAL),
+          function(COMPARISON_URI, "gt:any_any", null, FunctionSignatureId.FN_GREATER),
+          function(COMPARISON_URI, "gte:any_any", null, FunctionSignatureId.FN_GREATER_OR_EQUAL),
+          function(COMPARISON_URI, "is_null:any", null, FunctionSignatureId.FN_IS_NULL),
+          function(STRING_URI, "like:str_str", null, FunctionSignatureId.FN_STRING_LIKE),
+          function(
+              ARITHMETIC_URI, "add:i64_i64", Type.KindCase.I64, FunctionSignatureId.FN_ADD_INT64),
+          function(
+              ARITHMETIC_URI,
+              "add:fp64_fp64",
+              Type.KindCase.FP64,
+              FunctionSignatureId.FN_ADD_DOUBLE),
+          function(
+              ARITHMETIC_URI,
+              "subtract:i64_i64",
+              Type.KindCase.I64,
+              FunctionSignatureId.FN_SUBTRACT_INT64),
+          function(
+              ARITHMETIC_URI,
+              "subtract:fp64_fp64",
+              Type.KindCase.FP64,
+              FunctionSignatureId.FN_SUBTRACT_DOUBLE),
+          function(
+              ARITHMETIC_URI,
+              "multiply:i64_i64",
+              Type.KindCase.I64,
+              FunctionSignatureId.FN_MULTIPLY_INT64),
+          function(
+              ARITHMETIC_URI,
+              "multiply:fp64_fp64",
+              Type.KindCase.FP64,
+              FunctionSignatureId.FN_MULTIPLY_DOUBLE),
+          function(
+              ARITHMETIC_URI,
+              "divide:fp64_fp64",
+              Type.KindCase.FP64,
+              FunctionSignatureId.FN_DIVIDE_DOUBLE),
+          function(
+              DECIMAL_URI,
+              "add:dec_dec",
+              Type.KindCase.DECIMAL,
+              FunctionSignatureId.FN_ADD_NUMERIC),
+          function(
+              DECIMAL_URI,
+              "subtract:dec_dec",
+              Type.KindCase.DECIMAL,
+              FunctionSignatureId.FN_SUBTRACT_NUMERIC),
+          function(
+              DECIMAL_URI,
+              "multiply:dec_dec",
+              Type.KindCase.DECIMAL,
+              FunctionSignatureId.FN_MULTIPLY_NUMERIC),
+          function(
+              DECIMAL_URI,
+              "divide:dec_dec",
+              Type.KindCase.DECIMAL,
+              FunctionSignatureId.FN_DIVIDE_NUMERIC));
+
+  private SubstraitPlanner() {}
+
+  /**
+   * Returns the Substrait {@link Capabilities} of the given {@link DataSource}, which declare the
+   * Substrait functions matching the function signatures that the connector supports, if it
+   * supports filters or projections.
+   */
+  public static Capabilities getCapabilities(DataSource dataSource) {
+    if (!dataSource.getCapabilitiesList().contains(Capability.SUPPORTS_FILTER)
+        && !dataSource.getCapabilitiesList().contains(Capability.SUPPORTS_COMPUTE)) {
+      return Capabilities.getDefaultInstance();
+    }
+    Map<String, Capabilities.SimpleExtension.Builder> extensions = new LinkedHashMap<>();
+    for (SubstraitFunction function : FUNCTIONS) {
+      if (supportsFunction(dataSource, function.signatureId())) {
+        extensions
+            .computeIfAbsent(
+                function.uri(), uri -> Capabilities.SimpleExtension.newBuilder().setUri(uri))
+            .addFunctionKeys(function.key());
+      }
+    }
+    if (supportsFunction(dataSource, FunctionSignatureId.FN_NOT)
+        && supportsFunction(dataSource, FunctionSignatureId.FN_IS_NULL)) {
+      extensions
+          .computeIfAbsent(
+              COMPARISON_URI, uri -> Capabilities.SimpleExtension.newBuilder().setUri(uri))
+          .addFunctionKeys(IS_NOT_NULL);
+    }
+    Capabilities.Builder capabilities = Capabilities.newBuilder();
+    extensions.values().forEach(capabilities::addSimpleExtensions);
+    return capabilities.build();
+  }
+
+  /**
+   * Splits the given plan between the connector and the caller.
+   *
+   * @param plan the Substrait plan to perform
+   * @param dataSource the {@link DataSource} declared by the connector
+   * @return the {@link SubstraitQueryPlan}, without a residual plan if the connector performs the
+   *     whole plan
+   * @throws IllegalArgumentException if the plan doesn't read a named table through a chain of
+   *     filters, projections, sorts, fetches and aggregations
+   */
+  public static SubstraitQueryPlan plan(Plan plan, DataSource dataSource) {
+    if (plan.getRelationsCount() != 1 || !plan.getRelations(0).hasRoot()) {
+      throw new IllegalArgumentException("The plan must have a single root relation");
+    }
+    RelRoot root = plan.getRelations(0).getRoot();
+    List<Rel> relations = new ArrayList<>();
+    Rel rel = root.getInput();
+    while (rel.getRelTypeCase() != Rel.RelTypeCase.READ) {
+      relations.add(rel);
+      rel = input(rel);
+    }
+    if (!rel.getRead().hasNamedTable()) {
+      throw new IllegalArgumentException("The plan must read a named table");
+    }
+    // From the read upwards
+    Collections.reverse(relations);
+
+    Pushdown pushdown = new Pushdown(plan, dataSource, rel.getRead());
+    Rel residual = pushdown.pushRead();
+    int next = 0;
+    while (residual == null && next < relations.size()) {
+      residual = pushdown.push(relations.get(next++));
+    }
+    for (; next < relations.size(); next++) {
+      residual = withInput(relations.get(next), residual);
+    }
+    if (residual == null && !pushdown.rename(root.getNamesList())) {
+      residual = pushdown.residualRead();
+    }
+
+    Plan residualPlan = null;
+    if (residual != null) {
+      residualPlan =
+          plan.toBuilder()
+              .setRelations(
+                  0, PlanRel.newBuilder().setRoot(root.toBuilder().setInput(residual)))
+              .build();
+    }
+    return new SubstraitQueryPlan(pushdown.connectorQuery(), residualPlan);
+  }
+
+  /** Returns the input of the given single-input relation. */
+  private static Rel input(Rel rel) {
+    return switch (rel.getRelTypeCase()) {
+      case FILTER -> rel.getFilter().getInput();
+      case PROJECT -> rel.getProject().getInput();
+      case SORT -> rel.getSort().getInput();
+      case FETCH -> rel.getFetch().getInput();
+      case AGGREGATE -> rel.getAggregate().getInput();
+      default -> throw new IllegalArgumentException(
+          "Unsupported relation in the plan: " + rel.getRelTypeCase());
+    };
+  }
+
+  /** Returns the given single-input relation with its input replaced by the given relation. */
+  private static Rel withInput(Rel rel, Rel input) {
+    Rel.Builder builder = rel.toBuilder();
+    switch (rel.getRelTypeCase()) {
+      case FILTER -> builder.getFilterBuilder().setInput(input);
+      case PROJECT -> builder.getProjectBuilder().setInput(input);
+      case SORT -> builder.getSortBuilder().setInput(input);
+      case FETCH -> builder.getFetchBuilder().setInput(input);
+      case AGGREGATE -> builder.getAggregateBuilder().setInput(input);
+      default -> throw new IllegalArgumentException(
+          "Unsupported relation in the plan: " + rel.getRelTypeCase());
+    }
+    return builder.build();
+  }
+
+  private static boolean supportsFunction(
+      DataSource dataSource, FunctionSignatureId signatureId) {
+    return dataSource.getSupportedFunctionSignaturesList().contains(signatureId)
+        || dataSource
+            .getSupportedFunctionsList()
+            .contains(
+                FunctionIds.of(
+                    FunctionExpression.newBuilder().setFunctionSignatureId(signatureId).build()));
+  }
+
+  /** Returns the name of the file of the given extension URI, without its directory. */
+  private static String fileName(String uri) {
+    return uri.substring(uri.lastIndexOf('/') + 1);
+  }
+
+  private static SubstraitFunction function(
+      String uri,
+      String key,
+      @Nullable Type.KindCase outputKind,
+      FunctionSignatureId signatureId) {
+    return new SubstraitFunction(uri, key, outputKind, signatureId);
+  }
+
+  /**
+   * A Substrait function that maps to a function signature of connectors.
+   *
+   * @param uri the URI of the extension declaring the function
+   * @param key the compound name of the function, with the types of its arguments
+   * @param outputKind the kind of the output type that selects the signature, or {@code null} if
+   *     the function has a single signature
+   * @param signatureId the function signature of connectors
+   */
+  private record SubstraitFunction(
+      String uri,
+      String key,
+      @Nullable Type.KindCase outputKind,
+      FunctionSignatureId signatureId) {
+
+    boolean matches(String functionUri, String functionName, Type outputType) {
+      String baseName = functionName.split(":", -1)[0];
+      return fileName(functionUri).equals(fileName(uri))
+          && key.startsWith(baseName + ":")
+          && (outputKind == null || outputKind == outputType.getKindCase());
+    }
+  }
+
+  /**
+   * A column of the records returned by the connector.
+   *
+   * @param name the name of the column
+   * @param expression the expression of the column over the fields of the named table
+   * @param type the Substrait type of the column
+   */
+  private record Column(String name, Expression expression, Type type) {}
+
+  /** A sorted column of the records returned by the connector. */
+  private record Sort(int index, SortingOrder order) {}
+
+  /** The state of the relations of a plan pushed to the connector. */
+  private static final class Pushdown {
+
+    private final DataSource dataSource;
+    private final ReadRel read;
+    private final Map<Integer, ExtensionFunction> functions = new HashMap<>();
+    private final Map<Integer, String> uris = new HashMap<>();
+    private final List<Column> fields = new ArrayList<>();
+    private final Set<String> names = new HashSet<>();
+    private final List<Expression> conjuncts = new ArrayList<>();
+    private List<Column> columns;
+    private List<Sort> sorts = List.of();
+    private boolean fetched;
+    @Nullable private Long limit;
+    private long offset;
+    private int nextName;
+
+    Pushdown(Plan plan, DataSource dataSource, ReadRel read) {
+      this.dataSource = dataSource;
+      this.read = read;
+      for (SimpleExtensionURI uri : plan.getExtensionUrisList()) {
+        uris.put(uri.getExtensionUriAnchor(), uri.getUri());
+      }
+      plan.getExtensionsList().stream()
+          .filter(extension -> extension.hasExtensionFunction())
+          .forEach(
+              extension ->
+                  functions.put(
+                      extension.getExtensionFunction().getFunctionAnchor(),
+                      extension.getExtensionFunction()));
+
+      NamedStruct schema = read.getBaseSchema();
+      if (schema.getNamesCount() != schema.getStruct().getTypesCount()) {
+        throw new IllegalArgumentException("Nested fields of named tables are not supported");
+      }
+      for (int i = 0; i < schema.getNamesCount(); i++) {
+        String name = schema.getNames(i);
+        fields.add(
+            new Column(
+                name,
+                Expression.newBuilder()
+                    .setField(FieldExpression.newBuilder().setFieldName(name))
+                    .build(),
+                schema.getStruct().getTypes(i)));
+        names.add(name);
+      }
+      columns = new ArrayList<>(fields);
+    }
+
+    /**
+     * Pushes the filter and the projection of the read to the connector.
+     *
+     * @return the relation replacing the read in the residual plan, or {@code null} if the
+     *     connector performs the whole read
+     */
+    @Nullable
+    Rel pushRead() {
+      List<Integer> mapping = null;
+      if (read.hasProjection()) {
+        mapping = new ArrayList<>();
+        for (var item : read.getProjection().getSelect().getStructItemsList()) {
+          if (item.hasChild()) {
+            throw new IllegalArgumentException("Projections of nested fields are not supported");
+          }
+          mapping.add(item.getField());
+        }
+      }
+      if (read.getCommon().hasEmit()) {
+        List<Integer> emit = read.getCommon().getEmit().getOutputMappingList();
+        mapping = mapping == null ? emit : emit.stream().map(mapping::get).toList();
+      }
+      RelCommon common =
+          mapping == null
+              ? RelCommon.getDefaultInstance()
+              : RelCommon.newBuilder()
+                  .setEmit(RelCommon.Emit.newBuilder().addAllOutputMapping(mapping))
+                  .build();
+
+      if (read.hasFilter()) {
+        io.substrait.proto.Expression condition = pushFilter(read.getFilter());
+        if (condition != null) {
+          // The projection of the read follows its filter
+          return Rel.newBuilder()
+              .setFilter(
+                  FilterRel.newBuilder()
+                      .setCommon(common)
+                      .setInput(residualRead())
+                      .setCondition(condition))
+              .build();
+        }
+      }
+      return emit(common);
+    }
+
+    /**
+     * Pushes the given relation to the connector.
+     *
+     * @return the relation replacing the given relation in the residual plan, or {@code null} if
+     *     the connector performs the whole relation
+     */
+    @Nullable
+    Rel push(Rel rel) {
+      return switch (rel.getRelTypeCase()) {
+        case FILTER -> pushFilterRel(rel);
+        case PROJECT -> pushProject(rel);
+        case SORT -> pushSort(rel);
+        case FETCH -> pushFetch(rel);
+        default -> withInput(rel, residualRead());
+      };
+    }
+
+    @Nullable
+    private Rel pushFilterRel(Rel rel) {
+      // Filters don't commute with fetches
+      if (fetched) {
+        return withInput(rel, residualRead());
+      }
+      io.substrait.proto.Expression condition = pushFilter(rel.getFilter().getCondition());
+      if (condition != null) {
+        return Rel.newBuilder()
+            .setFilter(
+                rel.getFilter().toBuilder().setInput(residualRead()).setCondition(condition))
+            .build();
+      }
+      return emit(rel.getFilter().getCommon());
+    }
+
+    @Nullable
+    private Rel pushProject(Rel rel) {
+      // The sorting of the connector is applied to its computed columns
+      if (!sorts.isEmpty() || fetched || !hasCapability(Capability.SUPPORTS_COMPUTE)) {
+        return withInput(rel, residualRead());
+      }
+      List<Expression> expressions = new ArrayList<>();
+      List<Type> types = new ArrayList<>();
+      for (io.substrait.proto.Expression expression : rel.getProject().getExpressionsList()) {
+        Expression translated = translate(expression);
+        Type type = typeOf(expression);
+        if (translated == null || type == null) {
+          return withInput(rel, residualRead());
+        }
+        expressions.add(translated);
+        types.add(type);
+      }
+      for (int i = 0; i < expressions.size(); i++) {
+        columns.add(new Column(newName(), expressions.get(i), types.get(i)));
+      }
+      return emit(rel.getProject().getCommon());
+    }
+
+    @Nullable
+    private Rel pushSort(Rel rel) {
+      if (fetched || !hasCapability(Capability.SUPPORTS_SORTING)) {
+        return withInput(rel, residualRead());
+      }
+      List<Sort> sorting = new ArrayList<>();
+      for (SortField field : rel.getSort().getSortsList()) {
+        Integer index = fieldIndex(field.getExpr());
+        SortingOrder order = sortingOrder(field);
+        if (index == null || order == null) {
+          return withInput(rel, residualRead());
+        }
+        sorting.add(new Sort(index, order));
+      }
+      sorts = sorting;
+      return emit(rel.getSort().getCommon());
+    }
+
+    @Nullable
+    private Rel pushFetch(Rel rel) {
+      long count = rel.getFetch().getCount();
+      long fetchOffset = rel.getFetch().getOffset();
+      if (fetched
+          || (count >= 0 && !hasCapability(Capability.SUPPORTS_LIMIT))
+          || (fetchOffset > 0 && !hasCapability(Capability.SUPPORTS_OFFSET))) {
+        return withInput(rel, residualRead());
+      }
+      fetched = true;
+      // A negative count fetches all the records
+      limit = count >= 0 ? count : null;
+      offset = fetchOffset;
+      return emit(rel.getFetch().getCommon());
+    }
+
+    /**
+     * Pushes the conjuncts of the given condition that the connector supports.
+     *
+     * @return the conjunction of the conjuncts left to the caller, or {@code null} if the
+     *     connector applies the whole condition
+     */
+    @Nullable
+    private io.substrait.proto.Expression pushFilter(io.substrait.proto.Expression condition) {
+      if (!hasCapability(Capability.SUPPORTS_FILTER)) {
+        return condition;
+      }
+      List<io.substrait.proto.Expression> residualConjuncts = new ArrayList<>();
+      for (io.substrait.proto.Expression conjunct : conjuncts(condition)) {
+        Expression translated = translate(conjunct);
+        if (translated == null) {
+          residualConjuncts.add(conjunct);
+        } else {
+          conjuncts.add(translated);
+        }
+      }
+      if (residualConjuncts.isEmpty()) {
+        return null;
+      }
+      if (residualConjuncts.size() == 1) {
+        return residualConjuncts.get(0);
+      }
+      // Only an AND has several conjuncts
+      ScalarFunction.Builder and = condition.getScalarFunction().toBuilder().clearArguments();
+      residualConjuncts.forEach(
+          conjunct -> and.addArguments(FunctionArgument.newBuilder().setValue(conjunct)));
+      return condition.toBuilder().setScalarFunction(and).build();
+    }
+
+    /** Returns the conjuncts of the given condition, which is itself if not an AND. */
+    private List<io.substrait.proto.Expression> conjuncts(
+        io.substrait.proto.Expression condition) {
+      if (!condition.hasScalarFunction()
+          || resolve(condition.getScalarFunction()) != FunctionSignatureId.FN_AND) {
+        return List.of(condition);
+      }
+      List<io.substrait.proto.Expression> conjuncts = new ArrayList<>();
+      for (FunctionArgument argument : condition.getScalarFunction().getArgumentsList()) {
+        if (!argument.hasValue()) {
+          return List.of(condition);
+        }
+        conjuncts.addAll(conjuncts(argument.getValue()));
+      }
+      return conjuncts;
+    }
+
+    /**
+     * Applies the given emit of a pushed relation to the columns, which requires the connector to
+     * compute them if they are selected in a different order.
+     *
+     * @return the relation applying the emit in the residual plan, or {@code null} if the
+     *     connector applies it
+     */
+    @Nullable
+    private Rel emit(RelCommon common) {
+      if (!common.hasEmit() || select(common.getEmit().getOutputMappingList())) {
+        return null;
+      }
+      return Rel.newBuilder()
+          .setProject(ProjectRel.newBuilder().setCommon(common).setInput(residualRead()))
+          .build();
+    }
+
+    private boolean select(List<Integer> mapping) {
+      for (int index : mapping) {
+        checkIndex(index);
+      }
+      if (mapping.equals(IntStream.range(0, columns.size()).boxed().toList())) {
+        return true;
+      }
+      if (!hasCapability(Capability.SUPPORTS_COMPUTE)) {
+        return false;
+      }
+      List<Sort> sorting = new ArrayList<>();
+      for (Sort sort : sorts) {
+        int index = mapping.indexOf(sort.index());
+        if (index < 0) {
+          return false;
+        }
+        sorting.add(new Sort(index, sort.order()));
+      }
+      List<Column> selected = new ArrayList<>();
+      Set<String> selectedNames = new HashSet<>();
+      for (int index : mapping) {
+        Column column = columns.get(index);
+        if (!selectedNames.add(column.name())) {
+          column = new Column(newName(), column.expression(), column.type());
+        }
+        selected.add(column);
+      }
+      columns = selected;
+      sorts = sorting;
+      return true;
+    }
+
+    /**
+     * Renames the columns to the given names of the root relation, which requires the connector
+     * to compute them if the names differ.
+     *
+     * @return {@code true} if the columns are named as the root relation
+     */
+    boolean rename(List<String> rootNames) {
+      if (columns.stream().map(Column::name).toList().equals(rootNames)) {
+        return true;
+      }
+      if (rootNames.size() != columns.size()
+          || new HashSet<>(rootNames).size() != rootNames.size()
+          || !hasCapability(Capability.SUPPORTS_COMPUTE)) {
+        return false;
+      }
+      columns =
+          IntStream.range(0, columns.size())
+              .mapToObj(
+                  i ->
+                      new Column(
+                          rootNames.get(i),
+                          columns.get(i).expression(),
+                          columns.get(i).type()))
+              .toList();
+      return true;
+    }
+
+    /** Returns the query of the relations pushed to the connector. */
+    DataQuery connectorQuery() {
+      DataQuery.Builder query =
+          DataQuery.newBuilder()
+              .setNamedTable(
+                  NamedTable.newBuilder().addAllNames(read.getNamedTable().getNamesList()));
+      if (!conjuncts.isEmpty()) {
+        query.setFilterPredicate(QueryPlanner.and(conjuncts));
+      }
+      if (!columns.equals(fields)) {
+        Compute.Builder compute = query.getComputeBuilder();
+        for (Column column : columns) {
+          compute.addElements(
+              ComputeElement.newBuilder()
+                  .setFieldName(column.name())
+                  .setExpression(column.expression()));
+        }
+      }
+      for (Sort sort : sorts) {
+        query.addSorting(
+            Sorting.newBuilder()
+                .setFieldName(columns.get(sort.index()).name())
+                .setSortingOrder(sort.order()));
+      }
+      if (limit != null) {
+        query.setLimit(Int64Value.of(limit));
+      }
+      if (offset > 0) {
+        query.setOffset(Int64Value.of(offset));
+      }
+      return query.build();
+    }
+
+    /** Returns the read of the result set of the connector in the residual plan. */
+    Rel residualRead() {
+      NamedStruct.Builder schema = NamedStruct.newBuilder();
+      Type.Struct.Builder struct =
+          schema.getStructBuilder().setNullability(Type.Nullability.NULLABILITY_REQUIRED);
+      for (Column column : columns) {
+        schema.addNames(column.name());
+        struct.addTypes(column.type());
+      }
+      return Rel.newBuilder()
+          .setRead(
+              ReadRel.newBuilder()
+                  .setBaseSchema(schema)
+                  .setNamedTable(
+                      ReadRel.NamedTable.newBuilder().addNames(QueryPlanner.RESULT_SET_LABEL)))
+          .build();
+    }
+
+    /**
+     * Translates the given Substrait expression over the columns to an expression over the fields
+     * of the named table.
+     *
+     * @return the expression, or {@code null} if the connector doesn't support it
+     */
+    @Nullable
+    private Expression translate(io.substrait.proto.Expression expression) {
+      return switch (expression.getRexTypeCase()) {
+        case SELECTION -> {
+          Integer index = fieldIndex(expression);
+          yield index == null ? null : columns.get(index).expression();
+        }
+        case LITERAL -> {
+          Value value = value(expression.getLiteral());
+          yield value == null ? null : Expression.newBuilder().setConstant(value).build();
+        }
+        case SCALAR_FUNCTION -> translateFunction(expression.getScalarFunction());
+        case SINGULAR_OR_LIST -> translateIn(expression.getSingularOrList());
+        case CAST -> translateCast(expression.getCast());
+        default -> null;
+      };
+    }
+
+    @Nullable
+    private Expression translateFunction(ScalarFunction function) {
+      List<Expression> arguments = new ArrayList<>();
+      for (FunctionArgument argument : function.getArgumentsList()) {
+        Expression translated = argument.hasValue() ? translate(argument.getValue()) : null;
+        if (translated == null) {
+          return null;
+        }
+        arguments.add(translated);
+      }
+      if (isNotNull(function)) {
+        return supportsFunction(dataSource, FunctionSignatureId.FN_NOT)
+                && supportsFunction(dataSource, FunctionSignatureId.FN_IS_NULL)
+            ? call(
+                FunctionSignatureId.FN_NOT,
+                List.of(call(FunctionSignatureId.FN_IS_NULL, arguments)))
+            : null;
+      }
+      FunctionSignatureId signatureId = resolve(function);
+      return signatureId == null || !supportsFunction(dataSource, signatureId)
+          ? null
+          : call(signatureId, arguments);
+    }
+
+    @Nullable
+    private Expression translateIn(SingularOrList in) {
+      if (!supportsFunction(dataSource, FunctionSignatureId.FN_IN)) {
+        return null;
+      }
+      List<Expression> arguments = new ArrayList<>();
+      for (io.substrait.proto.Expression argument :
+          ImmutableList.<io.substrait.proto.Expression>builder()
+              .add(in.getValue())
+              .addAll(in.getOptionsList())
+              .build()) {
+        Expression translated = translate(argument);
+        if (translated == null) {
+          return null;
+        }
+        arguments.add(translated);
+      }
+      return call(FunctionSignatureId.FN_IN, arguments);
+    }
+
+    @Nullable
+    private Expression translateCast(Cast cast) {
+      TypeKind typeKind = typeKind(cast.getType());
+      if (!hasCapability(Capability.SUPPORTS_TYPE_CAST) || typeKind == null) {
+        return null;
+      }
+      Expression argument = translate(cast.getInput());
+      if (argument == null) {
+        return null;
+      }
+      return Expression.newBuilder()
+          .setCast(
+              CastExpression.newBuilder()
+                  .setType(
+                      com.google.cloud.bigquery.federation.v1alpha1.Type.newBuilder()
+                          .setTypeKind(typeKind))
+                  .setArgument(argument))
+          .build();
+    }
+
+    /** Returns the function signature of the given Substrait function, if known. */
+    @Nullable
+    private FunctionSignatureId resolve(ScalarFunction function) {
+      ExtensionFunction declaration = declaration(function);
+      String uri = uris.getOrDefault(declaration.getExtensionUriReference(), "");
+      return FUNCTIONS.stream()
+          .filter(known -> known.matches(uri, declaration.getName(), function.getOutputType()))
+          .map(SubstraitFunction::signatureId)
+          .findFirst()
+          .orElse(null);
+    }
+
+    private boolean isNotNull(ScalarFunction function) {
+      ExtensionFunction declaration = declaration(function);
+      String uri = uris.getOrDefault(declaration.getExtensionUriReference(), "");
+      return fileName(uri).equals(fileName(COMPARISON_URI))
+          && IS_NOT_NULL.startsWith(declaration.getName().split(":", -1)[0] + ":");
+    }
+
+    private ExtensionFunction declaration(ScalarFunction function) {
+      ExtensionFunction declaration = functions.get(function.getFunctionReference());
+      if (declaration == null) {
+        throw new IllegalArgumentException(
+            "Undeclared function reference in the plan: " + function.getFunctionReference());
+      }
+      return declaration;
+    }
+
+    /** Returns the type of the given Substrait expression, if known. */
+    @Nullable
+    private Type typeOf(io.substrait.proto.Expression expression) {
+      return switch (expression.getRexTypeCase()) {
+        case SELECTION -> {
+          Integer index = fieldIndex(expression);
+          yield index == null ? null : columns.get(index).type();
+        }
+        case LITERAL -> literalType(expression.getLiteral());
+        case SCALAR_FUNCTION -> expression.getScalarFunction().getOutputType();
+        case SINGULAR_OR_LIST -> Type.newBuilder()
+            .setBool(
+                Type.Boolean.newBuilder().setNullability(Type.Nullability.NULLABILITY_NULLABLE))
+            .build();
+        case CAST -> expression.getCast().getType();
+        default -> null;
+      };
+    }
+
+    /** Returns the index of the column of the given direct reference, if it is one. */
+    @Nullable
+    private Integer fieldIndex(io.substrait.proto.Expression expression) {
+      if (!expression.hasSelection()) {
+        return null;
+      }
+      FieldReference reference = expression.getSelection();
+      if (!reference.hasDirectReference()
+          || !reference.getDirectReference().hasStructField()
+          || reference.getDirectReference().getStructField().hasChild()
+          || reference.hasExpression()
+          || reference.hasOuterReference()) {
+        return null;
+      }
+      int index = reference.getDirectReference().getStructField().getField();
+      checkIndex(index);
+      return index;
+    }
+
+    private void checkIndex(int index) {
+      if (index < 0 || index >= columns.size()) {
+        throw new IllegalArgumentException("Invalid field reference in the plan: " + index);
+      }
+    }
+
+    private String newName() {
+      String name;
+      do {
+        name = "expr" + nextName++;
+      } while (!names.add(name));
+      return name;
+    }
+
+    private boolean hasCapability(Capability capability) {
+      return dataSource.getCapabilitiesList().contains(capability);
+    }
+  }
+
+  /**
+   * Returns the sorting order of the given sort field. Only the orders that sort nulls as
+   * connectors do are supported, which is first when ascending and last when descending.
+   */
+  @Nullable
+  private static SortingOrder sortingOrder(SortField field) {
+    if (field.getSortKindCase() != SortField.SortKindCase.DIRECTION) {
+      return null;
+    }
+    return switch (field.getDirection()) {
+      case SORT_DIRECTION_ASC_NULLS_FIRST -> SortingOrder.ASCENDING;
+      case SORT_DIRECTION_DESC_NULLS_LAST -> SortingOrder.DESCENDING;
+      default -> null;
+    };
+  }
+
+  private static Expression call(FunctionSignatureId signatureId, List<Expression> arguments) {
+    return Expression.newBuilder()
+        .setFunction(
+            FunctionExpression.newBuilder()
+                .setFunctionSignatureId(signatureId)
+                .addAllArguments(arguments))
+        .build();
+  }
+
+  /** Returns the value of the given Substrait literal, if it has a matching value. */
+  @Nullable
+  private static Value value(Literal literal) {
+    Value.Builder value = Value.newBuilder();
+    switch (literal.getLiteralTypeCase()) {
+      case BOOLEAN -> value.setBoolValue(literal.getBoolean());
+      case I8 -> value.setInt64Value(literal.getI8());
+      case I16 -> value.setInt64Value(literal.getI16());
+      case I32 -> value.setInt64Value(literal.getI32());
+      case I64 -> value.setInt64Value(literal.getI64());
+      case FP32 -> value.setDoubleValue(literal.getFp32());
+      case FP64 -> value.setDoubleValue(literal.getFp64());
+      case STRING -> value.setStringValue(literal.getString());
+      case VAR_CHAR -> value.setStringValue(literal.getVarChar().getValue());
+      case FIXED_CHAR -> value.setStringValue(literal.getFixedChar());
+      case BINARY -> value.setBytesValue(literal.getBinary());
+      case FIXED_BINARY -> value.setBytesValue(literal.getFixedBinary());
+      case DATE -> value.setDateValue(literal.getDate());
+      case DECIMAL -> value.setNumericValue(decimal(literal.getDecimal()));
+      case NULL -> value.setNullValue(NullValue.NULL_VALUE);
+      default -> {
+        return null;
+      }
+    }
+    return value.build();
+  }
+
+  /** Returns the given decimal, stored as a little-endian two's complement integer. */
+  private static String decimal(Literal.Decimal decimal) {
+    byte[] bytes = decimal.getValue().toByteArray();
+    byte[] bigEndian = new byte[bytes.length];
+    for (int i = 0; i < bytes.length; i++) {
+      bigEndian[i] = bytes[bytes.length - 1 - i];
+    }
+    return new BigDecimal(new BigInteger(bigEndian), decimal.getScale()).toPlainString();
+  }
+
+  /** Returns the type of the given Substrait literal, if it has a matching value. */
+  @Nullable
+  private static Type literalType(Literal literal) {
+    Type.Nullability nullability =
+        literal.getNullable()
+            ? Type.Nullability.NULLABILITY_NULLABLE
+            : Type.Nullability.NULLABILITY_REQUIRED;
+    Type.Builder type = Type.newBuilder();
+    switch (literal.getLiteralTypeCase()) {
+      case BOOLEAN -> type.setBool(Type.Boolean.newBuilder().setNullability(nullability));
+      case I32 -> type.setI32(Type.I32.newBuilder().setNullability(nullability));
+      case I64 -> type.setI64(Type.I64.newBuilder().setNullability(nullability));
+      case FP32 -> type.setFp32(Type.FP32.newBuilder().setNullability(nullability));
+      case FP64 -> type.setFp64(Type.FP64.newBuilder().setNullability(nullability));
+      case STRING -> type.setString(Type.String.newBuilder().setNullability(nullability));
+      case BINARY -> type.setBinary(Type.Binary.newBuilder().setNullability(nullability));
+      case DATE -> type.setDate(Type.Date.newBuilder().setNullability(nullability));
+      case DECIMAL -> type.setDecimal(
+          Type.Decimal.newBuilder()
+              .setPrecision(literal.getDecimal().getPrecision())
+              .setScale(literal.getDecimal().getScale())
+              .setNullability(nullability));
+      case NULL -> type.mergeFrom(literal.getNull());
+      default -> {
+        return null;
+      }
+    }
+    return type.build();
+  }
+
+  /** Returns the kind of the given Substrait type that casts translate to, if any. */
+  @Nullable
+  private static TypeKind typeKind(Type type) {
+    return switch (type.getKindCase()) {
+      case BOOL -> TypeKind.BOOL;
+      case I8, I16, I32, I64 -> TypeKind.INT64;
+      case FP32, FP64 -> TypeKind.DOUBLE;
+      case DECIMAL -> TypeKind.NUMERIC;
+      case STRING, VARCHAR, FIXED_CHAR -> TypeKind.STRING;
+      case BINARY, FIXED_BINARY -> TypeKind.BYTES;
+      case DATE -> TypeKind.DATE;
+      default -> null;
+    };
+  }
+}
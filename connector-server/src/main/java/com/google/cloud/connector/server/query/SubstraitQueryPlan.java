@@ -0,0 +1,16 @@
+package com.google.cloud.connector.server.query;
+
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import io.substrait.proto.Plan;
+import javax.annotation.Nullable;
+
+/**
+ * The split of a Substrait plan between the connector and the caller, made by {@link
+ * SubstraitPlanner}.
+ *
+ * @param connectorQuery the query to pass to the connector, with the relations of the plan that
+ *     the connector supports
+ * @param residualPlan the plan that the caller must perform on the result set, with the relations
+ *     that the connector doesn't support, if any
+ */
+public record SubstraitQueryPlan(DataQuery connectorQuery, @Nullable Plan residualPlan) {}
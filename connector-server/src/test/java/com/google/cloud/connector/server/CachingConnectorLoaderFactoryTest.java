@@ -1,14 +1,23 @@
 package com.google.cloud.connector.server;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import org.junit.Test;
+import com.google.common.base.Ticker;
+import io.opentelemetry.api.OpenTelemetry;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
 
 /** Unit test for {@link CachingConnectorLoaderFactory}. */
 public class CachingConnectorLoaderFactoryTest {
@@ -84,4 +93,168 @@ public class CachingConnectorLoaderFactoryTest {
     cachingLoaderFactory.close();
     verify(mockLoader, times(2)).close();
   }
+
+  @Test
+  public void loader_closeDeferredUntilReleased() {
+    ConnectorLoaderFactory mockLoaderFactory = mock(ConnectorLoaderFactory.class);
+    ConnectorLoader mockLoader1 = mock(ConnectorLoader.class);
+    ConnectorLoader mockLoader2 = mock(ConnectorLoader.class);
+    when(mockLoaderFactory.get("datasource1")).thenReturn(mockLoader1);
+    when(mockLoaderFactory.get("datasource2")).thenReturn(mockLoader2);
+
+    CachingConnectorLoaderFactory cachingLoaderFactory =
+        new CachingConnectorLoaderFactory(
+            new ConnectorLoaderConfig("notused", 1, Duration.ofHours(1), Duration.ofMinutes(1)),
+            mockLoaderFactory);
+
+    ConnectorLoader loader1 = cachingLoaderFactory.get("datasource1");
+    // Loading the second data source evicts the first one, which is still in use
+    try (ConnectorLoader loader2 = cachingLoaderFactory.get("datasource2")) {
+      assertThat(loader2).isNotSameInstanceAs(loader1);
+    }
+    verify(mockLoader1, never()).close();
+
+    loader1.close();
+    verify(mockLoader1).close();
+    verify(mockLoader2, never()).close();
+  }
+
+  @Test
+  public void loader_closeOnIdleExpiry() {
+    ConnectorLoaderFactory mockLoaderFactory = mock(ConnectorLoaderFactory.class);
+    ConnectorLoader mockLoader = mock(ConnectorLoader.class);
+    when(mockLoaderFactory.get(anyString())).thenReturn(mockLoader);
+    AtomicLong nanos = new AtomicLong();
+
+    CachingConnectorLoaderFactory cachingLoaderFactory =
+        new CachingConnectorLoaderFactory(
+            new ConnectorLoaderConfig("notused", 10, Duration.ofMinutes(1), Duration.ofMinutes(1)),
+            OpenTelemetry.noop(),
+            mockLoaderFactory,
+            new Ticker() {
+              @Override
+              public long read() {
+                return nanos.get();
+              }
+            });
+
+    cachingLoaderFactory.get("datasource").close();
+    nanos.addAndGet(Duration.ofMinutes(2).toNanos());
+    cachingLoaderFactory.get("datasource").close();
+
+    // The first loader is expired and closed, and a new one was created
+    verify(mockLoaderFactory, times(2)).get("datasource");
+    verify(mockLoader).close();
+  }
+
+  @Test
+  public void get_notFoundCached() {
+    ConnectorLoaderFactory mockLoaderFactory = mock(ConnectorLoaderFactory.class);
+    when(mockLoaderFactory.get(anyString()))
+        .thenThrow(new UncheckedIOException(new NoSuchFileException("unknown")));
+
+    CachingConnectorLoaderFactory cachingLoaderFactory =
+        new CachingConnectorLoaderFactory(
+            new ConnectorLoaderConfig("notused", 10, Duration.ofHours(1), Duration.ofMinutes(1)),
+            mockLoaderFactory);
+
+    for (int i = 0; i < 3; i++) {
+      UncheckedIOException exception =
+          assertThrows(UncheckedIOException.class, () -> cachingLoaderFactory.get("unknown"));
+      assertThat(exception).hasCauseThat().isInstanceOf(NoSuchFileException.class);
+    }
+    verify(mockLoaderFactory).get("unknown");
+  }
+
+  @Test
+  public void reload_swapsLoader() {
+    ConnectorLoaderFactory mockLoaderFactory = mock(ConnectorLoaderFactory.class);
+    ConnectorLoader mockLoader1 = mock(ConnectorLoader.class);
+    ConnectorLoader mockLoader2 = mock(ConnectorLoader.class);
+    when(mockLoaderFactory.get("datasource")).thenReturn(mockLoader1, mockLoader2);
+
+    CachingConnectorLoaderFactory cachingLoaderFactory =
+        new CachingConnectorLoaderFactory(
+            new ConnectorLoaderConfig("notused", true), mockLoaderFactory);
+
+    ConnectorLoader loader1 = cachingLoaderFactory.get("datasource");
+    cachingLoaderFactory.reload("datasource");
+
+    // The new loader is preloaded and used for new calls
+    verify(mockLoader2).preload();
+    try (ConnectorLoader loader2 = cachingLoaderFactory.get("datasource")) {
+      assertThat(loader2).isNotSameInstanceAs(loader1);
+    }
+    verify(mockLoader2, never()).close();
+
+    // The old loader is closed after the in-flight call completed
+    verify(mockLoader1, never()).close();
+    loader1.close();
+    verify(mockLoader1).close();
+  }
+
+  @Test
+  public void reload_notCached() {
+    ConnectorLoaderFactory mockLoaderFactory = mock(ConnectorLoaderFactory.class);
+
+    CachingConnectorLoaderFactory cachingLoaderFactory =
+        new CachingConnectorLoaderFactory(
+            new ConnectorLoaderConfig("notused", true), mockLoaderFactory);
+    cachingLoaderFactory.reload("datasource");
+
+    verify(mockLoaderFactory, never()).get(anyString());
+  }
+
+  @Test
+  public void reload_failureKeepsLoader() {
+    ConnectorLoaderFactory mockLoaderFactory = mock(ConnectorLoaderFactory.class);
+    ConnectorLoader mockLoader1 = mock(ConnectorLoader.class);
+    ConnectorLoader mockLoader2 = mock(ConnectorLoader.class);
+    when(mockLoaderFactory.get("datasource")).thenReturn(mockLoader1, mockLoader2);
+    doThrow(new IllegalStateException("broken")).when(mockLoader2).preload();
+
+    CachingConnectorLoaderFactory cachingLoaderFactory =
+        new CachingConnectorLoaderFactory(
+            new ConnectorLoaderConfig("notused", true), mockLoaderFactory);
+
+    ConnectorLoader loader1 = cachingLoaderFactory.get("datasource");
+    loader1.close();
+    cachingLoaderFactory.reload("datasource");
+
+    assertThat(cachingLoaderFactory.get("datasource")).isSameInstanceAs(loader1);
+    verify(mockLoader1, never()).close();
+    verify(mockLoader2).close();
+  }
+
+  @Test
+  public void reload_keepsNewerLoader() {
+    ConnectorLoaderFactory mockLoaderFactory = mock(ConnectorLoaderFactory.class);
+    ConnectorLoader mockLoader1 = mock(ConnectorLoader.class);
+    ConnectorLoader mockLoader2 = mock(ConnectorLoader.class);
+    ConnectorLoader mockLoader3 = mock(ConnectorLoader.class);
+    when(mockLoaderFactory.get("datasource")).thenReturn(mockLoader1, mockLoader2, mockLoader3);
+
+    CachingConnectorLoaderFactory cachingLoaderFactory =
+        new CachingConnectorLoaderFactory(
+            new ConnectorLoaderConfig("notused", true), mockLoaderFactory);
+    // The connector changes again while the first reload is preloading
+    doAnswer(
+            invocation -> {
+              cachingLoaderFactory.reload("datasource");
+              return null;
+            })
+        .when(mockLoader2)
+        .preload();
+
+    cachingLoaderFactory.get("datasource").close();
+    cachingLoaderFactory.reload("datasource");
+
+    verify(mockLoader1).close();
+    verify(mockLoader2).close();
+    verify(mockLoader3, never()).close();
+    try (ConnectorLoader loader = cachingLoaderFactory.get("datasource")) {
+      loader.preload();
+    }
+    verify(mockLoader3, times(2)).preload();
+  }
 }
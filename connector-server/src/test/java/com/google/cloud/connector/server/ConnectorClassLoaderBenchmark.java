@@ -0,0 +1,209 @@
+package com.google.cloud.connector.server;
+
+import com.google.cloud.connector.maven.ConnectorGeneratorMojo;
+import com.google.cloud.connector.server.connector.TestConnector;
+import com.google.cloud.connector.server.util.JarBuilder;
+import com.google.cloud.datafusion.common.lang.JarIndexClassLoader;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Benchmark for the connector {@link ClassLoader} created from a directory that contains the
+ * connector jar and a number of dependency jars. It compares the {@link JarIndexClassLoader} used
+ * by {@link LocalPathConnectorLoader} with a {@link URLClassLoader} that has a URL for every file
+ * under the directory. It can be run from the test classpath by calling the {@link
+ * #main(String[])} method.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConnectorClassLoaderBenchmark {
+
+  private static final int PACKAGES_PER_JAR = 20;
+  private static final int CLASSES_PER_PACKAGE = 10;
+  private static final String MISSING_CLASS = "com.example.missing.MissingClass";
+
+  @Param({"indexed", "url"})
+  public String loaderType;
+
+  @Param({"10", "200"})
+  public int dependencyJars;
+
+  private Path connectorDir;
+  private List<String> dependencyClassFiles;
+  private ClassLoader sharedClassLoader;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    String classFile = TestConnector.class.getName().replace('.', File.separatorChar) + ".class";
+    URL resource = getClass().getClassLoader().getResource(classFile);
+    String uriStr = resource.toURI().toString();
+    Path basePath =
+        Paths.get(URI.create(uriStr.substring(0, uriStr.length() - classFile.length())));
+
+    connectorDir = Files.createTempDirectory("connector-classloader-benchmark");
+    createConnectorJar(basePath, connectorDir.resolve("connector.jar"));
+    Path libDir = Files.createDirectory(connectorDir.resolve("lib"));
+    dependencyClassFiles = new ArrayList<>();
+    for (int i = 0; i < dependencyJars; i++) {
+      createDependencyJar(libDir.resolve("dependency-" + i + ".jar"), i);
+      dependencyClassFiles.add(dependencyClassFile(i, PACKAGES_PER_JAR - 1, 0));
+    }
+    sharedClassLoader = createClassLoader();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    ((Closeable) sharedClassLoader).close();
+    MoreFiles.deleteRecursively(connectorDir, RecursiveDeleteOption.ALLOW_INSECURE);
+  }
+
+  /**
+   * Creates a new class loader, loads the connector specification and the connector class,
+   * followed by looking up a class file from every dependency jar, which is what happens when the
+   * connector starts using its dependencies.
+   */
+  @Benchmark
+  public Class<?> startup() throws Exception {
+    ClassLoader classLoader = createClassLoader();
+    try {
+      if (classLoader.getResource(LocalPathConnectorLoader.CONNECTOR_PROTO_FILE) == null) {
+        throw new IllegalStateException("Missing connector specification");
+      }
+      Class<?> cls = Class.forName(TestConnector.class.getName(), true, classLoader);
+      for (String dependencyClassFile : dependencyClassFiles) {
+        if (classLoader.getResource(dependencyClassFile) == null) {
+          throw new IllegalStateException("Missing dependency class " + dependencyClassFile);
+        }
+      }
+      return cls;
+    } finally {
+      ((Closeable) classLoader).close();
+    }
+  }
+
+  /**
+   * Performs the class and resource lookups done when connectors are instantiated concurrently
+   * from the same class loader, including the lookup of a class that doesn't exist.
+   */
+  @Benchmark
+  @Threads(8)
+  public Object concurrentLookup() throws Exception {
+    try {
+      sharedClassLoader.loadClass(MISSING_CLASS);
+    } catch (ClassNotFoundException e) {
+      // Expected
+    }
+    sharedClassLoader.loadClass(TestConnector.class.getName());
+    return sharedClassLoader.getResource(LocalPathConnectorLoader.CONNECTOR_PROTO_FILE);
+  }
+
+  private ClassLoader createClassLoader() throws IOException {
+    ClassLoader parent = LocalPathConnectorLoader.CONNECTOR_PARENT_CLASSLOADER;
+    if ("indexed".equals(loaderType)) {
+      return new JarIndexClassLoader("benchmark", connectorDir, parent);
+    }
+    // The class loader created by LocalPathConnectorLoader before it was indexed
+    try (Stream<Path> paths = Files.walk(connectorDir)) {
+      return new URLClassLoader(
+          "benchmark",
+          paths.map(ConnectorClassLoaderBenchmark::toUrl).toArray(URL[]::new),
+          parent);
+    }
+  }
+
+  private static void createConnectorJar(Path basePath, Path jarFile) throws Exception {
+    ConnectorGeneratorMojo.create(
+            basePath,
+            basePath,
+            TestConnector.class.getName(),
+            LocalPathConnectorLoader.CONNECTOR_PROTO_FILE)
+        .execute();
+
+    List<Path> classFiles = new ArrayList<>();
+    Path packageDir =
+        basePath
+            .resolve(TestConnector.class.getName().replace('.', File.separatorChar) + ".class")
+            .getParent();
+    try (Stream<Path> files = Files.list(packageDir)) {
+      files
+          .filter(f -> f.getFileName().toString().startsWith(TestConnector.class.getSimpleName()))
+          .forEach(classFiles::add);
+    }
+    classFiles.add(basePath.resolve(LocalPathConnectorLoader.CONNECTOR_PROTO_FILE));
+    new JarBuilder(jarFile).addClassPaths(classFiles, basePath).build();
+  }
+
+  /** Creates a jar that has class entries in packages that are unique to the jar. */
+  private static void createDependencyJar(Path jarFile, int index) throws IOException {
+    byte[] content = new byte[128];
+    try (OutputStream os = Files.newOutputStream(jarFile);
+        JarOutputStream jarOutput = new JarOutputStream(os)) {
+      for (int i = 0; i < PACKAGES_PER_JAR; i++) {
+        for (int j = 0; j < CLASSES_PER_PACKAGE; j++) {
+          jarOutput.putNextEntry(new JarEntry(dependencyClassFile(index, i, j)));
+          jarOutput.write(content);
+          jarOutput.closeEntry();
+        }
+      }
+    }
+  }
+
+  private static String dependencyClassFile(int jarIndex, int packageIndex, int classIndex) {
+    return String.format(
+        "com/example/dep%d/pkg%d/Class%d.class", jarIndex, packageIndex, classIndex);
+  }
+
+  private static URL toUrl(Path path) {
+    try {
+      return path.toUri().toURL();
+    } catch (MalformedURLException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(
+            new OptionsBuilder()
+                .include(ConnectorClassLoaderBenchmark.class.getSimpleName())
+                .build())
+        .run();
+  }
+}
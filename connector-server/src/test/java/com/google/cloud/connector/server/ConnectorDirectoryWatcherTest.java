@@ -0,0 +1,38 @@
+package com.google.cloud.connector.server;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Unit test for {@link ConnectorDirectoryWatcher}. */
+public class ConnectorDirectoryWatcherTest {
+
+  @Test
+  public void watch_connectorChanged(@TempDir Path rootDir) throws Exception {
+    Path connectorDir = Files.createDirectories(rootDir.resolve("datasource1").resolve("lib"));
+    BlockingQueue<String> changes = new LinkedBlockingQueue<>();
+
+    try (ConnectorDirectoryWatcher ignored =
+        new ConnectorDirectoryWatcher(rootDir, Duration.ofMillis(200), changes::add)) {
+      // Multiple changes in the same connector are notified once
+      Files.writeString(connectorDir.resolve("connector.jar"), "v2");
+      Files.writeString(connectorDir.resolve("dependency.jar"), "v2");
+      assertThat(changes.poll(30, TimeUnit.SECONDS)).isEqualTo("datasource1");
+
+      // New connector directory is watched as well
+      Path newConnectorDir = Files.createDirectories(rootDir.resolve("datasource2"));
+      assertThat(changes.poll(30, TimeUnit.SECONDS)).isEqualTo("datasource2");
+      Files.writeString(newConnectorDir.resolve("connector.jar"), "v1");
+      assertThat(changes.poll(30, TimeUnit.SECONDS)).isEqualTo("datasource2");
+
+      assertThat(changes).isEmpty();
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package com.google.cloud.connector.server;
+
+import com.google.cloud.connector.api.Connector;
+import com.google.cloud.connector.maven.ConnectorGeneratorMojo;
+import com.google.cloud.connector.server.connector.TestConnector;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import java.io.File;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Benchmark for creating connector instances through {@link LocalPathConnectorLoader}. It can be
+ * run from the test classpath by calling the {@link #main(String[])} method.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConnectorInstantiationBenchmark {
+
+  private static final String PROTO_FILE = "benchmark_connector.proto";
+
+  private ConnectorLoader loader;
+  private Struct parameters;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    String classFile = TestConnector.class.getName().replace('.', File.separatorChar) + ".class";
+    URL resource = getClass().getClassLoader().getResource(classFile);
+    String uriStr = resource.toURI().toString();
+    Path basePath =
+        Paths.get(URI.create(uriStr.substring(0, uriStr.length() - classFile.length())));
+
+    ConnectorGeneratorMojo.create(basePath, basePath, TestConnector.class.getName(), PROTO_FILE)
+        .execute();
+    loader = new LocalPathConnectorLoader(basePath, PROTO_FILE);
+    parameters =
+        Struct.newBuilder()
+            .putFields("endpoint.host", Value.newBuilder().setStringValue("testhost").build())
+            .putFields("endpoint.port", Value.newBuilder().setNumberValue(43210).build())
+            .putFields(
+                "authentication.oauth.clientId",
+                Value.newBuilder().setStringValue("oauthclientid").build())
+            .putFields("threshold", Value.newBuilder().setNumberValue(0.6d).build())
+            .putFields("timeout", Value.newBuilder().setNumberValue(10000L).build())
+            .build();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    loader.close();
+  }
+
+  @Benchmark
+  public Connector instantiateConnector() {
+    return loader.instantiateConnector(parameters, Connector.class);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(
+            new OptionsBuilder()
+                .include(ConnectorInstantiationBenchmark.class.getSimpleName())
+                .build())
+        .run();
+  }
+}
@@ -0,0 +1,81 @@
+package com.google.cloud.connector.server;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.opentelemetry.api.OpenTelemetry;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+/** Unit test for {@link ConnectorPreloader}. */
+public class ConnectorPreloaderTest {
+
+  @Test
+  public void preload_allConnectors(@TempDir Path rootDir) throws Exception {
+    Files.createDirectory(rootDir.resolve("datasource1"));
+    Files.createDirectory(rootDir.resolve("datasource2"));
+    Files.writeString(rootDir.resolve("README"), "not a connector");
+
+    ConnectorLoaderFactory mockLoaderFactory = mock(ConnectorLoaderFactory.class);
+    ConnectorLoader mockLoader1 = mock(ConnectorLoader.class);
+    ConnectorLoader mockLoader2 = mock(ConnectorLoader.class);
+    when(mockLoaderFactory.get("datasource1")).thenReturn(mockLoader1);
+    when(mockLoaderFactory.get("datasource2")).thenReturn(mockLoader2);
+    // Failure of one connector doesn't fail the others
+    doThrow(new IllegalStateException("broken")).when(mockLoader1).preload();
+
+    new ConnectorPreloader(
+            new ConnectorLoaderConfig(rootDir.toString(), 2, 100),
+            mockLoaderFactory,
+            OpenTelemetry.noop())
+        .preload();
+
+    verify(mockLoader1).preload();
+    verify(mockLoader1).close();
+    verify(mockLoader2).preload();
+    verify(mockLoader2).close();
+    verify(mockLoaderFactory, never()).get("README");
+  }
+
+  @Test
+  public void preload_disabled(@TempDir Path rootDir) throws Exception {
+    Files.createDirectory(rootDir.resolve("datasource"));
+    ConnectorLoaderFactory mockLoaderFactory = mock(ConnectorLoaderFactory.class);
+
+    new ConnectorPreloader(
+            new ConnectorLoaderConfig(rootDir.toString(), true),
+            mockLoaderFactory,
+            OpenTelemetry.noop())
+        .preload();
+
+    verify(mockLoaderFactory, never()).get(anyString());
+  }
+
+  @Test
+  public void preload_limitedByCacheSize(@TempDir Path rootDir) throws Exception {
+    Files.createDirectory(rootDir.resolve("datasource1"));
+    Files.createDirectory(rootDir.resolve("datasource2"));
+    Files.createDirectory(rootDir.resolve("datasource3"));
+    ConnectorLoaderFactory mockLoaderFactory = mock(ConnectorLoaderFactory.class);
+    when(mockLoaderFactory.get(anyString())).thenAnswer(invocation -> mock(ConnectorLoader.class));
+
+    ConnectorLoaderConfig config = new ConnectorLoaderConfig();
+    new CommandLine(config)
+        .parseArgs(
+            "--connector-root-dir", rootDir.toString(),
+            "--loader-cache-max-size", "2",
+            "--preload-connectors");
+    new ConnectorPreloader(config, mockLoaderFactory, OpenTelemetry.noop()).preload();
+
+    verify(mockLoaderFactory).get("datasource1");
+    verify(mockLoaderFactory).get("datasource2");
+    verify(mockLoaderFactory, never()).get("datasource3");
+  }
+}
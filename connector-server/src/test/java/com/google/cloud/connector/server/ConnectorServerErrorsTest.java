@@ -196,6 +196,24 @@ public class ConnectorServerErrorsTest {
     assertEquals(Code.UNAVAILABLE.value(), status.getCode());
   }
 
+  @Test
+  public void readStream_unknownHandle_returnsNotFound() {
+    ReadStreamRequest request =
+        ReadStreamRequest.newBuilder()
+            .setResultStream(
+                getDatasetName(ErrorConnector.DATASOURCE_ID)
+                    + "/resultsets/query/streams/"
+                    + PartitionRegistry.HANDLE_PREFIX
+                    + "unknown")
+            .build();
+
+    // Clients read the stream by the stream id when the handle can't be resolved
+    StatusRuntimeException ex =
+        assertThrows(
+            StatusRuntimeException.class, () -> readerServiceClient.readStream(request).hasNext());
+    assertEquals(Code.NOT_FOUND, ex.getStatus().getCode());
+  }
+
   @Test
   public void browse_returnsWellFormattedException() throws Exception {
     // Browse from root level to get databases
@@ -308,22 +326,19 @@ public class ConnectorServerErrorsTest {
       }
     }
 
-    List<Path> resourceFiles = new ArrayList<>();
     ConnectorGeneratorMojo.create(
             classBasePath,
             classBasePath,
             clazz.getName(),
             LocalPathConnectorLoader.CONNECTOR_PROTO_FILE)
         .execute();
-    resourceFiles.add(classBasePath.resolve(LocalPathConnectorLoader.CONNECTOR_PROTO_FILE));
+    // The connector specification is at the root of the jar
+    classFiles.add(classBasePath.resolve(LocalPathConnectorLoader.CONNECTOR_PROTO_FILE));
 
     final Path connectorDir = Files.createDirectory(connectorTopRootDir.resolve(connectorName));
     final Path connectorJar = connectorDir.resolve(connectorName + ".jar");
     JarBuilder jarBuilder = new JarBuilder(connectorJar);
-    jarBuilder
-        .addClassPaths(classFiles, classBasePath)
-        .addResourcePaths(resourceFiles, classBasePath)
-        .build();
+    jarBuilder.addClassPaths(classFiles, classBasePath).build();
     return connectorJar;
   }
 }
@@ -726,8 +726,7 @@ public class ConnectorServerTest {
     String streamId = streamName.getComponent(COLLECTION_ID_STREAM).resourceId();
     assertThat(streamId).isNotNull();
 
-    String partitionData = new String(ResultStreamId.decode(streamId), StandardCharsets.UTF_8);
-    Partition partition = GSON.fromJson(partitionData, Partition.class);
+    Partition partition = ResultStreamId.decodePartition(streamId);
     assertNotNull(partition.query());
     String query = new String(partition.query(), StandardCharsets.UTF_8);
     assertThat(query).isEqualTo(tableId);
@@ -962,22 +961,19 @@ public class ConnectorServerTest {
       }
     }
 
-    List<Path> resourceFiles = new ArrayList<>();
     ConnectorGeneratorMojo.create(
             classBasePath,
             classBasePath,
             clazz.getName(),
             LocalPathConnectorLoader.CONNECTOR_PROTO_FILE)
         .execute();
-    resourceFiles.add(classBasePath.resolve(LocalPathConnectorLoader.CONNECTOR_PROTO_FILE));
+    // The connector specification is at the root of the jar
+    classFiles.add(classBasePath.resolve(LocalPathConnectorLoader.CONNECTOR_PROTO_FILE));
 
     final Path connectorDir = Files.createDirectory(connectorTopRootDir.resolve(connectorName));
     final Path connectorJar = connectorDir.resolve(connectorName + ".jar");
     JarBuilder jarBuilder = new JarBuilder(connectorJar);
-    jarBuilder
-        .addClassPaths(classFiles, classBasePath)
-        .addResourcePaths(resourceFiles, classBasePath)
-        .build();
+    jarBuilder.addClassPaths(classFiles, classBasePath).build();
     return connectorJar;
   }
 }
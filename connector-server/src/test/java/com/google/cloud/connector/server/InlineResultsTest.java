@@ -0,0 +1,82 @@
+package com.google.cloud.connector.server;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.cloud.bigquery.federation.v1alpha1.Data;
+import com.google.protobuf.ByteString;
+import io.grpc.stub.StreamObserver;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+/** Unit test for {@link InlineResults}. */
+public class InlineResultsTest {
+
+  @Test
+  public void collect_withinLimit() {
+    InlineResults inlineResults = new InlineResults(1024);
+
+    assertThat(inlineResults.collect(observer -> send(observer, 3)))
+        .isEqualTo(Optional.of(batches(3)));
+  }
+
+  @Test
+  public void collect_exceedsLimit() {
+    InlineResults inlineResults = new InlineResults(batch(0).getSerializedSize() * 2L);
+    AtomicInteger sent = new AtomicInteger();
+
+    Optional<List<Data>> result =
+        inlineResults.collect(
+            observer -> {
+              for (Data data : batches(10)) {
+                observer.onNext(data);
+                sent.incrementAndGet();
+              }
+              observer.onCompleted();
+            });
+
+    assertThat(result).isEqualTo(Optional.empty());
+    // The read is stopped as soon as the limit is exceeded
+    assertThat(sent.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void collect_readFailed() {
+    InlineResults inlineResults = new InlineResults(1024);
+
+    Optional<List<Data>> result =
+        inlineResults.collect(
+            observer -> {
+              observer.onNext(batch(0));
+              throw new IllegalStateException("failed");
+            });
+
+    assertThat(result).isEqualTo(Optional.empty());
+  }
+
+  @Test
+  public void collect_disabled() {
+    InlineResults inlineResults = new InlineResults(0);
+    AtomicInteger reads = new AtomicInteger();
+
+    assertThat(inlineResults.isEnabled()).isFalse();
+    assertThat(inlineResults.collect(observer -> reads.incrementAndGet()))
+        .isEqualTo(Optional.empty());
+    assertThat(reads.get()).isEqualTo(0);
+  }
+
+  private static void send(StreamObserver<Data> observer, int count) {
+    batches(count).forEach(observer::onNext);
+    observer.onCompleted();
+  }
+
+  private static List<Data> batches(int count) {
+    return IntStream.range(0, count).mapToObj(InlineResultsTest::batch).toList();
+  }
+
+  private static Data batch(int index) {
+    return Data.newBuilder().setStreamId(ByteString.copyFromUtf8("batch-" + index)).build();
+  }
+}
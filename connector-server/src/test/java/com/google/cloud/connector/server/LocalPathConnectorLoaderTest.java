@@ -1,34 +1,45 @@
 package com.google.cloud.connector.server;
 
+import static com.google.cloud.connector.server.LocalPathConnectorLoader.CONNECTOR_PROTO_FILE;
 import static com.google.common.truth.Truth.assertThat;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import com.google.cloud.connector.api.Connector;
+import com.google.cloud.connector.api.DataExplorer;
+import com.google.cloud.connector.api.factory.ConnectorFactory;
 import com.google.cloud.connector.maven.ConnectorGeneratorMojo;
 import com.google.cloud.connector.server.connector.NoParamConnector;
 import com.google.cloud.connector.server.connector.TestConnector;
+import com.google.cloud.connector.server.metrics.ConnectorClassStats;
+import com.google.cloud.connector.server.util.JarBuilder;
 import com.google.protobuf.Struct;
 import com.google.protobuf.Value;
 import java.io.File;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 /** Unit test for {@link LocalPathConnectorLoader}. */
 public class LocalPathConnectorLoaderTest {
 
-  @Test
-  public void instantiate_ConfigConnector() throws Exception {
-    Path basePath = getClassBasePath(TestConnector.class);
-    ConnectorGeneratorMojo.create(
-            basePath, basePath, TestConnector.class.getName(), "connector.proto")
-        .execute();
+  @TempDir Path tempDir;
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  public void instantiate_ConfigConnector(boolean generateFactory) throws Exception {
+    Path connectorDir = createConnectorDir(TestConnector.class, generateFactory);
 
-    try (ConnectorLoader loader = new LocalPathConnectorLoader(basePath, "connector.proto")) {
+    try (ConnectorLoader loader = new LocalPathConnectorLoader(connectorDir)) {
       Connector instance =
           loader.instantiateConnector(
               Struct.newBuilder()
@@ -52,14 +63,12 @@ public class LocalPathConnectorLoaderTest {
     }
   }
 
-  @Test
-  public void instantiate_NoParamConnector() throws Exception {
-    Path basePath = getClassBasePath(NoParamConnector.class);
-    ConnectorGeneratorMojo.create(
-            basePath, basePath, NoParamConnector.class.getName(), "noparam.proto")
-        .execute();
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  public void instantiate_NoParamConnector(boolean generateFactory) throws Exception {
+    Path connectorDir = createConnectorDir(NoParamConnector.class, generateFactory);
 
-    try (ConnectorLoader loader = new LocalPathConnectorLoader(basePath, "noparam.proto")) {
+    try (ConnectorLoader loader = new LocalPathConnectorLoader(connectorDir)) {
       Connector instance =
           loader.instantiateConnector(Struct.getDefaultInstance(), Connector.class);
 
@@ -69,13 +78,12 @@ public class LocalPathConnectorLoaderTest {
     }
   }
 
-  @Test
-  public void fail_missingConfig() throws Exception {
-    Path basePath = getClassBasePath(TestConnector.class);
-    ConnectorGeneratorMojo.create(
-            basePath, basePath, TestConnector.class.getName(), "missing_config.proto")
-        .execute();
-    try (ConnectorLoader loader = new LocalPathConnectorLoader(basePath, "missing_config.proto")) {
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  public void fail_missingConfig(boolean generateFactory) throws Exception {
+    Path connectorDir = createConnectorDir(TestConnector.class, generateFactory);
+
+    try (ConnectorLoader loader = new LocalPathConnectorLoader(connectorDir)) {
       IllegalArgumentException exception =
           assertThrows(
               IllegalArgumentException.class,
@@ -84,6 +92,194 @@ public class LocalPathConnectorLoaderTest {
     }
   }
 
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  public void instantiate_multipleInstances(boolean generateFactory) throws Exception {
+    Path connectorDir = createConnectorDir(TestConnector.class, generateFactory);
+
+    try (ConnectorLoader loader = new LocalPathConnectorLoader(connectorDir)) {
+      for (int i = 0; i < 3; i++) {
+        Connector instance =
+            loader.instantiateConnector(
+                Struct.newBuilder()
+                    .putFields(
+                        "endpoint.host", Value.newBuilder().setStringValue("host" + i).build())
+                    .putFields("endpoint.port", Value.newBuilder().setNumberValue(i).build())
+                    .putFields(
+                        "authentication.oauth.clientId",
+                        Value.newBuilder().setStringValue("client" + i).build())
+                    .putFields("threshold", Value.newBuilder().setNumberValue(i).build())
+                    .putFields("timeout", Value.newBuilder().setNumberValue(i).build())
+                    .build(),
+                Connector.class);
+
+        assertThat(instance.toString())
+            .isEqualTo(
+                String.format(
+                    "%s,%s,%d,%s,%.2f,%d",
+                    TestConnector.class.getName(), "host" + i, i, "client" + i, (double) i, i));
+      }
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  public void fail_incompatibleType(boolean generateFactory) throws Exception {
+    Path connectorDir = createConnectorDir(NoParamConnector.class, generateFactory);
+
+    try (ConnectorLoader loader = new LocalPathConnectorLoader(connectorDir)) {
+      assertThrows(
+          ClassCastException.class,
+          () -> loader.instantiateConnector(Struct.getDefaultInstance(), DataExplorer.class));
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  public void fail_parameterTypeMismatch(boolean generateFactory) throws Exception {
+    Path connectorDir = createConnectorDir(TestConnector.class, generateFactory);
+
+    try (ConnectorLoader loader = new LocalPathConnectorLoader(connectorDir)) {
+      Struct parameters =
+          Struct.newBuilder()
+              .putFields("endpoint.host", Value.newBuilder().setStringValue("testhost").build())
+              .putFields("endpoint.port", Value.newBuilder().setStringValue("port").build())
+              .putFields(
+                  "authentication.oauth.clientId",
+                  Value.newBuilder().setStringValue("oauthclientid").build())
+              .putFields("threshold", Value.newBuilder().setNumberValue(0.6d).build())
+              .putFields("timeout", Value.newBuilder().setNumberValue(10000L).build())
+              .build();
+      // Both the reflective and the factory path raise the same error
+      IllegalArgumentException exception =
+          assertThrows(
+              IllegalArgumentException.class,
+              () -> loader.instantiateConnector(parameters, Connector.class));
+      assertThat(exception)
+          .hasMessageThat()
+          .isEqualTo(
+              "Value of type STRING_VALUE for parameter 'endpoint.port' cannot be converted to"
+                  + " 'int'");
+    }
+  }
+
+  @Test
+  public void instantiate_sharedLibraryJars() throws Exception {
+    Path basePath = getClassBasePath(NoParamConnector.class);
+    ConnectorGeneratorMojo.create(
+            basePath, basePath, NoParamConnector.class.getName(), CONNECTOR_PROTO_FILE)
+        .execute();
+
+    // Two connectors with the same connector jar and a copy of the same dependency jar
+    Path classDir =
+        basePath.resolve(NoParamConnector.class.getPackageName().replace('.', File.separatorChar));
+    List<Path> libraryClassFiles = List.of(classDir.resolve("TestConnector.class"));
+    List<Path> connectorFiles =
+        List.of(
+            classDir.resolve("NoParamConnector.class"), basePath.resolve(CONNECTOR_PROTO_FILE));
+    List<Path> connectorDirs = new ArrayList<>();
+    for (String name : List.of("first", "second")) {
+      Path connectorDir = Files.createDirectories(tempDir.resolve(name));
+      new JarBuilder(connectorDir.resolve("connector.jar"))
+          .addClassPaths(connectorFiles, basePath)
+          .build();
+      new JarBuilder(Files.createDirectories(connectorDir.resolve("lib")).resolve("library.jar"))
+          .addClassPaths(libraryClassFiles, basePath)
+          .build();
+      connectorDirs.add(connectorDir);
+    }
+
+    SharedLibraryLayers libraryLayers =
+        new SharedLibraryLayers(LocalPathConnectorLoader.CONNECTOR_PARENT_CLASSLOADER);
+    try (ConnectorLoader first = new LocalPathConnectorLoader(connectorDirs.get(0), libraryLayers);
+        ConnectorLoader second =
+            new LocalPathConnectorLoader(connectorDirs.get(1), libraryLayers)) {
+      assertThat(libraryLayers.size()).isEqualTo(1);
+
+      ClassLoader firstClassLoader =
+          first.instantiateConnector(Struct.getDefaultInstance(), Connector.class)
+              .getClass()
+              .getClassLoader();
+      ClassLoader secondClassLoader =
+          second.instantiateConnector(Struct.getDefaultInstance(), Connector.class)
+              .getClass()
+              .getClassLoader();
+      assertThat(firstClassLoader).isNotSameInstanceAs(secondClassLoader);
+
+      Class<?> libraryClass = firstClassLoader.loadClass(TestConnector.class.getName());
+      assertThat(libraryClass).isNotEqualTo(TestConnector.class);
+      assertThat(secondClassLoader.loadClass(TestConnector.class.getName()))
+          .isSameInstanceAs(libraryClass);
+
+      ConnectorClassStats stats = first.getClassStats().orElseThrow();
+      assertThat(stats.classCount()).isEqualTo(1);
+      assertThat(stats.sharedClassCount()).isEqualTo(1);
+      assertThat(stats.attributedSharedClassBytes()).isEqualTo(stats.sharedClassBytes() / 2);
+    }
+    assertThat(libraryLayers.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void instantiate_specFileInDirectory() throws Exception {
+    Path basePath = getClassBasePath(NoParamConnector.class);
+    ConnectorGeneratorMojo.create(
+            basePath, basePath, NoParamConnector.class.getName(), CONNECTOR_PROTO_FILE)
+        .execute();
+
+    // The connector jar doesn't contain the specification, which is a file in the directory
+    Path classDir =
+        basePath.resolve(NoParamConnector.class.getPackageName().replace('.', File.separatorChar));
+    Path connectorDir = Files.createDirectories(tempDir.resolve("connector"));
+    Files.copy(basePath.resolve(CONNECTOR_PROTO_FILE), connectorDir.resolve(CONNECTOR_PROTO_FILE));
+    new JarBuilder(connectorDir.resolve("connector.jar"))
+        .addClassPaths(List.of(classDir.resolve("NoParamConnector.class")), basePath)
+        .build();
+    new JarBuilder(Files.createDirectories(connectorDir.resolve("lib")).resolve("library.jar"))
+        .addClassPaths(List.of(classDir.resolve("TestConnector.class")), basePath)
+        .build();
+
+    SharedLibraryLayers libraryLayers =
+        new SharedLibraryLayers(LocalPathConnectorLoader.CONNECTOR_PARENT_CLASSLOADER);
+    try (ConnectorLoader loader = new LocalPathConnectorLoader(connectorDir, libraryLayers)) {
+      loader.instantiateConnector(Struct.getDefaultInstance(), Connector.class);
+
+      // Only the library jar is shared
+      assertThat(libraryLayers.size()).isEqualTo(1);
+      assertThat(loader.getClassStats().orElseThrow().classCount()).isEqualTo(1);
+    }
+  }
+
+  /**
+   * Creates a connector directory with the classes of the given connector class, and the
+   * connector specification and optionally the {@link ConnectorFactory} generated for it.
+   */
+  private Path createConnectorDir(Class<?> connectorClass, boolean generateFactory)
+      throws Exception {
+    Path basePath = getClassBasePath(connectorClass);
+    Path connectorDir = tempDir.resolve("connector");
+    // Only the connector classes are copied, without any factory generated in the base path
+    for (Class<?> cls : connectorClass.getNestMembers()) {
+      String classFile = cls.getName().replace('.', File.separatorChar) + ".class";
+      Files.createDirectories(connectorDir.resolve(classFile).getParent());
+      Files.copy(basePath.resolve(classFile), connectorDir.resolve(classFile));
+    }
+    ConnectorGeneratorMojo.create(
+            connectorDir,
+            connectorDir,
+            connectorClass.getName(),
+            CONNECTOR_PROTO_FILE,
+            false,
+            generateFactory)
+        .execute();
+
+    String factoryClassFile =
+        ConnectorFactory.getFactoryClassName(connectorClass.getName())
+                .replace('.', File.separatorChar)
+            + ".class";
+    assertThat(Files.exists(connectorDir.resolve(factoryClassFile))).isEqualTo(generateFactory);
+    return connectorDir;
+  }
+
   private Path getClassBasePath(Class<?> cls) throws URISyntaxException {
     String classFile = cls.getName().replace('.', File.separatorChar) + ".class";
     URL resource = getClass().getClassLoader().getResource(classFile);
@@ -0,0 +1,103 @@
+package com.google.cloud.connector.server;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.cloud.bigquery.federation.v1alpha1.Data;
+import com.google.cloud.bigquery.federation.v1alpha1.Data.DataBlock;
+import com.google.cloud.bigquery.federation.v1alpha1.Schema;
+import com.google.protobuf.ByteString;
+import io.grpc.stub.StreamObserver;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/** Unit test for {@link MultiplexedResponse}. */
+public class MultiplexedResponseTest {
+
+  private static final Schema SCHEMA =
+      Schema.newBuilder().addFields(Schema.Field.newBuilder().setFieldName("a")).build();
+  private static final Schema OTHER_SCHEMA =
+      Schema.newBuilder().addFields(Schema.Field.newBuilder().setFieldName("b")).build();
+  private static final ByteString FIRST = ByteString.copyFromUtf8("first");
+  private static final ByteString SECOND = ByteString.copyFromUtf8("second");
+
+  @Test
+  public void taggedStreams() {
+    RecordingObserver observer = new RecordingObserver();
+    MultiplexedResponse response = new MultiplexedResponse(observer);
+
+    readPartition(response.partitionObserver(FIRST), SCHEMA, 2);
+    response.endStream(FIRST);
+    readPartition(response.partitionObserver(SECOND), SCHEMA, 1);
+    readPartition(response.partitionObserver(SECOND), SCHEMA, 0);
+    response.endStream(SECOND);
+    response.complete();
+
+    assertThat(observer.completed).isEqualTo(1);
+    assertThat(observer.batches).hasSize(5);
+    assertThat(observer.batches.stream().map(Data::getStreamId).toList())
+        .containsExactly(FIRST, FIRST, FIRST, SECOND, SECOND)
+        .inOrder();
+    // The schema is only in the first batch, and the end of each stream is marked
+    assertThat(observer.batches.get(0).getSchema()).isEqualTo(SCHEMA);
+    assertThat(observer.batches.stream().skip(1).filter(Data::hasSchema).count()).isEqualTo(0);
+    assertThat(observer.batches.get(2)).isEqualTo(Data.newBuilder().setStreamId(FIRST).build());
+    assertThat(observer.batches.get(4)).isEqualTo(Data.newBuilder().setStreamId(SECOND).build());
+  }
+
+  @Test
+  public void untaggedPartitions_schemaChange() {
+    RecordingObserver observer = new RecordingObserver();
+    MultiplexedResponse response = new MultiplexedResponse(observer);
+
+    readPartition(response.partitionObserver(null), SCHEMA, 0);
+    readPartition(response.partitionObserver(null), SCHEMA, 1);
+    readPartition(response.partitionObserver(null), OTHER_SCHEMA, 1);
+    response.complete();
+
+    assertThat(observer.completed).isEqualTo(1);
+    assertThat(observer.batches).hasSize(3);
+    assertThat(observer.batches.get(0).getSchema()).isEqualTo(SCHEMA);
+    assertThat(observer.batches.get(0).hasDataBlock()).isFalse();
+    assertThat(observer.batches.get(1).hasSchema()).isFalse();
+    assertThat(observer.batches.get(1).hasDataBlock()).isTrue();
+    assertThat(observer.batches.get(2).getSchema()).isEqualTo(OTHER_SCHEMA);
+    assertThat(observer.batches.stream().filter(data -> !data.getStreamId().isEmpty()).count())
+        .isEqualTo(0);
+  }
+
+  /** Sends the batches of a partition the same way as BatchingRecordStreamResponder. */
+  private static void readPartition(StreamObserver<Data> observer, Schema schema, int batches) {
+    Data.Builder builder = Data.newBuilder().setSchema(schema);
+    for (int i = 0; i < Math.max(batches, 1); i++) {
+      if (i < batches) {
+        builder.setDataBlock(DataBlock.getDefaultInstance());
+      }
+      observer.onNext(builder.build());
+      builder = Data.newBuilder();
+    }
+    observer.onCompleted();
+  }
+
+  /** A {@link StreamObserver} that records the batches it receives. */
+  private static final class RecordingObserver implements StreamObserver<Data> {
+
+    private final List<Data> batches = new ArrayList<>();
+    private int completed;
+
+    @Override
+    public void onNext(Data data) {
+      batches.add(data);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      // Not used
+    }
+
+    @Override
+    public void onCompleted() {
+      completed++;
+    }
+  }
+}
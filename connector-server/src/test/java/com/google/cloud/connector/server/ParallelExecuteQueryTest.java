@@ -0,0 +1,174 @@
+package com.google.cloud.connector.server;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import com.google.cloud.bigquery.federation.v1alpha1.ConnectorServiceGrpc;
+import com.google.cloud.bigquery.federation.v1alpha1.Data;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.bigquery.federation.v1alpha1.ExecuteQueryRequest;
+import com.google.cloud.bigquery.federation.v1alpha1.NamedTable;
+import com.google.cloud.bigquery.federation.v1alpha1.Schema;
+import com.google.cloud.connector.maven.ConnectorGeneratorMojo;
+import com.google.cloud.connector.server.connector.EmptyParallelConnector;
+import com.google.cloud.connector.server.connector.InMemDatabaseConnector;
+import com.google.cloud.connector.server.util.JarBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.flogger.FluentLogger;
+import com.google.inject.Guice;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+/** Unit tests for ExecuteQuery through the {@link ParallelQueryExecution} of the server. */
+@TestInstance(Lifecycle.PER_CLASS)
+public class ParallelExecuteQueryTest {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  @TempDir
+  private static Path connectorTopRootDir;
+
+  private static ConnectorServer server;
+  private static ManagedChannel channel;
+  private static ConnectorServiceGrpc.ConnectorServiceBlockingStub connectorService;
+
+  @BeforeAll
+  void setUp() throws Exception {
+    buildConnectorJar(InMemDatabaseConnector.DATASOURCE_ID, InMemDatabaseConnector.class);
+    buildConnectorJar(EmptyParallelConnector.DATASOURCE_ID, EmptyParallelConnector.class);
+
+    CommandLine cli = new CommandLine(new ConnectorModule());
+    cli.parseArgs(
+        "--port",
+        "0",
+        "--insecure",
+        "--connector-root-dir",
+        connectorTopRootDir.toString(),
+        "--execute-query-parallelism",
+        "2");
+    ConnectorModule connectorModule = cli.getCommand();
+    server = Guice.createInjector(connectorModule).getInstance(ConnectorServer.class);
+    server.startAsync().awaitRunning();
+
+    int port = server.getPort();
+    logger.atInfo().log("Connector server has started at port %d", port);
+
+    channel = ManagedChannelBuilder.forAddress("localhost", port).usePlaintext().build();
+    connectorService = ConnectorServiceGrpc.newBlockingStub(channel);
+  }
+
+  @AfterAll
+  void teardown() throws InterruptedException {
+    channel.shutdown().awaitTermination(5, TimeUnit.SECONDS);
+    server.stopAsync().awaitTerminated();
+    logger.atInfo().log("Connector server has been shut down");
+  }
+
+  @Test
+  public void executeQuery_readsPartitions() {
+    ExecuteQueryRequest request =
+        ExecuteQueryRequest.newBuilder()
+            .setDataset(getDatasetName(InMemDatabaseConnector.DATASOURCE_ID))
+            .setDataQuery(
+                DataQuery.newBuilder()
+                    .setNamedTable(
+                        NamedTable.newBuilder()
+                            .addNames(InMemDatabaseConnector.DATABASE_NAME)
+                            .addNames(InMemDatabaseConnector.TABLE_NAME_PERSON)))
+            .setParameters(
+                Struct.newBuilder()
+                    .putFields(
+                        InMemDatabaseConnector.CONFIG_KEY_NUM_ROWS,
+                        Value.newBuilder().setNumberValue(3).build()))
+            .build();
+
+    List<Data> data = ImmutableList.copyOf(connectorService.executeQuery(request));
+
+    assertThat(data.get(0).hasSchema()).isTrue();
+    assertThat(data.stream().mapToInt(d -> d.getDataBlock().getRowset().getRowsCount()).sum())
+        .isEqualTo(3);
+  }
+
+  @Test
+  public void executeQuery_noPartitions_sendsSchemaOnly() {
+    ExecuteQueryRequest request =
+        ExecuteQueryRequest.newBuilder()
+            .setDataset(getDatasetName(EmptyParallelConnector.DATASOURCE_ID))
+            .setDataQuery(
+                DataQuery.newBuilder()
+                    .setNamedTable(
+                        NamedTable.newBuilder().addNames(EmptyParallelConnector.TABLE_NAME)))
+            .build();
+
+    List<Data> data = ImmutableList.copyOf(connectorService.executeQuery(request));
+
+    // The connector only implements ParallelQueryExecutor, so there is no fallback to a scan
+    assertThat(data).hasSize(1);
+    assertThat(
+            data.get(0).getSchema().getFieldsList().stream()
+                .map(Schema.Field::getFieldName)
+                .toList())
+        .containsExactly(EmptyParallelConnector.FIELD_NAME);
+    assertThat(data.get(0).getDataBlock().getRowset().getRowsCount()).isEqualTo(0);
+  }
+
+  private Path getClassBasePath(Class<?> cls) throws URISyntaxException {
+    String classFile = cls.getName().replace('.', File.separatorChar) + ".class";
+    URL resource = getClass().getClassLoader().getResource(classFile);
+    assertNotNull(resource);
+    String uriStr = resource.toURI().toString();
+    return Paths.get(URI.create(uriStr.substring(0, uriStr.length() - classFile.length())));
+  }
+
+  private String getDatasetName(String datasourceId) {
+    return String.format("datasources/%s", datasourceId);
+  }
+
+  private void buildConnectorJar(String connectorName, Class<?> clazz) throws Exception {
+    Path classBasePath = getClassBasePath(clazz);
+    List<Path> classFiles = new ArrayList<>();
+    Path classFileParentDir =
+        classBasePath
+            .resolve(Path.of(clazz.getName().replace('.', File.separatorChar) + ".class"))
+            .getParent();
+    for (File file : classFileParentDir.toFile().listFiles()) {
+      if (file.isFile() && file.getName().startsWith(clazz.getSimpleName())) {
+        classFiles.add(file.toPath());
+      }
+    }
+
+    ConnectorGeneratorMojo.create(
+            classBasePath,
+            classBasePath,
+            clazz.getName(),
+            LocalPathConnectorLoader.CONNECTOR_PROTO_FILE)
+        .execute();
+    // The connector specification is at the root of the jar
+    classFiles.add(classBasePath.resolve(LocalPathConnectorLoader.CONNECTOR_PROTO_FILE));
+
+    final Path connectorDir = Files.createDirectory(connectorTopRootDir.resolve(connectorName));
+    final Path connectorJar = connectorDir.resolve(connectorName + ".jar");
+    JarBuilder jarBuilder = new JarBuilder(connectorJar);
+    jarBuilder.addClassPaths(classFiles, classBasePath).build();
+    logger.atInfo().log("Connector '%s' jar has been built at '%s'", connectorName, connectorJar);
+  }
+}
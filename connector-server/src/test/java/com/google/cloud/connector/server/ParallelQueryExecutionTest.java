@@ -0,0 +1,342 @@
+package com.google.cloud.connector.server;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.cloud.bigquery.federation.v1alpha1.Data;
+import com.google.cloud.bigquery.federation.v1alpha1.Data.DataBlock;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.bigquery.federation.v1alpha1.Expression;
+import com.google.cloud.bigquery.federation.v1alpha1.FieldExpression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionExpression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionSignatureId;
+import com.google.cloud.bigquery.federation.v1alpha1.Schema;
+import com.google.cloud.bigquery.federation.v1alpha1.Value;
+import com.google.cloud.connector.api.AssetName;
+import com.google.cloud.connector.api.ColumnStatistics;
+import com.google.cloud.connector.api.ParallelQueryExecutor;
+import com.google.cloud.connector.api.ParallelQueryPreparationContext;
+import com.google.cloud.connector.api.RecordReader;
+import com.google.cloud.connector.server.ParallelQueryExecution.Ordering;
+import com.google.protobuf.ByteString;
+import io.grpc.stub.StreamObserver;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/** Unit test for {@link ParallelQueryExecution}. */
+public class ParallelQueryExecutionTest {
+
+  private static final int BATCHES = 10;
+
+  @Test
+  public void execute_partitionOrdered() {
+    ParallelQueryExecution execution = new ParallelQueryExecution(4, Ordering.PARTITION_ORDERED, 8);
+    RecordingObserver observer = new RecordingObserver();
+
+    boolean executed =
+        execution.execute(
+            new TestConnector(5, 0),
+            AssetName.ROOT_ASSET,
+            DataQuery.getDefaultInstance(),
+            null,
+            ParallelQueryExecutionTest::read,
+            observer);
+
+    assertThat(executed).isTrue();
+    assertThat(observer.completed).isTrue();
+    List<String> expected = new ArrayList<>();
+    for (int p = 0; p < 5; p++) {
+      for (int b = 0; b < BATCHES; b++) {
+        expected.add(batchId("p" + p, b));
+      }
+    }
+    assertThat(observer.batchIds()).isEqualTo(expected);
+    assertSchemaOnlyInFirstBatch(observer.batches);
+  }
+
+  @Test
+  public void execute_interleaved() {
+    ParallelQueryExecution execution = new ParallelQueryExecution(4, Ordering.INTERLEAVED, 8);
+    RecordingObserver observer = new RecordingObserver();
+
+    execution.execute(
+        new TestConnector(5, 0),
+        AssetName.ROOT_ASSET,
+        DataQuery.getDefaultInstance(),
+        null,
+        ParallelQueryExecutionTest::read,
+        observer);
+
+    assertThat(observer.completed).isTrue();
+    assertThat(observer.batches).hasSize(5 * BATCHES);
+    // Batches of each partition are in order
+    for (int p = 0; p < 5; p++) {
+      String prefix = "p" + p + "-";
+      assertThat(observer.batchIds().stream().filter(id -> id.startsWith(prefix)).toList())
+          .isInOrder();
+    }
+    assertSchemaOnlyInFirstBatch(observer.batches);
+  }
+
+  @Test
+  public void execute_respectsMaxConcurrency() {
+    ParallelQueryExecution execution = new ParallelQueryExecution(8, Ordering.INTERLEAVED, 8);
+    AtomicInteger active = new AtomicInteger();
+    AtomicInteger maxActive = new AtomicInteger();
+
+    execution.execute(
+        new TestConnector(6, 2),
+        AssetName.ROOT_ASSET,
+        DataQuery.getDefaultInstance(),
+        null,
+        (partition, observer) -> {
+          maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+          try {
+            read(partition, observer);
+          } finally {
+            active.decrementAndGet();
+          }
+        },
+        new RecordingObserver());
+
+    assertThat(maxActive.get()).isAtMost(2);
+  }
+
+  @Test
+  public void execute_boundedByThreads() {
+    ParallelQueryExecution execution = new ParallelQueryExecution(8, Ordering.INTERLEAVED, 2);
+    AtomicInteger active = new AtomicInteger();
+    AtomicInteger maxActive = new AtomicInteger();
+
+    execution.execute(
+        new TestConnector(6, 0),
+        AssetName.ROOT_ASSET,
+        DataQuery.getDefaultInstance(),
+        null,
+        (partition, observer) -> {
+          maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+          try {
+            read(partition, observer);
+          } finally {
+            active.decrementAndGet();
+          }
+        },
+        new RecordingObserver());
+
+    assertThat(maxActive.get()).isAtMost(2);
+    execution.close();
+  }
+
+  @Test
+  public void execute_noPartitions() {
+    ParallelQueryExecution execution = new ParallelQueryExecution(4, Ordering.INTERLEAVED, 8);
+    RecordingObserver observer = new RecordingObserver();
+
+    boolean executed =
+        execution.execute(
+            new TestConnector(0, 0),
+            AssetName.ROOT_ASSET,
+            DataQuery.getDefaultInstance(),
+            null,
+            ParallelQueryExecutionTest::read,
+            observer);
+
+    assertThat(executed).isFalse();
+    assertThat(observer.batches).isEmpty();
+    assertThat(observer.completed).isFalse();
+  }
+
+  @Test
+  public void execute_prunesPartitions() {
+    ParallelQueryExecution execution = new ParallelQueryExecution(4, Ordering.PARTITION_ORDERED, 8);
+    RecordingObserver observer = new RecordingObserver();
+    // id = 15, where partition p<i> has the ids in [10 * i, 10 * i + 9]
+    Expression filter =
+        Expression.newBuilder()
+            .setFunction(
+                FunctionExpression.newBuilder()
+                    .setFunctionSignatureId(FunctionSignatureId.FN_EQUAL)
+                    .addArguments(
+                        Expression.newBuilder()
+                            .setField(FieldExpression.newBuilder().setFieldName("id")))
+                    .addArguments(
+                        Expression.newBuilder()
+                            .setConstant(Value.newBuilder().setInt64Value(15))))
+            .build();
+
+    execution.execute(
+        new TestConnector(3, 0),
+        AssetName.ROOT_ASSET,
+        DataQuery.getDefaultInstance(),
+        filter,
+        ParallelQueryExecutionTest::read,
+        observer);
+
+    assertThat(observer.batchIds().stream().map(id -> id.substring(0, 2)).distinct().toList())
+        .containsExactly("p1");
+  }
+
+  @Test
+  public void execute_partitionFailure() {
+    ParallelQueryExecution execution = new ParallelQueryExecution(4, Ordering.PARTITION_ORDERED, 8);
+    RecordingObserver observer = new RecordingObserver();
+
+    IllegalArgumentException ex =
+        assertThrows(
+            IllegalArgumentException.class,
+            () ->
+                execution.execute(
+                    new TestConnector(3, 0),
+                    AssetName.ROOT_ASSET,
+                    DataQuery.getDefaultInstance(),
+                    null,
+                    (partition, o) -> {
+                      if (new String(partition, StandardCharsets.UTF_8).equals("p1")) {
+                        throw new IllegalArgumentException("invalid partition");
+                      }
+                      read(partition, o);
+                    },
+                    observer));
+
+    assertThat(ex).hasMessageThat().isEqualTo("invalid partition");
+    assertThat(observer.completed).isFalse();
+  }
+
+  @Test
+  public void execute_waitsForPartitionReadsToStop() {
+    ParallelQueryExecution execution = new ParallelQueryExecution(2, Ordering.INTERLEAVED, 8);
+    CountDownLatch blocked = new CountDownLatch(1);
+    AtomicBoolean blockedReadEnded = new AtomicBoolean();
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            execution.execute(
+                new TestConnector(2, 0),
+                AssetName.ROOT_ASSET,
+                DataQuery.getDefaultInstance(),
+                null,
+                (partition, o) -> {
+                  if (new String(partition, StandardCharsets.UTF_8).equals("p0")) {
+                    try {
+                      blocked.countDown();
+                      new CountDownLatch(1).await();
+                    } catch (InterruptedException e) {
+                      Thread.currentThread().interrupt();
+                    } finally {
+                      blockedReadEnded.set(true);
+                    }
+                    return;
+                  }
+                  await(blocked);
+                  throw new IllegalArgumentException("invalid partition");
+                },
+                new RecordingObserver()));
+
+    // The read of the other partition is interrupted and has ended before the call returns
+    assertThat(blockedReadEnded.get()).isTrue();
+  }
+
+  private static void read(byte[] partition, StreamObserver<Data> observer) {
+    String name = new String(partition, StandardCharsets.UTF_8);
+    for (int i = 0; i < BATCHES; i++) {
+      Data.Builder builder =
+          Data.newBuilder()
+              .setStreamId(ByteString.copyFromUtf8(batchId(name, i)))
+              .setDataBlock(DataBlock.getDefaultInstance());
+      if (i == 0) {
+        builder.setSchema(Schema.getDefaultInstance());
+      }
+      if (ThreadLocalRandom.current().nextBoolean()) {
+        Thread.yield();
+      }
+      observer.onNext(builder.build());
+    }
+    observer.onCompleted();
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String batchId(String partition, int index) {
+    return partition + "-" + index;
+  }
+
+  private static void assertSchemaOnlyInFirstBatch(List<Data> batches) {
+    assertThat(batches.get(0).hasSchema()).isTrue();
+    assertThat(batches.stream().skip(1).filter(Data::hasSchema).count()).isEqualTo(0);
+  }
+
+  /** A {@link ParallelQueryExecutor} that adds partitions named by their index. */
+  private static final class TestConnector implements ParallelQueryExecutor {
+
+    private final int partitions;
+    private final int maxConcurrency;
+
+    private TestConnector(int partitions, int maxConcurrency) {
+      this.partitions = partitions;
+      this.maxConcurrency = maxConcurrency;
+    }
+
+    @Override
+    public void prepareQuery(
+        AssetName assetName, DataQuery query, ParallelQueryPreparationContext context) {
+      for (int i = 0; i < partitions; i++) {
+        ColumnStatistics statistics =
+            new ColumnStatistics(
+                Value.newBuilder().setInt64Value(10L * i).build(),
+                Value.newBuilder().setInt64Value(10L * i + 9).build(),
+                0);
+        context.addPartition(
+            ("p" + i).getBytes(StandardCharsets.UTF_8), -1, -1, Map.of("id", statistics));
+      }
+      if (maxConcurrency > 0) {
+        context.setMaxConcurrency(maxConcurrency);
+      }
+    }
+
+    @Override
+    public RecordReader readPartition(AssetName assetName, byte[] partitionData) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /** A {@link StreamObserver} that records the batches it receives. */
+  private static final class RecordingObserver implements StreamObserver<Data> {
+
+    private final List<Data> batches = new ArrayList<>();
+    private boolean completed;
+
+    @Override
+    public void onNext(Data data) {
+      batches.add(data);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      // Errors are thrown by ParallelQueryExecution.execute
+    }
+
+    @Override
+    public void onCompleted() {
+      completed = true;
+    }
+
+    private List<String> batchIds() {
+      return batches.stream().map(data -> data.getStreamId().toStringUtf8()).toList();
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package com.google.cloud.connector.server;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.common.base.Strings;
+import com.google.common.base.Ticker;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+/** Unit test for {@link PartitionRegistry}. */
+public class PartitionRegistryTest {
+
+  private final AtomicLong nanos = new AtomicLong();
+  private final Ticker ticker =
+      new Ticker() {
+        @Override
+        public long read() {
+          return nanos.get();
+        }
+      };
+
+  @Test
+  public void register_resolve() {
+    PartitionRegistry registry = createRegistry(1024 * 1024);
+    String streamId = "v1z." + Strings.repeat("a", 2000);
+
+    String handle = registry.register(streamId, null);
+
+    assertThat(PartitionRegistry.isHandle(handle)).isTrue();
+    assertThat(handle.length()).isLessThan(32);
+    assertThat(registry.resolve(handle)).isEqualTo(Optional.of(streamId));
+    // Handles are unique even for the same stream id
+    assertThat(registry.register(streamId, null)).isNotEqualTo(handle);
+  }
+
+  @Test
+  public void resolve_expiredByQueryTimeout() {
+    PartitionRegistry registry = createRegistry(1024 * 1024);
+    String handle = registry.register("v1.abc", Duration.ofMinutes(5));
+
+    nanos.addAndGet(Duration.ofMinutes(4).toNanos());
+    assertThat(registry.resolve(handle)).isEqualTo(Optional.of("v1.abc"));
+
+    nanos.addAndGet(Duration.ofMinutes(2).toNanos());
+    assertThat(registry.resolve(handle)).isEqualTo(Optional.empty());
+    assertThat(registry.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void resolve_expiredByDefaultTtl() {
+    PartitionRegistry registry = createRegistry(1024 * 1024);
+    String handle = registry.register("v1.abc", Duration.ZERO);
+
+    nanos.addAndGet(Duration.ofMinutes(59).toNanos());
+    assertThat(registry.resolve(handle)).isEqualTo(Optional.of("v1.abc"));
+
+    nanos.addAndGet(Duration.ofMinutes(2).toNanos());
+    assertThat(registry.resolve(handle)).isEqualTo(Optional.empty());
+  }
+
+  @Test
+  public void resolve_unknownHandle() {
+    PartitionRegistry registry = createRegistry(1024 * 1024);
+
+    String handle = PartitionRegistry.HANDLE_PREFIX + "unknown";
+
+    assertThat(registry.resolve(handle)).isEqualTo(Optional.empty());
+    assertThat(PartitionRegistry.isHandle("v1.abc")).isFalse();
+  }
+
+  @Test
+  public void register_evictedWhenFull() {
+    PartitionRegistry registry = createRegistry(64 * 1024);
+    String streamId = Strings.repeat("a", 1024);
+
+    String first = registry.register(streamId, null);
+    for (int i = 0; i < 100; i++) {
+      var unused = registry.register(streamId, null);
+    }
+
+    assertThat(registry.resolve(first)).isEqualTo(Optional.empty());
+    assertThat(registry.size()).isLessThan(64L);
+  }
+
+  @Test
+  public void register_disabled() {
+    PartitionRegistry registry = createRegistry(0);
+
+    assertThat(registry.isEnabled()).isFalse();
+    assertThrows(IllegalStateException.class, () -> registry.register("v1.abc", null));
+    String handle = PartitionRegistry.HANDLE_PREFIX + "abc";
+    assertThat(registry.resolve(handle)).isEqualTo(Optional.empty());
+  }
+
+  private PartitionRegistry createRegistry(long maxBytes) {
+    return new PartitionRegistry(
+        new PartitionRegistryConfig(maxBytes, Duration.ofHours(1)), ticker);
+  }
+}
@@ -0,0 +1,76 @@
+package com.google.cloud.connector.server;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.cloud.bigquery.federation.v1alpha1.StartQueryResponse.ResultSet.Stream;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import picocli.CommandLine;
+
+/** Unit test for {@link ReadConcurrency}. */
+public class ReadConcurrencyTest {
+
+  @Test
+  public void deriveMaxConcurrency_fromEstimates() {
+    ReadConcurrency concurrency = new ReadConcurrency(config("--bytes-per-concurrent-read", "100"));
+
+    assertThat(concurrency.deriveMaxConcurrency(streams(10, 20, 30))).isEqualTo(1);
+    assertThat(concurrency.deriveMaxConcurrency(streams(150, 100, 1))).isEqualTo(3);
+    // Capped by the number of streams
+    assertThat(concurrency.deriveMaxConcurrency(streams(1000, 1000))).isEqualTo(2);
+    // At least one for empty streams
+    assertThat(concurrency.deriveMaxConcurrency(streams(0))).isEqualTo(1);
+  }
+
+  @Test
+  public void deriveMaxConcurrency_cappedByLoad() {
+    ReadConcurrency concurrency =
+        new ReadConcurrency(
+            config("--bytes-per-concurrent-read", "100", "--max-concurrent-reads", "5"));
+    List<Stream> streams = streams(1000, 1000, 1000, 1000, 1000, 1000);
+
+    assertThat(concurrency.deriveMaxConcurrency(streams)).isEqualTo(5);
+    concurrency.readStarted();
+    concurrency.readStarted();
+    assertThat(concurrency.getActiveReads()).isEqualTo(2);
+    assertThat(concurrency.deriveMaxConcurrency(streams)).isEqualTo(3);
+    for (int i = 0; i < 5; i++) {
+      concurrency.readStarted();
+    }
+    assertThat(concurrency.deriveMaxConcurrency(streams)).isEqualTo(1);
+    for (int i = 0; i < 7; i++) {
+      concurrency.readEnded();
+    }
+    assertThat(concurrency.deriveMaxConcurrency(streams)).isEqualTo(5);
+  }
+
+  @Test
+  public void deriveMaxConcurrency_unknownEstimate() {
+    ReadConcurrency concurrency = new ReadConcurrency(config("--bytes-per-concurrent-read", "100"));
+    List<Stream> streams =
+        List.of(Stream.newBuilder().setEstimatedBytes(1000).build(), Stream.getDefaultInstance());
+
+    assertThat(concurrency.deriveMaxConcurrency(streams)).isEqualTo(0);
+  }
+
+  @Test
+  public void deriveMaxConcurrency_disabled() {
+    ReadConcurrency concurrency = new ReadConcurrency(config());
+
+    assertThat(concurrency.isEnabled()).isFalse();
+    assertThat(concurrency.deriveMaxConcurrency(streams(1000))).isEqualTo(0);
+  }
+
+  private static QueryPartitioningConfig config(String... args) {
+    QueryPartitioningConfig config = new QueryPartitioningConfig();
+    new CommandLine(config).parseArgs(args);
+    return config;
+  }
+
+  private static List<Stream> streams(long... estimatedBytes) {
+    return Arrays.stream(estimatedBytes)
+        .mapToObj(bytes -> Stream.newBuilder().setEstimatedBytes(bytes).build())
+        .toList();
+  }
+}
@@ -0,0 +1,236 @@
+package com.google.cloud.connector.server;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.cloud.bigquery.federation.v1alpha1.GetDataSourceRequest;
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/** Unit test for {@link RequestCoalescer}. */
+public class RequestCoalescerTest {
+
+  private static final String METHOD = "GetDataSource";
+  private static final GetDataSourceRequest REQUEST =
+      GetDataSourceRequest.newBuilder().setName("datasources/test").build();
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  @AfterEach
+  void teardown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void execute_concurrentCallsShareComputation() throws Exception {
+    RequestCoalescer coalescer = new RequestCoalescer(true, 4);
+    AtomicInteger computations = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    List<Future<String>> results = new ArrayList<>();
+    results.add(
+        executor.submit(
+            () ->
+                coalescer.execute(
+                    METHOD,
+                    REQUEST,
+                    () -> {
+                      computations.incrementAndGet();
+                      started.countDown();
+                      await(release);
+                      return "result";
+                    })));
+    started.await();
+    for (int i = 0; i < 5; i++) {
+      results.add(
+          executor.submit(
+              () ->
+                  coalescer.execute(
+                      METHOD,
+                      REQUEST.toBuilder().build(),
+                      () -> "result-" + computations.incrementAndGet())));
+    }
+    while (coalescer.getWaiters(METHOD, REQUEST) < results.size()) {
+      Thread.sleep(10);
+    }
+    release.countDown();
+
+    for (Future<String> result : results) {
+      assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo("result");
+    }
+    assertThat(computations.get()).isEqualTo(1);
+    assertThat(coalescer.size()).isEqualTo(0);
+
+    // Calls after the completion start a new computation
+    assertThat(coalescer.execute(METHOD, REQUEST, () -> "new")).isEqualTo("new");
+  }
+
+  @Test
+  public void execute_differentRequestsNotShared() {
+    RequestCoalescer coalescer = new RequestCoalescer(true, 4);
+    GetDataSourceRequest otherRequest = REQUEST.toBuilder().setName("datasources/other").build();
+
+    assertThat(coalescer.execute(METHOD, REQUEST, () -> "first")).isEqualTo("first");
+    assertThat(coalescer.execute(METHOD, otherRequest, () -> "second")).isEqualTo("second");
+    assertThat(coalescer.execute("ResolveSchema", REQUEST, () -> "third")).isEqualTo("third");
+  }
+
+  @Test
+  public void execute_exceptionPropagated() {
+    RequestCoalescer coalescer = new RequestCoalescer(true, 4);
+
+    IllegalArgumentException ex =
+        assertThrows(
+            IllegalArgumentException.class,
+            () ->
+                coalescer.execute(
+                    METHOD,
+                    REQUEST,
+                    () -> {
+                      throw new IllegalArgumentException("invalid");
+                    }));
+    assertThat(ex).hasMessageThat().isEqualTo("invalid");
+    assertThat(ex).hasCauseThat().isInstanceOf(IllegalArgumentException.class);
+    assertThat(coalescer.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void execute_exceptionPerCaller() throws Exception {
+    RequestCoalescer coalescer = new RequestCoalescer(true, 4);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    IllegalArgumentException failure = new IllegalArgumentException("invalid");
+
+    List<Future<String>> results = new ArrayList<>();
+    results.add(
+        executor.submit(
+            () ->
+                coalescer.execute(
+                    METHOD,
+                    REQUEST,
+                    () -> {
+                      started.countDown();
+                      await(release);
+                      throw failure;
+                    })));
+    started.await();
+    results.add(executor.submit(() -> coalescer.execute(METHOD, REQUEST, () -> "unused")));
+    while (coalescer.getWaiters(METHOD, REQUEST) < results.size()) {
+      Thread.sleep(10);
+    }
+    release.countDown();
+
+    List<Throwable> exceptions = new ArrayList<>();
+    for (Future<String> result : results) {
+      Exception ex = assertThrows(Exception.class, () -> result.get(10, TimeUnit.SECONDS));
+      assertThat(ex).hasCauseThat().isInstanceOf(IllegalArgumentException.class);
+      assertThat(ex).hasCauseThat().hasCauseThat().isSameInstanceAs(failure);
+      exceptions.add(ex.getCause());
+    }
+    // Each caller gets its own exception instance
+    assertThat(exceptions.get(0)).isNotSameInstanceAs(exceptions.get(1));
+  }
+
+  @Test
+  public void execute_contextPropagated() throws Exception {
+    RequestCoalescer coalescer = new RequestCoalescer(true, 4);
+    Context.Key<String> key = Context.key("test");
+
+    String value =
+        Context.current()
+            .withValue(key, "value")
+            .call(() -> coalescer.execute(METHOD, REQUEST, key::get));
+    assertThat(value).isEqualTo("value");
+  }
+
+  @Test
+  public void close_rejectsComputations() {
+    RequestCoalescer coalescer = new RequestCoalescer(true, 4);
+    coalescer.close();
+
+    assertThrows(
+        RejectedExecutionException.class, () -> coalescer.execute(METHOD, REQUEST, () -> "x"));
+    assertThat(coalescer.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void execute_disabled() {
+    RequestCoalescer coalescer = new RequestCoalescer(false, 4);
+    Thread caller = Thread.currentThread();
+
+    // The computation runs on the calling thread
+    assertThat(coalescer.execute(METHOD, REQUEST, () -> Thread.currentThread() == caller))
+        .isTrue();
+  }
+
+  @Test
+  public void execute_cancelledWhenAllCallersGone() throws Exception {
+    RequestCoalescer coalescer = new RequestCoalescer(true, 4);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch interrupted = new CountDownLatch(1);
+    Context.CancellableContext firstContext = Context.current().withCancellation();
+    Context.CancellableContext secondContext = Context.current().withCancellation();
+
+    final Future<String> first =
+        executor.submit(
+            firstContext.wrap(
+                () ->
+                    coalescer.execute(
+                        METHOD,
+                        REQUEST,
+                        () -> {
+                          started.countDown();
+                          try {
+                            new CountDownLatch(1).await();
+                          } catch (InterruptedException e) {
+                            interrupted.countDown();
+                          }
+                          return "result";
+                        })));
+    started.await();
+    final Future<String> second =
+        executor.submit(
+            secondContext.wrap(() -> coalescer.execute(METHOD, REQUEST, () -> "unused")));
+    while (coalescer.getWaiters(METHOD, REQUEST) < 2) {
+      Thread.sleep(10);
+    }
+
+    // Cancelling one caller doesn't cancel the computation
+    firstContext.cancel(null);
+    assertStatus(first, Status.Code.CANCELLED);
+    assertThat(interrupted.await(200, TimeUnit.MILLISECONDS)).isFalse();
+
+    secondContext.cancel(null);
+    assertStatus(second, Status.Code.CANCELLED);
+    assertThat(interrupted.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(coalescer.size()).isEqualTo(0);
+  }
+
+  private static void assertStatus(Future<?> future, Status.Code code) {
+    Exception ex = assertThrows(Exception.class, () -> future.get(10, TimeUnit.SECONDS));
+    assertThat(ex).hasCauseThat().isInstanceOf(StatusRuntimeException.class);
+    assertThat(Status.fromThrowable(ex.getCause()).getCode()).isEqualTo(code);
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package com.google.cloud.connector.server;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.cloud.connector.server.util.JarBuilder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Unit tests for {@link SharedLibraryLayers}. */
+public class SharedLibraryLayersTest {
+
+  // A class that depends on the library class, which is in another package
+  private static final Class<?> USER_CLASS = LocalPathConnectorLoaderTest.class;
+  private static final Class<?> LIBRARY_CLASS = JarBuilder.class;
+
+  @TempDir Path tempDir;
+
+  @Test
+  public void acquire_sharesIdenticalJars() throws IOException {
+    Path first = createJar(tempDir.resolve("first.jar"), textEntry("test.txt", "content"));
+    Path second = createJar(tempDir.resolve("second.jar"), textEntry("test.txt", "content"));
+    Path other = createJar(tempDir.resolve("other.jar"), textEntry("other.txt", "other"));
+
+    SharedLibraryLayers layers = new SharedLibraryLayers(ClassLoader.getPlatformClassLoader());
+    SharedLibraryLayers.Layer firstLayer = layers.acquire(List.of(first, other));
+    // Jars are shared individually, regardless of the other jars of the connector
+    SharedLibraryLayers.Layer secondLayer = layers.acquire(List.of(second));
+
+    assertThat(layers.size()).isEqualTo(2);
+    assertThat(secondLayer.getClassLoader().getResource("test.txt"))
+        .isEqualTo(firstLayer.getClassLoader().getResource("test.txt"));
+    assertThat(firstLayer.getClassLoader().getResource("other.txt")).isNotNull();
+    assertThat(secondLayer.getClassLoader().getResource("other.txt")).isNull();
+
+    layers.release(firstLayer);
+    assertThat(layers.size()).isEqualTo(1);
+    layers.release(secondLayer);
+    assertThat(layers.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void acquire_differentContent() throws IOException {
+    Path first = createJar(tempDir.resolve("first.jar"), textEntry("test.txt", "content"));
+    Path second = createJar(tempDir.resolve("second.jar"), textEntry("test.txt", "changed"));
+
+    SharedLibraryLayers layers = new SharedLibraryLayers(ClassLoader.getPlatformClassLoader());
+    SharedLibraryLayers.Layer firstLayer = layers.acquire(List.of(first));
+    SharedLibraryLayers.Layer secondLayer = layers.acquire(List.of(second));
+
+    assertThat(layers.size()).isEqualTo(2);
+    assertThat(secondLayer.getClassLoader().getResource("test.txt"))
+        .isNotEqualTo(firstLayer.getClassLoader().getResource("test.txt"));
+
+    layers.release(firstLayer);
+    layers.release(secondLayer);
+    assertThat(layers.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void acquire_linksAgainstDependencies() throws Exception {
+    Path library = createJar(tempDir.resolve("library.jar"), classEntry(LIBRARY_CLASS));
+    Path libraryCopy = createJar(tempDir.resolve("library-copy.jar"), classEntry(LIBRARY_CLASS));
+    Path user = createJar(tempDir.resolve("user.jar"), classEntry(USER_CLASS));
+    Path userCopy = createJar(tempDir.resolve("user-copy.jar"), classEntry(USER_CLASS));
+    Path otherUser = createJar(tempDir.resolve("other-user.jar"), classEntry(USER_CLASS));
+    Map<String, byte[]> otherLibraryEntries = new HashMap<>(classEntry(LIBRARY_CLASS));
+    otherLibraryEntries.putAll(textEntry("version.txt", "2"));
+    Path otherLibrary = createJar(tempDir.resolve("other-library.jar"), otherLibraryEntries);
+
+    SharedLibraryLayers layers = new SharedLibraryLayers(ClassLoader.getPlatformClassLoader());
+    SharedLibraryLayers.Layer firstLayer = layers.acquire(List.of(user, library));
+    SharedLibraryLayers.Layer secondLayer = layers.acquire(List.of(libraryCopy, userCopy));
+    // The same user jar with a different library jar is not shared
+    SharedLibraryLayers.Layer thirdLayer = layers.acquire(List.of(otherUser, otherLibrary));
+
+    assertThat(layers.size()).isEqualTo(4);
+    Class<?> userClass = firstLayer.getClassLoader().loadClass(USER_CLASS.getName());
+    Class<?> libraryClass = firstLayer.getClassLoader().loadClass(LIBRARY_CLASS.getName());
+    assertThat(userClass.getClassLoader()).isNotSameInstanceAs(libraryClass.getClassLoader());
+    assertThat(userClass.getClassLoader().loadClass(LIBRARY_CLASS.getName()))
+        .isSameInstanceAs(libraryClass);
+
+    assertThat(secondLayer.getClassLoader().loadClass(USER_CLASS.getName()))
+        .isSameInstanceAs(userClass);
+    assertThat(secondLayer.getClassLoader().loadClass(LIBRARY_CLASS.getName()))
+        .isSameInstanceAs(libraryClass);
+    assertThat(thirdLayer.getClassLoader().loadClass(USER_CLASS.getName()))
+        .isNotSameInstanceAs(userClass);
+
+    layers.release(firstLayer);
+    layers.release(secondLayer);
+    layers.release(thirdLayer);
+    assertThat(layers.size()).isEqualTo(0);
+  }
+
+  private static Map<String, byte[]> textEntry(String name, String content) {
+    return Map.of(name, content.getBytes(UTF_8));
+  }
+
+  private static Map<String, byte[]> classEntry(Class<?> cls) throws IOException {
+    String name = cls.getName().replace('.', '/') + ".class";
+    try (InputStream is = cls.getClassLoader().getResourceAsStream(name)) {
+      return Map.of(name, is.readAllBytes());
+    }
+  }
+
+  private static Path createJar(Path jarFile, Map<String, byte[]> entries) throws IOException {
+    try (OutputStream os = Files.newOutputStream(jarFile);
+        JarOutputStream jarOutput = new JarOutputStream(os)) {
+      for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+        jarOutput.putNextEntry(new JarEntry(entry.getKey()));
+        jarOutput.write(entry.getValue());
+        jarOutput.closeEntry();
+      }
+    }
+    return jarFile;
+  }
+}
@@ -0,0 +1,396 @@
+package com.google.cloud.connector.server;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.cloud.bigquery.federation.v1alpha1.Data;
+import com.google.cloud.bigquery.federation.v1alpha1.Schema;
+import com.google.cloud.bigquery.federation.v1alpha1.StructValue;
+import com.google.cloud.connector.server.metrics.DataBatchMetricsRecorder;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Struct;
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/** Unit test for {@link SharedScans}. */
+public class SharedScansTest {
+
+  private static final SharedScans.Key KEY =
+      new SharedScans.Key("datasource", "v1.partition", Struct.getDefaultInstance());
+  private static final DataBatchMetricsRecorder RECORDER = DataBatchMetricsRecorder.noop();
+  private static final Duration MAX_WAIT = Duration.ofSeconds(10);
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  @AfterEach
+  void teardown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void read_disabled() {
+    SharedScans sharedScans = new SharedScans(0, 4, MAX_WAIT);
+    RecordingObserver observer = new RecordingObserver();
+    Thread caller = Thread.currentThread();
+
+    sharedScans.read(
+        KEY,
+        observer,
+        RECORDER,
+        (o, r) -> {
+          assertThat(Thread.currentThread()).isSameInstanceAs(caller);
+          send(o, 3);
+        });
+
+    assertThat(observer.batches).isEqualTo(batches(3));
+    assertThat(observer.completed).isTrue();
+  }
+
+  @Test
+  public void read_concurrentReadersShareScan() throws Exception {
+    SharedScans sharedScans = new SharedScans(2, 4, MAX_WAIT);
+    AtomicInteger reads = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    SharedScans.ScanSource source =
+        (o, r) -> {
+          reads.incrementAndGet();
+          await(release);
+          send(o, 10);
+        };
+
+    RecordingObserver first = new RecordingObserver();
+    RecordingObserver second = new RecordingObserver();
+    Future<?> firstRead = executor.submit(() -> sharedScans.read(KEY, first, RECORDER, source));
+    final Future<?> secondRead =
+        executor.submit(() -> sharedScans.read(KEY, second, RECORDER, source));
+    while (sharedScans.getSubscribers(KEY) < 2) {
+      Thread.sleep(10);
+    }
+    release.countDown();
+    firstRead.get(10, TimeUnit.SECONDS);
+    secondRead.get(10, TimeUnit.SECONDS);
+
+    assertThat(reads.get()).isEqualTo(1);
+    assertThat(first.batches).isEqualTo(batches(10));
+    assertThat(first.completed).isTrue();
+    assertThat(second.batches).isEqualTo(batches(10));
+    assertThat(second.completed).isTrue();
+    assertThat(sharedScans.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void read_metricsRecordedPerReader() throws Exception {
+    SharedScans sharedScans = new SharedScans(2, 4, MAX_WAIT);
+    CountDownLatch release = new CountDownLatch(1);
+    List<DataBatchMetricsRecorder> sourceRecorders = new CopyOnWriteArrayList<>();
+    SharedScans.ScanSource source =
+        (o, r) -> {
+          sourceRecorders.add(r);
+          await(release);
+          o.onNext(
+              Data.newBuilder()
+                  .setSchema(Schema.getDefaultInstance())
+                  .setDataBlock(
+                      Data.DataBlock.newBuilder()
+                          .setRowset(
+                              Data.RowSet.newBuilder().addRows(StructValue.getDefaultInstance())))
+                  .build());
+          send(o, 2);
+        };
+
+    DataBatchMetricsRecorder firstRecorder = mock(DataBatchMetricsRecorder.class);
+    DataBatchMetricsRecorder secondRecorder = mock(DataBatchMetricsRecorder.class);
+    final Future<?> firstRead =
+        executor.submit(
+            () -> sharedScans.read(KEY, new RecordingObserver(), firstRecorder, source));
+    final Future<?> secondRead =
+        executor.submit(
+            () -> sharedScans.read(KEY, new RecordingObserver(), secondRecorder, source));
+    while (sharedScans.getSubscribers(KEY) < 2) {
+      Thread.sleep(10);
+    }
+    release.countDown();
+    firstRead.get(10, TimeUnit.SECONDS);
+    secondRead.get(10, TimeUnit.SECONDS);
+
+    // The scan doesn't record with the recorder of the call that started it
+    assertThat(sourceRecorders).hasSize(1);
+    assertThat(sourceRecorders.get(0)).isNotSameInstanceAs(firstRecorder);
+    for (DataBatchMetricsRecorder recorder : List.of(firstRecorder, secondRecorder)) {
+      verify(recorder).recordLatency();
+      verify(recorder).recordMetrics(eq(1), eq(0L), any());
+      verify(recorder, times(2)).recordMetrics(eq(0), eq(0L), any());
+    }
+  }
+
+  @Test
+  public void read_noThreadReadsByItself() throws Exception {
+    SharedScans sharedScans = new SharedScans(2, 1, MAX_WAIT);
+    CountDownLatch release = new CountDownLatch(1);
+    SharedScans.ScanSource blocking =
+        (o, r) -> {
+          await(release);
+          send(o, 1);
+        };
+    SharedScans.Key otherKey =
+        new SharedScans.Key("datasource", "v1.other", Struct.getDefaultInstance());
+
+    final Future<?> firstRead =
+        executor.submit(() -> sharedScans.read(KEY, new RecordingObserver(), RECORDER, blocking));
+    while (sharedScans.getSubscribers(KEY) < 1) {
+      Thread.sleep(10);
+    }
+
+    // The only thread is busy, hence the read of another partition runs on the calling thread
+    Thread caller = Thread.currentThread();
+    RecordingObserver observer = new RecordingObserver();
+    sharedScans.read(
+        otherKey,
+        observer,
+        RECORDER,
+        (o, r) -> {
+          assertThat(Thread.currentThread()).isSameInstanceAs(caller);
+          send(o, 3);
+        });
+    assertThat(observer.batches).isEqualTo(batches(3));
+
+    release.countDown();
+    firstRead.get(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void read_lateJoinerReadsByItself() throws Exception {
+    SharedScans sharedScans = new SharedScans(2, 4, MAX_WAIT);
+    AtomicInteger reads = new AtomicInteger();
+    SharedScans.ScanSource source =
+        (o, r) -> {
+          reads.incrementAndGet();
+          send(o, 5);
+        };
+
+    // The first reader stops after receiving three batches, while the scan fills the buffer
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch unblock = new CountDownLatch(1);
+    RecordingObserver first =
+        new RecordingObserver() {
+          @Override
+          public void onNext(Data data) {
+            if (batches.size() == 3) {
+              blocked.countDown();
+              await(unblock);
+            }
+            super.onNext(data);
+          }
+        };
+    final Future<?> firstRead =
+        executor.submit(() -> sharedScans.read(KEY, first, RECORDER, source));
+    assertThat(blocked.await(10, TimeUnit.SECONDS)).isTrue();
+    while (sharedScans.size() > 0) {
+      Thread.sleep(10);
+    }
+
+    RecordingObserver second = new RecordingObserver();
+    sharedScans.read(KEY, second, RECORDER, source);
+    unblock.countDown();
+    firstRead.get(10, TimeUnit.SECONDS);
+
+    assertThat(reads.get()).isEqualTo(2);
+    assertThat(first.batches).isEqualTo(batches(5));
+    assertThat(second.batches).isEqualTo(batches(5));
+  }
+
+  @Test
+  public void read_failurePropagated() {
+    SharedScans sharedScans = new SharedScans(2, 4, MAX_WAIT);
+    RecordingObserver observer = new RecordingObserver();
+
+    IllegalArgumentException ex =
+        assertThrows(
+            IllegalArgumentException.class,
+            () ->
+                sharedScans.read(
+                    KEY,
+                    observer,
+                    RECORDER,
+                    (o, r) -> {
+                      o.onNext(batch(0));
+                      throw new IllegalArgumentException("invalid");
+                    }));
+
+    assertThat(ex).hasMessageThat().isEqualTo("invalid");
+    assertThat(observer.batches).isEqualTo(batches(1));
+    assertThat(observer.completed).isFalse();
+  }
+
+  @Test
+  public void read_failureCopiedPerReader() throws Exception {
+    SharedScans sharedScans = new SharedScans(2, 4, MAX_WAIT);
+    CountDownLatch release = new CountDownLatch(1);
+    IllegalArgumentException failure = new IllegalArgumentException("invalid");
+    SharedScans.ScanSource source =
+        (o, r) -> {
+          await(release);
+          throw failure;
+        };
+
+    final Future<?> firstRead =
+        executor.submit(() -> sharedScans.read(KEY, new RecordingObserver(), RECORDER, source));
+    final Future<?> secondRead =
+        executor.submit(() -> sharedScans.read(KEY, new RecordingObserver(), RECORDER, source));
+    while (sharedScans.getSubscribers(KEY) < 2) {
+      Thread.sleep(10);
+    }
+    release.countDown();
+
+    Exception first = assertThrows(Exception.class, () -> firstRead.get(10, TimeUnit.SECONDS));
+    Exception second = assertThrows(Exception.class, () -> secondRead.get(10, TimeUnit.SECONDS));
+    for (Exception ex : List.of(first, second)) {
+      assertThat(ex).hasCauseThat().isInstanceOf(IllegalArgumentException.class);
+      assertThat(ex).hasCauseThat().hasMessageThat().isEqualTo("invalid");
+      assertThat(ex).hasCauseThat().hasCauseThat().isSameInstanceAs(failure);
+    }
+    assertThat(first.getCause()).isNotSameInstanceAs(second.getCause());
+  }
+
+  @Test
+  public void read_stalledReaderDoesNotBlockFastReader() throws Exception {
+    SharedScans sharedScans = new SharedScans(2, 4, Duration.ofMillis(100));
+    CountDownLatch release = new CountDownLatch(1);
+    SharedScans.ScanSource source =
+        (o, r) -> {
+          await(release);
+          send(o, 10);
+        };
+
+    // The stalled reader stops while sending its second batch, until the fast reader is done
+    CountDownLatch unblock = new CountDownLatch(1);
+    RecordingObserver stalled =
+        new RecordingObserver() {
+          @Override
+          public void onNext(Data data) {
+            if (batches.size() == 1) {
+              await(unblock);
+            }
+            super.onNext(data);
+          }
+        };
+    RecordingObserver fast = new RecordingObserver();
+    final Future<?> stalledRead =
+        executor.submit(() -> sharedScans.read(KEY, stalled, RECORDER, source));
+    final Future<?> fastRead = executor.submit(() -> sharedScans.read(KEY, fast, RECORDER, source));
+    while (sharedScans.getSubscribers(KEY) < 2) {
+      Thread.sleep(10);
+    }
+    release.countDown();
+
+    fastRead.get(10, TimeUnit.SECONDS);
+    assertThat(fast.batches).isEqualTo(batches(10));
+    assertThat(fast.completed).isTrue();
+
+    unblock.countDown();
+    Exception ex = assertThrows(Exception.class, () -> stalledRead.get(10, TimeUnit.SECONDS));
+    assertThat(Status.fromThrowable(ex.getCause()).getCode()).isEqualTo(Status.Code.UNAVAILABLE);
+    assertThat(stalled.batches).isEqualTo(batches(2));
+    assertThat(stalled.completed).isFalse();
+  }
+
+  @Test
+  public void read_cancelledWhenAllReadersGone() throws Exception {
+    SharedScans sharedScans = new SharedScans(2, 4, MAX_WAIT);
+    CountDownLatch sourceDone = new CountDownLatch(1);
+    SharedScans.ScanSource source =
+        (o, r) -> {
+          try {
+            for (int i = 0; ; i++) {
+              o.onNext(batch(i));
+            }
+          } finally {
+            sourceDone.countDown();
+          }
+        };
+    Context.CancellableContext context = Context.current().withCancellation();
+    CountDownLatch received = new CountDownLatch(1);
+    RecordingObserver observer =
+        new RecordingObserver() {
+          @Override
+          public void onNext(Data data) {
+            super.onNext(data);
+            received.countDown();
+          }
+        };
+
+    Future<?> read =
+        executor.submit(context.wrap(() -> sharedScans.read(KEY, observer, RECORDER, source)));
+    assertThat(received.await(10, TimeUnit.SECONDS)).isTrue();
+    context.cancel(null);
+
+    Exception ex = assertThrows(Exception.class, () -> read.get(10, TimeUnit.SECONDS));
+    assertThat(ex).hasCauseThat().isInstanceOf(StatusRuntimeException.class);
+    assertThat(Status.fromThrowable(ex.getCause()).getCode()).isEqualTo(Status.Code.CANCELLED);
+    assertThat(sourceDone.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(sharedScans.size()).isEqualTo(0);
+  }
+
+  private static void send(StreamObserver<Data> observer, int count) {
+    batches(count).forEach(observer::onNext);
+    observer.onCompleted();
+  }
+
+  private static List<Data> batches(int count) {
+    return IntStream.range(0, count).mapToObj(SharedScansTest::batch).toList();
+  }
+
+  private static Data batch(int index) {
+    return Data.newBuilder().setStreamId(ByteString.copyFromUtf8("batch-" + index)).build();
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** A {@link StreamObserver} that records the batches it receives. */
+  private static class RecordingObserver implements StreamObserver<Data> {
+
+    protected final List<Data> batches = new CopyOnWriteArrayList<>();
+    private volatile boolean completed;
+
+    @Override
+    public void onNext(Data data) {
+      batches.add(data);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      // Errors are thrown by SharedScans.read
+    }
+
+    @Override
+    public void onCompleted() {
+      completed = true;
+    }
+  }
+}
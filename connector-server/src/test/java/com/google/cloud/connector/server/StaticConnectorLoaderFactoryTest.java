@@ -0,0 +1,59 @@
+package com.google.cloud.connector.server;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.cloud.connector.api.Connector;
+import com.google.cloud.connector.maven.ConnectorGeneratorMojo;
+import com.google.cloud.connector.server.connector.NoParamConnector;
+import com.google.protobuf.Struct;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Unit tests for the {@link StaticConnectorLoaderFactory}. */
+public class StaticConnectorLoaderFactoryTest {
+
+  @TempDir Path tempDir;
+
+  @Test
+  public void get_registeredConnector() throws Exception {
+    Path outputDir = tempDir.resolve("classes");
+    ConnectorGeneratorMojo.create(
+            tempDir, outputDir, NoParamConnector.class.getName(), "connector.textproto", true)
+        .execute();
+
+    List<String> fallbackIds = new ArrayList<>();
+    try (URLClassLoader classLoader =
+        new URLClassLoader(new URL[] {outputDir.toUri().toURL()}, getClass().getClassLoader())) {
+      StaticConnectorLoaderFactory factory =
+          new StaticConnectorLoaderFactory(
+              classLoader,
+              datasourceId -> {
+                fallbackIds.add(datasourceId);
+                throw new IllegalArgumentException("Missing connector " + datasourceId);
+              });
+
+      try (ConnectorLoader loader = factory.get("NoParamConnector")) {
+        assertThat(loader.getDataSource().getId()).isEqualTo("NoParamConnector");
+        Connector connector =
+            loader.instantiateConnector(Struct.getDefaultInstance(), Connector.class);
+        // Bundled connectors are loaded without class loader isolation
+        assertThat(connector.getClass()).isEqualTo(NoParamConnector.class);
+      }
+      assertThat(fallbackIds).isEmpty();
+
+      assertThrows(IllegalArgumentException.class, () -> factory.get("missing"));
+      assertThat(fallbackIds).containsExactly("missing");
+
+      // Data source ids that escape the registry directory are rejected
+      assertThrows(IllegalArgumentException.class, () -> factory.get("../NoParamConnector"));
+      assertThrows(IllegalArgumentException.class, () -> factory.get("nested/NoParamConnector"));
+      assertThat(fallbackIds).containsExactly("missing");
+    }
+  }
+}
@@ -0,0 +1,161 @@
+package com.google.cloud.connector.server;
+
+import static com.google.cloud.connector.data.ResultStreamId.COLLECTION_ID_STREAM;
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+
+import com.google.cloud.bigquery.federation.v1alpha1.Data;
+import com.google.cloud.bigquery.federation.v1alpha1.Data.DataBlock;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.bigquery.federation.v1alpha1.Expression;
+import com.google.cloud.bigquery.federation.v1alpha1.FieldExpression;
+import com.google.cloud.connector.api.AssetName;
+import com.google.cloud.connector.api.DatasetName;
+import com.google.cloud.connector.api.RecordReader;
+import com.google.cloud.connector.api.SplittableRecordReader;
+import com.google.cloud.connector.api.data.RecordBuilder;
+import com.google.cloud.connector.api.schema.SchemaBuilder;
+import com.google.cloud.connector.data.AssetInfo;
+import com.google.cloud.connector.data.Partition;
+import com.google.cloud.connector.data.ResultStreamId;
+import com.google.protobuf.ByteString;
+import io.grpc.stub.StreamObserver;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+import picocli.CommandLine;
+
+/** Unit test for {@link StreamSplitter}. */
+public class StreamSplitterTest {
+
+  private static final DatasetName STREAM_NAME =
+      DatasetName.fromName(
+          "datasources/test/instances/instance/datasets/dataset/resultsets/rs/streams/s1");
+  private static final AssetInfo ASSET_INFO =
+      new AssetInfo(new AssetName(List.of("dataset", "table")), null);
+  private static final DataQuery SERVER_QUERY =
+      DataQuery.newBuilder()
+          .setFilterPredicate(
+              Expression.newBuilder().setField(FieldExpression.newBuilder().setFieldName("a")))
+          .build();
+  private static final Partition PARTITION = new Partition(new byte[0], ASSET_INFO, SERVER_QUERY);
+
+  @Test
+  public void splitting_publishesSplitStreams() {
+    StreamSplitter splitter = createSplitter(100);
+    TestReader reader = new TestReader(new byte[] {1}, new byte[0], new byte[] {2});
+    List<Data> batches = new ArrayList<>();
+
+    StreamObserver<Data> observer =
+        splitter.splitting(reader, STREAM_NAME, PARTITION, new RecordingObserver(batches));
+    for (int i = 0; i < 8; i++) {
+      observer.onNext(batch(60));
+    }
+
+    // A split is attempted every 100 bytes, the second and the last attempts fail
+    assertThat(reader.attempts).isEqualTo(4);
+    List<String> splitStreams =
+        batches.stream().flatMap(data -> data.getSplitStreamsList().stream()).toList();
+    assertThat(splitStreams).hasSize(2);
+    for (int i = 0; i < splitStreams.size(); i++) {
+      DatasetName splitName = DatasetName.fromName(splitStreams.get(i));
+      assertThat(splitName.name())
+          .startsWith("datasources/test/instances/instance/datasets/dataset/resultsets/rs/");
+      Partition partition =
+          ResultStreamId.decodePartition(splitName.getComponent(COLLECTION_ID_STREAM).resourceId());
+      assertThat(partition.query()).isEqualTo(new byte[] {(byte) (i + 1)});
+      assertThat(partition.assetInfo()).isEqualTo(ASSET_INFO);
+      assertThat(partition.serverQuery()).isEqualTo(SERVER_QUERY);
+    }
+  }
+
+  @Test
+  public void splitting_notSplittable() {
+    StreamSplitter splitter = createSplitter(100);
+    StreamObserver<Data> observer = new RecordingObserver(new ArrayList<>());
+    RecordReader reader = mock(RecordReader.class);
+
+    assertThat(splitter.splitting(reader, STREAM_NAME, PARTITION, observer))
+        .isSameInstanceAs(observer);
+  }
+
+  @Test
+  public void splitting_disabled() {
+    StreamSplitter splitter = createSplitter(0);
+    StreamObserver<Data> observer = new RecordingObserver(new ArrayList<>());
+
+    assertThat(splitter.isEnabled()).isFalse();
+    assertThat(splitter.splitting(new TestReader(new byte[] {1}), STREAM_NAME, PARTITION, observer))
+        .isSameInstanceAs(observer);
+  }
+
+  private static StreamSplitter createSplitter(long splitAfterBytes) {
+    QueryPartitioningConfig config = new QueryPartitioningConfig();
+    new CommandLine(config)
+        .parseArgs("--split-stream-after-bytes", String.valueOf(splitAfterBytes));
+    return new StreamSplitter(config, ResultStreamId.Encoding.PROTO);
+  }
+
+  private static Data batch(int size) {
+    // A DataBlock with an empty RowSet and the given number of bytes in the stream id
+    return Data.newBuilder()
+        .setDataBlock(DataBlock.getDefaultInstance())
+        .setStreamId(ByteString.copyFrom(new byte[size - 4]))
+        .build();
+  }
+
+  /** A {@link SplittableRecordReader} that returns predefined splits. */
+  private static final class TestReader implements SplittableRecordReader {
+
+    private final Deque<byte[]> splits;
+    private int attempts;
+
+    /** Creates a reader that returns the given splits, where an empty split fails. */
+    private TestReader(byte[]... splits) {
+      this.splits = new ArrayDeque<>(List.of(splits));
+    }
+
+    @Nullable
+    @Override
+    public byte[] trySplit() {
+      attempts++;
+      byte[] split = splits.poll();
+      return split == null || split.length == 0 ? null : split;
+    }
+
+    @Override
+    public void getRecordSchema(SchemaBuilder schemaBuilder) {}
+
+    @Override
+    public boolean nextRecord(RecordBuilder recordBuilder) {
+      return false;
+    }
+
+    @Override
+    public void close() {}
+  }
+
+  /** A {@link StreamObserver} that records the batches it receives. */
+  private static final class RecordingObserver implements StreamObserver<Data> {
+
+    private final List<Data> batches;
+
+    private RecordingObserver(List<Data> batches) {
+      this.batches = batches;
+    }
+
+    @Override
+    public void onNext(Data data) {
+      batches.add(data);
+    }
+
+    @Override
+    public void onError(Throwable t) {}
+
+    @Override
+    public void onCompleted() {}
+  }
+}
@@ -0,0 +1,280 @@
+package com.google.cloud.connector.server;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.cloud.bigquery.federation.v2alpha1.ConnectorServiceGrpc;
+import com.google.cloud.bigquery.federation.v2alpha1.Data;
+import com.google.cloud.bigquery.federation.v2alpha1.DataQuery;
+import com.google.cloud.bigquery.federation.v2alpha1.DataSourceConfig;
+import com.google.cloud.bigquery.federation.v2alpha1.DataSourceConfig.GenericParameterValues;
+import com.google.cloud.bigquery.federation.v2alpha1.DataSourceConfig.ParameterValue;
+import com.google.cloud.bigquery.federation.v2alpha1.ExecuteQueryRequest;
+import com.google.cloud.bigquery.federation.v2alpha1.ReadStreamRequest;
+import com.google.cloud.bigquery.federation.v2alpha1.ReaderServiceGrpc;
+import com.google.cloud.bigquery.federation.v2alpha1.Schema;
+import com.google.cloud.bigquery.federation.v2alpha1.StartQueryRequest;
+import com.google.cloud.bigquery.federation.v2alpha1.StartQueryResponse;
+import com.google.cloud.connector.maven.ConnectorGeneratorMojo;
+import com.google.cloud.connector.server.connector.InMemDatabaseConnector;
+import com.google.cloud.connector.server.query.QueryPlanner;
+import com.google.cloud.connector.server.util.JarBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.flogger.FluentLogger;
+import com.google.inject.Guice;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status.Code;
+import io.grpc.StatusRuntimeException;
+import io.substrait.proto.FetchRel;
+import io.substrait.proto.NamedStruct;
+import io.substrait.proto.Plan;
+import io.substrait.proto.PlanRel;
+import io.substrait.proto.ReadRel;
+import io.substrait.proto.Rel;
+import io.substrait.proto.RelRoot;
+import io.substrait.proto.Type;
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+/**
+ * Unit tests for the v2alpha1 {@link SubstraitConnectorService} and {@link
+ * SubstraitReaderService}, served by the {@link ConnectorServer}.
+ */
+@TestInstance(Lifecycle.PER_CLASS)
+public class SubstraitConnectorServiceTest {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final String DATASOURCE =
+      String.format("datasources/%s", InMemDatabaseConnector.DATASOURCE_ID);
+  private static final int NUM_ROWS = 3;
+  private static final DataSourceConfig DATASOURCE_CONFIG =
+      DataSourceConfig.newBuilder()
+          .setData(
+              DataSourceConfig.Data.newBuilder()
+                  .setGeneric(
+                      GenericParameterValues.newBuilder()
+                          .putValues(
+                              InMemDatabaseConnector.CONFIG_KEY_NUM_ROWS,
+                              ParameterValue.newBuilder().setIntegerValue(NUM_ROWS).build())))
+          .build();
+  private static final String[] PERSON_TABLE = {
+    InMemDatabaseConnector.DATABASE_NAME, InMemDatabaseConnector.TABLE_NAME_PERSON
+  };
+  private static final List<String> PERSON_FIELDS = List.of("firstName", "lastName", "age");
+  private static final NamedStruct PERSON_SCHEMA =
+      NamedStruct.newBuilder()
+          .addAllNames(PERSON_FIELDS)
+          .setStruct(
+              Type.Struct.newBuilder()
+                  .addTypes(Type.newBuilder().setString(Type.String.getDefaultInstance()))
+                  .addTypes(Type.newBuilder().setString(Type.String.getDefaultInstance()))
+                  .addTypes(Type.newBuilder().setI64(Type.I64.getDefaultInstance()))
+                  .setNullability(Type.Nullability.NULLABILITY_REQUIRED))
+          .build();
+
+  @TempDir
+  private static Path connectorTopRootDir;
+
+  private static ConnectorServer server;
+  private static ManagedChannel channel;
+  private static ConnectorServiceGrpc.ConnectorServiceBlockingStub connectorService;
+  private static ReaderServiceGrpc.ReaderServiceBlockingStub readerService;
+
+  @BeforeAll
+  void setUp() throws Exception {
+    Path classBasePath = getClassBasePath(InMemDatabaseConnector.class);
+    Path connectorJar =
+        buildConnectorJar(
+            InMemDatabaseConnector.DATASOURCE_ID, InMemDatabaseConnector.class, classBasePath);
+    logger.atInfo().log(
+        "Connector '%s' jar has been built at '%s'",
+        InMemDatabaseConnector.DATASOURCE_ID, connectorJar);
+
+    CommandLine cli = new CommandLine(new ConnectorModule());
+    cli.parseArgs(
+        "--port", "0", "--insecure", "--connector-root-dir", connectorTopRootDir.toString());
+    ConnectorModule connectorModule = cli.getCommand();
+    server = Guice.createInjector(connectorModule).getInstance(ConnectorServer.class);
+    server.startAsync().awaitRunning();
+
+    int port = server.getPort();
+    logger.atInfo().log("Connector server has started at port %d", port);
+
+    channel = ManagedChannelBuilder.forAddress("localhost", port).usePlaintext().build();
+    connectorService = ConnectorServiceGrpc.newBlockingStub(channel);
+    readerService = ReaderServiceGrpc.newBlockingStub(channel);
+  }
+
+  @AfterAll
+  void teardown() throws InterruptedException {
+    channel.shutdown().awaitTermination(5, TimeUnit.SECONDS);
+    server.stopAsync().awaitTerminated();
+    logger.atInfo().log("Connector server has been shut down");
+  }
+
+  @Test
+  public void executeQuery_substraitPlan_residualPlanInFirstData() {
+    ExecuteQueryRequest request =
+        ExecuteQueryRequest.newBuilder()
+            .setDatasource(DATASOURCE)
+            .setDatasourceConfig(DATASOURCE_CONFIG)
+            .setSubstraitPlan(plan(fetch(read(PERSON_TABLE), 2)))
+            .build();
+
+    List<Data> data = ImmutableList.copyOf(connectorService.executeQuery(request));
+
+    // The connector doesn't support limits, so the fetch is left to the caller
+    assertThat(data.get(0).getResidualPlan())
+        .isEqualTo(plan(fetch(read(QueryPlanner.RESULT_SET_LABEL), 2)));
+    assertThat(data.stream().skip(1).filter(Data::hasResidualPlan).toList()).isEmpty();
+    assertThat(fieldNames(data.get(0))).containsExactlyElementsIn(PERSON_FIELDS);
+    assertThat(countRows(data)).isEqualTo(NUM_ROWS);
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void executeQuery_dataQueryWithGroupingKeys_throwsInvalidArgument() {
+    ExecuteQueryRequest request =
+        ExecuteQueryRequest.newBuilder()
+            .setDatasource(DATASOURCE)
+            .setDatasourceConfig(DATASOURCE_CONFIG)
+            .setDataQuery(
+                DataQuery.newBuilder()
+                    .setTable(InMemDatabaseConnector.TABLE_NAME_PERSON)
+                    .setGroupingKeys(DataQuery.Compute.getDefaultInstance()))
+            .build();
+
+    StatusRuntimeException ex =
+        assertThrows(
+            StatusRuntimeException.class,
+            () -> ImmutableList.copyOf(connectorService.executeQuery(request)));
+    assertThat(ex.getStatus().getCode()).isEqualTo(Code.INVALID_ARGUMENT);
+  }
+
+  @Test
+  public void startQuery_substraitPlan_residualPlanInResponse() {
+    StartQueryRequest request =
+        StartQueryRequest.newBuilder()
+            .setDatasource(DATASOURCE)
+            .setDatasourceConfig(DATASOURCE_CONFIG)
+            .setSubstraitPlan(plan(fetch(read(PERSON_TABLE), 2)))
+            .build();
+
+    StartQueryResponse response = connectorService.startQuery(request);
+
+    assertThat(response.getResidualPlan())
+        .isEqualTo(plan(fetch(read(QueryPlanner.RESULT_SET_LABEL), 2)));
+    assertThat(response.getResultSetsCount()).isEqualTo(1);
+    StartQueryResponse.ResultSet resultSet = response.getResultSets(0);
+    assertThat(resultSet.getLabel()).isEqualTo(QueryPlanner.RESULT_SET_LABEL);
+    assertThat(resultSet.getStreamsCount()).isEqualTo(InMemDatabaseConnector.QUERY_MAX_CONCURRENCY);
+
+    List<Data> data =
+        ImmutableList.copyOf(
+            readerService.readStream(
+                ReadStreamRequest.newBuilder()
+                    .setResultStream(resultSet.getStreams(0).getName())
+                    .setDatasourceConfig(DATASOURCE_CONFIG)
+                    .build()));
+
+    // The residual plan is only returned by StartQuery
+    assertThat(data.stream().filter(Data::hasResidualPlan).toList()).isEmpty();
+    assertThat(fieldNames(data.get(0))).containsExactlyElementsIn(PERSON_FIELDS);
+    assertThat(countRows(data)).isEqualTo(NUM_ROWS);
+  }
+
+  private static Plan plan(Rel rel) {
+    return Plan.newBuilder()
+        .addRelations(
+            PlanRel.newBuilder()
+                .setRoot(RelRoot.newBuilder().setInput(rel).addAllNames(PERSON_FIELDS)))
+        .build();
+  }
+
+  private static Rel read(String... names) {
+    return Rel.newBuilder()
+        .setRead(
+            ReadRel.newBuilder()
+                .setBaseSchema(PERSON_SCHEMA)
+                .setNamedTable(ReadRel.NamedTable.newBuilder().addAllNames(List.of(names))))
+        .build();
+  }
+
+  private static Rel fetch(Rel input, long count) {
+    return Rel.newBuilder()
+        .setFetch(FetchRel.newBuilder().setInput(input).setCount(count))
+        .build();
+  }
+
+  @SuppressWarnings("deprecation")
+  private static List<String> fieldNames(Data data) {
+    if (data.hasSubstraitSchema()) {
+      return data.getSubstraitSchema().getSchema().getNamesList();
+    }
+    return data.getFederationSchema().getFieldsList().stream()
+        .map(Schema.Field::getFieldName)
+        .toList();
+  }
+
+  private static int countRows(List<Data> data) {
+    return data.stream()
+        .mapToInt(
+            d -> d.getRowset().getRowsCount() + d.getDataBlock().getRowset().getRowsCount())
+        .sum();
+  }
+
+  private Path getClassBasePath(Class<?> cls) throws URISyntaxException {
+    String classFile = cls.getName().replace('.', File.separatorChar) + ".class";
+    URL resource = getClass().getClassLoader().getResource(classFile);
+    assertNotNull(resource);
+    String uriStr = resource.toURI().toString();
+    return Paths.get(URI.create(uriStr.substring(0, uriStr.length() - classFile.length())));
+  }
+
+  private static Path buildConnectorJar(String connectorName, Class<?> clazz, Path classBasePath)
+      throws Exception {
+    List<Path> classFiles = new ArrayList<>();
+    Path classFileParentDir =
+        classBasePath
+            .resolve(Path.of(clazz.getName().replace('.', File.separatorChar) + ".class"))
+            .getParent();
+    for (File file : classFileParentDir.toFile().listFiles()) {
+      if (file.isFile() && file.getName().startsWith(clazz.getSimpleName())) {
+        classFiles.add(file.toPath());
+      }
+    }
+
+    ConnectorGeneratorMojo.create(
+            classBasePath,
+            classBasePath,
+            clazz.getName(),
+            LocalPathConnectorLoader.CONNECTOR_PROTO_FILE)
+        .execute();
+    // The connector specification is at the root of the jar
+    classFiles.add(classBasePath.resolve(LocalPathConnectorLoader.CONNECTOR_PROTO_FILE));
+
+    final Path connectorDir = Files.createDirectory(connectorTopRootDir.resolve(connectorName));
+    final Path connectorJar = connectorDir.resolve(connectorName + ".jar");
+    JarBuilder jarBuilder = new JarBuilder(connectorJar);
+    jarBuilder.addClassPaths(classFiles, classBasePath).build();
+    return connectorJar;
+  }
+}
@@ -0,0 +1,228 @@
+package com.google.cloud.connector.server;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.cloud.bigquery.federation.v1alpha1.Data;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.bigquery.federation.v1alpha1.Schema;
+import com.google.cloud.bigquery.federation.v1alpha1.StartQueryResponse;
+import com.google.cloud.bigquery.federation.v2alpha1.Expression;
+import com.google.cloud.bigquery.federation.v2alpha1.FieldExpression;
+import com.google.cloud.bigquery.federation.v2alpha1.FunctionExpression;
+import com.google.cloud.bigquery.federation.v2alpha1.FunctionSignatureId;
+import com.google.cloud.bigquery.federation.v2alpha1.StructValue;
+import com.google.cloud.bigquery.federation.v2alpha1.Type;
+import com.google.cloud.bigquery.federation.v2alpha1.TypeKind;
+import com.google.cloud.bigquery.federation.v2alpha1.Value;
+import com.google.cloud.connector.server.query.QueryPlanner;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Int64Value;
+import io.substrait.proto.FetchRel;
+import io.substrait.proto.Plan;
+import io.substrait.proto.PlanRel;
+import io.substrait.proto.Rel;
+import io.substrait.proto.RelRoot;
+import org.junit.jupiter.api.Test;
+
+/** Unit test for {@link SubstraitMessages}. */
+public class SubstraitMessagesTest {
+
+  private static final Plan RESIDUAL_PLAN =
+      Plan.newBuilder()
+          .addRelations(
+              PlanRel.newBuilder()
+                  .setRoot(
+                      RelRoot.newBuilder()
+                          .setInput(
+                              Rel.newBuilder().setFetch(FetchRel.newBuilder().setCount(10)))))
+          .build();
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void dataQuery_convertsFieldsByNumber() {
+    com.google.cloud.bigquery.federation.v2alpha1.DataQuery query =
+        com.google.cloud.bigquery.federation.v2alpha1.DataQuery.newBuilder()
+            .setTable("person")
+            .setFilterPredicate(
+                Expression.newBuilder()
+                    .setFunction(
+                        FunctionExpression.newBuilder()
+                            .setFunctionSignatureId(FunctionSignatureId.FN_LESS)
+                            .addArguments(
+                                Expression.newBuilder()
+                                    .setField(FieldExpression.newBuilder().setFieldName("age")))
+                            .addArguments(
+                                Expression.newBuilder()
+                                    .setConstant(Value.newBuilder().setInt64Value(3))))
+                    .setType(Type.newBuilder().setTypeKind(TypeKind.BOOL)))
+            .setLimit(Int64Value.of(2))
+            .build();
+
+    assertThat(SubstraitMessages.dataQuery(query))
+        .isEqualTo(
+            DataQuery.newBuilder()
+                .setTable("person")
+                .setFilterPredicate(
+                    com.google.cloud.bigquery.federation.v1alpha1.Expression.newBuilder()
+                        .setFunction(
+                            com.google.cloud.bigquery.federation.v1alpha1.FunctionExpression
+                                .newBuilder()
+                                .setFunctionSignatureId(
+                                    com.google.cloud.bigquery.federation.v1alpha1
+                                        .FunctionSignatureId.FN_LESS)
+                                .addArguments(
+                                    com.google.cloud.bigquery.federation.v1alpha1.Expression
+                                        .newBuilder()
+                                        .setField(
+                                            com.google.cloud.bigquery.federation.v1alpha1
+                                                .FieldExpression.newBuilder()
+                                                .setFieldName("age")))
+                                .addArguments(
+                                    com.google.cloud.bigquery.federation.v1alpha1.Expression
+                                        .newBuilder()
+                                        .setConstant(
+                                            com.google.cloud.bigquery.federation.v1alpha1.Value
+                                                .newBuilder()
+                                                .setInt64Value(3))))
+                        .setType(
+                            com.google.cloud.bigquery.federation.v1alpha1.Type.newBuilder()
+                                .setTypeKind(
+                                    com.google.cloud.bigquery.federation.v1alpha1.TypeKind
+                                        .BOOL)))
+                .setLimit(Int64Value.of(2))
+                .build());
+  }
+
+  @Test
+  public void dataQuery_groupingKeys_throwsException() {
+    com.google.cloud.bigquery.federation.v2alpha1.DataQuery query =
+        com.google.cloud.bigquery.federation.v2alpha1.DataQuery.newBuilder()
+            .setTable("person")
+            .setGroupingKeys(
+                com.google.cloud.bigquery.federation.v2alpha1.DataQuery.Compute
+                    .getDefaultInstance())
+            .build();
+
+    assertThrows(IllegalArgumentException.class, () -> SubstraitMessages.dataQuery(query));
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void startQueryResponse_convertsResidualQuery() {
+    StartQueryResponse response =
+        startQueryResponse()
+            .setResidualQuery(DataQuery.newBuilder().setLimit(Int64Value.of(2)))
+            .build();
+
+    var converted = SubstraitMessages.startQueryResponse(response, null);
+
+    assertThat(converted.getMaxConcurrency()).isEqualTo(2);
+    assertThat(converted.getResultSets(0).getName()).isEqualTo("resultsets/0");
+    assertThat(converted.getResultSets(0).getId()).isEqualTo("0");
+    assertThat(converted.getResultSets(0).getLabel()).isEqualTo("label");
+    assertThat(converted.getResultSets(0).getStreams(0).getName())
+        .isEqualTo("resultsets/0/streams/1");
+    assertThat(converted.getResultSets(0).getStreams(0).getId()).isEqualTo("1");
+    assertThat(converted.getResidualQuery())
+        .isEqualTo(
+            com.google.cloud.bigquery.federation.v2alpha1.DataQuery.newBuilder()
+                .setLimit(Int64Value.of(2))
+                .build());
+    assertThat(converted.hasResidualPlan()).isFalse();
+  }
+
+  @Test
+  public void startQueryResponse_residualPlan_labelsResultSet() {
+    var converted =
+        SubstraitMessages.startQueryResponse(startQueryResponse().build(), RESIDUAL_PLAN);
+
+    assertThat(converted.getResidualPlan()).isEqualTo(RESIDUAL_PLAN);
+    assertThat(converted.getResultSets(0).getLabel()).isEqualTo(QueryPlanner.RESULT_SET_LABEL);
+  }
+
+  @Test
+  public void startQueryResponse_residualQueryAndPlan_throwsException() {
+    StartQueryResponse response =
+        startQueryResponse().setResidualQuery(DataQuery.getDefaultInstance()).build();
+
+    assertThrows(
+        IllegalStateException.class,
+        () -> SubstraitMessages.startQueryResponse(response, RESIDUAL_PLAN));
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void data_convertsFieldsByNumber() {
+    Data data =
+        Data.newBuilder()
+            .setStreamId(ByteString.copyFromUtf8("1"))
+            .setSchema(
+                Schema.newBuilder()
+                    .addFields(
+                        Schema.Field.newBuilder()
+                            .setFieldName("age")
+                            .setType(
+                                com.google.cloud.bigquery.federation.v1alpha1.Type.newBuilder()
+                                    .setTypeKind(
+                                        com.google.cloud.bigquery.federation.v1alpha1.TypeKind
+                                            .INT64))))
+            .setDataBlock(
+                Data.DataBlock.newBuilder()
+                    .setRowset(
+                        Data.RowSet.newBuilder()
+                            .addRows(
+                                com.google.cloud.bigquery.federation.v1alpha1.StructValue
+                                    .newBuilder()
+                                    .addFields(
+                                        com.google.cloud.bigquery.federation.v1alpha1.Value
+                                            .newBuilder()
+                                            .setInt64Value(42)))))
+            .setDataQuery(DataQuery.newBuilder().setLimit(Int64Value.of(2)))
+            .build();
+
+    var converted = SubstraitMessages.data(data);
+
+    assertThat(converted.getStreamId()).isEqualTo(ByteString.copyFromUtf8("1"));
+    assertThat(converted.getFederationSchema().getFields(0).getFieldName()).isEqualTo("age");
+    assertThat(converted.getFederationSchema().getFields(0).getType())
+        .isEqualTo(Type.newBuilder().setTypeKind(TypeKind.INT64).build());
+    assertThat(converted.getDataBlock().getRowset().getRowsList())
+        .containsExactly(
+            StructValue.newBuilder().addFields(Value.newBuilder().setInt64Value(42)).build());
+    assertThat(converted.getResidualQuery())
+        .isEqualTo(
+            com.google.cloud.bigquery.federation.v2alpha1.DataQuery.newBuilder()
+                .setLimit(Int64Value.of(2))
+                .build());
+  }
+
+  @Test
+  public void data_residualPlan() {
+    Data data = Data.newBuilder().setStreamId(ByteString.copyFromUtf8("1")).build();
+
+    assertThat(SubstraitMessages.data(data, RESIDUAL_PLAN).getResidualPlan())
+        .isEqualTo(RESIDUAL_PLAN);
+    assertThat(SubstraitMessages.data(data, null).hasResidualPlan()).isFalse();
+  }
+
+  @Test
+  public void data_residualQueryAndPlan_throwsException() {
+    Data data = Data.newBuilder().setDataQuery(DataQuery.getDefaultInstance()).build();
+
+    assertThrows(IllegalStateException.class, () -> SubstraitMessages.data(data, RESIDUAL_PLAN));
+  }
+
+  private static StartQueryResponse.Builder startQueryResponse() {
+    StartQueryResponse.Builder builder = StartQueryResponse.newBuilder().setMaxConcurrency(2);
+    builder
+        .addResultSetsBuilder()
+        .setName("resultsets/0")
+        .setId("0")
+        .setLabel("label")
+        .addStreamsBuilder()
+        .setName("resultsets/0/streams/1")
+        .setId("1");
+    return builder;
+  }
+}
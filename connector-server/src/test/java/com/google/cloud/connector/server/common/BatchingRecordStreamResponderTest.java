@@ -170,6 +170,62 @@ class BatchingRecordStreamResponderTest {
     assertFalse(firstBatch.hasDataBlock());
   }
 
+  @Test
+  void sendRecordsInBatches_stopsWhenLimitReached() throws Exception {
+    // Records of more than a batch each, without end
+    when(recordReader.nextRecord(any()))
+        .thenAnswer(
+            (a) -> {
+              RecordBuilder builder = a.getArgument(0, RecordBuilder.class);
+              byte[] bytes = new byte[257_000];
+              random.nextBytes(bytes);
+              builder.field("bytes").set(bytes).endStruct();
+              return true;
+            });
+
+    FakeStreamObserver observer = new FakeStreamObserver(new CompletableFuture<>());
+    responder.sendRecordsInBatches(
+        new LimitedFakeStreamObserver(observer, 2),
+        recordReader,
+        new ConnectorDataSchemaBuilder(),
+        new DataBatchMetricsRecorder(OpenTelemetry.noop(), "datasource", "apiName", Instant.now()));
+    ImmutableList<Data> batches = observer.getListFuture().get();
+    assertThat(batches.size()).isEqualTo(2);
+  }
+
+  // Fake stream observer that reaches its limit after the given number of batches
+  private static final class LimitedFakeStreamObserver implements LimitedStreamObserver<Data> {
+    private final StreamObserver<Data> observer;
+    private final int limit;
+    private int batches;
+
+    private LimitedFakeStreamObserver(StreamObserver<Data> observer, int limit) {
+      this.observer = observer;
+      this.limit = limit;
+    }
+
+    @Override
+    public boolean isLimitReached() {
+      return batches >= limit;
+    }
+
+    @Override
+    public void onNext(Data data) {
+      batches++;
+      observer.onNext(data);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      observer.onError(t);
+    }
+
+    @Override
+    public void onCompleted() {
+      observer.onCompleted();
+    }
+  }
+
   // Fake stream observer to check the results returned
   private static final class FakeStreamObserver implements StreamObserver<Data> {
     private final CompletableFuture<ImmutableList<Data>> listFuture;
@@ -0,0 +1,50 @@
+package com.google.cloud.connector.server.connector;
+
+import static com.google.cloud.bigquery.federation.v1alpha1.DataSource.Capability.SUPPORTS_PARALLEL_QUERIES;
+
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.connector.api.AssetName;
+import com.google.cloud.connector.api.Connector;
+import com.google.cloud.connector.api.ParallelQueryExecutor;
+import com.google.cloud.connector.api.ParallelQueryPreparationContext;
+import com.google.cloud.connector.api.RecordReader;
+import com.google.cloud.connector.api.annotation.DataSource;
+import com.google.cloud.connector.api.schema.SchemaBuilder;
+
+/**
+ * A connector that only supports parallel queries, and doesn't add any partition to them, as if
+ * all of its partitions were pruned.
+ */
+public class EmptyParallelConnector implements Connector, ParallelQueryExecutor {
+  public static final String DATASOURCE_ID = "emptyparallel";
+  public static final String TABLE_NAME = "empty";
+  public static final String FIELD_NAME = "id";
+
+  @DataSource(value = DATASOURCE_ID, capabilities = {SUPPORTS_PARALLEL_QUERIES})
+  public EmptyParallelConnector() {
+    // no-op
+  }
+
+  @Override
+  public void resolveSchema(AssetName assetName, SchemaBuilder schemaBuilder) {
+    schemaBuilder.name(TABLE_NAME);
+    schemaBuilder.field(FIELD_NAME).typeInt64();
+    schemaBuilder.endStruct();
+  }
+
+  @Override
+  public void prepareQuery(
+      AssetName assetName, DataQuery query, ParallelQueryPreparationContext context) {
+    // no partition
+  }
+
+  @Override
+  public RecordReader readPartition(AssetName assetName, byte[] partitionData) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ConnectorName: '%s'", getClass().getName());
+  }
+}
@@ -0,0 +1,199 @@
+package com.google.cloud.connector.server.query;
+
+import static com.google.cloud.connector.server.query.QueryTestProtos.NULL;
+import static com.google.cloud.connector.server.query.QueryTestProtos.constant;
+import static com.google.cloud.connector.server.query.QueryTestProtos.field;
+import static com.google.cloud.connector.server.query.QueryTestProtos.float64;
+import static com.google.cloud.connector.server.query.QueryTestProtos.function;
+import static com.google.cloud.connector.server.query.QueryTestProtos.int64;
+import static com.google.cloud.connector.server.query.QueryTestProtos.row;
+import static com.google.cloud.connector.server.query.QueryTestProtos.schemaField;
+import static com.google.cloud.connector.server.query.QueryTestProtos.string;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.Compute;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.ComputeElement;
+import com.google.cloud.bigquery.federation.v1alpha1.Expression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionSignatureId;
+import com.google.cloud.bigquery.federation.v1alpha1.Schema;
+import com.google.cloud.bigquery.federation.v1alpha1.StructValue;
+import com.google.cloud.bigquery.federation.v1alpha1.TypeKind;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/** Unit test for {@link BatchEvaluator}. */
+public class BatchEvaluatorTest {
+
+  private static final Schema SCHEMA =
+      Schema.newBuilder()
+          .addFields(schemaField("id", TypeKind.INT64))
+          .addFields(schemaField("name", TypeKind.STRING))
+          .addFields(schemaField("score", TypeKind.DOUBLE))
+          .build();
+  private static final List<StructValue> ROWS =
+      List.of(
+          row(int64(1), string("a"), float64(0)),
+          row(int64(2), NULL, float64(2)),
+          row(int64(3), string("c"), float64(4)),
+          row(int64(4), string("d"), NULL));
+
+  @Test
+  public void evaluate_filter() {
+    BatchEvaluator evaluator =
+        new BatchEvaluator(
+            filter(
+                function(
+                    FunctionSignatureId.FN_AND,
+                    function(FunctionSignatureId.FN_GREATER, field("id"), constant(int64(1))),
+                    function(
+                        FunctionSignatureId.FN_NOT,
+                        function(FunctionSignatureId.FN_IS_NULL, field("name"))))),
+            SCHEMA);
+
+    assertThat(evaluator.getOutputSchema()).isEqualTo(SCHEMA);
+    assertThat(evaluator.evaluate(ROWS)).containsExactly(ROWS.get(2), ROWS.get(3)).inOrder();
+  }
+
+  @Test
+  public void evaluate_nullIsNotTrue() {
+    // score > 1 is NULL for the last record, and NOT NULL is still NULL
+    BatchEvaluator evaluator =
+        new BatchEvaluator(
+            filter(
+                function(
+                    FunctionSignatureId.FN_NOT,
+                    function(FunctionSignatureId.FN_LESS, field("score"), constant(float64(1))))),
+            SCHEMA);
+
+    assertThat(evaluator.evaluate(ROWS)).containsExactly(ROWS.get(1), ROWS.get(2)).inOrder();
+  }
+
+  @Test
+  public void evaluate_conjunctsOnlyForSelectedRecords() {
+    // 8 / score would divide by zero for the first record, which the first conjunct filters out
+    BatchEvaluator evaluator =
+        new BatchEvaluator(
+            filter(
+                function(
+                    FunctionSignatureId.FN_AND,
+                    function(
+                        FunctionSignatureId.FN_NOT_EQUAL, field("score"), constant(float64(0))),
+                    function(
+                        FunctionSignatureId.FN_GREATER,
+                        function(
+                            FunctionSignatureId.FN_DIVIDE_DOUBLE,
+                            constant(float64(8)),
+                            field("score")),
+                        constant(float64(3))))),
+            SCHEMA);
+
+    assertThat(evaluator.evaluate(ROWS)).containsExactly(ROWS.get(1));
+  }
+
+  @Test
+  public void evaluate_orShortCircuits() {
+    Expression predicate =
+        function(
+            FunctionSignatureId.FN_OR,
+            function(FunctionSignatureId.FN_EQUAL, field("score"), constant(float64(0))),
+            function(
+                FunctionSignatureId.FN_LESS,
+                function(
+                    FunctionSignatureId.FN_DIVIDE_DOUBLE, constant(float64(8)), field("score")),
+                constant(float64(3))));
+
+    assertThat(new BatchEvaluator(filter(predicate), SCHEMA).evaluate(ROWS))
+        .containsExactly(ROWS.get(0), ROWS.get(2))
+        .inOrder();
+  }
+
+  @Test
+  public void evaluate_inAndBetween() {
+    BatchEvaluator evaluator =
+        new BatchEvaluator(
+            filter(
+                function(
+                    FunctionSignatureId.FN_AND,
+                    function(
+                        FunctionSignatureId.FN_IN,
+                        field("name"),
+                        constant(string("a")),
+                        constant(string("c"))),
+                    function(
+                        FunctionSignatureId.FN_BETWEEN,
+                        field("id"),
+                        constant(int64(2)),
+                        constant(int64(3))))),
+            SCHEMA);
+
+    assertThat(evaluator.evaluate(ROWS)).containsExactly(ROWS.get(2));
+  }
+
+  @Test
+  public void evaluate_compute() {
+    DataQuery query =
+        DataQuery.newBuilder()
+            .setFilterPredicate(
+                function(FunctionSignatureId.FN_LESS_OR_EQUAL, field("id"), constant(int64(2))))
+            .setCompute(
+                Compute.newBuilder()
+                    .addElements(ComputeElement.newBuilder().setExpression(field("name")))
+                    .addElements(
+                        ComputeElement.newBuilder()
+                            .setFieldName("double_id")
+                            .setExpression(
+                                function(
+                                    FunctionSignatureId.FN_MULTIPLY_INT64,
+                                    field("id"),
+                                    constant(int64(2)))))
+                    .addElements(
+                        ComputeElement.newBuilder()
+                            .setExpression(
+                                function(
+                                    FunctionSignatureId.FN_ADD_DOUBLE,
+                                    field("score"),
+                                    constant(float64(0.5))))))
+            .build();
+
+    BatchEvaluator evaluator = new BatchEvaluator(query, SCHEMA);
+
+    assertThat(evaluator.getOutputSchema())
+        .isEqualTo(
+            Schema.newBuilder()
+                .addFields(schemaField("name", TypeKind.STRING))
+                .addFields(schemaField("double_id", TypeKind.INT64))
+                .addFields(schemaField("_f2", TypeKind.DOUBLE))
+                .build());
+    assertThat(evaluator.evaluate(ROWS))
+        .containsExactly(
+            row(string("a"), int64(2), float64(0.5)), row(NULL, int64(4), float64(2.5)))
+        .inOrder();
+  }
+
+  @Test
+  public void create_unknownField() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            new BatchEvaluator(
+                filter(
+                    function(FunctionSignatureId.FN_EQUAL, field("missing"), constant(int64(1)))),
+                SCHEMA));
+  }
+
+  @Test
+  public void create_unsupportedFunction() {
+    Expression predicate =
+        function(FunctionSignatureId.FN_STRING_LIKE, field("name"), constant(string("a%")));
+
+    assertThat(ExpressionCompiler.isSupported(predicate)).isFalse();
+    assertThrows(
+        IllegalArgumentException.class, () -> new BatchEvaluator(filter(predicate), SCHEMA));
+  }
+
+  private static DataQuery filter(Expression predicate) {
+    return DataQuery.newBuilder().setFilterPredicate(predicate).build();
+  }
+}
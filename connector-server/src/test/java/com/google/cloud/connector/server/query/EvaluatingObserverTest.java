@@ -0,0 +1,209 @@
+package com.google.cloud.connector.server.query;
+
+import static com.google.cloud.connector.server.query.QueryTestProtos.constant;
+import static com.google.cloud.connector.server.query.QueryTestProtos.field;
+import static com.google.cloud.connector.server.query.QueryTestProtos.function;
+import static com.google.cloud.connector.server.query.QueryTestProtos.int64;
+import static com.google.cloud.connector.server.query.QueryTestProtos.schemaField;
+import static com.google.cloud.connector.server.query.QueryTestProtos.string;
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+
+import com.google.cloud.bigquery.federation.v1alpha1.Data;
+import com.google.cloud.bigquery.federation.v1alpha1.Data.DataBlock;
+import com.google.cloud.bigquery.federation.v1alpha1.Data.RowSet;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.Compute;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.ComputeElement;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.Sorting;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.Sorting.SortingOrder;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionSignatureId;
+import com.google.cloud.bigquery.federation.v1alpha1.Schema;
+import com.google.cloud.bigquery.federation.v1alpha1.StructValue;
+import com.google.cloud.bigquery.federation.v1alpha1.TypeKind;
+import com.google.cloud.connector.server.common.LimitedStreamObserver;
+import com.google.protobuf.Int64Value;
+import io.grpc.stub.StreamObserver;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import picocli.CommandLine;
+
+/** Unit test for {@link EvaluatingObserver}. */
+public class EvaluatingObserverTest {
+
+  private static final Schema SCHEMA =
+      Schema.newBuilder()
+          .addFields(schemaField("id", TypeKind.INT64))
+          .addFields(schemaField("name", TypeKind.STRING))
+          .build();
+  // id > 1, projected to name
+  private static final DataQuery SERVER_QUERY =
+      DataQuery.newBuilder()
+          .setFilterPredicate(
+              function(FunctionSignatureId.FN_GREATER, field("id"), constant(int64(1))))
+          .setCompute(
+              Compute.newBuilder()
+                  .addElements(ComputeElement.newBuilder().setExpression(field("name"))))
+          .build();
+  private static final DataQuery RESIDUAL_QUERY =
+      DataQuery.newBuilder().setTable(QueryPlanner.RESULT_SET_LABEL).build();
+  private static final SpillConfig SPILL_CONFIG = spillConfig();
+
+  @Test
+  public void evaluating_filtersAndProjectsBatches() {
+    List<Data> batches = new ArrayList<>();
+    StreamObserver<Data> observer =
+        EvaluatingObserver.evaluating(
+            new RecordingObserver(batches), SERVER_QUERY, RESIDUAL_QUERY, SPILL_CONFIG);
+
+    observer.onNext(Data.newBuilder().setSchema(SCHEMA).build());
+    observer.onNext(rows(row(1, "a"), row(2, "b")));
+    // Dropped, since no record is left
+    observer.onNext(rows(row(0, "c")));
+    observer.onNext(rows(row(3, "d")));
+    observer.onCompleted();
+
+    assertThat(batches)
+        .containsExactly(
+            Data.newBuilder()
+                .setSchema(Schema.newBuilder().addFields(schemaField("name", TypeKind.STRING)))
+                .setDataQuery(RESIDUAL_QUERY)
+                .build(),
+            rows(QueryTestProtos.row(string("b"))),
+            rows(QueryTestProtos.row(string("d"))))
+        .inOrder();
+  }
+
+  @Test
+  public void evaluating_aggregatesOnCompleted() {
+    List<Data> batches = new ArrayList<>();
+    // SELECT name, COUNT(*) AS count WHERE id > 1 GROUP BY name HAVING count > 1
+    DataQuery serverQuery =
+        SERVER_QUERY.toBuilder()
+            .setCompute(
+                Compute.newBuilder()
+                    .addElements(ComputeElement.newBuilder().setExpression(field("name")))
+                    .addElements(
+                        ComputeElement.newBuilder()
+                            .setFieldName("count")
+                            .setExpression(function(FunctionSignatureId.FN_COUNT_STAR))))
+            .setHavingPredicate(
+                function(FunctionSignatureId.FN_GREATER, field("count"), constant(int64(1))))
+            .build();
+    StreamObserver<Data> observer =
+        EvaluatingObserver.evaluating(
+            new RecordingObserver(batches), serverQuery, null, SPILL_CONFIG);
+
+    observer.onNext(Data.newBuilder().setSchema(SCHEMA).build());
+    observer.onNext(rows(row(1, "a"), row(2, "b")));
+    observer.onNext(rows(row(3, "b"), row(4, "c")));
+    observer.onCompleted();
+
+    assertThat(batches)
+        .containsExactly(
+            Data.newBuilder()
+                .setSchema(
+                    Schema.newBuilder()
+                        .addFields(schemaField("name", TypeKind.STRING))
+                        .addFields(schemaField("count", TypeKind.INT64)))
+                .build(),
+            rows(QueryTestProtos.row(string("b"), int64(2))))
+        .inOrder();
+  }
+
+  @Test
+  public void evaluating_nothingToEvaluate() {
+    @SuppressWarnings("unchecked")
+    StreamObserver<Data> observer = mock(StreamObserver.class);
+
+    assertThat(EvaluatingObserver.evaluating(observer, null, null, SPILL_CONFIG))
+        .isSameInstanceAs(observer);
+  }
+
+  @Test
+  public void evaluating_sortsAndLimitsOnCompleted() {
+    List<Data> batches = new ArrayList<>();
+    DataQuery serverQuery =
+        DataQuery.newBuilder()
+            .addSorting(
+                Sorting.newBuilder().setFieldName("id").setSortingOrder(SortingOrder.DESCENDING))
+            .setLimit(Int64Value.of(2))
+            .build();
+    StreamObserver<Data> observer =
+        EvaluatingObserver.evaluating(
+            new RecordingObserver(batches), serverQuery, null, SPILL_CONFIG);
+
+    observer.onNext(Data.newBuilder().setSchema(SCHEMA).build());
+    observer.onNext(rows(row(1, "a"), row(3, "b")));
+    observer.onNext(rows(row(2, "c")));
+    assertThat(batches).containsExactly(Data.newBuilder().setSchema(SCHEMA).build());
+    observer.onCompleted();
+
+    assertThat(batches)
+        .containsExactly(
+            Data.newBuilder().setSchema(SCHEMA).build(), rows(row(3, "b"), row(2, "c")))
+        .inOrder();
+  }
+
+  @Test
+  public void evaluating_limitWithoutSorting_reachesLimit() {
+    List<Data> batches = new ArrayList<>();
+    DataQuery serverQuery =
+        DataQuery.newBuilder().setLimit(Int64Value.of(2)).setOffset(Int64Value.of(1)).build();
+    LimitedStreamObserver<Data> observer =
+        (LimitedStreamObserver<Data>)
+            EvaluatingObserver.evaluating(
+                new RecordingObserver(batches), serverQuery, null, SPILL_CONFIG);
+
+    observer.onNext(Data.newBuilder().setSchema(SCHEMA).build());
+    observer.onNext(rows(row(1, "a"), row(2, "b")));
+    assertThat(observer.isLimitReached()).isFalse();
+    observer.onNext(rows(row(3, "c"), row(4, "d")));
+    assertThat(observer.isLimitReached()).isTrue();
+    observer.onCompleted();
+
+    assertThat(batches)
+        .containsExactly(
+            Data.newBuilder().setSchema(SCHEMA).build(), rows(row(2, "b")), rows(row(3, "c")))
+        .inOrder();
+  }
+
+  private static SpillConfig spillConfig() {
+    SpillConfig config = new SpillConfig();
+    new CommandLine(config).parseArgs();
+    return config;
+  }
+
+  private static Data rows(StructValue... rows) {
+    return Data.newBuilder()
+        .setDataBlock(
+            DataBlock.newBuilder().setRowset(RowSet.newBuilder().addAllRows(List.of(rows))))
+        .build();
+  }
+
+  private static StructValue row(long id, String name) {
+    return QueryTestProtos.row(int64(id), string(name));
+  }
+
+  private static final class RecordingObserver implements StreamObserver<Data> {
+    private final List<Data> batches;
+
+    RecordingObserver(List<Data> batches) {
+      this.batches = batches;
+    }
+
+    @Override
+    public void onNext(Data data) {
+      batches.add(data);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      throw new AssertionError(t);
+    }
+
+    @Override
+    public void onCompleted() {}
+  }
+}
@@ -0,0 +1,349 @@
+package com.google.cloud.connector.server.query;
+
+import static com.google.cloud.connector.server.query.QueryTestProtos.NULL;
+import static com.google.cloud.connector.server.query.QueryTestProtos.constant;
+import static com.google.cloud.connector.server.query.QueryTestProtos.field;
+import static com.google.cloud.connector.server.query.QueryTestProtos.float64;
+import static com.google.cloud.connector.server.query.QueryTestProtos.function;
+import static com.google.cloud.connector.server.query.QueryTestProtos.int64;
+import static com.google.cloud.connector.server.query.QueryTestProtos.numeric;
+import static com.google.cloud.connector.server.query.QueryTestProtos.row;
+import static com.google.cloud.connector.server.query.QueryTestProtos.schemaField;
+import static com.google.cloud.connector.server.query.QueryTestProtos.string;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.cloud.bigquery.federation.v1alpha1.CastExpression;
+import com.google.cloud.bigquery.federation.v1alpha1.Expression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionSignatureId;
+import com.google.cloud.bigquery.federation.v1alpha1.Schema;
+import com.google.cloud.bigquery.federation.v1alpha1.StructValue;
+import com.google.cloud.bigquery.federation.v1alpha1.Type;
+import com.google.cloud.bigquery.federation.v1alpha1.TypeKind;
+import com.google.cloud.bigquery.federation.v1alpha1.Value;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Unit test for {@link ExpressionCompiler}. */
+public class ExpressionCompilerTest {
+
+  private static final Value TRUE = Value.newBuilder().setBoolValue(true).build();
+  private static final Value FALSE = Value.newBuilder().setBoolValue(false).build();
+  private static final Schema SCHEMA =
+      Schema.newBuilder()
+          .addFields(schemaField("id", TypeKind.INT64))
+          .addFields(schemaField("name", TypeKind.STRING))
+          .addFields(schemaField("score", TypeKind.DOUBLE))
+          .build();
+
+  @BeforeEach
+  public void setUp() {
+    ExpressionCompiler.invalidateCache();
+  }
+
+  @Test
+  public void compile_reusesCompiledExpressionOfEqualExpressionAndSchema() {
+    Expression predicate =
+        function(FunctionSignatureId.FN_LESS, field("id"), constant(int64(3)));
+
+    CompiledExpression compiled = ExpressionCompiler.compile(predicate, SCHEMA);
+
+    assertThat(ExpressionCompiler.compile(predicate.toBuilder().build(), SCHEMA))
+        .isSameInstanceAs(compiled);
+    assertThat(
+            ExpressionCompiler.compile(
+                predicate,
+                Schema.newBuilder()
+                    .addFields(schemaField("name", TypeKind.STRING))
+                    .addFields(schemaField("id", TypeKind.INT64))
+                    .build()))
+        .isNotSameInstanceAs(compiled);
+  }
+
+  @Test
+  public void compile_unknownField_isNotCached() {
+    Expression predicate = field("missing");
+
+    assertThrows(
+        IllegalArgumentException.class, () -> ExpressionCompiler.compile(predicate, SCHEMA));
+    assertThrows(
+        IllegalArgumentException.class, () -> ExpressionCompiler.compile(predicate, SCHEMA));
+  }
+
+  @Test
+  public void evaluate_comparisonOfFieldAndConstant() {
+    List<StructValue> rows =
+        List.of(
+            row(int64(1), string("a"), float64(-0.0)),
+            row(int64(3), NULL, float64(Double.NaN)),
+            row(Value.newBuilder().setInt32Value(5).build(), string("c"), float64(2.5)),
+            row(NULL, string("d"), NULL));
+
+    assertThat(
+            evaluate(function(FunctionSignatureId.FN_LESS, field("id"), constant(int64(3))), rows))
+        .containsExactly(TRUE, FALSE, FALSE, NULL)
+        .inOrder();
+    // 3 < id
+    assertThat(
+            evaluate(function(FunctionSignatureId.FN_LESS, constant(int64(3)), field("id")), rows))
+        .containsExactly(FALSE, FALSE, TRUE, NULL)
+        .inOrder();
+    assertThat(
+            evaluate(
+                function(FunctionSignatureId.FN_EQUAL, field("score"), constant(float64(0.0))),
+                rows))
+        .containsExactly(TRUE, FALSE, FALSE, NULL)
+        .inOrder();
+    assertThat(
+            evaluate(
+                function(FunctionSignatureId.FN_GREATER, field("id"), constant(float64(2.5))),
+                rows))
+        .containsExactly(FALSE, TRUE, TRUE, NULL)
+        .inOrder();
+  }
+
+  @Test
+  public void evaluate_inListOfConstants() {
+    List<StructValue> rows =
+        List.of(
+            row(int64(1), string("a"), float64(1)),
+            row(int64(2), string("b"), float64(2)),
+            row(Value.newBuilder().setInt32Value(3).build(), NULL, float64(3)),
+            row(NULL, string("d"), float64(4)));
+
+    assertThat(
+            evaluate(
+                function(
+                    FunctionSignatureId.FN_IN,
+                    field("id"),
+                    constant(int64(1)),
+                    constant(int64(3))),
+                rows))
+        .containsExactly(TRUE, FALSE, TRUE, NULL)
+        .inOrder();
+    assertThat(
+            evaluate(
+                function(
+                    FunctionSignatureId.FN_IN,
+                    field("name"),
+                    constant(string("a")),
+                    constant(NULL)),
+                rows))
+        .containsExactly(TRUE, NULL, NULL, NULL)
+        .inOrder();
+  }
+
+  @Test
+  public void evaluate_cast() {
+    List<StructValue> rows =
+        List.of(
+            row(int64(1), string("12"), float64(2.5)),
+            row(int64(0), string("-7"), float64(-2.5)),
+            row(NULL, NULL, NULL));
+
+    assertThat(evaluate(cast(field("score"), TypeKind.INT64), rows))
+        .containsExactly(int64(3), int64(-3), NULL)
+        .inOrder();
+    assertThat(evaluate(cast(field("name"), TypeKind.INT64), rows))
+        .containsExactly(int64(12), int64(-7), NULL)
+        .inOrder();
+    assertThat(evaluate(cast(field("id"), TypeKind.BOOL), rows))
+        .containsExactly(TRUE, FALSE, NULL)
+        .inOrder();
+    assertThat(evaluate(cast(field("id"), TypeKind.DOUBLE), rows))
+        .containsExactly(float64(1), float64(0), NULL)
+        .inOrder();
+    assertThat(evaluate(cast(field("score"), TypeKind.STRING), rows))
+        .containsExactly(string("2.5"), string("-2.5"), NULL)
+        .inOrder();
+    assertThat(evaluate(cast(field("score"), TypeKind.NUMERIC), rows))
+        .containsExactly(numeric("2.5"), numeric("-2.5"), NULL)
+        .inOrder();
+    // CAST(name AS INT64) = id + 11
+    assertThat(
+            evaluate(
+                function(
+                    FunctionSignatureId.FN_EQUAL,
+                    cast(field("name"), TypeKind.INT64),
+                    function(FunctionSignatureId.FN_ADD_INT64, field("id"), constant(int64(11)))),
+                rows))
+        .containsExactly(TRUE, FALSE, NULL)
+        .inOrder();
+  }
+
+  @Test
+  public void evaluate_castOfInvalidValue_throwsException() {
+    List<StructValue> rows = List.of(row(int64(1), string("a"), float64(Double.NaN)));
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> evaluate(cast(field("name"), TypeKind.INT64), rows));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> evaluate(cast(field("score"), TypeKind.INT64), rows));
+  }
+
+  @Test
+  public void evaluate_arithmetic_valuesHaveTypeOfExpression() {
+    List<StructValue> rows =
+        List.of(row(int64(7), string("a"), float64(0.5)), row(NULL, string("b"), float64(1)));
+    Value uint64 = Value.newBuilder().setUint64Value(3).build();
+
+    Expression sum = function(FunctionSignatureId.FN_ADD_INT64, field("id"), constant(int64(2)));
+    assertThat(ExpressionCompiler.compile(sum, SCHEMA).getType().getTypeKind())
+        .isEqualTo(TypeKind.INT64);
+    assertThat(evaluate(sum, rows)).containsExactly(int64(9), NULL).inOrder();
+
+    Expression quotient =
+        function(FunctionSignatureId.FN_DIVIDE_DOUBLE, field("id"), constant(int64(2)));
+    assertThat(ExpressionCompiler.compile(quotient, SCHEMA).getType().getTypeKind())
+        .isEqualTo(TypeKind.DOUBLE);
+    assertThat(evaluate(quotient, rows)).containsExactly(float64(3.5), NULL).inOrder();
+
+    Expression unsignedSum =
+        function(FunctionSignatureId.FN_ADD_INT64, constant(uint64), field("id"));
+    assertThat(ExpressionCompiler.compile(unsignedSum, SCHEMA).getType().getTypeKind())
+        .isEqualTo(TypeKind.DOUBLE);
+    assertThat(evaluate(unsignedSum, rows)).containsExactly(float64(10), NULL).inOrder();
+
+    Expression numericQuotient =
+        typed(
+            function(FunctionSignatureId.FN_DIVIDE_DOUBLE, field("id"), constant(int64(3))),
+            TypeKind.NUMERIC);
+    assertThat(ExpressionCompiler.compile(numericQuotient, SCHEMA).getType().getTypeKind())
+        .isEqualTo(TypeKind.NUMERIC);
+    assertThat(evaluate(numericQuotient, rows))
+        .containsExactly(numeric("2.333333333"), NULL)
+        .inOrder();
+
+    Expression roundedProduct =
+        typed(
+            function(FunctionSignatureId.FN_MULTIPLY_INT64, field("id"), field("score")),
+            TypeKind.INT64);
+    assertThat(evaluate(roundedProduct, rows)).containsExactly(int64(4), NULL).inOrder();
+  }
+
+  @Test
+  public void evaluate_arithmeticOverflow_throwsException() {
+    List<StructValue> rows = List.of(row(int64(Long.MAX_VALUE), string("a"), float64(1)));
+
+    assertThrows(
+        ArithmeticException.class,
+        () ->
+            evaluate(
+                function(FunctionSignatureId.FN_ADD_INT64, field("id"), constant(int64(1))),
+                rows));
+    assertThrows(
+        ArithmeticException.class,
+        () ->
+            evaluate(
+                typed(
+                    function(FunctionSignatureId.FN_MULTIPLY_INT64, field("id"), field("id")),
+                    TypeKind.NUMERIC),
+                rows));
+  }
+
+  @Test
+  public void isSupported_arithmeticOfUnsupportedType() {
+    Expression sum = function(FunctionSignatureId.FN_ADD_INT64, field("id"), field("id"));
+
+    assertThat(ExpressionCompiler.isSupported(typed(sum, TypeKind.INT64))).isTrue();
+    assertThat(ExpressionCompiler.isSupported(typed(sum, TypeKind.STRING))).isFalse();
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ExpressionCompiler.compile(typed(sum, TypeKind.STRING), SCHEMA));
+  }
+
+  @Test
+  public void evaluate_cast_followsBigQueryConversions() {
+    List<StructValue> rows = List.of(row(int64(1), string("a"), float64(1)));
+
+    assertThat(evaluate(cast(constant(string(" -0x1F ")), TypeKind.INT64), rows))
+        .containsExactly(int64(-31));
+    assertThat(evaluate(cast(constant(string("+12")), TypeKind.INT64), rows))
+        .containsExactly(int64(12));
+    assertThat(evaluate(cast(constant(float64(-2.5)), TypeKind.INT64), rows))
+        .containsExactly(int64(-3));
+    assertThat(evaluate(cast(constant(string("-Inf")), TypeKind.DOUBLE), rows))
+        .containsExactly(float64(Double.NEGATIVE_INFINITY));
+    assertThat(evaluate(cast(constant(string("1.0000000005")), TypeKind.NUMERIC), rows))
+        .containsExactly(numeric("1.000000001"));
+    assertThat(evaluate(cast(constant(float64(-0.25)), TypeKind.NUMERIC), rows))
+        .containsExactly(numeric("-0.25"));
+    assertThat(evaluate(cast(constant(string("1.0000000005")), TypeKind.BIGNUMERIC), rows))
+        .containsExactly(Value.newBuilder().setBignumericValue("1.0000000005").build());
+  }
+
+  @Test
+  public void evaluate_castNotFollowingBigQueryConversions_throwsException() {
+    List<StructValue> rows = List.of(row(int64(1), string("a"), float64(1)));
+
+    // Strings of INT64 values must be integer literals
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> evaluate(cast(constant(string("1.5")), TypeKind.INT64), rows));
+    // Java type suffixes are not float literals
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> evaluate(cast(constant(string("1d")), TypeKind.DOUBLE), rows));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> evaluate(cast(constant(float64(1e29)), TypeKind.NUMERIC), rows));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> evaluate(cast(constant(float64(Double.NaN)), TypeKind.NUMERIC), rows));
+  }
+
+  @Test
+  public void isSupported_cast() {
+    assertThat(ExpressionCompiler.isSupported(cast(field("id"), TypeKind.STRING))).isTrue();
+    assertThat(ExpressionCompiler.isSupported(cast(field("id"), TypeKind.TIMESTAMP))).isFalse();
+  }
+
+  @Test
+  public void isSupported_castOfArgumentType() {
+    Value date = Value.newBuilder().setDateValue(19000).build();
+
+    assertThat(ExpressionCompiler.isSupported(cast(constant(string("1")), TypeKind.INT64)))
+        .isTrue();
+    assertThat(ExpressionCompiler.isSupported(cast(constant(date), TypeKind.STRING))).isFalse();
+    assertThat(
+            ExpressionCompiler.isSupported(
+                cast(typed(field("created"), TypeKind.TIMESTAMP), TypeKind.STRING)))
+        .isFalse();
+    assertThat(ExpressionCompiler.isSupported(cast(constant(TRUE), TypeKind.NUMERIC))).isFalse();
+    assertThat(ExpressionCompiler.isSupported(cast(constant(NULL), TypeKind.NUMERIC))).isTrue();
+  }
+
+  @Test
+  public void compile_castOfUnsupportedFieldType_throwsException() {
+    Schema schema = Schema.newBuilder().addFields(schemaField("day", TypeKind.DATE)).build();
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ExpressionCompiler.compile(cast(field("day"), TypeKind.STRING), schema));
+  }
+
+  private static List<Value> evaluate(Expression expression, List<StructValue> rows) {
+    int[] selection = new int[rows.size()];
+    Arrays.setAll(selection, i -> i);
+    return Arrays.asList(
+        ExpressionCompiler.compile(expression, SCHEMA).evaluate(rows, selection, rows.size()));
+  }
+
+  @SuppressWarnings("deprecation")
+  private static Expression cast(Expression argument, TypeKind typeKind) {
+    return Expression.newBuilder()
+        .setCast(
+            CastExpression.newBuilder()
+                .setType(Type.newBuilder().setTypeKind(typeKind))
+                .setArgument(argument))
+        .build();
+  }
+
+  private static Expression typed(Expression expression, TypeKind typeKind) {
+    return expression.toBuilder().setType(Type.newBuilder().setTypeKind(typeKind)).build();
+  }
+}
@@ -0,0 +1,211 @@
+package com.google.cloud.connector.server.query;
+
+import static com.google.cloud.connector.server.query.QueryTestProtos.NULL;
+import static com.google.cloud.connector.server.query.QueryTestProtos.field;
+import static com.google.cloud.connector.server.query.QueryTestProtos.float64;
+import static com.google.cloud.connector.server.query.QueryTestProtos.function;
+import static com.google.cloud.connector.server.query.QueryTestProtos.int64;
+import static com.google.cloud.connector.server.query.QueryTestProtos.row;
+import static com.google.cloud.connector.server.query.QueryTestProtos.schemaField;
+import static com.google.cloud.connector.server.query.QueryTestProtos.string;
+import static com.google.cloud.connector.server.query.QueryTestProtos.type;
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.stream.Collectors.toList;
+
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.Compute;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.ComputeElement;
+import com.google.cloud.bigquery.federation.v1alpha1.Expression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionSignatureId;
+import com.google.cloud.bigquery.federation.v1alpha1.Schema;
+import com.google.cloud.bigquery.federation.v1alpha1.StructValue;
+import com.google.cloud.bigquery.federation.v1alpha1.TypeKind;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+/** Unit test for {@link HashAggregator}. */
+public class HashAggregatorTest {
+
+  private static final Schema SCHEMA =
+      Schema.newBuilder()
+          .addFields(schemaField("key", TypeKind.INT64))
+          .addFields(schemaField("name", TypeKind.STRING))
+          .addFields(schemaField("amount", TypeKind.INT64))
+          .addFields(schemaField("price", TypeKind.DOUBLE))
+          .build();
+
+  @TempDir Path spillDirectory;
+
+  @Test
+  public void finish_aggregatesGroupsOfInt64Key() {
+    Compute compute =
+        compute(
+            field("key"),
+            function(FunctionSignatureId.FN_COUNT_STAR),
+            function(FunctionSignatureId.FN_COUNT, field("name")),
+            function(FunctionSignatureId.FN_SUM_INT64, field("amount")),
+            function(FunctionSignatureId.FN_AVG_DOUBLE, field("price")),
+            function(FunctionSignatureId.FN_MIN, field("name")),
+            function(FunctionSignatureId.FN_MAX, field("amount")));
+
+    try (HashAggregator aggregator = new HashAggregator(compute, SCHEMA, config(1 << 20))) {
+      aggregator.add(List.of(sale(1L, "b", 10, 1.0), sale(2L, null, 5, 2.0)));
+      aggregator.add(List.of(sale(1L, "a", 20, 3.0), sale(null, "c", 1, 4.0)));
+
+      assertThat(
+              aggregator.getOutputSchema().getFieldsList().stream()
+                  .map(Schema.Field::getType)
+                  .collect(toList()))
+          .containsExactly(
+              type(TypeKind.INT64),
+              type(TypeKind.INT64),
+              type(TypeKind.INT64),
+              type(TypeKind.INT64),
+              type(TypeKind.DOUBLE),
+              type(TypeKind.STRING),
+              type(TypeKind.INT64))
+          .inOrder();
+      assertThat(ImmutableList.copyOf(aggregator.finish()))
+          .containsExactly(
+              row(int64(1), int64(2), int64(2), int64(30), float64(2.0), string("a"), int64(20)),
+              row(int64(2), int64(1), int64(0), int64(5), float64(2.0), NULL, int64(5)),
+              row(NULL, int64(1), int64(1), int64(1), float64(4.0), string("c"), int64(1)))
+          .inOrder();
+    }
+  }
+
+  @Test
+  public void finish_aggregatesGroupsOfSeveralKeys() {
+    Compute compute =
+        compute(
+            field("name"),
+            field("key"),
+            function(FunctionSignatureId.FN_SUM_DOUBLE, field("price")));
+
+    try (HashAggregator aggregator = new HashAggregator(compute, SCHEMA, config(1 << 20))) {
+      aggregator.add(
+          List.of(
+              sale(1L, "a", 0, 1.5),
+              sale(1L, "b", 0, 2.0),
+              sale(1L, "a", 0, 0.5),
+              sale(2L, "a", 0, 1.0)));
+
+      assertThat(ImmutableList.copyOf(aggregator.finish()))
+          .containsExactly(
+              row(string("a"), int64(1), float64(2.0)),
+              row(string("b"), int64(1), float64(2.0)),
+              row(string("a"), int64(2), float64(1.0)))
+          .inOrder();
+    }
+  }
+
+  @Test
+  public void finish_withoutKeys_aggregatesNoRecords() {
+    Compute compute =
+        compute(
+            function(FunctionSignatureId.FN_COUNT_STAR),
+            function(FunctionSignatureId.FN_SUM_INT64, field("amount")));
+
+    try (HashAggregator aggregator = new HashAggregator(compute, SCHEMA, config(1 << 20))) {
+      assertThat(ImmutableList.copyOf(aggregator.finish()))
+          .containsExactly(row(int64(0), NULL));
+    }
+  }
+
+  @Test
+  public void finish_spillsAndMergesGroups() throws IOException {
+    Compute compute =
+        compute(
+            field("key"),
+            function(FunctionSignatureId.FN_COUNT_STAR),
+            function(FunctionSignatureId.FN_AVG_INT64, field("amount")),
+            function(FunctionSignatureId.FN_MAX, field("name")));
+
+    List<StructValue> aggregated;
+    try (HashAggregator aggregator = new HashAggregator(compute, SCHEMA, config(1024))) {
+      for (int batch = 0; batch < 10; batch++) {
+        List<StructValue> rows = new ArrayList<>();
+        for (int key = 0; key < 100; key++) {
+          rows.add(sale((long) key, "name" + batch, batch, 0.0));
+        }
+        aggregator.add(rows);
+      }
+      assertThat(aggregator.getSpillFiles()).isGreaterThan(1);
+
+      aggregated = new ArrayList<>(ImmutableList.copyOf(aggregator.finish()));
+    }
+
+    assertThat(aggregated).hasSize(100);
+    for (StructValue row : aggregated) {
+      assertThat(row.getFieldsList().subList(1, 4))
+          .containsExactly(int64(10), float64(4.5), string("name9"))
+          .inOrder();
+    }
+    assertThat(aggregated.stream().map(row -> row.getFields(0).getInt64Value()).collect(toList()))
+        .containsNoDuplicates();
+    try (Stream<Path> files = Files.list(spillDirectory)) {
+      assertThat(files.count()).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void isAggregation() {
+    assertThat(HashAggregator.isAggregation(compute(field("key")))).isFalse();
+    assertThat(
+            HashAggregator.isAggregation(
+                compute(field("key"), function(FunctionSignatureId.FN_COUNT_STAR))))
+        .isTrue();
+  }
+
+  @Test
+  public void isSupported() {
+    Expression sum = function(FunctionSignatureId.FN_SUM_INT64, field("amount"));
+
+    assertThat(HashAggregator.isSupported(compute(field("key"), sum))).isTrue();
+    // SUM(amount) + 1
+    assertThat(
+            HashAggregator.isSupported(
+                compute(
+                    function(
+                        FunctionSignatureId.FN_ADD_INT64,
+                        sum,
+                        Expression.newBuilder().setConstant(int64(1)).build()))))
+        .isFalse();
+    assertThat(
+            HashAggregator.isSupported(
+                compute(function(FunctionSignatureId.FN_STRING_AGG_STRING, field("name")))))
+        .isFalse();
+  }
+
+  private SpillConfig config(long aggregationBufferBytes) {
+    SpillConfig config = new SpillConfig();
+    new CommandLine(config)
+        .parseArgs(
+            "--aggregation-buffer-bytes=" + aggregationBufferBytes,
+            "--spill-directory=" + spillDirectory);
+    return config;
+  }
+
+  private static Compute compute(Expression... expressions) {
+    Compute.Builder compute = Compute.newBuilder();
+    for (Expression expression : expressions) {
+      compute.addElements(ComputeElement.newBuilder().setExpression(expression));
+    }
+    return compute.build();
+  }
+
+  private static StructValue sale(Long key, String name, long amount, double price) {
+    return row(
+        key == null ? NULL : int64(key),
+        name == null ? NULL : string(name),
+        int64(amount),
+        float64(price));
+  }
+}
@@ -0,0 +1,402 @@
+package com.google.cloud.connector.server.query;
+
+import static com.google.cloud.connector.server.query.QueryTestProtos.NULL;
+import static com.google.cloud.connector.server.query.QueryTestProtos.constant;
+import static com.google.cloud.connector.server.query.QueryTestProtos.field;
+import static com.google.cloud.connector.server.query.QueryTestProtos.function;
+import static com.google.cloud.connector.server.query.QueryTestProtos.int64;
+import static com.google.cloud.connector.server.query.QueryTestProtos.row;
+import static com.google.cloud.connector.server.query.QueryTestProtos.schemaField;
+import static com.google.cloud.connector.server.query.QueryTestProtos.string;
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.cloud.bigquery.federation.v1alpha1.Data;
+import com.google.cloud.bigquery.federation.v1alpha1.Data.DataBlock;
+import com.google.cloud.bigquery.federation.v1alpha1.Data.RowSet;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.bigquery.federation.v1alpha1.DataSource;
+import com.google.cloud.bigquery.federation.v1alpha1.DataSource.Capability;
+import com.google.cloud.bigquery.federation.v1alpha1.Expression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionSignatureId;
+import com.google.cloud.bigquery.federation.v1alpha1.JoinOperator;
+import com.google.cloud.bigquery.federation.v1alpha1.NamedTable;
+import com.google.cloud.bigquery.federation.v1alpha1.Schema;
+import com.google.cloud.bigquery.federation.v1alpha1.StructValue;
+import com.google.cloud.bigquery.federation.v1alpha1.TypeKind;
+import com.google.cloud.connector.server.common.LimitedStreamObserver;
+import com.google.protobuf.Int64Value;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+/** Unit test for {@link HashJoin}. */
+public class HashJoinTest {
+
+  private static final Schema ORDERS_SCHEMA =
+      Schema.newBuilder()
+          .addFields(schemaField("id", TypeKind.INT64))
+          .addFields(schemaField("customer", TypeKind.INT64))
+          .addFields(schemaField("amount", TypeKind.INT64))
+          .build();
+  private static final Schema CUSTOMERS_SCHEMA =
+      Schema.newBuilder()
+          .addFields(schemaField("id", TypeKind.INT64))
+          .addFields(schemaField("name", TypeKind.STRING))
+          .build();
+  private static final DataQuery ORDERS = table("sales", "orders");
+  private static final DataQuery CUSTOMERS = table("sales", "customers");
+  // orders.customer = customers.id
+  private static final Expression CUSTOMER_KEY =
+      function(
+          FunctionSignatureId.FN_EQUAL, field("orders", "customer"), field("customers", "id"));
+  private static final DataSource FILTERING_DATA_SOURCE =
+      DataSource.newBuilder()
+          .addCapabilities(Capability.SUPPORTS_FILTER)
+          .addSupportedFunctionSignatures(FunctionSignatureId.FN_IN)
+          .addSupportedFunctionSignatures(FunctionSignatureId.FN_BETWEEN)
+          .build();
+
+  @TempDir Path spillDirectory;
+
+  @Test
+  public void innerJoin_joinsEqualKeysMatchingResidualPredicate() {
+    // orders.customer = customers.id AND amount > 5
+    JoinOperator join =
+        join(
+            JoinOperator.Type.INNER,
+            function(
+                FunctionSignatureId.FN_AND,
+                CUSTOMER_KEY,
+                function(FunctionSignatureId.FN_GREATER, field("", "amount"), constant(int64(5)))));
+    List<Data> batches = new ArrayList<>();
+
+    try (HashJoin hashJoin = new HashJoin(join, config(1 << 20))) {
+      assertThat(hashJoin.getBuildQuery()).isEqualTo(CUSTOMERS);
+      read(hashJoin.buildObserver(), CUSTOMERS_SCHEMA, customer(1, "a"), customer(2, "b"));
+      read(
+          hashJoin.probeObserver(new RecordingObserver(batches)),
+          ORDERS_SCHEMA,
+          order(10, 1L, 7),
+          order(11, 2L, 3),
+          order(12, 3L, 9),
+          order(13, 1L, 6),
+          order(14, null, 8));
+    }
+
+    assertThat(batches.get(0).getSchema().getFieldsList().stream()
+            .map(Schema.Field::getFieldName)
+            .collect(toList()))
+        .containsExactly("orders.id", "customer", "amount", "customers.id", "name")
+        .inOrder();
+    assertThat(rows(batches))
+        .containsExactly(
+            row(int64(10), int64(1), int64(7), int64(1), string("a")),
+            row(int64(13), int64(1), int64(6), int64(1), string("a")))
+        .inOrder();
+  }
+
+  @Test
+  public void leftJoin_returnsUnmatchedProbeRecords() {
+    List<Data> batches = new ArrayList<>();
+
+    try (HashJoin hashJoin =
+        new HashJoin(join(JoinOperator.Type.LEFT, CUSTOMER_KEY), config(1 << 20))) {
+      read(hashJoin.buildObserver(), CUSTOMERS_SCHEMA, customer(1, "a"));
+      // Unmatched probe records are returned, so the probe query is not restricted to the keys
+      assertThat(hashJoin.getProbeQuery(FILTERING_DATA_SOURCE)).isEqualTo(ORDERS);
+      read(
+          hashJoin.probeObserver(new RecordingObserver(batches)),
+          ORDERS_SCHEMA,
+          order(10, 1L, 7),
+          order(11, 2L, 3),
+          order(12, null, 9));
+    }
+
+    assertThat(rows(batches))
+        .containsExactly(
+            row(int64(10), int64(1), int64(7), int64(1), string("a")),
+            row(int64(11), int64(2), int64(3), NULL, NULL),
+            row(int64(12), NULL, int64(9), NULL, NULL))
+        .inOrder();
+  }
+
+  @Test
+  public void fullJoin_returnsUnmatchedRecordsOfBothSides() {
+    List<Data> batches = new ArrayList<>();
+
+    try (HashJoin hashJoin =
+        new HashJoin(join(JoinOperator.Type.FULL, CUSTOMER_KEY), config(1 << 20))) {
+      read(
+          hashJoin.buildObserver(),
+          CUSTOMERS_SCHEMA,
+          customer(1, "a"),
+          customer(2, "b"),
+          row(NULL, string("c")));
+      read(
+          hashJoin.probeObserver(new RecordingObserver(batches)),
+          ORDERS_SCHEMA,
+          order(10, 1L, 7),
+          order(11, 3L, 3));
+    }
+
+    assertThat(rows(batches))
+        .containsExactly(
+            row(int64(10), int64(1), int64(7), int64(1), string("a")),
+            row(int64(11), int64(3), int64(3), NULL, NULL),
+            row(NULL, NULL, NULL, NULL, string("c")),
+            row(NULL, NULL, NULL, int64(2), string("b")));
+  }
+
+  @Test
+  public void innerJoin_spillsPartitionsAndJoinsThemOnCompleted() throws IOException {
+    List<Data> batches = new ArrayList<>();
+    List<StructValue> customers = new ArrayList<>();
+    for (int id = 0; id < 200; id++) {
+      customers.add(customer(id, "name" + id));
+    }
+    List<StructValue> orders = new ArrayList<>();
+    for (int id = 0; id < 1000; id++) {
+      // The orders of the customers from 200 to 399 have no match
+      orders.add(order(id, (long) id % 400, id));
+    }
+
+    try (HashJoin hashJoin =
+        new HashJoin(join(JoinOperator.Type.INNER, CUSTOMER_KEY), config(1024))) {
+      read(hashJoin.buildObserver(), CUSTOMERS_SCHEMA, customers.toArray(StructValue[]::new));
+      assertThat(hashJoin.getSpilledPartitions()).isGreaterThan(1);
+      read(
+          hashJoin.probeObserver(new RecordingObserver(batches)),
+          ORDERS_SCHEMA,
+          orders.toArray(StructValue[]::new));
+    }
+
+    List<StructValue> joined = rows(batches);
+    assertThat(joined).hasSize(600);
+    for (StructValue row : joined) {
+      long customer = row.getFields(1).getInt64Value();
+      assertThat(row.getFields(3)).isEqualTo(int64(customer));
+      assertThat(row.getFields(4)).isEqualTo(string("name" + customer));
+    }
+    try (Stream<Path> files = Files.list(spillDirectory)) {
+      assertThat(files.count()).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void getProbeQuery_innerJoin_restrictsProbeRecordsToBuildKeys() {
+    DataQuery orders =
+        ORDERS.toBuilder()
+            .setFilterPredicate(
+                function(FunctionSignatureId.FN_GREATER, field("", "amount"), constant(int64(5))))
+            .build();
+    JoinOperator join =
+        join(JoinOperator.Type.INNER, CUSTOMER_KEY).toBuilder().setLeft(orders).build();
+
+    try (HashJoin hashJoin = new HashJoin(join, config(1 << 20))) {
+      read(hashJoin.buildObserver(), CUSTOMERS_SCHEMA, customer(3, "a"), customer(1, "b"));
+
+      assertThat(hashJoin.getProbeQuery(FILTERING_DATA_SOURCE).getFilterPredicate())
+          .isEqualTo(
+              function(
+                  FunctionSignatureId.FN_AND,
+                  orders.getFilterPredicate(),
+                  function(
+                      FunctionSignatureId.FN_IN,
+                      field("", "customer"),
+                      constant(int64(3)),
+                      constant(int64(1)))));
+      // The connector doesn't support filters
+      assertThat(hashJoin.getProbeQuery(DataSource.getDefaultInstance())).isEqualTo(orders);
+    }
+  }
+
+  @Test
+  public void getProbeQuery_limitedProbeSide_isNotRestricted() {
+    // The side with the smaller limit is built
+    DataQuery orders = ORDERS.toBuilder().setLimit(Int64Value.of(2)).build();
+    JoinOperator join =
+        join(JoinOperator.Type.INNER, CUSTOMER_KEY).toBuilder()
+            .setLeft(orders)
+            .setRight(CUSTOMERS.toBuilder().setLimit(Int64Value.of(1)))
+            .build();
+    List<Data> batches = new ArrayList<>();
+
+    try (HashJoin hashJoin = new HashJoin(join, config(1 << 20))) {
+      read(hashJoin.buildObserver(), CUSTOMERS_SCHEMA, customer(3, "a"));
+
+      // Filtering by the keys would change the first records that the limit keeps
+      assertThat(hashJoin.getProbeQuery(FILTERING_DATA_SOURCE)).isEqualTo(orders);
+      read(
+          hashJoin.probeObserver(new RecordingObserver(batches)),
+          ORDERS_SCHEMA,
+          order(10, 1L, 7),
+          order(11, 3L, 3));
+    }
+
+    assertThat(rows(batches))
+        .containsExactly(row(int64(11), int64(3), int64(3), int64(3), string("a")));
+  }
+
+  @Test
+  public void getProbeQuery_manyBuildKeys_restrictsProbeRecordsToKeyRange() {
+    try (HashJoin hashJoin =
+        new HashJoin(join(JoinOperator.Type.INNER, CUSTOMER_KEY), config(1 << 20))) {
+      List<StructValue> customers = new ArrayList<>();
+      for (int id = 1; id <= HashJoin.MAX_PROBE_KEYS + 1; id++) {
+        customers.add(customer(id, "name"));
+      }
+      read(hashJoin.buildObserver(), CUSTOMERS_SCHEMA, customers.toArray(StructValue[]::new));
+
+      assertThat(hashJoin.getProbeQuery(FILTERING_DATA_SOURCE).getFilterPredicate())
+          .isEqualTo(
+              function(
+                  FunctionSignatureId.FN_BETWEEN,
+                  field("", "customer"),
+                  constant(int64(1)),
+                  constant(int64(HashJoin.MAX_PROBE_KEYS + 1))));
+    }
+  }
+
+  @Test
+  public void probeObserver_emptyInnerBuild_reachesLimit() {
+    List<Data> batches = new ArrayList<>();
+
+    try (HashJoin hashJoin =
+        new HashJoin(join(JoinOperator.Type.INNER, CUSTOMER_KEY), config(1 << 20))) {
+      read(hashJoin.buildObserver(), CUSTOMERS_SCHEMA);
+      LimitedStreamObserver<Data> observer =
+          hashJoin.probeObserver(new RecordingObserver(batches));
+
+      assertThat(observer.isLimitReached()).isTrue();
+      assertThat(hashJoin.getProbeQuery(FILTERING_DATA_SOURCE)).isEqualTo(ORDERS);
+    }
+  }
+
+  @Test
+  public void innerJoin_limitedLeftSide_buildsLeftSide() {
+    JoinOperator join =
+        join(JoinOperator.Type.INNER, CUSTOMER_KEY).toBuilder()
+            .setLeft(ORDERS.toBuilder().setLimit(Int64Value.of(10)))
+            .build();
+
+    try (HashJoin hashJoin = new HashJoin(join, config(1 << 20))) {
+      assertThat(hashJoin.getBuildQuery()).isEqualTo(join.getLeft());
+    }
+  }
+
+  @Test
+  public void isSupported() {
+    assertThat(HashJoin.isSupported(join(JoinOperator.Type.INNER, CUSTOMER_KEY))).isTrue();
+    // Without a conjunct that compares fields of both sides for equality
+    assertThat(
+            HashJoin.isSupported(
+                join(
+                    JoinOperator.Type.INNER,
+                    function(
+                        FunctionSignatureId.FN_LESS,
+                        field("orders", "customer"),
+                        field("customers", "id")))))
+        .isFalse();
+    assertThat(
+            HashJoin.isSupported(
+                join(
+                    JoinOperator.Type.INNER,
+                    function(
+                        FunctionSignatureId.FN_EQUAL,
+                        field("orders", "customer"),
+                        field("orders", "id")))))
+        .isFalse();
+    assertThat(HashJoin.isSupported(join(JoinOperator.Type.TYPE_UNSPECIFIED, CUSTOMER_KEY)))
+        .isFalse();
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new HashJoin(join(JoinOperator.Type.TYPE_UNSPECIFIED, CUSTOMER_KEY), config(1024)));
+  }
+
+  private SpillConfig config(long joinBufferBytes) {
+    SpillConfig config = new SpillConfig();
+    new CommandLine(config)
+        .parseArgs("--join-buffer-bytes=" + joinBufferBytes, "--spill-directory=" + spillDirectory);
+    return config;
+  }
+
+  private static void read(StreamObserver<Data> observer, Schema schema, StructValue... rows) {
+    observer.onNext(Data.newBuilder().setSchema(schema).build());
+    // Sent in batches of 100 records
+    for (int from = 0; from < rows.length; from += 100) {
+      observer.onNext(
+          Data.newBuilder()
+              .setDataBlock(
+                  DataBlock.newBuilder()
+                      .setRowset(
+                          RowSet.newBuilder()
+                              .addAllRows(
+                                  Arrays.asList(rows)
+                                      .subList(from, Math.min(from + 100, rows.length)))))
+              .build());
+    }
+    observer.onCompleted();
+  }
+
+  private static List<StructValue> rows(List<Data> batches) {
+    List<StructValue> rows = new ArrayList<>();
+    for (Data batch : batches) {
+      rows.addAll(batch.getDataBlock().getRowset().getRowsList());
+    }
+    return rows;
+  }
+
+  private static JoinOperator join(JoinOperator.Type type, Expression predicate) {
+    return JoinOperator.newBuilder()
+        .setType(type)
+        .setLeft(ORDERS)
+        .setRight(CUSTOMERS)
+        .setPredicate(predicate)
+        .build();
+  }
+
+  private static DataQuery table(String... names) {
+    return DataQuery.newBuilder()
+        .setNamedTable(NamedTable.newBuilder().addAllNames(Arrays.asList(names)))
+        .build();
+  }
+
+  private static StructValue order(long id, Long customer, long amount) {
+    return row(int64(id), customer == null ? NULL : int64(customer), int64(amount));
+  }
+
+  private static StructValue customer(long id, String name) {
+    return row(int64(id), string(name));
+  }
+
+  private static final class RecordingObserver implements StreamObserver<Data> {
+    private final List<Data> batches;
+
+    RecordingObserver(List<Data> batches) {
+      this.batches = batches;
+    }
+
+    @Override
+    public void onNext(Data data) {
+      batches.add(data);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      throw new AssertionError(t);
+    }
+
+    @Override
+    public void onCompleted() {}
+  }
+}
@@ -0,0 +1,394 @@
+package com.google.cloud.connector.server.query;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.Compute;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.ComputeElement;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.Sorting;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.Sorting.SortingOrder;
+import com.google.cloud.bigquery.federation.v1alpha1.DataSource;
+import com.google.cloud.bigquery.federation.v1alpha1.DataSource.Capability;
+import com.google.cloud.bigquery.federation.v1alpha1.Expression;
+import com.google.cloud.bigquery.federation.v1alpha1.FieldExpression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionExpression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionSignatureId;
+import com.google.cloud.bigquery.federation.v1alpha1.Functions.FunctionId;
+import com.google.cloud.bigquery.federation.v1alpha1.JoinOperator;
+import com.google.cloud.bigquery.federation.v1alpha1.Value;
+import com.google.protobuf.Int64Value;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+/** Unit test for {@link QueryPlanner}. */
+public class QueryPlannerTest {
+
+  private static final DataSource NO_PUSHDOWN = DataSource.getDefaultInstance();
+  private static final DataSource FILTER_PUSHDOWN =
+      DataSource.newBuilder().addCapabilities(Capability.SUPPORTS_FILTER).build();
+  private static final DataSource FILTER_AND_LIMIT_PUSHDOWN =
+      FILTER_PUSHDOWN.toBuilder().addCapabilities(Capability.SUPPORTS_LIMIT).build();
+  private static final Expression ID_EQUALS_1 =
+      function(FunctionSignatureId.FN_EQUAL, field("id"), constant(1));
+  private static final Expression NAME_LIKE =
+      function(
+          FunctionSignatureId.FN_STRING_LIKE,
+          field("name"),
+          Expression.newBuilder()
+              .setConstant(Value.newBuilder().setStringValue("a%"))
+              .build());
+  private static final Sorting SORTING =
+      Sorting.newBuilder().setFieldName("id").setSortingOrder(SortingOrder.DESCENDING).build();
+  // name, COUNT(*) AS count
+  private static final Compute COUNT_BY_NAME =
+      Compute.newBuilder()
+          .addElements(ComputeElement.newBuilder().setExpression(field("name")))
+          .addElements(
+              ComputeElement.newBuilder()
+                  .setFieldName("count")
+                  .setExpression(function(FunctionSignatureId.FN_COUNT_STAR)))
+          .build();
+  private static final Expression COUNT_GREATER_1 =
+      function(FunctionSignatureId.FN_GREATER, field("count"), constant(1));
+  private static final Compute COMPUTE =
+      Compute.newBuilder()
+          .addElements(ComputeElement.newBuilder().setExpression(field("id")))
+          .build();
+
+  @Test
+  public void plan_disabled() {
+    DataQuery query = DataQuery.newBuilder().setFilterPredicate(ID_EQUALS_1).build();
+
+    assertThat(new QueryPlanner(false).plan(query, NO_PUSHDOWN, false))
+        .isEqualTo(QueryPlan.ofConnector(query));
+  }
+
+  @Test
+  public void plan_connectorSupportsQuery() {
+    DataQuery query =
+        DataQuery.newBuilder()
+            .setFilterPredicate(ID_EQUALS_1)
+            .setLimit(Int64Value.of(10))
+            .build();
+
+    assertThat(new QueryPlanner(true).plan(query, FILTER_AND_LIMIT_PUSHDOWN, false))
+        .isEqualTo(QueryPlan.ofConnector(query));
+  }
+
+  @Test
+  public void plan_serverEvaluatesFilterAndCompute() {
+    DataQuery query =
+        DataQuery.newBuilder()
+            .setTable("table")
+            .setFilterPredicate(ID_EQUALS_1)
+            .setCompute(COMPUTE)
+            .build();
+
+    QueryPlan plan = new QueryPlanner(true).plan(query, NO_PUSHDOWN, false);
+
+    assertThat(plan.connectorQuery())
+        .isEqualTo(DataQuery.newBuilder().setTable("table").build());
+    assertThat(plan.serverQuery())
+        .isEqualTo(
+            DataQuery.newBuilder().setFilterPredicate(ID_EQUALS_1).setCompute(COMPUTE).build());
+    assertThat(plan.residualQuery()).isNull();
+  }
+
+  @Test
+  public void plan_unsupportedConjunctsAreResidual() {
+    DataQuery query =
+        DataQuery.newBuilder()
+            .setTable("table")
+            .setFilterPredicate(function(FunctionSignatureId.FN_AND, ID_EQUALS_1, NAME_LIKE))
+            .setCompute(COMPUTE)
+            .setLimit(Int64Value.of(10))
+            .build();
+
+    QueryPlan plan = new QueryPlanner(true).plan(query, NO_PUSHDOWN, false);
+
+    assertThat(plan.connectorQuery())
+        .isEqualTo(DataQuery.newBuilder().setTable("table").build());
+    assertThat(plan.serverQuery())
+        .isEqualTo(DataQuery.newBuilder().setFilterPredicate(ID_EQUALS_1).build());
+    // The compute follows the residual conjunct
+    assertThat(plan.residualQuery())
+        .isEqualTo(
+            DataQuery.newBuilder()
+                .setTable(QueryPlanner.RESULT_SET_LABEL)
+                .setFilterPredicate(NAME_LIKE)
+                .setCompute(COMPUTE)
+                .setLimit(Int64Value.of(10))
+                .build());
+  }
+
+  @Test
+  public void plan_connectorFiltersAndServerComputes() {
+    DataQuery query =
+        DataQuery.newBuilder()
+            .setTable("table")
+            .setFilterPredicate(NAME_LIKE)
+            .setCompute(COMPUTE)
+            .setLimit(Int64Value.of(10))
+            .build();
+
+    QueryPlan plan = new QueryPlanner(true).plan(query, FILTER_PUSHDOWN, false);
+
+    assertThat(plan.connectorQuery())
+        .isEqualTo(
+            DataQuery.newBuilder().setTable("table").setFilterPredicate(NAME_LIKE).build());
+    // Each stream is limited, and the caller limits the records of all the streams
+    assertThat(plan.serverQuery())
+        .isEqualTo(DataQuery.newBuilder().setCompute(COMPUTE).setLimit(Int64Value.of(10)).build());
+    assertThat(plan.residualQuery())
+        .isEqualTo(
+            DataQuery.newBuilder()
+                .setTable(QueryPlanner.RESULT_SET_LABEL)
+                .setLimit(Int64Value.of(10))
+                .build());
+  }
+
+  @Test
+  public void plan_singleStream_serverSortsAndLimits() {
+    DataQuery query =
+        DataQuery.newBuilder()
+            .setTable("table")
+            .setFilterPredicate(ID_EQUALS_1)
+            .addSorting(SORTING)
+            .setLimit(Int64Value.of(10))
+            .setOffset(Int64Value.of(5))
+            .build();
+
+    QueryPlan plan = new QueryPlanner(true).plan(query, NO_PUSHDOWN, true);
+
+    assertThat(plan.connectorQuery())
+        .isEqualTo(DataQuery.newBuilder().setTable("table").build());
+    assertThat(plan.serverQuery())
+        .isEqualTo(query.toBuilder().clearTable().build());
+    assertThat(plan.residualQuery()).isNull();
+    assertThat(plan.partitionQuery())
+        .isEqualTo(
+            DataQuery.newBuilder()
+                .setFilterPredicate(ID_EQUALS_1)
+                .addSorting(SORTING)
+                .setLimit(Int64Value.of(15))
+                .build());
+    assertThat(plan.mergeQuery())
+        .isEqualTo(
+            DataQuery.newBuilder()
+                .addSorting(SORTING)
+                .setLimit(Int64Value.of(10))
+                .setOffset(Int64Value.of(5))
+                .build());
+  }
+
+  @Test
+  public void plan_multipleStreams_serverLimitsEachStream() {
+    DataQuery query =
+        DataQuery.newBuilder()
+            .setTable("table")
+            .addSorting(SORTING)
+            .setLimit(Int64Value.of(10))
+            .setOffset(Int64Value.of(5))
+            .build();
+
+    QueryPlan plan = new QueryPlanner(true).plan(query, NO_PUSHDOWN, false);
+
+    assertThat(plan.connectorQuery())
+        .isEqualTo(DataQuery.newBuilder().setTable("table").build());
+    assertThat(plan.serverQuery())
+        .isEqualTo(
+            DataQuery.newBuilder().addSorting(SORTING).setLimit(Int64Value.of(15)).build());
+    assertThat(plan.residualQuery())
+        .isEqualTo(query.toBuilder().setTable(QueryPlanner.RESULT_SET_LABEL).build());
+  }
+
+  @Test
+  public void plan_connectorComputesOnlyAfterServerFilter() {
+    DataQuery query =
+        DataQuery.newBuilder()
+            .setTable("table")
+            .setFilterPredicate(ID_EQUALS_1)
+            .setCompute(COMPUTE)
+            .build();
+    DataSource computePushdown =
+        DataSource.newBuilder().addCapabilities(Capability.SUPPORTS_COMPUTE).build();
+
+    QueryPlan plan = new QueryPlanner(true).plan(query, computePushdown, true);
+
+    assertThat(plan.connectorQuery())
+        .isEqualTo(DataQuery.newBuilder().setTable("table").build());
+    assertThat(plan.serverQuery())
+        .isEqualTo(
+            DataQuery.newBuilder().setFilterPredicate(ID_EQUALS_1).setCompute(COMPUTE).build());
+  }
+
+  @Test
+  public void plan_singleStream_serverAggregates() {
+    DataQuery query =
+        DataQuery.newBuilder()
+            .setTable("table")
+            .setFilterPredicate(ID_EQUALS_1)
+            .setCompute(COUNT_BY_NAME)
+            .setHavingPredicate(COUNT_GREATER_1)
+            .addSorting(Sorting.newBuilder().setFieldName("count"))
+            .setLimit(Int64Value.of(10))
+            .build();
+
+    QueryPlan plan = new QueryPlanner(true).plan(query, NO_PUSHDOWN, true);
+
+    assertThat(plan.connectorQuery())
+        .isEqualTo(DataQuery.newBuilder().setTable("table").build());
+    assertThat(plan.serverQuery()).isEqualTo(query.toBuilder().clearTable().build());
+    assertThat(plan.residualQuery()).isNull();
+    // Partitions are only filtered, and their merged records are aggregated
+    assertThat(plan.partitionQuery())
+        .isEqualTo(DataQuery.newBuilder().setFilterPredicate(ID_EQUALS_1).build());
+    assertThat(plan.mergeQuery())
+        .isEqualTo(query.toBuilder().clearTable().clearFilterPredicate().build());
+  }
+
+  @Test
+  public void plan_multipleStreams_aggregationIsResidual() {
+    DataQuery query =
+        DataQuery.newBuilder()
+            .setTable("table")
+            .setFilterPredicate(ID_EQUALS_1)
+            .setCompute(COUNT_BY_NAME)
+            .setHavingPredicate(COUNT_GREATER_1)
+            .build();
+
+    QueryPlan plan = new QueryPlanner(true).plan(query, NO_PUSHDOWN, false);
+
+    assertThat(plan.serverQuery())
+        .isEqualTo(DataQuery.newBuilder().setFilterPredicate(ID_EQUALS_1).build());
+    assertThat(plan.residualQuery())
+        .isEqualTo(
+            DataQuery.newBuilder()
+                .setTable(QueryPlanner.RESULT_SET_LABEL)
+                .setCompute(COUNT_BY_NAME)
+                .setHavingPredicate(COUNT_GREATER_1)
+                .build());
+  }
+
+  @Test
+  public void planJoin_serverEvaluatesQueryOfJoinedRecords() {
+    DataQuery query =
+        DataQuery.newBuilder()
+            .setJoin(
+                JoinOperator.newBuilder()
+                    .setType(JoinOperator.Type.INNER)
+                    .setLeft(DataQuery.newBuilder().setTable("left"))
+                    .setRight(DataQuery.newBuilder().setTable("right"))
+                    .setPredicate(ID_EQUALS_1))
+            .setFilterPredicate(ID_EQUALS_1)
+            .setLimit(Int64Value.of(10))
+            .build();
+    QueryPlanner planner = new QueryPlanner(true);
+
+    assertThat(planner.isJoin(query, NO_PUSHDOWN)).isTrue();
+    assertThat(
+            planner.isJoin(
+                query, DataSource.newBuilder().addCapabilities(Capability.SUPPORTS_JOIN).build()))
+        .isFalse();
+    assertThat(new QueryPlanner(false).isJoin(query, NO_PUSHDOWN)).isFalse();
+    QueryPlan plan = planner.planJoin(query);
+    assertThat(plan.serverQuery()).isEqualTo(query.toBuilder().clearJoin().build());
+    assertThat(plan.residualQuery()).isNull();
+  }
+
+  @Test
+  public void streamQuery_withoutLimit() {
+    assertThat(QueryPlanner.streamQuery(DataQuery.newBuilder().addSorting(SORTING).build()))
+        .isEqualTo(DataQuery.getDefaultInstance());
+  }
+
+  @Test
+  public void conjuncts_flattensNestedAnds() {
+    Expression predicate =
+        function(
+            FunctionSignatureId.FN_AND,
+            function(FunctionSignatureId.FN_AND, ID_EQUALS_1, NAME_LIKE),
+            function(FunctionSignatureId.FN_OR, ID_EQUALS_1, NAME_LIKE));
+
+    assertThat(QueryPlanner.conjuncts(predicate))
+        .containsExactly(
+            ID_EQUALS_1, NAME_LIKE, function(FunctionSignatureId.FN_OR, ID_EQUALS_1, NAME_LIKE))
+        .inOrder();
+  }
+
+  @Test
+  public void withServerCapabilities() {
+    DataSource dataSource =
+        new QueryPlanner(true)
+            .withServerCapabilities(
+                DataSource.newBuilder().addSupportedFunctions(FunctionId.EQUAL).build());
+
+    assertThat(dataSource.getCapabilitiesList())
+        .containsExactly(
+            Capability.SUPPORTS_FILTER,
+            Capability.SUPPORTS_COMPUTE,
+            Capability.SUPPORTS_SORTING,
+            Capability.SUPPORTS_LIMIT,
+            Capability.SUPPORTS_OFFSET,
+            Capability.SUPPORTS_TYPE_CAST);
+    assertThat(dataSource.getSupportedFunctionsList())
+        .containsExactlyElementsIn(ExpressionCompiler.getSupportedFunctions());
+    assertThat(dataSource.getSupportedFunctionsList()).containsNoDuplicates();
+    assertThat(dataSource.getSupportedFunctionSignaturesList())
+        .containsAtLeast(
+            FunctionSignatureId.FN_AND,
+            FunctionSignatureId.FN_EQUAL,
+            FunctionSignatureId.FN_COUNT_STAR,
+            FunctionSignatureId.FN_SUM_INT64);
+  }
+
+  @Test
+  public void withServerCapabilities_keepsFunctionsOfPushdownConnectors() {
+    assertThat(new QueryPlanner(true).withServerCapabilities(FILTER_PUSHDOWN))
+        .isEqualTo(
+            FILTER_PUSHDOWN.toBuilder()
+                .addCapabilities(Capability.SUPPORTS_COMPUTE)
+                .addCapabilities(Capability.SUPPORTS_SORTING)
+                .addCapabilities(Capability.SUPPORTS_LIMIT)
+                .addCapabilities(Capability.SUPPORTS_OFFSET)
+                .build());
+    assertThat(new QueryPlanner(false).withServerCapabilities(NO_PUSHDOWN))
+        .isEqualTo(NO_PUSHDOWN);
+  }
+
+  @Test
+  public void withServerCapabilities_joinsOnlyForSynchronousConnectors() {
+    QueryPlanner planner = new QueryPlanner(true);
+    DataSource synchronous =
+        DataSource.newBuilder().addCapabilities(Capability.SUPPORTS_SYNCHRONOUS_QUERIES).build();
+    DataSource parallel =
+        synchronous.toBuilder().addCapabilities(Capability.SUPPORTS_PARALLEL_QUERIES).build();
+
+    assertThat(planner.withServerCapabilities(synchronous).getCapabilitiesList())
+        .contains(Capability.SUPPORTS_JOIN);
+    // StartQuery can't join
+    assertThat(planner.withServerCapabilities(parallel).getCapabilitiesList())
+        .doesNotContain(Capability.SUPPORTS_JOIN);
+  }
+
+  private static Expression function(FunctionSignatureId signatureId, Expression... arguments) {
+    return Expression.newBuilder()
+        .setFunction(
+            FunctionExpression.newBuilder()
+                .setFunctionSignatureId(signatureId)
+                .addAllArguments(Arrays.asList(arguments)))
+        .build();
+  }
+
+  private static Expression field(String name) {
+    return Expression.newBuilder()
+        .setField(FieldExpression.newBuilder().setFieldName(name))
+        .build();
+  }
+
+  private static Expression constant(long value) {
+    return Expression.newBuilder()
+        .setConstant(Value.newBuilder().setInt64Value(value))
+        .build();
+  }
+}
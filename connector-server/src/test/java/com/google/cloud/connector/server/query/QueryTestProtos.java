@@ -0,0 +1,74 @@
+package com.google.cloud.connector.server.query;
+
+import com.google.cloud.bigquery.federation.v1alpha1.Expression;
+import com.google.cloud.bigquery.federation.v1alpha1.FieldExpression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionExpression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionSignatureId;
+import com.google.cloud.bigquery.federation.v1alpha1.Schema;
+import com.google.cloud.bigquery.federation.v1alpha1.StructValue;
+import com.google.cloud.bigquery.federation.v1alpha1.Type;
+import com.google.cloud.bigquery.federation.v1alpha1.TypeKind;
+import com.google.cloud.bigquery.federation.v1alpha1.Value;
+import com.google.protobuf.NullValue;
+import java.util.Arrays;
+
+/** Builders of the protobuf messages used by the tests of the query operators. */
+final class QueryTestProtos {
+
+  static final Value NULL = Value.newBuilder().setNullValue(NullValue.NULL_VALUE).build();
+
+  private QueryTestProtos() {}
+
+  static Expression function(FunctionSignatureId signatureId, Expression... arguments) {
+    return Expression.newBuilder()
+        .setFunction(
+            FunctionExpression.newBuilder()
+                .setFunctionSignatureId(signatureId)
+                .addAllArguments(Arrays.asList(arguments)))
+        .build();
+  }
+
+  static Expression field(String name) {
+    return Expression.newBuilder()
+        .setField(FieldExpression.newBuilder().setFieldName(name))
+        .build();
+  }
+
+  static Expression field(String alias, String name) {
+    return Expression.newBuilder()
+        .setField(FieldExpression.newBuilder().setAlias(alias).setFieldName(name))
+        .build();
+  }
+
+  static Expression constant(Value value) {
+    return Expression.newBuilder().setConstant(value).build();
+  }
+
+  static Type type(TypeKind typeKind) {
+    return Type.newBuilder().setTypeKind(typeKind).build();
+  }
+
+  static Schema.Field schemaField(String name, TypeKind typeKind) {
+    return Schema.Field.newBuilder().setFieldName(name).setType(type(typeKind)).build();
+  }
+
+  static StructValue row(Value... values) {
+    return StructValue.newBuilder().addAllFields(Arrays.asList(values)).build();
+  }
+
+  static Value int64(long value) {
+    return Value.newBuilder().setInt64Value(value).build();
+  }
+
+  static Value float64(double value) {
+    return Value.newBuilder().setDoubleValue(value).build();
+  }
+
+  static Value numeric(String value) {
+    return Value.newBuilder().setNumericValue(value).build();
+  }
+
+  static Value string(String value) {
+    return Value.newBuilder().setStringValue(value).build();
+  }
+}
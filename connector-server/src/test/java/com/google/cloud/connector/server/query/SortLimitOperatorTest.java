@@ -0,0 +1,238 @@
+package com.google.cloud.connector.server.query;
+
+import static com.google.cloud.connector.server.query.QueryTestProtos.NULL;
+import static com.google.cloud.connector.server.query.QueryTestProtos.int64;
+import static com.google.cloud.connector.server.query.QueryTestProtos.schemaField;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.Sorting;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.Sorting.SortingOrder;
+import com.google.cloud.bigquery.federation.v1alpha1.Schema;
+import com.google.cloud.bigquery.federation.v1alpha1.StructValue;
+import com.google.cloud.bigquery.federation.v1alpha1.TypeKind;
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.Int64Value;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+/** Unit test for {@link SortLimitOperator} and {@link ExternalSorter}. */
+public class SortLimitOperatorTest {
+
+  private static final Schema SCHEMA =
+      Schema.newBuilder().addFields(schemaField("id", TypeKind.INT64)).build();
+
+  @TempDir Path spillDirectory;
+
+  @Test
+  public void add_withoutSorting_appliesOffsetAndLimit() {
+    DataQuery query =
+        DataQuery.newBuilder().setOffset(Int64Value.of(3)).setLimit(Int64Value.of(4)).build();
+
+    try (SortLimitOperator operator = new SortLimitOperator(query, SCHEMA, config(1024))) {
+      assertThat(operator.add(rows(0, 1))).isEmpty();
+      assertThat(operator.add(rows(2, 3, 4))).containsExactlyElementsIn(rows(3, 4)).inOrder();
+      assertThat(operator.isLimitReached()).isFalse();
+      assertThat(operator.add(rows(5, 6, 7, 8))).containsExactlyElementsIn(rows(5, 6)).inOrder();
+      assertThat(operator.isLimitReached()).isTrue();
+      assertThat(operator.add(rows(9))).isEmpty();
+      assertThat(ImmutableList.copyOf(operator.finish())).isEmpty();
+    }
+  }
+
+  @Test
+  public void finish_topN_appliesOffset() {
+    DataQuery query =
+        DataQuery.newBuilder()
+            .addSorting(sorting(SortingOrder.ASCENDING))
+            .setOffset(Int64Value.of(2))
+            .setLimit(Int64Value.of(3))
+            .build();
+    List<StructValue> records = shuffled(100);
+
+    try (SortLimitOperator operator = new SortLimitOperator(query, SCHEMA, config(1024))) {
+      assertThat(operator.add(records.subList(0, 50))).isEmpty();
+      assertThat(operator.add(records.subList(50, 100))).isEmpty();
+      // Sorted reads can't stop before all the records are added
+      assertThat(operator.isLimitReached()).isFalse();
+
+      assertThat(ImmutableList.copyOf(operator.finish()))
+          .containsExactlyElementsIn(rows(2, 3, 4))
+          .inOrder();
+    }
+  }
+
+  @Test
+  public void finish_descending_ordersNullsLast() {
+    DataQuery query =
+        DataQuery.newBuilder()
+            .addSorting(sorting(SortingOrder.DESCENDING))
+            .setLimit(Int64Value.of(10))
+            .build();
+    StructValue nullRow = QueryTestProtos.row(NULL);
+
+    try (SortLimitOperator operator = new SortLimitOperator(query, SCHEMA, config(1024))) {
+      operator.add(List.of(row(1), nullRow, row(3), row(2)));
+
+      assertThat(ImmutableList.copyOf(operator.finish()))
+          .containsExactly(row(3), row(2), row(1), nullRow)
+          .inOrder();
+    }
+  }
+
+  @Test
+  public void finish_fullSort_spillsAndDeletesRuns() throws IOException {
+    DataQuery query = DataQuery.newBuilder().addSorting(sorting(SortingOrder.ASCENDING)).build();
+    List<StructValue> records = shuffled(1000);
+
+    List<StructValue> sorted;
+    try (SortLimitOperator operator = new SortLimitOperator(query, SCHEMA, config(512))) {
+      operator.add(records);
+      try (Stream<Path> runs = Files.list(spillDirectory)) {
+        assertThat(runs.count()).isGreaterThan(1);
+      }
+      sorted = ImmutableList.copyOf(operator.finish());
+    }
+
+    assertThat(sorted).containsExactlyElementsIn(rows(range(1000))).inOrder();
+    try (Stream<Path> runs = Files.list(spillDirectory)) {
+      assertThat(runs.count()).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void finish_topN_spillsHeapLargerThanBuffer() throws IOException {
+    DataQuery query =
+        DataQuery.newBuilder()
+            .addSorting(sorting(SortingOrder.ASCENDING))
+            .setOffset(Int64Value.of(100))
+            .setLimit(Int64Value.of(400))
+            .build();
+    List<StructValue> records = shuffled(1000);
+
+    List<StructValue> sorted;
+    try (SortLimitOperator operator = new SortLimitOperator(query, SCHEMA, config(512))) {
+      operator.add(records);
+      try (Stream<Path> runs = Files.list(spillDirectory)) {
+        assertThat(runs.count()).isGreaterThan(1);
+      }
+      sorted = ImmutableList.copyOf(operator.finish());
+    }
+
+    long[] ids = new long[400];
+    Arrays.setAll(ids, i -> i + 100);
+    assertThat(sorted).containsExactlyElementsIn(rows(ids)).inOrder();
+  }
+
+  @Test
+  public void sorted_withoutSpill() {
+    try (ExternalSorter sorter =
+        new ExternalSorter(
+            SortLimitOperator.comparator(List.of(sorting(SortingOrder.ASCENDING)), SCHEMA),
+            1024,
+            spillDirectory)) {
+      shuffled(10).forEach(sorter::add);
+
+      assertThat(sorter.getSpilledRuns()).isEqualTo(0);
+      assertThat(ImmutableList.copyOf(sorter.sorted()))
+          .containsExactlyElementsIn(rows(range(10)))
+          .inOrder();
+    }
+  }
+
+  @Test
+  public void sorted_mergesRunsInPasses() throws IOException {
+    int count = ExternalSorter.MERGE_FAN_IN * 3;
+    try (ExternalSorter sorter =
+        new ExternalSorter(
+            SortLimitOperator.comparator(List.of(sorting(SortingOrder.ASCENDING)), SCHEMA),
+            1,
+            spillDirectory)) {
+      shuffled(count).forEach(sorter::add);
+      assertThat(sorter.getSpilledRuns()).isEqualTo(count);
+
+      List<StructValue> sorted = ImmutableList.copyOf(sorter.sorted());
+
+      assertThat(sorted).containsExactlyElementsIn(rows(range(count))).inOrder();
+      assertThat(sorter.getSpilledRuns()).isLessThan(ExternalSorter.MERGE_FAN_IN);
+      try (Stream<Path> runs = Files.list(spillDirectory)) {
+        assertThat(runs.count()).isEqualTo(sorter.getSpilledRuns());
+      }
+    }
+    try (Stream<Path> runs = Files.list(spillDirectory)) {
+      assertThat(runs.count()).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void isLimitReached_zeroLimit() {
+    DataQuery query =
+        DataQuery.newBuilder()
+            .addSorting(sorting(SortingOrder.ASCENDING))
+            .setLimit(Int64Value.of(0))
+            .build();
+
+    try (SortLimitOperator operator = new SortLimitOperator(query, SCHEMA, config(1024))) {
+      assertThat(operator.isLimitReached()).isTrue();
+      operator.add(rows(1));
+      assertThat(ImmutableList.copyOf(operator.finish())).isEmpty();
+    }
+  }
+
+  @Test
+  public void comparator_unknownField_throws() {
+    Sorting sorting = Sorting.newBuilder().setFieldName("unknown").build();
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> SortLimitOperator.comparator(List.of(sorting), SCHEMA));
+  }
+
+  private SpillConfig config(long bufferBytes) {
+    SpillConfig config = new SpillConfig();
+    new CommandLine(config)
+        .parseArgs("--sort-buffer-bytes=" + bufferBytes, "--spill-directory=" + spillDirectory);
+    return config;
+  }
+
+  private static Sorting sorting(SortingOrder order) {
+    return Sorting.newBuilder().setFieldName("id").setSortingOrder(order).build();
+  }
+
+  private static List<StructValue> shuffled(int count) {
+    List<StructValue> records = rows(range(count));
+    Collections.shuffle(records, new Random(42));
+    return records;
+  }
+
+  private static long[] range(int count) {
+    long[] ids = new long[count];
+    for (int i = 0; i < count; i++) {
+      ids[i] = i;
+    }
+    return ids;
+  }
+
+  private static List<StructValue> rows(long... ids) {
+    List<StructValue> rows = new ArrayList<>();
+    for (long id : ids) {
+      rows.add(row(id));
+    }
+    return rows;
+  }
+
+  private static StructValue row(long id) {
+    return QueryTestProtos.row(int64(id));
+  }
+}
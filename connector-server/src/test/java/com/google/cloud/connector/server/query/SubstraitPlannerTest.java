@@ -0,0 +1,384 @@
+package com.google.cloud.connector.server.query;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.Compute;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.ComputeElement;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.Sorting;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery.Sorting.SortingOrder;
+import com.google.cloud.bigquery.federation.v1alpha1.DataSource;
+import com.google.cloud.bigquery.federation.v1alpha1.DataSource.Capability;
+import com.google.cloud.bigquery.federation.v1alpha1.FieldExpression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionExpression;
+import com.google.cloud.bigquery.federation.v1alpha1.FunctionSignatureId;
+import com.google.cloud.bigquery.federation.v1alpha1.NamedTable;
+import com.google.cloud.bigquery.federation.v1alpha1.Value;
+import com.google.protobuf.Int64Value;
+import io.substrait.proto.Capabilities;
+import io.substrait.proto.Expression;
+import io.substrait.proto.Expression.FieldReference;
+import io.substrait.proto.Expression.Literal;
+import io.substrait.proto.Expression.ReferenceSegment;
+import io.substrait.proto.Expression.ScalarFunction;
+import io.substrait.proto.FetchRel;
+import io.substrait.proto.FilterRel;
+import io.substrait.proto.FunctionArgument;
+import io.substrait.proto.JoinRel;
+import io.substrait.proto.NamedStruct;
+import io.substrait.proto.Plan;
+import io.substrait.proto.PlanRel;
+import io.substrait.proto.ProjectRel;
+import io.substrait.proto.ReadRel;
+import io.substrait.proto.Rel;
+import io.substrait.proto.RelCommon;
+import io.substrait.proto.RelRoot;
+import io.substrait.proto.SimpleExtensionDeclaration;
+import io.substrait.proto.SimpleExtensionDeclaration.ExtensionFunction;
+import io.substrait.proto.SimpleExtensionURI;
+import io.substrait.proto.SortField;
+import io.substrait.proto.SortField.SortDirection;
+import io.substrait.proto.SortRel;
+import io.substrait.proto.Type;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/** Unit test for {@link SubstraitPlanner}. */
+public class SubstraitPlannerTest {
+
+  private static final int LT = 1;
+  private static final int AND = 2;
+  private static final int ADD = 3;
+  private static final int LIKE = 4;
+  private static final Type I64 =
+      Type.newBuilder()
+          .setI64(Type.I64.newBuilder().setNullability(Type.Nullability.NULLABILITY_NULLABLE))
+          .build();
+  private static final Type STRING =
+      Type.newBuilder()
+          .setString(
+              Type.String.newBuilder().setNullability(Type.Nullability.NULLABILITY_NULLABLE))
+          .build();
+  private static final Type BOOL =
+      Type.newBuilder()
+          .setBool(Type.Boolean.newBuilder().setNullability(Type.Nullability.NULLABILITY_NULLABLE))
+          .build();
+  private static final Rel READ =
+      Rel.newBuilder()
+          .setRead(
+              ReadRel.newBuilder()
+                  .setBaseSchema(schema(List.of("id", "name"), List.of(I64, STRING)))
+                  .setNamedTable(ReadRel.NamedTable.newBuilder().addNames("table")))
+          .build();
+
+  @Test
+  public void getCapabilities_declaresFunctionsOfSupportedSignatures() {
+    DataSource dataSource =
+        DataSource.newBuilder()
+            .addCapabilities(Capability.SUPPORTS_FILTER)
+            .addSupportedFunctionSignatures(FunctionSignatureId.FN_AND)
+            .addSupportedFunctionSignatures(FunctionSignatureId.FN_EQUAL)
+            .addSupportedFunctionSignatures(FunctionSignatureId.FN_NOT)
+            .addSupportedFunctionSignatures(FunctionSignatureId.FN_IS_NULL)
+            .build();
+
+    assertThat(SubstraitPlanner.getCapabilities(dataSource))
+        .isEqualTo(
+            Capabilities.newBuilder()
+                .addSimpleExtensions(
+                    Capabilities.SimpleExtension.newBuilder()
+                        .setUri("/functions_boolean.yaml")
+                        .addFunctionKeys("and:bool")
+                        .addFunctionKeys("not:bool"))
+                .addSimpleExtensions(
+                    Capabilities.SimpleExtension.newBuilder()
+                        .setUri("/functions_comparison.yaml")
+                        .addFunctionKeys("equal:any_any")
+                        .addFunctionKeys("is_null:any")
+                        .addFunctionKeys("is_not_null:any"))
+                .build());
+    assertThat(
+            SubstraitPlanner.getCapabilities(
+                dataSource.toBuilder().clearCapabilities().build()))
+        .isEqualTo(Capabilities.getDefaultInstance());
+  }
+
+  @Test
+  public void plan_connectorSupportsWholePlan_hasNoResidualPlan() {
+    Rel rel =
+        fetch(
+            sort(
+                filter(READ, lt(field(0), int64(3))),
+                0,
+                SortDirection.SORT_DIRECTION_DESC_NULLS_LAST),
+            10);
+    DataSource dataSource =
+        DataSource.newBuilder()
+            .addCapabilities(Capability.SUPPORTS_FILTER)
+            .addCapabilities(Capability.SUPPORTS_SORTING)
+            .addCapabilities(Capability.SUPPORTS_LIMIT)
+            .addSupportedFunctionSignatures(FunctionSignatureId.FN_LESS)
+            .build();
+
+    SubstraitQueryPlan plan = SubstraitPlanner.plan(plan(rel, "id", "name"), dataSource);
+
+    assertThat(plan.connectorQuery())
+        .isEqualTo(
+            DataQuery.newBuilder()
+                .setNamedTable(NamedTable.newBuilder().addNames("table"))
+                .setFilterPredicate(
+                    function(FunctionSignatureId.FN_LESS, v1Field("id"), v1Int64(3)))
+                .addSorting(
+                    Sorting.newBuilder()
+                        .setFieldName("id")
+                        .setSortingOrder(SortingOrder.DESCENDING))
+                .setLimit(Int64Value.of(10))
+                .build());
+    assertThat(plan.residualPlan()).isNull();
+  }
+
+  @Test
+  public void plan_unsupportedConjunct_isKeptInResidualPlan() {
+    Expression like = call(LIKE, STRING, field(1), string("a%"));
+    Rel rel = fetch(filter(READ, call(AND, BOOL, lt(field(0), int64(3)), like)), 10);
+    DataSource dataSource =
+        DataSource.newBuilder()
+            .addCapabilities(Capability.SUPPORTS_FILTER)
+            .addCapabilities(Capability.SUPPORTS_LIMIT)
+            .addSupportedFunctionSignatures(FunctionSignatureId.FN_AND)
+            .addSupportedFunctionSignatures(FunctionSignatureId.FN_LESS)
+            .build();
+
+    SubstraitQueryPlan plan = SubstraitPlanner.plan(plan(rel, "id", "name"), dataSource);
+
+    assertThat(plan.connectorQuery())
+        .isEqualTo(
+            DataQuery.newBuilder()
+                .setNamedTable(NamedTable.newBuilder().addNames("table"))
+                .setFilterPredicate(
+                    function(FunctionSignatureId.FN_LESS, v1Field("id"), v1Int64(3)))
+                .build());
+    assertThat(plan.residualPlan())
+        .isEqualTo(
+            plan(
+                fetch(filter(resultSet(List.of("id", "name"), I64, STRING), like), 10),
+                "id",
+                "name"));
+  }
+
+  @Test
+  public void plan_projectionWithoutCompute_isKeptInResidualPlan() {
+    Rel rel = project(filter(READ, lt(field(0), int64(3))), List.of(2), add(field(0), int64(1)));
+    DataSource dataSource =
+        DataSource.newBuilder()
+            .addCapabilities(Capability.SUPPORTS_FILTER)
+            .addSupportedFunctionSignatures(FunctionSignatureId.FN_LESS)
+            .addSupportedFunctionSignatures(FunctionSignatureId.FN_ADD_INT64)
+            .build();
+
+    SubstraitQueryPlan plan = SubstraitPlanner.plan(plan(rel, "next_id"), dataSource);
+
+    assertThat(plan.connectorQuery().getFilterPredicate())
+        .isEqualTo(function(FunctionSignatureId.FN_LESS, v1Field("id"), v1Int64(3)));
+    assertThat(plan.connectorQuery().hasCompute()).isFalse();
+    assertThat(plan.residualPlan())
+        .isEqualTo(
+            plan(
+                project(
+                    resultSet(List.of("id", "name"), I64, STRING),
+                    List.of(2),
+                    add(field(0), int64(1))),
+                "next_id"));
+  }
+
+  @Test
+  public void plan_projectionWithCompute_isRenamedToNamesOfRoot() {
+    Rel rel = project(READ, List.of(2), add(field(0), int64(1)));
+    DataSource dataSource =
+        DataSource.newBuilder()
+            .addCapabilities(Capability.SUPPORTS_COMPUTE)
+            .addSupportedFunctionSignatures(FunctionSignatureId.FN_ADD_INT64)
+            .build();
+
+    SubstraitQueryPlan plan = SubstraitPlanner.plan(plan(rel, "next_id"), dataSource);
+
+    assertThat(plan.connectorQuery())
+        .isEqualTo(
+            DataQuery.newBuilder()
+                .setNamedTable(NamedTable.newBuilder().addNames("table"))
+                .setCompute(
+                    Compute.newBuilder()
+                        .addElements(
+                            ComputeElement.newBuilder()
+                                .setFieldName("next_id")
+                                .setExpression(
+                                    function(
+                                        FunctionSignatureId.FN_ADD_INT64,
+                                        v1Field("id"),
+                                        v1Int64(1)))))
+                .build());
+    assertThat(plan.residualPlan()).isNull();
+  }
+
+  @Test
+  public void plan_join_throwsException() {
+    Rel join =
+        Rel.newBuilder()
+            .setJoin(
+                JoinRel.newBuilder()
+                    .setLeft(READ)
+                    .setRight(READ)
+                    .setType(JoinRel.JoinType.JOIN_TYPE_INNER))
+            .build();
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            SubstraitPlanner.plan(
+                plan(join, "id", "name", "id", "name"), DataSource.getDefaultInstance()));
+  }
+
+  private static Plan plan(Rel rel, String... names) {
+    return Plan.newBuilder()
+        .addExtensionUris(uri(1, "/functions_comparison.yaml"))
+        .addExtensionUris(uri(2, "/functions_boolean.yaml"))
+        .addExtensionUris(uri(3, "/functions_arithmetic.yaml"))
+        .addExtensionUris(uri(4, "/functions_string.yaml"))
+        .addExtensions(declaration(1, LT, "lt:any_any"))
+        .addExtensions(declaration(2, AND, "and:bool"))
+        .addExtensions(declaration(3, ADD, "add:i64_i64"))
+        .addExtensions(declaration(4, LIKE, "like:str_str"))
+        .addRelations(
+            PlanRel.newBuilder()
+                .setRoot(RelRoot.newBuilder().setInput(rel).addAllNames(Arrays.asList(names))))
+        .build();
+  }
+
+  private static SimpleExtensionURI uri(int anchor, String uri) {
+    return SimpleExtensionURI.newBuilder().setExtensionUriAnchor(anchor).setUri(uri).build();
+  }
+
+  private static SimpleExtensionDeclaration declaration(int uri, int anchor, String name) {
+    return SimpleExtensionDeclaration.newBuilder()
+        .setExtensionFunction(
+            ExtensionFunction.newBuilder()
+                .setExtensionUriReference(uri)
+                .setFunctionAnchor(anchor)
+                .setName(name))
+        .build();
+  }
+
+  private static NamedStruct schema(List<String> names, List<Type> types) {
+    return NamedStruct.newBuilder()
+        .addAllNames(names)
+        .setStruct(
+            Type.Struct.newBuilder()
+                .addAllTypes(types)
+                .setNullability(Type.Nullability.NULLABILITY_REQUIRED))
+        .build();
+  }
+
+  private static Rel resultSet(List<String> names, Type... types) {
+    return Rel.newBuilder()
+        .setRead(
+            ReadRel.newBuilder()
+                .setBaseSchema(schema(names, Arrays.asList(types)))
+                .setNamedTable(
+                    ReadRel.NamedTable.newBuilder().addNames(QueryPlanner.RESULT_SET_LABEL)))
+        .build();
+  }
+
+  private static Rel filter(Rel input, Expression condition) {
+    return Rel.newBuilder()
+        .setFilter(FilterRel.newBuilder().setInput(input).setCondition(condition))
+        .build();
+  }
+
+  private static Rel project(Rel input, List<Integer> emit, Expression... expressions) {
+    return Rel.newBuilder()
+        .setProject(
+            ProjectRel.newBuilder()
+                .setCommon(
+                    RelCommon.newBuilder()
+                        .setEmit(RelCommon.Emit.newBuilder().addAllOutputMapping(emit)))
+                .setInput(input)
+                .addAllExpressions(Arrays.asList(expressions)))
+        .build();
+  }
+
+  private static Rel sort(Rel input, int field, SortDirection direction) {
+    return Rel.newBuilder()
+        .setSort(
+            SortRel.newBuilder()
+                .setInput(input)
+                .addSorts(SortField.newBuilder().setExpr(field(field)).setDirection(direction)))
+        .build();
+  }
+
+  private static Rel fetch(Rel input, long count) {
+    return Rel.newBuilder()
+        .setFetch(FetchRel.newBuilder().setInput(input).setCount(count))
+        .build();
+  }
+
+  private static Expression lt(Expression left, Expression right) {
+    return call(LT, BOOL, left, right);
+  }
+
+  private static Expression add(Expression left, Expression right) {
+    return call(ADD, I64, left, right);
+  }
+
+  private static Expression call(int function, Type outputType, Expression... arguments) {
+    ScalarFunction.Builder builder =
+        ScalarFunction.newBuilder().setFunctionReference(function).setOutputType(outputType);
+    for (Expression argument : arguments) {
+      builder.addArguments(FunctionArgument.newBuilder().setValue(argument));
+    }
+    return Expression.newBuilder().setScalarFunction(builder).build();
+  }
+
+  private static Expression field(int field) {
+    return Expression.newBuilder()
+        .setSelection(
+            FieldReference.newBuilder()
+                .setDirectReference(
+                    ReferenceSegment.newBuilder()
+                        .setStructField(ReferenceSegment.StructField.newBuilder().setField(field)))
+                .setRootReference(FieldReference.RootReference.getDefaultInstance()))
+        .build();
+  }
+
+  private static Expression int64(long value) {
+    return Expression.newBuilder().setLiteral(Literal.newBuilder().setI64(value)).build();
+  }
+
+  private static Expression string(String value) {
+    return Expression.newBuilder().setLiteral(Literal.newBuilder().setString(value)).build();
+  }
+
+  private static com.google.cloud.bigquery.federation.v1alpha1.Expression function(
+      FunctionSignatureId signatureId,
+      com.google.cloud.bigquery.federation.v1alpha1.Expression... arguments) {
+    return com.google.cloud.bigquery.federation.v1alpha1.Expression.newBuilder()
+        .setFunction(
+            FunctionExpression.newBuilder()
+                .setFunctionSignatureId(signatureId)
+                .addAllArguments(Arrays.asList(arguments)))
+        .build();
+  }
+
+  private static com.google.cloud.bigquery.federation.v1alpha1.Expression v1Field(String name) {
+    return com.google.cloud.bigquery.federation.v1alpha1.Expression.newBuilder()
+        .setField(FieldExpression.newBuilder().setFieldName(name))
+        .build();
+  }
+
+  private static com.google.cloud.bigquery.federation.v1alpha1.Expression v1Int64(long value) {
+    return com.google.cloud.bigquery.federation.v1alpha1.Expression.newBuilder()
+        .setConstant(Value.newBuilder().setInt64Value(value))
+        .build();
+  }
+}
@@ -0,0 +1,133 @@
+package com.google.cloud.connector.training;
+
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.connector.api.AssetName;
+import com.google.cloud.connector.api.Connector;
+import com.google.cloud.connector.api.RecordReader;
+import com.google.cloud.connector.api.SynchronousQueryExecutor;
+import com.google.cloud.connector.api.annotation.DataSource;
+import com.google.cloud.connector.api.data.RecordBuilder;
+import com.google.cloud.connector.api.schema.SchemaBuilder;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * A connector that generates a fixed number of records with fields of all the simple types. It
+ * is used by the training run of the connector server, which exercises the request handling path
+ * of the server for creating the class data sharing archive. It is loaded from a jar created
+ * under the connector root directory by the training run, the same as any other connector.
+ */
+public class SyntheticConnector implements Connector, SynchronousQueryExecutor {
+
+  /** The data source id of the connector under the connector root directory. */
+  public static final String DATASOURCE_ID = "synthetic-training";
+
+  /** The name of the only table of the connector. */
+  public static final String TABLE_NAME = "records";
+
+  private static final int RECORDS = 1000;
+
+  @DataSource(DATASOURCE_ID)
+  public SyntheticConnector() {
+    // no-op
+  }
+
+  @Override
+  public void resolveSchema(AssetName assetName, SchemaBuilder schemaBuilder) {
+    exportSchema(schemaBuilder);
+  }
+
+  @Override
+  public RecordReader execute(AssetName assetName, DataQuery dataQuery) {
+    return new SyntheticRecordReader();
+  }
+
+  private static void exportSchema(SchemaBuilder schemaBuilder) {
+    schemaBuilder
+        .name(TABLE_NAME)
+        .field("bool")
+        .typeBool()
+        .field("int32")
+        .typeInt32()
+        .field("int64")
+        .typeInt64()
+        .field("float")
+        .typeFloat()
+        .field("double")
+        .typeDouble()
+        .field("numeric")
+        .typeNumeric()
+        .field("string")
+        .typeString()
+        .field("bytes")
+        .typeBytes()
+        .field("date")
+        .typeDate()
+        .field("datetime")
+        .typeDateTime()
+        .field("timestamp")
+        .typeTimestamp()
+        .field("time")
+        .typeTime()
+        .field("null")
+        .typeString()
+        .endStruct();
+  }
+
+  /** A {@link RecordReader} that generates records from the record index. */
+  private static final class SyntheticRecordReader implements RecordReader {
+
+    private int index;
+
+    @Override
+    public void getRecordSchema(SchemaBuilder schemaBuilder) {
+      exportSchema(schemaBuilder);
+    }
+
+    @Override
+    public boolean nextRecord(RecordBuilder recordBuilder) {
+      if (index >= RECORDS) {
+        return false;
+      }
+      int i = index++;
+      recordBuilder
+          .field("bool")
+          .set(i % 2 == 0)
+          .field("int32")
+          .set(i)
+          .field("int64")
+          .set((long) i)
+          .field("float")
+          .set((float) i)
+          .field("double")
+          .set((double) i)
+          .field("numeric")
+          .set(BigDecimal.valueOf(i, 2))
+          .field("string")
+          .set(Integer.toString(i))
+          .field("bytes")
+          .set(new byte[] {(byte) i})
+          .field("date")
+          .set(LocalDate.ofEpochDay(i))
+          .field("datetime")
+          .set(LocalDateTime.of(2000, 1, 1, 0, 0).plusSeconds(i))
+          .field("timestamp")
+          .set(OffsetDateTime.of(2000, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC).plusSeconds(i))
+          .field("time")
+          .set(LocalTime.ofSecondOfDay(i % 86400))
+          .field("null")
+          .setNull()
+          .endStruct();
+      return true;
+    }
+
+    @Override
+    public void close() {
+      // no-op
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package com.google.cloud.connector.training;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+/**
+ * The main class for performing the {@link TrainingRun} against a connector server, which is
+ * started separately with {@code -XX:ArchiveClassesAtExit} for creating its class data sharing
+ * archive. Requests are sent through a plaintext channel, hence the server has to run in insecure
+ * mode.
+ */
+@Command(usageHelpAutoWidth = true)
+public class TrainingMain implements Callable<Integer> {
+
+  @Option(
+      names = {"-s", "--server"},
+      defaultValue = "localhost",
+      description = "The host of the connector server.")
+  private String server;
+
+  @Option(
+      names = {"-p", "--port"},
+      required = true,
+      description = "The port of the connector server.")
+  private int port;
+
+  @Option(
+      names = {"-r", "--connector-root-dir"},
+      required = true,
+      description = "The connector root directory of the connector server.")
+  private Path connectorRootDir;
+
+  @Option(
+      names = {"--timeout"},
+      defaultValue = "PT1M",
+      description =
+          "The deadline of each request in ISO-8601 duration format, including the time to wait"
+              + " for the server to start.")
+  private Duration timeout;
+
+  /** The main entry point to perform the training run as a standalone application. */
+  public static void main(String[] args) {
+    int exitCode = new CommandLine(new TrainingMain()).execute(args);
+    System.exit(exitCode);
+  }
+
+  @Override
+  public Integer call() throws IOException, InterruptedException {
+    ManagedChannel channel = ManagedChannelBuilder.forAddress(server, port).usePlaintext().build();
+    try {
+      new TrainingRun(connectorRootDir, timeout).run(channel);
+      return 0;
+    } finally {
+      channel.shutdownNow();
+      var unused = channel.awaitTermination(10, TimeUnit.SECONDS);
+    }
+  }
+}
@@ -0,0 +1,196 @@
+package com.google.cloud.connector.training;
+
+import com.google.cloud.bigquery.federation.v1alpha1.ConnectorServiceGrpc;
+import com.google.cloud.bigquery.federation.v1alpha1.ConnectorServiceGrpc.ConnectorServiceBlockingStub;
+import com.google.cloud.bigquery.federation.v1alpha1.Data;
+import com.google.cloud.bigquery.federation.v1alpha1.DataQuery;
+import com.google.cloud.bigquery.federation.v1alpha1.ExecuteQueryRequest;
+import com.google.cloud.bigquery.federation.v1alpha1.GetDataSourceRequest;
+import com.google.cloud.bigquery.federation.v1alpha1.NamedTable;
+import com.google.cloud.bigquery.federation.v1alpha1.ResolveSchemaRequest;
+import com.google.cloud.connector.layout.ConnectorLayout;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import io.grpc.Channel;
+import io.grpc.StatusRuntimeException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Sends requests to a running connector server to exercise the class loading and request handling
+ * paths of the server. It is used for creating the application class data sharing (AppCDS)
+ * archive of the server, by running the server with {@code -XX:ArchiveClassesAtExit} and
+ * performing the training run from a separate process before the server is stopped.
+ *
+ * <p>The data source of every connector under the connector root directory is fetched, such that
+ * the connector classes are loaded from the connector jars and get archived. The {@link
+ * SyntheticConnector} is installed under the connector root directory for the duration of the run
+ * to exercise schema resolution and query execution without any external system.
+ *
+ * <p>Requests wait for the server to become ready, such that the run can start together with the
+ * server.
+ */
+final class TrainingRun {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  @VisibleForTesting static final String SYNTHETIC_CONNECTOR_JAR = "synthetic-connector.jar";
+  private static final String SYNTHETIC_CONNECTOR_PROTO = "training/connector.textproto";
+
+  private final Path connectorRootDir;
+  private final Duration timeout;
+
+  /**
+   * Creates a training run for the connectors under the given connector root directory.
+   *
+   * @param connectorRootDir the connector root directory of the connector server
+   * @param timeout the deadline of each request, which includes waiting for the server to start
+   */
+  TrainingRun(Path connectorRootDir, Duration timeout) {
+    this.connectorRootDir = connectorRootDir;
+    this.timeout = timeout;
+  }
+
+  /**
+   * Performs the training run against the connector server behind the given channel. Failures of
+   * individual requests are logged and don't fail the run.
+   *
+   * @return the number of requests that failed
+   * @throws IOException if failed to install the synthetic connector
+   */
+  int run(Channel channel) throws IOException {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    Path syntheticDir = connectorRootDir.resolve(SyntheticConnector.DATASOURCE_ID);
+    installSyntheticConnector(syntheticDir);
+
+    try {
+      List<String> datasourceIds = ConnectorLayout.listDatasourceIds(connectorRootDir);
+      int failures = 0;
+      for (String datasourceId : datasourceIds) {
+        failures +=
+            call("GetDataSource", datasourceId, () -> getDataSource(stub(channel), datasourceId));
+      }
+      failures += exerciseSyntheticConnector(channel);
+      logger.atInfo().log(
+          "Completed training run over %d connectors in %s with %d failed requests",
+          datasourceIds.size(), stopwatch, failures);
+      return failures;
+    } finally {
+      MoreFiles.deleteRecursively(syntheticDir, RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+  }
+
+  private int exerciseSyntheticConnector(Channel channel) {
+    String id = SyntheticConnector.DATASOURCE_ID;
+    NamedTable table = NamedTable.newBuilder().addNames(SyntheticConnector.TABLE_NAME).build();
+    return call("ResolveSchema", id, () -> resolveSchema(stub(channel), id, table))
+        + call("ExecuteQuery", id, () -> executeQuery(stub(channel), id, table));
+  }
+
+  /** Creates a stub for a single request, which waits for the server to become ready. */
+  private ConnectorServiceBlockingStub stub(Channel channel) {
+    return ConnectorServiceGrpc.newBlockingStub(channel)
+        .withWaitForReady()
+        .withDeadlineAfter(timeout.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  private static Object getDataSource(ConnectorServiceBlockingStub stub, String datasourceId) {
+    return stub.getDataSource(
+        GetDataSourceRequest.newBuilder().setName(datasetName(datasourceId)).build());
+  }
+
+  private static Object resolveSchema(
+      ConnectorServiceBlockingStub stub, String datasourceId, NamedTable table) {
+    return stub.resolveSchema(
+        ResolveSchemaRequest.newBuilder()
+            .setDataset(datasetName(datasourceId))
+            .setNamedTable(table)
+            .build());
+  }
+
+  private static Object executeQuery(
+      ConnectorServiceBlockingStub stub, String datasourceId, NamedTable table) {
+    Iterator<Data> responses =
+        stub.executeQuery(
+            ExecuteQueryRequest.newBuilder()
+                .setDataset(datasetName(datasourceId))
+                .setDataQuery(DataQuery.newBuilder().setNamedTable(table))
+                .build());
+    long rows = 0;
+    while (responses.hasNext()) {
+      rows += responses.next().getDataBlock().getRowset().getRowsCount();
+    }
+    logger.atInfo().log("Read %d rows from connector '%s'", rows, datasourceId);
+    return rows;
+  }
+
+  /**
+   * Creates the connector directory of the {@link SyntheticConnector}, which contains a jar of the
+   * connector classes and the connector specification. The classes are loaded from a jar since
+   * only classes loaded from jars by custom class loaders are archived.
+   */
+  @VisibleForTesting
+  static void installSyntheticConnector(Path connectorDir) throws IOException {
+    Files.createDirectories(connectorDir);
+    ClassLoader classLoader = TrainingRun.class.getClassLoader();
+    try (OutputStream os = Files.newOutputStream(connectorDir.resolve(SYNTHETIC_CONNECTOR_JAR));
+        JarOutputStream jarOutput = new JarOutputStream(os)) {
+      for (Class<?> cls : SyntheticConnector.class.getNestMembers()) {
+        String name = cls.getName().replace('.', '/') + ".class";
+        copyEntry(classLoader, name, name, jarOutput);
+      }
+      copyEntry(
+          classLoader,
+          SYNTHETIC_CONNECTOR_PROTO,
+          ConnectorLayout.CONNECTOR_PROTO_FILE,
+          jarOutput);
+    }
+  }
+
+  private static void copyEntry(
+      ClassLoader classLoader, String resource, String entryName, JarOutputStream jarOutput)
+      throws IOException {
+    try (InputStream is = classLoader.getResourceAsStream(resource)) {
+      if (is == null) {
+        throw new IOException("Missing resource " + resource);
+      }
+      jarOutput.putNextEntry(new JarEntry(entryName));
+      is.transferTo(jarOutput);
+      jarOutput.closeEntry();
+    }
+  }
+
+  /** Sends a request and returns the number of failed requests, which is either 0 or 1. */
+  private static int call(String method, String datasourceId, Request request) {
+    try {
+      var unused = request.call();
+      return 0;
+    } catch (StatusRuntimeException e) {
+      logger.atWarning().log(
+          "Training request %s for connector '%s' failed with %s",
+          method, datasourceId, e.getStatus());
+      return 1;
+    }
+  }
+
+  private static String datasetName(String datasourceId) {
+    return String.format("datasources/%s", datasourceId);
+  }
+
+  /** A request sent during the training run. */
+  @FunctionalInterface
+  private interface Request {
+    Object call();
+  }
+}
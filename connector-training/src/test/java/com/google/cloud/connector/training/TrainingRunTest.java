@@ -0,0 +1,113 @@
+package com.google.cloud.connector.training;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.cloud.bigquery.federation.v1alpha1.ConnectorServiceGrpc.ConnectorServiceImplBase;
+import com.google.cloud.bigquery.federation.v1alpha1.Data;
+import com.google.cloud.bigquery.federation.v1alpha1.DataSource;
+import com.google.cloud.bigquery.federation.v1alpha1.ExecuteQueryRequest;
+import com.google.cloud.bigquery.federation.v1alpha1.GetDataSourceRequest;
+import com.google.cloud.bigquery.federation.v1alpha1.ResolveSchemaRequest;
+import com.google.cloud.bigquery.federation.v1alpha1.Schema;
+import com.google.cloud.connector.layout.ConnectorLayout;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.jar.JarFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Unit tests for the {@link TrainingRun}. */
+public class TrainingRunTest {
+
+  @TempDir Path rootDir;
+
+  @Test
+  public void installSyntheticConnector_createsConnectorJar() throws Exception {
+    Path connectorDir = rootDir.resolve(SyntheticConnector.DATASOURCE_ID);
+    TrainingRun.installSyntheticConnector(connectorDir);
+    Path jarFile = connectorDir.resolve(TrainingRun.SYNTHETIC_CONNECTOR_JAR);
+    assertThat(Files.exists(jarFile)).isTrue();
+
+    try (JarFile jar = new JarFile(jarFile.toFile())) {
+      for (Class<?> cls : SyntheticConnector.class.getNestMembers()) {
+        assertThat(jar.getEntry(cls.getName().replace('.', '/') + ".class")).isNotNull();
+      }
+      String spec;
+      try (InputStream is =
+          jar.getInputStream(jar.getEntry(ConnectorLayout.CONNECTOR_PROTO_FILE))) {
+        spec = new String(is.readAllBytes(), UTF_8);
+      }
+      assertThat(spec).contains(SyntheticConnector.class.getName());
+      assertThat(spec).contains(SyntheticConnector.DATASOURCE_ID);
+    }
+  }
+
+  @Test
+  public void run_sendsRequestsForAllConnectors() throws Exception {
+    Files.createDirectories(rootDir.resolve("first"));
+    Files.createDirectories(rootDir.resolve("second"));
+    List<String> requests = new CopyOnWriteArrayList<>();
+    ConnectorServiceImplBase service =
+        new ConnectorServiceImplBase() {
+          @Override
+          public void getDataSource(
+              GetDataSourceRequest request, StreamObserver<DataSource> responseObserver) {
+            requests.add("GetDataSource " + request.getName());
+            if (request.getName().endsWith("second")) {
+              responseObserver.onError(Status.NOT_FOUND.asRuntimeException());
+              return;
+            }
+            responseObserver.onNext(DataSource.getDefaultInstance());
+            responseObserver.onCompleted();
+          }
+
+          @Override
+          public void resolveSchema(
+              ResolveSchemaRequest request, StreamObserver<Schema> responseObserver) {
+            requests.add("ResolveSchema " + request.getDataset());
+            responseObserver.onNext(Schema.getDefaultInstance());
+            responseObserver.onCompleted();
+          }
+
+          @Override
+          public void executeQuery(
+              ExecuteQueryRequest request, StreamObserver<Data> responseObserver) {
+            requests.add("ExecuteQuery " + request.getDataset());
+            responseObserver.onNext(Data.getDefaultInstance());
+            responseObserver.onCompleted();
+          }
+        };
+
+    String name = InProcessServerBuilder.generateName();
+    Server server = InProcessServerBuilder.forName(name).addService(service).build().start();
+    ManagedChannel channel = InProcessChannelBuilder.forName(name).build();
+    try {
+      int failures = new TrainingRun(rootDir, Duration.ofSeconds(10)).run(channel);
+
+      assertThat(failures).isEqualTo(1);
+      String synthetic = "datasources/" + SyntheticConnector.DATASOURCE_ID;
+      assertThat(requests)
+          .containsExactly(
+              "GetDataSource datasources/first",
+              "GetDataSource datasources/second",
+              "GetDataSource " + synthetic,
+              "ResolveSchema " + synthetic,
+              "ExecuteQuery " + synthetic);
+      assertThat(Files.exists(rootDir.resolve(SyntheticConnector.DATASOURCE_ID))).isFalse();
+    } finally {
+      channel.shutdownNow();
+      server.shutdownNow();
+    }
+  }
+}